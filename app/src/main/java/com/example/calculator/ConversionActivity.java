@@ -1,15 +1,33 @@
 package com.example.calculator;
 
+import android.app.DatePickerDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.*;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.calculator.adapters.ConversionAdapter;
 import com.example.calculator.models.ConversionType;
 import com.example.calculator.utils.CurrencyAPI;
+import com.example.calculator.utils.CurrencyRates;
+import com.example.calculator.utils.RateHistory;
+import com.example.calculator.utils.UnitConverter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.text.DecimalFormat;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ConversionActivity extends AppCompatActivity {
 
@@ -19,23 +37,48 @@ public class ConversionActivity extends AppCompatActivity {
     private EditText inputValue;
     private TextView outputValue;
     private ProgressBar loadingIndicator;
+    private TextView rateDateButton;
+    private TextView allUnitsButton;
+    private RecyclerView allUnitsList;
+    private final ConversionAdapter allUnitsAdapter = new ConversionAdapter();
+    // Shows the input in every unit instead of the one chosen in the To row
+    private boolean showAllUnits;
+    // Keystrokes and selections within a frame are converted and shown once, on the next frame
+    private boolean conversionScheduled;
+    private final Choreographer.FrameCallback conversionFrame = frameTimeNanos -> {
+        conversionScheduled = false;
+        performConversion();
+    };
 
     private ConversionType currentType;
+    // Null for currencies, which go through currencyRates
+    private UnitConverter converter;
     private CurrencyAPI currencyAPI;
-    private Map<String, Double> currencyRates;
+    private CurrencyRates currencyRates;
+    // Day of the rates currencies convert at, or NO_DAY for the latest
+    private long rateDay = RateHistory.NO_DAY;
     private DecimalFormat df = new DecimalFormat("#.##########");
+    // Converts pasted columns, which can be long, off the main thread
+    private final ExecutorService columns = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_conversion);
 
-        currencyAPI = new CurrencyAPI();
+        currencyAPI = new CurrencyAPI(getFilesDir());
         initViews();
         setupListeners();
         loadCategories();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        columns.shutdownNow();
+        Choreographer.getInstance().removeFrameCallback(conversionFrame);
+    }
+
     private void initViews() {
         categorySpinner = findViewById(R.id.category_spinner);
         fromUnitSpinner = findViewById(R.id.from_unit_spinner);
@@ -43,9 +86,17 @@ public class ConversionActivity extends AppCompatActivity {
         inputValue = findViewById(R.id.input_value);
         outputValue = findViewById(R.id.output_value);
         loadingIndicator = findViewById(R.id.loading_indicator);
+        rateDateButton = findViewById(R.id.btn_rate_date);
+        allUnitsButton = findViewById(R.id.btn_all_units);
+        allUnitsList = findViewById(R.id.all_units_list);
+        allUnitsList.setLayoutManager(new LinearLayoutManager(this));
+        allUnitsList.setAdapter(allUnitsAdapter);
 
         findViewById(R.id.btn_back).setOnClickListener(v -> finish());
         findViewById(R.id.btn_swap).setOnClickListener(v -> swapUnits());
+        findViewById(R.id.btn_convert_column).setOnClickListener(v -> convertColumn());
+        rateDateButton.setOnClickListener(v -> pickRateDate());
+        allUnitsButton.setOnClickListener(v -> toggleAllUnits());
     }
 
     private void setupListeners() {
@@ -53,6 +104,8 @@ public class ConversionActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 currentType = ConversionType.values()[position];
+                converter = currentType.hasFixedScales() ? UnitConverter.forType(currentType) : null;
+                rateDateButton.setVisibility(currentType == ConversionType.CURRENCY ? View.VISIBLE : View.GONE);
                 loadUnits();
             }
 
@@ -63,7 +116,7 @@ public class ConversionActivity extends AppCompatActivity {
         fromUnitSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                performConversion();
+                scheduleConversion();
             }
 
             @Override
@@ -73,7 +126,7 @@ public class ConversionActivity extends AppCompatActivity {
         toUnitSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                performConversion();
+                scheduleConversion();
             }
 
             @Override
@@ -86,7 +139,7 @@ public class ConversionActivity extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                performConversion();
+                scheduleConversion();
             }
 
             @Override
@@ -107,170 +160,210 @@ public class ConversionActivity extends AppCompatActivity {
     }
 
     private void loadUnits() {
-        String[] units = currentType.getUnits();
+        String[] defaults = currentType.getUnits();
+        // Every currency in the rates once there are some, the common ones until then
+        String[] units = currentType == ConversionType.CURRENCY && currencyRates != null
+                ? currencyRates.getCodes() : defaults;
+        showUnits(units, defaults[0], defaults[Math.min(1, defaults.length - 1)]);
 
+        if (currentType == ConversionType.CURRENCY) {
+            loadCurrencyRates();
+        }
+    }
+
+    private void showUnits(String[] units, String from, String to) {
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
                 R.layout.spinner_item, units);
         adapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
 
         fromUnitSpinner.setAdapter(adapter);
         toUnitSpinner.setAdapter(adapter);
+        allUnitsAdapter.setUnits(units);
 
-        if (units.length > 1) {
-            toUnitSpinner.setSelection(1);
-        }
-
-        if (currentType == ConversionType.CURRENCY) {
-            loadCurrencyRates();
-        }
+        int fromPos = Arrays.asList(units).indexOf(from);
+        int toPos = Arrays.asList(units).indexOf(to);
+        fromUnitSpinner.setSelection(Math.max(fromPos, 0));
+        toUnitSpinner.setSelection(toPos >= 0 ? toPos : Math.min(1, units.length - 1));
     }
 
     private void loadCurrencyRates() {
         loadingIndicator.setVisibility(View.VISIBLE);
-        currencyAPI.fetchRates(new CurrencyAPI.CurrencyCallback() {
+        long day = rateDay;
+        CurrencyAPI.CurrencyCallback callback = new CurrencyAPI.CurrencyCallback() {
             @Override
-            public void onSuccess(Map<String, Double> rates) {
+            public void onSuccess(CurrencyRates rates) {
+                // Rates for a date since changed from
+                if (rateDay != day) return;
                 loadingIndicator.setVisibility(View.GONE);
+                boolean newCurrencies = currencyRates == null
+                        || !Arrays.equals(currencyRates.getCodes(), rates.getCodes());
                 currencyRates = rates;
-                performConversion();
+                if (newCurrencies && currentType == ConversionType.CURRENCY) {
+                    showUnits(rates.getCodes(), (String) fromUnitSpinner.getSelectedItem(),
+                            (String) toUnitSpinner.getSelectedItem());
+                }
+                scheduleConversion();
             }
 
             @Override
             public void onError(String error) {
+                if (rateDay != day) return;
                 loadingIndicator.setVisibility(View.GONE);
+                if (day != RateHistory.NO_DAY) {
+                    // Rates of another day would give a wrong answer for this one
+                    currencyRates = null;
+                    scheduleConversion();
+                }
                 Toast.makeText(ConversionActivity.this,
                         "Failed to load currency rates: " + error, Toast.LENGTH_SHORT).show();
             }
-        });
+        };
+        if (day == RateHistory.NO_DAY) {
+            currencyAPI.fetchRates(callback);
+        } else {
+            currencyAPI.fetchRatesAt(day, callback);
+        }
+    }
+
+    /** Lets the user pick the date currencies convert at; today means the latest rates. */
+    private void pickRateDate() {
+        Calendar now = Calendar.getInstance();
+        long today = RateHistory.dayOf(now.get(Calendar.YEAR), now.get(Calendar.MONTH) + 1,
+                now.get(Calendar.DAY_OF_MONTH));
+        // Days are calendar dates, so they are read back in UTC
+        Calendar shown = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        shown.setTimeInMillis((rateDay == RateHistory.NO_DAY ? today : rateDay) * 86400000L);
+
+        DatePickerDialog dialog = new DatePickerDialog(this, (view, year, month, dayOfMonth) -> {
+            long day = RateHistory.dayOf(year, month + 1, dayOfMonth);
+            rateDay = day >= today ? RateHistory.NO_DAY : day;
+            rateDateButton.setText(rateDay == RateHistory.NO_DAY
+                    ? "Today's rates" : "Rates of " + RateHistory.dateOf(rateDay));
+            loadCurrencyRates();
+        }, shown.get(Calendar.YEAR), shown.get(Calendar.MONTH), shown.get(Calendar.DAY_OF_MONTH));
+        dialog.getDatePicker().setMaxDate(now.getTimeInMillis());
+        dialog.show();
+    }
+
+    private void scheduleConversion() {
+        if (conversionScheduled) return;
+        conversionScheduled = true;
+        Choreographer.getInstance().postFrameCallback(conversionFrame);
+    }
+
+    private void toggleAllUnits() {
+        showAllUnits = !showAllUnits;
+        int single = showAllUnits ? View.GONE : View.VISIBLE;
+        findViewById(R.id.btn_swap).setVisibility(single);
+        findViewById(R.id.label_to).setVisibility(single);
+        findViewById(R.id.to_row).setVisibility(single);
+        allUnitsList.setVisibility(showAllUnits ? View.VISIBLE : View.GONE);
+        allUnitsButton.setText(showAllUnits ? "One unit" : "All units");
+        scheduleConversion();
     }
 
     private void performConversion() {
+        if (showAllUnits) {
+            convertToAllUnits();
+            return;
+        }
         String inputText = inputValue.getText().toString();
         if (inputText.isEmpty()) {
             outputValue.setText("0");
             return;
         }
 
+        // Spinner positions are unit indexes; none is selected while units load
+        int from = fromUnitSpinner.getSelectedItemPosition();
+        int to = toUnitSpinner.getSelectedItemPosition();
+        if (from < 0 || to < 0) return;
+
         try {
             double input = Double.parseDouble(inputText);
-            String fromUnit = fromUnitSpinner.getSelectedItem().toString();
-            String toUnit = toUnitSpinner.getSelectedItem().toString();
-
-            double result = convert(input, fromUnit, toUnit);
+            double result;
+            if (converter != null) {
+                result = converter.convert(input, from, to);
+            } else {
+                result = convertCurrency(input, fromUnitSpinner.getSelectedItem().toString(),
+                        toUnitSpinner.getSelectedItem().toString());
+            }
             outputValue.setText(df.format(result));
         } catch (NumberFormatException e) {
             outputValue.setText("Error");
         }
     }
 
-    private double convert(double value, String from, String to) {
-        switch (currentType) {
-            case LENGTH:
-                return convertLength(value, from, to);
-            case WEIGHT:
-                return convertWeight(value, from, to);
-            case TEMPERATURE:
-                return convertTemperature(value, from, to);
-            case AREA:
-                return convertArea(value, from, to);
-            case CURRENCY:
-                return convertCurrency(value, from, to);
-            default:
-                return 0;
-        }
-    }
-
-    private double convertLength(double value, String from, String to) {
-        // Convert to meters first
-        double meters = 0;
-        switch (from) {
-            case "Meter": meters = value; break;
-            case "Kilometer": meters = value * 1000; break;
-            case "Mile": meters = value * 1609.34; break;
-            case "Foot": meters = value * 0.3048; break;
-            case "Inch": meters = value * 0.0254; break;
-            case "Centimeter": meters = value * 0.01; break;
-        }
-
-        // Convert from meters to target unit
-        switch (to) {
-            case "Meter": return meters;
-            case "Kilometer": return meters / 1000;
-            case "Mile": return meters / 1609.34;
-            case "Foot": return meters / 0.3048;
-            case "Inch": return meters / 0.0254;
-            case "Centimeter": return meters / 0.01;
-        }
-        return 0;
-    }
-
-    private double convertWeight(double value, String from, String to) {
-        // Convert to kilograms first
-        double kg = 0;
-        switch (from) {
-            case "Kilogram": kg = value; break;
-            case "Gram": kg = value / 1000; break;
-            case "Pound": kg = value * 0.453592; break;
-            case "Ounce": kg = value * 0.0283495; break;
-            case "Ton": kg = value * 1000; break;
-        }
-
-        // Convert from kg to target unit
-        switch (to) {
-            case "Kilogram": return kg;
-            case "Gram": return kg * 1000;
-            case "Pound": return kg / 0.453592;
-            case "Ounce": return kg / 0.0283495;
-            case "Ton": return kg / 1000;
+    /** Converts the input into every unit shown, in one pass over the from unit's row of rates. */
+    private void convertToAllUnits() {
+        int from = fromUnitSpinner.getSelectedItemPosition();
+        double[] values = allUnitsAdapter.getValues();
+        boolean valid = false;
+        try {
+            double input = Double.parseDouble(inputValue.getText().toString());
+            if (from < 0) {
+                // Units still loading
+            } else if (converter != null) {
+                converter.convertToAll(input, from, values);
+                valid = true;
+            } else if (currencyRates != null && currencyRates.size() == values.length
+                    && currencyRates.getCode(from).equals(fromUnitSpinner.getSelectedItem())) {
+                // Rows are the rates' own currencies, in id order
+                currencyRates.convertToAll(input, from, values);
+                valid = true;
+            }
+        } catch (NumberFormatException e) {
+            // Empty or not a number: every row is left blank
         }
-        return 0;
+        allUnitsAdapter.valuesChanged(valid);
     }
 
-    private double convertTemperature(double value, String from, String to) {
-        // Convert to Celsius first
-        double celsius = 0;
-        switch (from) {
-            case "Celsius": celsius = value; break;
-            case "Fahrenheit": celsius = (value - 32) * 5/9; break;
-            case "Kelvin": celsius = value - 273.15; break;
-        }
-
-        // Convert from Celsius to target unit
-        switch (to) {
-            case "Celsius": return celsius;
-            case "Fahrenheit": return celsius * 9/5 + 32;
-            case "Kelvin": return celsius + 273.15;
+    /**
+     * Converts every number in the text on the clipboard between the selected units and
+     * puts the result back on the clipboard, keeping the text around them as it was.
+     */
+    private void convertColumn() {
+        if (converter == null) {
+            Toast.makeText(this, "Columns of currency can't be converted", Toast.LENGTH_SHORT).show();
+            return;
         }
-        return 0;
-    }
-
-    private double convertArea(double value, String from, String to) {
-        // Convert to square meters first
-        double sqm = 0;
-        switch (from) {
-            case "Square Meter": sqm = value; break;
-            case "Square Kilometer": sqm = value * 1000000; break;
-            case "Square Mile": sqm = value * 2589988.11; break;
-            case "Square Foot": sqm = value * 0.092903; break;
-            case "Acre": sqm = value * 4046.86; break;
-            case "Hectare": sqm = value * 10000; break;
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = clipboard == null ? null : clipboard.getPrimaryClip();
+        CharSequence text = clip == null || clip.getItemCount() == 0
+                ? null : clip.getItemAt(0).coerceToText(this);
+        int from = fromUnitSpinner.getSelectedItemPosition();
+        int to = toUnitSpinner.getSelectedItemPosition();
+        if (text == null || text.length() == 0 || from < 0 || to < 0) {
+            Toast.makeText(this, "Copy a column of numbers first", Toast.LENGTH_SHORT).show();
+            return;
         }
 
-        // Convert from sqm to target unit
-        switch (to) {
-            case "Square Meter": return sqm;
-            case "Square Kilometer": return sqm / 1000000;
-            case "Square Mile": return sqm / 2589988.11;
-            case "Square Foot": return sqm / 0.092903;
-            case "Acre": return sqm / 4046.86;
-            case "Hectare": return sqm / 10000;
-        }
-        return 0;
+        UnitConverter columnConverter = converter;
+        String label = currentType.getUnits()[to];
+        loadingIndicator.setVisibility(View.VISIBLE);
+        columns.execute(() -> {
+            StringWriter out = new StringWriter(text.length() + text.length() / 2);
+            long count;
+            try {
+                count = columnConverter.convert(new StringReader(text.toString()), out, from, to);
+            } catch (IOException e) {
+                // Strings don't fail
+                throw new IllegalStateException(e);
+            }
+            runOnUiThread(() -> {
+                loadingIndicator.setVisibility(View.GONE);
+                clipboard.setPrimaryClip(ClipData.newPlainText(label, out.toString()));
+                Toast.makeText(this, "Converted " + count + " values, copied to clipboard",
+                        Toast.LENGTH_SHORT).show();
+            });
+        });
     }
 
     private double convertCurrency(double value, String from, String to) {
         if (currencyRates == null) return 0;
-        return currencyAPI.convert(value, from, to, currencyRates);
+        int fromId = currencyRates.indexOf(from);
+        int toId = currencyRates.indexOf(to);
+        if (fromId < 0 || toId < 0) return 0;
+        return currencyRates.convert(value, fromId, toId);
     }
 
     private void swapUnits() {
@@ -0,0 +1,53 @@
+package com.example.calculator;
+
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+import androidx.appcompat.app.AppCompatActivity;
+import com.example.calculator.utils.CalculatorEngine;
+import com.example.calculator.views.GraphView;
+
+public class GraphActivity extends AppCompatActivity {
+
+    public static final String EXTRA_EXPRESSION = "expression";
+    public static final String EXTRA_RADIAN = "radian";
+
+    private GraphView graphView;
+    private boolean isRadianMode;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_graph);
+
+        isRadianMode = getIntent().getBooleanExtra(EXTRA_RADIAN, true);
+        graphView = findViewById(R.id.graph_view);
+        findViewById(R.id.btn_back).setOnClickListener(v -> finish());
+
+        EditText inputFunction = findViewById(R.id.input_function);
+        inputFunction.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                plot(s.toString());
+            }
+        });
+
+        String expression = getIntent().getStringExtra(EXTRA_EXPRESSION);
+        inputFunction.setText(expression == null || expression.equals("0") ? "sin(x)" : expression);
+    }
+
+    private void plot(String expression) {
+        try {
+            graphView.setFunction(CalculatorEngine.compileFunction(expression), isRadianMode);
+        } catch (IllegalArgumentException e) {
+            graphView.setFunction(null, isRadianMode);
+        }
+    }
+}
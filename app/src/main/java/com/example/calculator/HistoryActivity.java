@@ -1,19 +1,66 @@
 package com.example.calculator;
 
+import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.Spinner;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.calculator.adapters.HistoryAdapter;
 import com.example.calculator.models.Calculation;
+import com.example.calculator.utils.HistoryIndex;
 import com.example.calculator.utils.HistoryManager;
-import java.util.List;
+import com.example.calculator.utils.HistoryStats;
+import com.example.calculator.utils.HistoryTransfer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class HistoryActivity extends AppCompatActivity {
 
+    private static final String TAG = "HistoryActivity";
+    private static final int MAX_MATCHES = 500;
+    private static final String[] TIME_RANGES = {"All time", "24 hours", "7 days", "30 days"};
+    private static final int[] TIME_RANGE_DAYS = {0, 1, 7, 30};
+    private static final String[] EXPORT_FORMATS = {"CSV", "JSON"};
+    private static final int REQUEST_EXPORT_CSV = 1;
+    private static final int REQUEST_EXPORT_JSON = 2;
+    private static final int REQUEST_IMPORT = 3;
+    private static final int STATS_DAYS = 14;
+
     private RecyclerView recyclerView;
     private HistoryAdapter adapter;
     private HistoryManager historyManager;
+    private EditText inputSearch;
+    private Spinner timeSpinner;
+    private ProgressBar transferProgress;
+    // Reads history pages, searches and clears the log off the main thread
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    // Imports and exports, which can take long enough that page loads must not wait on them
+    private final ExecutorService transfer = Executors.newSingleThreadExecutor();
+    // Bumped per search, so results of a search overtaken by typing are dropped
+    private int searchGeneration;
+    // Set while a search waits for the history index to be built
+    private boolean waitingForIndex;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -24,21 +71,297 @@ public class HistoryActivity extends AppCompatActivity {
 
         findViewById(R.id.btn_back).setOnClickListener(v -> finish());
         findViewById(R.id.btn_clear_history).setOnClickListener(v -> clearHistory());
+        findViewById(R.id.btn_stats).setOnClickListener(v -> showStats());
+        findViewById(R.id.btn_export_history).setOnClickListener(v -> chooseExportFormat());
+        findViewById(R.id.btn_import_history).setOnClickListener(v -> chooseImportFile());
+        transferProgress = findViewById(R.id.transfer_progress);
 
         recyclerView = findViewById(R.id.recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        loadHistory();
+        adapter = new HistoryAdapter(historyManager, loader);
+        adapter.setLoadErrorListener(e -> showError("Could not read history", e));
+        recyclerView.setAdapter(adapter);
+
+        inputSearch = findViewById(R.id.input_search);
+        inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search();
+            }
+        });
+
+        timeSpinner = findViewById(R.id.time_spinner);
+        ArrayAdapter<String> timeAdapter = new ArrayAdapter<>(this,
+                R.layout.spinner_item, TIME_RANGES);
+        timeAdapter.setDropDownViewResource(R.layout.spinner_dropdown_item);
+        timeSpinner.setAdapter(timeAdapter);
+        timeSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                search();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {}
+        });
     }
 
-    private void loadHistory() {
-        List<Calculation> history = historyManager.getHistory();
-        adapter = new HistoryAdapter(history);
-        recyclerView.setAdapter(adapter);
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Picks up calculations made since the adapter last looked
+        adapter.refresh();
+        search();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loader.shutdownNow();
+        // A transfer in progress is left to finish
+        transfer.shutdown();
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) return;
+        Uri uri = data.getData();
+        switch (requestCode) {
+            case REQUEST_EXPORT_CSV:
+                exportHistory(uri, HistoryTransfer.Format.CSV);
+                break;
+            case REQUEST_EXPORT_JSON:
+                exportHistory(uri, HistoryTransfer.Format.JSON);
+                break;
+            case REQUEST_IMPORT:
+                importHistory(uri);
+                break;
+        }
+    }
+
+    private void search() {
+        HistoryIndex.Query query = buildQuery();
+        int generation = ++searchGeneration;
+        if (query == null) {
+            adapter.showAll();
+            return;
+        }
+        loader.execute(() -> {
+            long[] ids;
+            Calculation[] matches;
+            try {
+                ids = historyManager.search(query, MAX_MATCHES);
+                if (ids == null) {
+                    recyclerView.post(this::waitForIndex);
+                    return;
+                }
+                matches = historyManager.getHistoryByIds(ids);
+            } catch (UncheckedIOException e) {
+                recyclerView.post(() -> {
+                    if (generation == searchGeneration) showError("Search failed", e);
+                });
+                return;
+            }
+            recyclerView.post(() -> {
+                if (generation == searchGeneration) adapter.showMatches(ids, matches);
+            });
+        });
+    }
+
+    /** Tells the user the index is still being built, and searches again once it is. */
+    private void waitForIndex() {
+        if (waitingForIndex || isDestroyed()) return;
+        waitingForIndex = true;
+        Toast.makeText(this, "Indexing history…", Toast.LENGTH_SHORT).show();
+        historyManager.whenReady(() -> recyclerView.post(() -> {
+            waitingForIndex = false;
+            if (!isDestroyed()) search();
+        }));
+    }
+
+    private void showError(String what, UncheckedIOException e) {
+        Log.w(TAG, what, e);
+        Toast.makeText(this, what + ": " + e.getCause().getMessage(), Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * The query for the search box and time range, or null when neither is set. Text
+     * starting with "=" searches for that result; anything else searches expressions.
+     */
+    private HistoryIndex.Query buildQuery() {
+        String text = inputSearch.getText().toString().trim();
+        int days = TIME_RANGE_DAYS[Math.max(timeSpinner.getSelectedItemPosition(), 0)];
+        if (text.isEmpty() && days == 0) return null;
+
+        HistoryIndex.Query query = new HistoryIndex.Query();
+        if (text.startsWith("=")) {
+            try {
+                double value = Double.parseDouble(text.substring(1).trim());
+                query.resultBetween(value, value);
+            } catch (NumberFormatException e) {
+                // Still typing the number; show everything else that matches
+            }
+        } else if (!text.isEmpty()) {
+            query.expressionContains(text);
+        }
+        if (days > 0) {
+            long now = System.currentTimeMillis();
+            query.timeBetween(now - TimeUnit.DAYS.toMillis(days), now);
+        }
+        return query;
     }
 
     private void clearHistory() {
-        historyManager.clearHistory();
-        loadHistory();
+        loader.execute(() -> {
+            historyManager.clearHistory();
+            recyclerView.post(() -> {
+                adapter.refresh();
+                search();
+            });
+        });
+    }
+
+    private void chooseExportFormat() {
+        android.app.AlertDialog.Builder builder = new android.app.AlertDialog.Builder(this);
+        builder.setTitle("Export as");
+        builder.setItems(EXPORT_FORMATS, (dialog, which) -> {
+            boolean json = which == 1;
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(json ? "application/json" : "text/csv");
+            intent.putExtra(Intent.EXTRA_TITLE, json ? "history.json" : "history.csv");
+            startActivityForResult(intent, json ? REQUEST_EXPORT_JSON : REQUEST_EXPORT_CSV);
+        });
+        builder.show();
+    }
+
+    private void chooseImportFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{
+                "text/csv", "text/comma-separated-values", "application/json", "text/plain"});
+        startActivityForResult(intent, REQUEST_IMPORT);
+    }
+
+    private void exportHistory(Uri uri, HistoryTransfer.Format format) {
+        showProgress(0, -1);
+        transfer.execute(() -> {
+            String message;
+            try (OutputStream out = getContentResolver().openOutputStream(uri, "wt")) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                long count = historyManager.exportHistory(out, format, this::showProgress);
+                message = "Exported " + count + " calculations";
+            } catch (IOException e) {
+                message = "Export failed: " + e.getMessage();
+            }
+            finishTransfer(message);
+        });
+    }
+
+    private void importHistory(Uri uri) {
+        showProgress(0, -1);
+        transfer.execute(() -> {
+            String message;
+            try (InputStream in = getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                long count = historyManager.importHistory(in, fileLength(uri), this::showProgress);
+                message = "Imported " + count + " calculations";
+            } catch (IOException e) {
+                message = "Import failed: " + e.getMessage();
+            }
+            finishTransfer(message);
+        });
+    }
+
+    /** Length of the file behind {@code uri}, or -1 if the provider does not say. */
+    private long fileLength(Uri uri) {
+        try (AssetFileDescriptor descriptor = getContentResolver().openAssetFileDescriptor(uri, "r")) {
+            return descriptor == null ? -1 : descriptor.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Called from the transfer thread as well as the main one. */
+    private void showProgress(long done, long total) {
+        transferProgress.post(() -> {
+            transferProgress.setVisibility(View.VISIBLE);
+            transferProgress.setIndeterminate(total <= 0);
+            if (total > 0) {
+                transferProgress.setProgress((int) (done * transferProgress.getMax() / total));
+            }
+        });
+    }
+
+    private void finishTransfer(String message) {
+        transferProgress.post(() -> {
+            transferProgress.setVisibility(View.GONE);
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+            adapter.refresh();
+            search();
+        });
+    }
+
+    /** Reads only the running statistics, so it costs the same however long the history is. */
+    private void showStats() {
+        DecimalFormat number = new DecimalFormat("#.####");
+        SimpleDateFormat date = new SimpleDateFormat("EEE d MMM yyyy", Locale.getDefault());
+        // Days are counted from midnight local time, so their start reads right in UTC
+        date.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        HistoryStats.Summary total;
+        try {
+            total = historyManager.getStatsTotal();
+        } catch (UncheckedIOException e) {
+            showError("Statistics failed", e);
+            return;
+        }
+        if (total == null) {
+            Toast.makeText(this, "Calculating statistics…", Toast.LENGTH_SHORT).show();
+            historyManager.whenReady(() -> recyclerView.post(() -> {
+                if (!isDestroyed()) showStats();
+            }));
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        appendStats(text, "All time", total, number);
+        appendStats(text, "Last 7 days", historyManager.getStatsForLastDays(7), number);
+        for (HistoryStats.Summary day : historyManager.getDailyStats(STATS_DAYS)) {
+            appendStats(text, date.format(day.dayStartMillis()), day, number);
+        }
+
+        android.app.AlertDialog.Builder builder = new android.app.AlertDialog.Builder(this);
+        builder.setTitle("Result statistics");
+        builder.setMessage(text.toString().trim());
+        builder.setPositiveButton("OK", null);
+        builder.show();
+    }
+
+    private static void appendStats(StringBuilder text, String title, HistoryStats.Summary stats,
+                                    DecimalFormat number) {
+        text.append(title).append('\n');
+        if (stats.count == 0) {
+            text.append("  No numeric results\n\n");
+            return;
+        }
+        text.append("  Count ").append(stats.count)
+                .append("   Sum ").append(number.format(stats.sum)).append('\n');
+        text.append("  Mean ").append(number.format(stats.mean))
+                .append("   SD ").append(number.format(stats.standardDeviation())).append('\n');
+        text.append("  Min ").append(number.format(stats.min))
+                .append("   Max ").append(number.format(stats.max)).append('\n');
+        text.append("  Median ≈").append(number.format(stats.p50))
+                .append("   90% ≈").append(number.format(stats.p90))
+                .append("   99% ≈").append(number.format(stats.p99)).append("\n\n");
     }
-}
\ No newline at end of file
+}
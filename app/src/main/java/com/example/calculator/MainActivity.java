@@ -2,23 +2,41 @@ package com.example.calculator;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.widget.HorizontalScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import com.example.calculator.utils.CalculatorEngine;
+import com.example.calculator.utils.ExactDigits;
 import com.example.calculator.utils.HistoryManager;
 
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
 
     private TextView displayPrevious;
     private TextView displayCurrent;
     private TextView displayPreview;
     private View scientificPanel;
+    private HorizontalScrollView exactScroll;
+    private TextView displayExact;
     private boolean isScientificMode = false;
     private boolean isRadianMode = true;
+    private boolean isExactMode = false;
+
+    // Digits shown in exact mode at first, and added each time the end is scrolled into view
+    private static final int EXACT_DIGITS = 20;
+    private static final int MAX_EXACT_DIGITS = 5000;
+    // Exact digits can take a while, so they are worked out here, newest request only
+    private final ExecutorService exact = Executors.newSingleThreadExecutor();
+    private ExactDigits exactDigits;
 
     private CalculatorEngine calculatorEngine;
     private HistoryManager historyManager;
@@ -32,15 +50,47 @@ public class MainActivity extends AppCompatActivity {
         historyManager = new HistoryManager(this);
 
         initViews();
+        // The engine keeps the value, so scrolling on only computes the extra digits
+        exactDigits = new ExactDigits(exact, this::runOnUiThread, calculatorEngine::getExactResult,
+                (text, digits) -> displayExact.setText(text.isEmpty() ? "" : "= " + text),
+                MAX_EXACT_DIGITS);
         setupClickListeners();
         updateDisplay();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // History is written in the background; onStop and process death follow onPause
+        try {
+            historyManager.flush();
+        } catch (UncheckedIOException e) {
+            // Whatever could not be written stays queued, and the next flush tries again
+            Log.w(TAG, "Saving history failed", e);
+            Toast.makeText(this, "Saving history failed: " + e.getCause().getMessage(),
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        exact.shutdownNow();
+    }
+
     private void initViews() {
         displayPrevious = findViewById(R.id.display_previous);
         displayCurrent = findViewById(R.id.display_current);
         displayPreview = findViewById(R.id.display_preview);
         scientificPanel = findViewById(R.id.scientific_panel);
+        exactScroll = findViewById(R.id.exact_scroll);
+        displayExact = findViewById(R.id.display_exact);
+        exactScroll.setOnScrollChangeListener((v, x, y, oldX, oldY) -> {
+            // Near the last digit shown: work out some more
+            if (x + v.getWidth() >= displayExact.getWidth() - v.getWidth() / 4) {
+                exactDigits.request(exactDigits.getDigits() + EXACT_DIGITS);
+            }
+        });
     }
 
     private void setupClickListeners() {
@@ -48,6 +98,7 @@ public class MainActivity extends AppCompatActivity {
         findViewById(R.id.btn_menu).setOnClickListener(v -> showMenu());
         findViewById(R.id.btn_scientific_toggle).setOnClickListener(v -> toggleScientificMode());
         findViewById(R.id.btn_history).setOnClickListener(v -> openHistory());
+        findViewById(R.id.btn_exact).setOnClickListener(v -> toggleExactMode());
 
         // Number buttons
         setNumberButtonListener(R.id.btn_0, "0");
@@ -156,6 +207,30 @@ public class MainActivity extends AppCompatActivity {
         // Update angle mode button
         TextView radDegBtn = findViewById(R.id.btn_rad_deg);
         radDegBtn.setText(isRadianMode ? "rad" : "deg");
+
+        updateExactDisplay();
+    }
+
+    private void updateExactDisplay() {
+        String source = isExactMode ? calculatorEngine.getExactSource() : "";
+        if (!exactDigits.setSource(source, isRadianMode)) return;
+        if (source.isEmpty()) {
+            exactScroll.setVisibility(View.GONE);
+            return;
+        }
+        displayExact.setText("");
+        exactScroll.setVisibility(View.VISIBLE);
+        exactScroll.scrollTo(0, 0);
+        exactDigits.request(EXACT_DIGITS);
+    }
+
+    private void toggleExactMode() {
+        isExactMode = !isExactMode;
+        TextView exactBtn = findViewById(R.id.btn_exact);
+        exactBtn.setTextColor(ContextCompat.getColor(this, isExactMode ? R.color.orange : R.color.white));
+        Toast.makeText(this, isExactMode ? "Exact mode enabled - Scroll the result for more digits"
+                : "Exact mode disabled", Toast.LENGTH_SHORT).show();
+        updateDisplay();
     }
 
     private void toggleScientificMode() {
@@ -181,16 +256,19 @@ public class MainActivity extends AppCompatActivity {
     private void showMenu() {
         android.app.AlertDialog.Builder builder = new android.app.AlertDialog.Builder(this);
         builder.setTitle("Menu");
-        String[] items = {"Conversion", "History", "Clear History"};
+        String[] items = {"Conversion", "Graph", "History", "Clear History"};
         builder.setItems(items, (dialog, which) -> {
             switch (which) {
                 case 0:
                     openConversion();
                     break;
                 case 1:
-                    openHistory();
+                    openGraph();
                     break;
                 case 2:
+                    openHistory();
+                    break;
+                case 3:
                     historyManager.clearHistory();
                     break;
             }
@@ -203,6 +281,13 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    private void openGraph() {
+        Intent intent = new Intent(this, GraphActivity.class);
+        intent.putExtra(GraphActivity.EXTRA_EXPRESSION, calculatorEngine.getCurrentExpression());
+        intent.putExtra(GraphActivity.EXTRA_RADIAN, isRadianMode);
+        startActivity(intent);
+    }
+
     private void openHistory() {
         Intent intent = new Intent(this, HistoryActivity.class);
         startActivity(intent);
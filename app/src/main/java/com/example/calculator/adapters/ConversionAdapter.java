@@ -1,4 +1,88 @@
 package com.example.calculator.adapters;
 
-public class ConversionAdapter {
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.calculator.R;
+import java.text.DecimalFormat;
+import java.util.List;
+
+/**
+ * Shows one value converted into every unit, a row per unit. The values are held in a
+ * double array the caller converts into in one pass; they are only formatted as rows are
+ * bound, so a new value costs that pass plus formatting the rows on screen.
+ */
+public class ConversionAdapter extends RecyclerView.Adapter<ConversionAdapter.ViewHolder> {
+    // Rebinds just the value, so rows are updated in place rather than cross-faded
+    private static final Object VALUE_CHANGED = new Object();
+
+    private final DecimalFormat df = new DecimalFormat("#.##########");
+    private String[] units = new String[0];
+    private double[] values = new double[0];
+    // False while there is no value to show
+    private boolean hasValues;
+
+    public void setUnits(String[] units) {
+        this.units = units;
+        this.values = new double[units.length];
+        this.hasValues = false;
+        notifyDataSetChanged();
+    }
+
+    /** The array to convert into, one value per unit; call {@link #valuesChanged} after. */
+    public double[] getValues() {
+        return values;
+    }
+
+    /** Shows the values now in {@link #getValues()}, or blanks if {@code valid} is false. */
+    public void valuesChanged(boolean valid) {
+        hasValues = valid;
+        notifyItemRangeChanged(0, units.length, VALUE_CHANGED);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_conversion, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.unit.setText(units[position]);
+        bindValue(holder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else {
+            bindValue(holder, position);
+        }
+    }
+
+    private void bindValue(ViewHolder holder, int position) {
+        holder.value.setText(hasValues ? df.format(values[position]) : "");
+    }
+
+    @Override
+    public int getItemCount() {
+        return units.length;
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView unit;
+        TextView value;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            unit = itemView.findViewById(R.id.text_unit);
+            value = itemView.findViewById(R.id.text_value);
+        }
+    }
 }
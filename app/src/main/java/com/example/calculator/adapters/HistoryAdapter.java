@@ -1,5 +1,7 @@
 package com.example.calculator.adapters;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,14 +10,122 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.calculator.R;
 import com.example.calculator.models.Calculation;
-import java.util.List;
+import com.example.calculator.utils.HistoryManager;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
+/**
+ * Shows the history newest first, loading it a page at a time on a background executor
+ * as the list scrolls. Only the item count is known up front, so opening a long history
+ * costs the same as opening a short one.
+ *
+ * Position p shows the calculation with id {@code endId - 1 - p}. Ids never change, so
+ * {@link #refresh()} can turn a change in the stored id range into item insertions and
+ * removals without comparing any items.
+ *
+ * While search results are shown, the adapter holds just those calculations instead.
+ *
+ * A page that fails to load is reported to the {@link LoadErrorListener} and shown
+ * blank; it is not asked for again until the next {@link #refresh()}.
+ */
 public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+    static final int PAGE_SIZE = 50;
+    private static final int MAX_CACHED_PAGES = 16;
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
 
-    private List<Calculation> calculations;
+    private final HistoryManager historyManager;
+    private final Executor loader;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Pages by id / PAGE_SIZE, least recently used first
+    private final Map<Long, Calculation[]> pages =
+            new LinkedHashMap<Long, Calculation[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Calculation[]> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    private final Set<Long> loading = new HashSet<>();
+    private final Set<Long> failed = new HashSet<>();
+    private LoadErrorListener loadErrorListener;
+    // Bumped whenever pages may be missing calculations appended since they were loaded
+    private int generation;
+    private long firstId;
+    private long endId;
+    // Search results, or null while showing the whole history
+    private long[] matchIds;
+    private Calculation[] matches;
 
-    public HistoryAdapter(List<Calculation> calculations) {
-        this.calculations = calculations;
+    public HistoryAdapter(HistoryManager historyManager, Executor loader) {
+        this.historyManager = historyManager;
+        this.loader = loader;
+        this.firstId = historyManager.getFirstId();
+        this.endId = historyManager.getEndId();
+        setHasStableIds(true);
+    }
+
+    /** Called on the main thread when a page of history cannot be read. */
+    public interface LoadErrorListener {
+        void onLoadError(UncheckedIOException error);
+    }
+
+    public void setLoadErrorListener(LoadErrorListener listener) {
+        loadErrorListener = listener;
+    }
+
+    /**
+     * Catches up with the stored history: calculations compacted or cleared away are
+     * removed from the bottom and calculations appended since are inserted at the top.
+     */
+    public void refresh() {
+        if (matches != null) return;
+        failed.clear();
+        long newFirstId = historyManager.getFirstId();
+        long newEndId = historyManager.getEndId();
+
+        long removedUpTo = Math.min(newFirstId, endId);
+        if (removedUpTo > firstId) {
+            int removed = (int) (removedUpTo - firstId);
+            firstId = removedUpTo;
+            notifyItemRangeRemoved(getItemCount(), removed);
+        }
+
+        long insertedFrom = Math.max(endId, newFirstId);
+        if (newEndId > insertedFrom) {
+            // The page holding the old end was loaded before these ids existed
+            pages.remove(endId / PAGE_SIZE);
+            generation++;
+            int inserted = (int) (newEndId - insertedFrom);
+            firstId = newFirstId;
+            endId = newEndId;
+            notifyItemRangeInserted(0, inserted);
+        } else {
+            firstId = Math.max(firstId, newFirstId);
+            endId = Math.max(endId, newFirstId);
+        }
+    }
+
+    /** Shows only the given calculations, in the given order, until {@link #showAll()}. */
+    public void showMatches(long[] ids, Calculation[] calculations) {
+        matchIds = ids;
+        matches = calculations;
+        notifyDataSetChanged();
+    }
+
+    /** Goes back to showing the whole history, as it is now. */
+    public void showAll() {
+        if (matches == null) return;
+        matchIds = null;
+        matches = null;
+        firstId = historyManager.getFirstId();
+        endId = historyManager.getEndId();
+        pages.clear();
+        failed.clear();
+        generation++;
+        notifyDataSetChanged();
     }
 
     @NonNull
@@ -28,7 +138,24 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Calculation calc = calculations.get(position);
+        Calculation calc;
+        if (matches != null) {
+            calc = matches[position];
+        } else {
+            long id = endId - 1 - position;
+            calc = getCalculation(id);
+            // Keep the next older page coming before the user scrolls onto it
+            if (id - PREFETCH_DISTANCE >= firstId) {
+                requestPage((id - PREFETCH_DISTANCE) / PAGE_SIZE);
+            }
+        }
+
+        if (calc == null) {
+            holder.previous.setVisibility(View.GONE);
+            holder.expression.setText("");
+            holder.result.setText("");
+            return;
+        }
 
         // Show previous expression if available
         if (calc.getPrevious() != null && !calc.getPrevious().isEmpty()) {
@@ -44,7 +171,62 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
 
     @Override
     public int getItemCount() {
-        return calculations.size();
+        return matches != null ? matches.length : (int) (endId - firstId);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return matches != null ? matchIds[position] : endId - 1 - position;
+    }
+
+    private Calculation getCalculation(long id) {
+        long page = id / PAGE_SIZE;
+        Calculation[] items = pages.get(page);
+        if (items == null) {
+            requestPage(page);
+            return null;
+        }
+        return items[(int) (id - page * PAGE_SIZE)];
+    }
+
+    private void requestPage(long page) {
+        if (pages.containsKey(page) || failed.contains(page) || !loading.add(page)) return;
+        int requestGeneration = generation;
+        loader.execute(() -> {
+            Calculation[] items;
+            try {
+                items = historyManager.getHistoryRange(page * PAGE_SIZE, PAGE_SIZE);
+            } catch (UncheckedIOException e) {
+                // Thrown out of here it would take the whole process down
+                mainHandler.post(() -> onPageFailed(page, e));
+                return;
+            }
+            mainHandler.post(() -> onPageLoaded(page, items, requestGeneration));
+        });
+    }
+
+    private void onPageFailed(long page, UncheckedIOException error) {
+        loading.remove(page);
+        failed.add(page);
+        if (loadErrorListener != null) loadErrorListener.onLoadError(error);
+    }
+
+    private void onPageLoaded(long page, Calculation[] items, int requestGeneration) {
+        loading.remove(page);
+        if (requestGeneration != generation) {
+            // Loaded before the latest refresh, so it may lack new calculations
+            requestPage(page);
+            return;
+        }
+        pages.put(page, items);
+        if (matches != null) return;
+
+        // Rebind whatever part of the page is still in the list
+        long from = Math.max(page * PAGE_SIZE, firstId);
+        long to = Math.min(page * PAGE_SIZE + PAGE_SIZE, endId);
+        if (from < to) {
+            notifyItemRangeChanged((int) (endId - to), (int) (to - from));
+        }
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
@@ -59,4 +241,4 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
             result = itemView.findViewById(R.id.text_result);
         }
     }
-}
\ No newline at end of file
+}
@@ -7,10 +7,14 @@ public class Calculation {
     private long timestamp;
 
     public Calculation(String previous, String expression, String result) {
+        this(previous, expression, result, System.currentTimeMillis());
+    }
+
+    public Calculation(String previous, String expression, String result, long timestamp) {
         this.previous = previous;
         this.expression = expression;
         this.result = result;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
     public String getPrevious() { return previous; }
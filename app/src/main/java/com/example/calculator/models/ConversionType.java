@@ -1,20 +1,39 @@
 package com.example.calculator.models;
 
 public enum ConversionType {
-    LENGTH("Length", new String[]{"Meter", "Kilometer", "Mile", "Foot", "Inch", "Centimeter"}),
-    WEIGHT("Weight", new String[]{"Kilogram", "Gram", "Pound", "Ounce", "Ton"}),
-    TEMPERATURE("Temperature", new String[]{"Celsius", "Fahrenheit", "Kelvin"}),
-    AREA("Area", new String[]{"Square Meter", "Square Kilometer", "Square Mile", "Square Foot", "Acre", "Hectare"}),
-    CURRENCY("Currency", new String[]{"USD", "EUR", "GBP", "JPY", "VND", "CNY", "KRW", "AUD"});
+    // Each unit's scale and offset take a value in it to the category's base unit, the first
+    LENGTH("Length", new String[]{"Meter", "Kilometer", "Mile", "Foot", "Inch", "Centimeter"},
+            new double[]{1, 1000, 1609.34, 0.3048, 0.0254, 0.01}, null),
+    WEIGHT("Weight", new String[]{"Kilogram", "Gram", "Pound", "Ounce", "Ton"},
+            new double[]{1, 0.001, 0.453592, 0.0283495, 1000}, null),
+    TEMPERATURE("Temperature", new String[]{"Celsius", "Fahrenheit", "Kelvin"},
+            new double[]{1, 5.0 / 9, 1}, new double[]{0, -32 * 5.0 / 9, -273.15}),
+    AREA("Area", new String[]{"Square Meter", "Square Kilometer", "Square Mile", "Square Foot", "Acre", "Hectare"},
+            new double[]{1, 1000000, 2589988.11, 0.092903, 4046.86, 10000}, null),
+    // Rates change, so currency has no fixed scales; see CurrencyAPI
+    CURRENCY("Currency", new String[]{"USD", "EUR", "GBP", "JPY", "VND", "CNY", "KRW", "AUD"}, null, null);
 
     private final String name;
     private final String[] units;
+    private final double[] scales;
+    private final double[] offsets;
 
-    ConversionType(String name, String[] units) {
+    ConversionType(String name, String[] units, double[] scales, double[] offsets) {
         this.name = name;
         this.units = units;
+        this.scales = scales;
+        this.offsets = offsets;
     }
 
     public String getName() { return name; }
     public String[] getUnits() { return units; }
-}
\ No newline at end of file
+
+    /** Whether units convert by fixed scales and offsets, which currencies do not. */
+    public boolean hasFixedScales() { return scales != null; }
+
+    /** What a value in {@code unit} is multiplied by to get it in the first unit. */
+    public double getScale(int unit) { return scales[unit]; }
+
+    /** What is added after scaling a value in {@code unit} to the first unit. */
+    public double getOffset(int unit) { return offsets == null ? 0 : offsets[unit]; }
+}
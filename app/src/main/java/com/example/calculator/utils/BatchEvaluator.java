@@ -0,0 +1,86 @@
+package com.example.calculator.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies one {@link CompiledExpression} to many rows of variable bindings. Inputs are
+ * columnar: {@code columns[v][row]} is the value of the program's v-th variable for that
+ * row, and results are written to {@code out[row]}.
+ *
+ * Large inputs are split into chunks that run on a fork-join pool.
+ */
+public final class BatchEvaluator {
+    static final int BLOCK_SIZE = 512;
+    static final int CHUNK_SIZE = 32 * BLOCK_SIZE;
+
+    private BatchEvaluator() {}
+
+    public static void evaluate(CompiledExpression program, double[][] columns, double[] out,
+                                boolean isRadian) {
+        int rows = checkColumns(program, columns, out);
+        if (rows > CHUNK_SIZE) {
+            evaluate(program, columns, out, isRadian, ForkJoinPool.commonPool());
+        } else {
+            evaluateSequential(program, columns, 0, rows, out, isRadian);
+        }
+    }
+
+    public static void evaluate(CompiledExpression program, double[][] columns, double[] out,
+                                boolean isRadian, ForkJoinPool pool) {
+        int rows = checkColumns(program, columns, out);
+        pool.invoke(new ChunkTask(program, columns, out, isRadian, 0, rows));
+    }
+
+    private static void evaluateSequential(CompiledExpression program, double[][] columns,
+                                           int from, int to, double[] out, boolean isRadian) {
+        double[][] registers = new double[program.getRegisterCount()][BLOCK_SIZE];
+        program.evaluateColumns(columns, from, to, out, isRadian, registers);
+    }
+
+    private static int checkColumns(CompiledExpression program, double[][] columns, double[] out) {
+        int variables = program.getVariables().length;
+        if (columns.length < variables) {
+            throw new IllegalArgumentException("Expected " + variables + " columns, got " + columns.length);
+        }
+        for (int v = 0; v < variables; v++) {
+            if (columns[v].length < out.length) {
+                throw new IllegalArgumentException("Column " + v + " is shorter than the output");
+            }
+        }
+        return out.length;
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledExpression program;
+        private final double[][] columns;
+        private final double[] out;
+        private final boolean isRadian;
+        private final int from;
+        private final int to;
+
+        ChunkTask(CompiledExpression program, double[][] columns, double[] out, boolean isRadian,
+                  int from, int to) {
+            this.program = program;
+            this.columns = columns;
+            this.out = out;
+            this.isRadian = isRadian;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                evaluateSequential(program, columns, from, to, out, isRadian);
+                return;
+            }
+            // Split on a block boundary so every leaf works on whole blocks
+            int mid = from + ((to - from) / 2 / BLOCK_SIZE) * BLOCK_SIZE;
+            invokeAll(new ChunkTask(program, columns, out, isRadian, from, mid),
+                    new ChunkTask(program, columns, out, isRadian, mid, to));
+        }
+    }
+}
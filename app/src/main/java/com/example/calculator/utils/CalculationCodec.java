@@ -0,0 +1,112 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of a calculation shared by the history log and its segments: a record type,
+ * the timestamp, and the previous expression, expression and result as length-prefixed
+ * UTF-8. Encoding reuses one buffer, so a codec must not be shared between threads.
+ */
+final class CalculationCodec {
+    private static final byte TYPE_CALCULATION = 1;
+
+    private byte[] buffer = new byte[256];
+    private int readPosition;
+
+    /** Encodes into {@link #buffer()} and returns the encoded length. */
+    int encode(Calculation calculation) {
+        byte[] previous = bytes(calculation.getPrevious());
+        byte[] expression = bytes(calculation.getExpression());
+        byte[] result = bytes(calculation.getResult());
+        int maxLength = 1 + 8 + 3 * 5 + length(previous) + length(expression) + length(result);
+        if (buffer.length < maxLength) buffer = new byte[Math.max(maxLength, buffer.length * 2)];
+
+        int p = 0;
+        buffer[p++] = TYPE_CALCULATION;
+        long timestamp = calculation.getTimestamp();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[p++] = (byte) (timestamp >>> shift);
+        }
+        p = putString(previous, p);
+        p = putString(expression, p);
+        return putString(result, p);
+    }
+
+    /** The bytes of the last {@link #encode}; valid until the next call. */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /** Decodes the record starting at {@code offset} in {@code bytes}. */
+    Calculation decode(byte[] bytes, int offset) {
+        long timestamp = 0;
+        for (int i = offset + 1; i < offset + 9; i++) {
+            timestamp = (timestamp << 8) | (bytes[i] & 0xFF);
+        }
+        readPosition = offset + 9;
+        String previous = getString(bytes);
+        String expression = getString(bytes);
+        String result = getString(bytes);
+        return new Calculation(previous, expression, result, timestamp);
+    }
+
+    // Strings are stored as a varint of (byte length + 1), with 0 meaning null
+
+    private int putString(byte[] bytes, int p) {
+        p = putVarint(buffer, p, bytes == null ? 0 : bytes.length + 1);
+        if (bytes != null) {
+            System.arraycopy(bytes, 0, buffer, p, bytes.length);
+            p += bytes.length;
+        }
+        return p;
+    }
+
+    private String getString(byte[] bytes) {
+        int value = getVarint(bytes, readPosition);
+        int p = readPosition + varintLength(value);
+        String string = value == 0 ? null
+                : value == 1 ? "" : new String(bytes, p, value - 1, StandardCharsets.UTF_8);
+        readPosition = value == 0 ? p : p + value - 1;
+        return string;
+    }
+
+    /** Writes {@code value} as an unsigned varint at {@code p} and returns the end. */
+    static int putVarint(byte[] bytes, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[p++] = (byte) value;
+        return p;
+    }
+
+    static int getVarint(byte[] bytes, int p) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[p++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static byte[] bytes(String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Calculations held in memory column by column instead of as objects: timestamps and
+ * results in primitive arrays, and the text of every calculation packed as UTF-8 into
+ * one shared byte array. A result that parses to a number and formats back to the same
+ * text is kept as a double. Text that repeats within a calculation (the expression is
+ * usually its own result) or repeats the previous calculation's expression is kept once.
+ * That makes a calculation about a quarter of the size it is as a {@link Calculation}.
+ *
+ * The table is first in, first out with a fixed capacity: adding to a full table drops
+ * the oldest calculation, and since text is dropped in the order it was added, the
+ * byte array is used as a circular buffer. {@link #get} builds a new Calculation each
+ * time. Not thread-safe.
+ */
+public final class CalculationTable {
+    private static final int PREVIOUS_NULL = 1;
+    // Same as the expression of the calculation before
+    private static final int PREVIOUS_IS_LAST_EXPRESSION = 1 << 1;
+    private static final int EXPRESSION_NULL = 1 << 2;
+    private static final int EXPRESSION_IS_PREVIOUS = 1 << 3;
+    private static final int EXPRESSION_IS_RESULT = 1 << 4;
+    private static final int RESULT_NULL = 1 << 5;
+    // The result is a number in results[], formatted with a comma instead of a point
+    private static final int RESULT_COMMA = 1 << 6;
+    private static final int RESULT_IS_TEXT = 1 << 7;
+    // A null calculation, one lost from storage
+    private static final int ABSENT = RESULT_NULL | RESULT_IS_TEXT;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final double[] results;
+    private final byte[] flags;
+    private final int[] textOffsets;
+    // Rows are slots start to start + size - 1, modulo capacity
+    private int start;
+    private int size;
+
+    // Each row's text is its stored strings in order, each a varint length and UTF-8
+    private byte[] text;
+    private int textEnd;
+    private final byte[] varint = new byte[5];
+
+    // The oldest row's previous, when it was the expression of a row since dropped
+    private String oldestPrevious;
+    // The expression of the newest row, if later rows may refer to it
+    private String lastExpression;
+
+    public CalculationTable(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.results = new double[capacity];
+        this.flags = new byte[capacity];
+        this.textOffsets = new int[capacity];
+        this.text = new byte[Math.max(64, capacity * 8)];
+    }
+
+    /** A full table of {@code calculations}, which may include nulls. */
+    public static CalculationTable of(Calculation[] calculations) {
+        CalculationTable table = new CalculationTable(Math.max(1, calculations.length));
+        for (Calculation calculation : calculations) table.add(calculation);
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Adds {@code calculation}, which may be null, dropping the oldest if the table is full. */
+    public void add(Calculation calculation) {
+        if (size == capacity) removeOldest();
+        int row = (start + size) % capacity;
+        if (calculation == null) {
+            flags[row] = (byte) ABSENT;
+            textOffsets[row] = textEnd;
+            lastExpression = null;
+            size++;
+            return;
+        }
+
+        String previous = calculation.getPrevious();
+        String expression = calculation.getExpression();
+        String result = calculation.getResult();
+        int flag = 0;
+        byte[] previousBytes = null;
+        byte[] expressionBytes = null;
+        byte[] resultBytes = null;
+
+        if (result == null) {
+            flag |= RESULT_NULL;
+        } else {
+            double value = HistoryIndex.parseResult(result);
+            if (!Double.isNaN(value) && !Double.isInfinite(value) && format(value, false).equals(result)) {
+                results[row] = value;
+            } else if (!Double.isNaN(value) && !Double.isInfinite(value) && format(value, true).equals(result)) {
+                results[row] = value;
+                flag |= RESULT_COMMA;
+            } else {
+                flag |= RESULT_IS_TEXT;
+                resultBytes = result.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        if (previous == null) {
+            flag |= PREVIOUS_NULL;
+        } else if (size > 0 && previous.equals(lastExpression)) {
+            flag |= PREVIOUS_IS_LAST_EXPRESSION;
+        } else {
+            previousBytes = previous.getBytes(StandardCharsets.UTF_8);
+        }
+
+        if (expression == null) {
+            flag |= EXPRESSION_NULL;
+        } else if (expression.equals(result)) {
+            flag |= EXPRESSION_IS_RESULT;
+        } else if (expression.equals(previous)) {
+            flag |= EXPRESSION_IS_PREVIOUS;
+        } else {
+            expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+        }
+
+        int length = encodedLength(previousBytes) + encodedLength(expressionBytes) + encodedLength(resultBytes);
+        int p = reserve(length);
+        textOffsets[row] = p;
+        p = put(previousBytes, p);
+        p = put(expressionBytes, p);
+        p = put(resultBytes, p);
+        if (length > 0) textEnd = p;
+
+        flags[row] = (byte) flag;
+        timestamps[row] = calculation.getTimestamp();
+        // Taking the expression from the previous one again would chain without end
+        lastExpression = (flag & EXPRESSION_IS_PREVIOUS) != 0 ? null : expression;
+        size++;
+    }
+
+    /** The calculation at {@code index}, oldest first; null if a null was added there. */
+    public Calculation get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        int row = (start + index) % capacity;
+        int flag = flags[row] & 0xFF;
+        if (flag == ABSENT) return null;
+
+        int p = textOffsets[row];
+        String previous = null;
+        String expression = null;
+        String result = null;
+        if ((flag & PREVIOUS_IS_LAST_EXPRESSION) != 0) {
+            previous = index == 0 ? oldestPrevious : expressionOf(index - 1);
+        } else if ((flag & PREVIOUS_NULL) == 0) {
+            int length = getVarint(p);
+            p += CalculationCodec.varintLength(length);
+            previous = string(p, length);
+            p += length;
+        }
+        if ((flag & (EXPRESSION_NULL | EXPRESSION_IS_PREVIOUS | EXPRESSION_IS_RESULT)) == 0) {
+            int length = getVarint(p);
+            p += CalculationCodec.varintLength(length);
+            expression = string(p, length);
+            p += length;
+        }
+        if ((flag & RESULT_IS_TEXT) != 0) {
+            int length = getVarint(p);
+            result = string(p + CalculationCodec.varintLength(length), length);
+        } else if ((flag & RESULT_NULL) == 0) {
+            result = format(results[row], (flag & RESULT_COMMA) != 0);
+        }
+        if ((flag & EXPRESSION_IS_PREVIOUS) != 0) expression = previous;
+        if ((flag & EXPRESSION_IS_RESULT) != 0) expression = result;
+        return new Calculation(previous, expression, result, timestamps[row]);
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+        textEnd = 0;
+        oldestPrevious = null;
+        lastExpression = null;
+    }
+
+    /** Bytes of heap the table takes, not counting object headers. */
+    public long estimateBytes() {
+        return capacity * (8L + 8 + 1 + 4) + text.length;
+    }
+
+    private void removeOldest() {
+        if (size > 1) {
+            int next = (start + 1) % capacity;
+            // The next row may refer to the expression about to go
+            oldestPrevious = (flags[next] & PREVIOUS_IS_LAST_EXPRESSION) != 0 ? expressionOf(0) : null;
+        } else {
+            oldestPrevious = null;
+        }
+        start = (start + 1) % capacity;
+        size--;
+        if (size == 0) textEnd = 0;
+    }
+
+    /** The expression at {@code index}, which never comes from its previous when asked for. */
+    private String expressionOf(int index) {
+        int row = (start + index) % capacity;
+        int flag = flags[row] & 0xFF;
+        if (flag == ABSENT || (flag & EXPRESSION_NULL) != 0) return null;
+        int p = textOffsets[row];
+        if ((flag & (PREVIOUS_NULL | PREVIOUS_IS_LAST_EXPRESSION)) == 0) {
+            int length = getVarint(p);
+            p += CalculationCodec.varintLength(length) + length;
+        }
+        if ((flag & EXPRESSION_IS_RESULT) != 0 && (flag & RESULT_IS_TEXT) == 0) {
+            return format(results[row], (flag & RESULT_COMMA) != 0);
+        }
+        int length = getVarint(p);
+        return string(p + CalculationCodec.varintLength(length), length);
+    }
+
+    /** Finds room for {@code length} bytes of text, growing the array if it has to. */
+    private int reserve(int length) {
+        if (length == 0) return textEnd;
+        int head = size == 0 ? textEnd : textOffsets[start];
+        if (textEnd >= head) {
+            // Live text is head to textEnd; free space is after it and before head
+            if (text.length - textEnd >= length) return textEnd;
+            if (head > length) return 0;
+        } else if (head - textEnd > length) {
+            // Live text wraps around; free space is between its end and head
+            return textEnd;
+        }
+        grow(length);
+        return textEnd;
+    }
+
+    /** Copies the live text, oldest first, to the start of a bigger array. */
+    private void grow(int needed) {
+        int live = 0;
+        for (int i = 0; i < size; i++) live += textLength((start + i) % capacity);
+        byte[] grown = new byte[Math.max(text.length * 2, live + needed + 64)];
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            int row = (start + i) % capacity;
+            int length = textLength(row);
+            System.arraycopy(text, textOffsets[row], grown, p, length);
+            textOffsets[row] = p;
+            p += length;
+        }
+        text = grown;
+        textEnd = p;
+    }
+
+    private int textLength(int row) {
+        int flag = flags[row] & 0xFF;
+        if (flag == ABSENT) return 0;
+        int p = textOffsets[row];
+        int strings = 0;
+        if ((flag & (PREVIOUS_NULL | PREVIOUS_IS_LAST_EXPRESSION)) == 0) strings++;
+        if ((flag & (EXPRESSION_NULL | EXPRESSION_IS_PREVIOUS | EXPRESSION_IS_RESULT)) == 0) strings++;
+        if ((flag & RESULT_IS_TEXT) != 0) strings++;
+        for (int i = 0; i < strings; i++) {
+            int length = getVarint(p);
+            p += CalculationCodec.varintLength(length) + length;
+        }
+        return p - textOffsets[row];
+    }
+
+    private int put(byte[] bytes, int p) {
+        if (bytes == null) return p;
+        int n = CalculationCodec.putVarint(varint, 0, bytes.length);
+        System.arraycopy(varint, 0, text, p, n);
+        System.arraycopy(bytes, 0, text, p + n, bytes.length);
+        return p + n + bytes.length;
+    }
+
+    private int getVarint(int p) {
+        return CalculationCodec.getVarint(text, p);
+    }
+
+    private String string(int p, int length) {
+        return length == 0 ? "" : new String(text, p, length, StandardCharsets.UTF_8);
+    }
+
+    private static int encodedLength(byte[] bytes) {
+        return bytes == null ? 0 : CalculationCodec.varintLength(bytes.length) + bytes.length;
+    }
+
+    /** The shortest plain decimal form of {@code value}, which is how results are shown. */
+    private static String format(double value, boolean comma) {
+        String plain = Double.toString(value);
+        if (plain.indexOf('E') >= 0) {
+            plain = BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        } else if (plain.endsWith(".0")) {
+            plain = plain.substring(0, plain.length() - 2);
+        }
+        return comma ? plain.replace('.', ',') : plain;
+    }
+}
@@ -1,44 +1,64 @@
 package com.example.calculator.utils;
 
 import java.text.DecimalFormat;
-import java.util.Stack;
 
 public class CalculatorEngine {
-    private String currentExpression = "";
+    private final StringBuilder currentExpression = new StringBuilder();
     private String previousExpression = "";
     private String result = "";
+    private final IncrementalEvaluator preview = new IncrementalEvaluator();
+    private final ScanningEvaluator evaluator = new ScanningEvaluator();
+    // The last preview of the expression as it is now, so pressing equals right after
+    // does not evaluate it again; cleared by every edit
+    private boolean previewValid;
+    private boolean previewIsRadian;
+    private double previewValue;
+
+    // Exact value of the last expression shown with getExactResult, kept so that asking
+    // for more digits of the same expression reuses the approximations already computed
+    private String exactSource;
+    private boolean exactIsRadian;
+    private ConstructiveReal exactValue;
 
     private static final DecimalFormat df = new DecimalFormat("#.##########");
 
     public void addInput(String input) {
         if (result != null && !result.isEmpty() && isOperator(input)) {
-            currentExpression = result + input;
+            setExpression(result + input);
             result = "";
         } else if (result != null && !result.isEmpty() && !isOperator(input)) {
-            currentExpression = input;
+            setExpression(input);
             result = "";
         } else {
-            currentExpression += input;
+            currentExpression.append(input);
+            preview.append(input);
+            previewValid = false;
         }
     }
 
     public void deleteLastChar() {
         if (currentExpression.length() > 0) {
-            currentExpression = currentExpression.substring(0, currentExpression.length() - 1);
+            currentExpression.setLength(currentExpression.length() - 1);
+            preview.deleteLast();
+            previewValid = false;
         }
     }
 
     public void clear() {
-        currentExpression = "";
+        setExpression("");
         previousExpression = "";
         result = "";
     }
 
     public String calculate(boolean isRadian) {
         try {
-            previousExpression = currentExpression;
-            result = evaluateExpression(currentExpression, isRadian);
-            currentExpression = result;
+            previousExpression = currentExpression.toString();
+            if (previewValid && previewIsRadian == isRadian) {
+                result = df.format(previewValue);
+            } else {
+                result = evaluateExpression(previousExpression, isRadian);
+            }
+            setExpression(result);
             return result;
         } catch (Exception e) {
             result = "Error";
@@ -47,182 +67,76 @@ public class CalculatorEngine {
     }
 
     public String getPreview(boolean isRadian) {
-        if (currentExpression.isEmpty() || currentExpression.equals(result)) {
+        if (currentExpression.length() == 0 || result.contentEquals(currentExpression)) {
             return "";
         }
         try {
-            return evaluateExpression(currentExpression, isRadian);
+            if (!previewValid || previewIsRadian != isRadian) {
+                previewValue = preview.evaluate(isRadian);
+                previewIsRadian = isRadian;
+                previewValid = true;
+            }
+            return df.format(previewValue);
         } catch (Exception e) {
             return "";
         }
     }
 
-    private String evaluateExpression(String expression, boolean isRadian) {
-        if (expression.isEmpty()) return "0";
-
-        // Replace special symbols
-        expression = expression.replace("×", "*")
-                .replace("÷", "/")
-                .replace("π", String.valueOf(Math.PI))
-                .replace("e", String.valueOf(Math.E));
-
-        // Handle functions
-        expression = handleFunctions(expression, isRadian);
-
-        // Evaluate
-        double result = evaluate(expression);
-        return df.format(result);
+    /**
+     * Evaluates the current expression (or, right after calculate, the expression that
+     * produced the result) with arbitrary precision and formats it to at most
+     * {@code digits} decimal places. Returns an empty string if it cannot be evaluated.
+     */
+    public String getExactResult(boolean isRadian, int digits) {
+        return getExactResult(getExactSource(), isRadian, digits);
     }
 
-    private String handleFunctions(String expr, boolean isRadian) {
-        // Handle sqrt
-        while (expr.contains("√(")) {
-            int start = expr.indexOf("√(");
-            int end = findClosingParenthesis(expr, start + 1);
-            String inner = expr.substring(start + 2, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            expr = expr.substring(0, start) + Math.sqrt(val) + expr.substring(end + 1);
-        }
-
-        // Handle sin
-        while (expr.contains("sin(")) {
-            int start = expr.indexOf("sin(");
-            int end = findClosingParenthesis(expr, start + 3);
-            String inner = expr.substring(start + 4, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            if (!isRadian) val = Math.toRadians(val);
-            expr = expr.substring(0, start) + Math.sin(val) + expr.substring(end + 1);
-        }
-
-        // Handle cos
-        while (expr.contains("cos(")) {
-            int start = expr.indexOf("cos(");
-            int end = findClosingParenthesis(expr, start + 3);
-            String inner = expr.substring(start + 4, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            if (!isRadian) val = Math.toRadians(val);
-            expr = expr.substring(0, start) + Math.cos(val) + expr.substring(end + 1);
-        }
-
-        // Handle tan
-        while (expr.contains("tan(")) {
-            int start = expr.indexOf("tan(");
-            int end = findClosingParenthesis(expr, start + 3);
-            String inner = expr.substring(start + 4, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            if (!isRadian) val = Math.toRadians(val);
-            expr = expr.substring(0, start) + Math.tan(val) + expr.substring(end + 1);
-        }
-
-        // Handle log
-        while (expr.contains("log(")) {
-            int start = expr.indexOf("log(");
-            int end = findClosingParenthesis(expr, start + 3);
-            String inner = expr.substring(start + 4, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            expr = expr.substring(0, start) + Math.log10(val) + expr.substring(end + 1);
-        }
-
-        // Handle ln
-        while (expr.contains("ln(")) {
-            int start = expr.indexOf("ln(");
-            int end = findClosingParenthesis(expr, start + 2);
-            String inner = expr.substring(start + 3, end);
-            double val = Double.parseDouble(evaluate(inner) + "");
-            expr = expr.substring(0, start) + Math.log(val) + expr.substring(end + 1);
-        }
-
-        return expr;
+    /** The expression {@link #getExactResult(boolean, int)} would evaluate. */
+    public String getExactSource() {
+        return result.isEmpty() ? currentExpression.toString() : previousExpression;
     }
 
-    private int findClosingParenthesis(String expr, int openPos) {
-        int count = 1;
-        for (int i = openPos + 1; i < expr.length(); i++) {
-            if (expr.charAt(i) == '(') count++;
-            if (expr.charAt(i) == ')') {
-                count--;
-                if (count == 0) return i;
+    /**
+     * Like {@link #getExactResult(boolean, int)} for a {@code source} taken earlier with
+     * {@link #getExactSource()}, so the digits can be worked out off the main thread
+     * while more keys are pressed.
+     */
+    public synchronized String getExactResult(String source, boolean isRadian, int digits) {
+        if (source.isEmpty()) return "";
+        try {
+            if (!source.equals(exactSource) || isRadian != exactIsRadian) {
+                exactValue = ExactEvaluator.evaluate(source, isRadian);
+                exactSource = source;
+                exactIsRadian = isRadian;
             }
+            return exactValue.toString(digits);
+        } catch (Exception e) {
+            return "";
         }
-        return expr.length() - 1;
     }
 
-    private double evaluate(String expression) {
-        return new Object() {
-            int pos = -1, ch;
-
-            void nextChar() {
-                ch = (++pos < expression.length()) ? expression.charAt(pos) : -1;
-            }
-
-            boolean eat(int charToEat) {
-                while (ch == ' ') nextChar();
-                if (ch == charToEat) {
-                    nextChar();
-                    return true;
-                }
-                return false;
-            }
-
-            double parse() {
-                nextChar();
-                double x = parseExpression();
-                if (pos < expression.length()) throw new RuntimeException("Unexpected: " + (char)ch);
-                return x;
-            }
+    private void setExpression(String expression) {
+        currentExpression.setLength(0);
+        currentExpression.append(expression);
+        preview.reset();
+        preview.append(expression);
+        previewValid = false;
+    }
 
-            double parseExpression() {
-                double x = parseTerm();
-                for (;;) {
-                    if (eat('+')) x += parseTerm();
-                    else if (eat('-')) x -= parseTerm();
-                    else return x;
-                }
-            }
+    private String evaluateExpression(String expression, boolean isRadian) {
+        if (expression.isEmpty()) return "0";
 
-            double parseTerm() {
-                double x = parseFactor();
-                for (;;) {
-                    if (eat('*')) x *= parseFactor();
-                    else if (eat('/')) x /= parseFactor();
-                    else return x;
-                }
-            }
+        double result = evaluator.evaluate(expression, isRadian);
+        return df.format(result);
+    }
 
-            double parseFactor() {
-                if (eat('+')) return parseFactor();
-                if (eat('-')) return -parseFactor();
-
-                double x;
-                int startPos = this.pos;
-                if (eat('(')) {
-                    x = parseExpression();
-                    eat(')');
-                } else if ((ch >= '0' && ch <= '9') || ch == '.') {
-                    while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
-                    x = Double.parseDouble(expression.substring(startPos, this.pos));
-                } else {
-                    throw new RuntimeException("Unexpected: " + (char)ch);
-                }
-
-                if (eat('^')) x = Math.pow(x, parseFactor());
-                if (eat('!')) {
-                    x = factorial((int)x);
-                }
-
-                return x;
-            }
-        }.parse();
+    public static CompiledExpression compile(String expression) {
+        return CompiledExpression.compile(expression);
     }
 
-    private double factorial(int n) {
-        if (n < 0) throw new RuntimeException("Factorial of negative number");
-        if (n == 0 || n == 1) return 1;
-        double result = 1;
-        for (int i = 2; i <= n; i++) {
-            result *= i;
-        }
-        return result;
+    /** Compiles and optimizes a function of {@code x}, e.g. for plotting. */
+    public static CompiledExpression compileFunction(String expression) {
+        return CompiledExpression.compileOptimized(expression, "x");
     }
 
     private boolean isOperator(String str) {
@@ -231,7 +145,7 @@ public class CalculatorEngine {
     }
 
     public String getCurrentExpression() {
-        return currentExpression.isEmpty() ? "0" : currentExpression;
+        return currentExpression.length() == 0 ? "0" : currentExpression.toString();
     }
 
     public String getPreviousExpression() {
@@ -0,0 +1,282 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An expression compiled once into a postfix instruction array. Instances are immutable
+ * and can be evaluated any number of times, in either angle mode, without re-parsing.
+ *
+ * Repeated subtrees are computed once: the first occurrence stores its value in a
+ * temporary and later occurrences recall it.
+ */
+public final class CompiledExpression {
+    static final byte OP_PUSH = 0;
+    static final byte OP_ADD = 1;
+    static final byte OP_SUBTRACT = 2;
+    static final byte OP_MULTIPLY = 3;
+    static final byte OP_DIVIDE = 4;
+    static final byte OP_POWER = 5;
+    static final byte OP_NEGATE = 6;
+    static final byte OP_FACTORIAL = 7;
+    static final byte OP_SQRT = 8;
+    static final byte OP_SIN = 9;
+    static final byte OP_COS = 10;
+    static final byte OP_TAN = 11;
+    static final byte OP_LOG = 12;
+    static final byte OP_LN = 13;
+    static final byte OP_LOAD = 14;
+    static final byte OP_STORE = 15;
+    static final byte OP_RECALL = 16;
+
+    private static final double[] NO_VARIABLES = new double[0];
+
+    private final byte[] ops;
+    private final double[] operands;
+    private final int[] slots;
+    private final int maxStackDepth;
+    private final int temporaries;
+    private final String[] variables;
+
+    private CompiledExpression(byte[] ops, double[] operands, int[] slots, int maxStackDepth,
+                               int temporaries, String[] variables) {
+        this.ops = ops;
+        this.operands = operands;
+        this.slots = slots;
+        this.maxStackDepth = maxStackDepth;
+        this.temporaries = temporaries;
+        this.variables = variables;
+    }
+
+    public static CompiledExpression compile(String expression) {
+        return compile(ExpressionParser.parse(expression));
+    }
+
+    /**
+     * Compiles an expression over the given variables. Values are later supplied in the
+     * same order, either per call or as one column per variable.
+     */
+    public static CompiledExpression compile(String expression, String... variables) {
+        return compile(ExpressionParser.parse(expression, variables), variables);
+    }
+
+    public static CompiledExpression compile(ExpressionNode root) {
+        return compile(root, new String[0]);
+    }
+
+    public static CompiledExpression compile(ExpressionNode root, String... variables) {
+        Emitter emitter = new Emitter(root);
+        emitter.emit(root);
+        int size = emitter.count;
+        return new CompiledExpression(Arrays.copyOf(emitter.ops, size),
+                Arrays.copyOf(emitter.operands, size), Arrays.copyOf(emitter.slots, size),
+                emitter.maxDepth, emitter.temporaries, variables.clone());
+    }
+
+    /** Compiles after running {@link ExpressionOptimizer} over the parsed expression. */
+    public static CompiledExpression compileOptimized(String expression, String... variables) {
+        return compile(ExpressionOptimizer.optimize(ExpressionParser.parse(expression, variables)),
+                variables);
+    }
+
+    public double evaluate(boolean isRadian) {
+        return evaluate(NO_VARIABLES, isRadian);
+    }
+
+    public double evaluate(double[] values, boolean isRadian) {
+        if (values.length < variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " variable values");
+        }
+        // Temporaries live above the operand stack
+        double[] stack = new double[maxStackDepth + temporaries];
+        int sp = 0;
+        for (int i = 0; i < ops.length; i++) {
+            switch (ops[i]) {
+                case OP_PUSH: stack[sp++] = operands[i]; break;
+                case OP_LOAD: stack[sp++] = values[slots[i]]; break;
+                case OP_STORE: stack[maxStackDepth + slots[i]] = stack[sp - 1]; break;
+                case OP_RECALL: stack[sp++] = stack[maxStackDepth + slots[i]]; break;
+                case OP_ADD: sp--; stack[sp - 1] += stack[sp]; break;
+                case OP_SUBTRACT: sp--; stack[sp - 1] -= stack[sp]; break;
+                case OP_MULTIPLY: sp--; stack[sp - 1] *= stack[sp]; break;
+                case OP_DIVIDE: sp--; stack[sp - 1] /= stack[sp]; break;
+                case OP_POWER: sp--; stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]); break;
+                case OP_NEGATE: stack[sp - 1] = -stack[sp - 1]; break;
+                case OP_FACTORIAL: stack[sp - 1] = Factorials.factorial(stack[sp - 1]); break;
+                case OP_SQRT: stack[sp - 1] = Math.sqrt(stack[sp - 1]); break;
+                case OP_SIN: stack[sp - 1] = Math.sin(toAngle(stack[sp - 1], isRadian)); break;
+                case OP_COS: stack[sp - 1] = Math.cos(toAngle(stack[sp - 1], isRadian)); break;
+                case OP_TAN: stack[sp - 1] = Math.tan(toAngle(stack[sp - 1], isRadian)); break;
+                case OP_LOG: stack[sp - 1] = Math.log10(stack[sp - 1]); break;
+                case OP_LN: stack[sp - 1] = Math.log(stack[sp - 1]); break;
+                default: throw new IllegalStateException("Bad opcode " + ops[i]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Column-at-a-time evaluation of rows {@code [from, to)}: each instruction runs over a
+     * whole block of rows before the next one, so dispatch cost is paid once per block
+     * instead of once per row. {@code registers} must hold {@link #getRegisterCount()}
+     * arrays of at least {@code blockSize} elements.
+     */
+    void evaluateColumns(double[][] columns, int from, int to, double[] out, boolean isRadian,
+                         double[][] registers) {
+        int blockSize = registers.length == 0 ? 0 : registers[0].length;
+        for (int base = from; base < to; base += blockSize) {
+            int n = Math.min(blockSize, to - base);
+            int sp = 0;
+            for (int i = 0; i < ops.length; i++) {
+                byte op = ops[i];
+                if (op == OP_PUSH) {
+                    Arrays.fill(registers[sp++], 0, n, operands[i]);
+                    continue;
+                }
+                if (op == OP_LOAD) {
+                    System.arraycopy(columns[slots[i]], base, registers[sp++], 0, n);
+                    continue;
+                }
+                if (op == OP_STORE) {
+                    System.arraycopy(registers[sp - 1], 0, registers[maxStackDepth + slots[i]], 0, n);
+                    continue;
+                }
+                if (op == OP_RECALL) {
+                    System.arraycopy(registers[maxStackDepth + slots[i]], 0, registers[sp++], 0, n);
+                    continue;
+                }
+                if (op <= OP_POWER) {
+                    double[] y = registers[--sp];
+                    double[] x = registers[sp - 1];
+                    switch (op) {
+                        case OP_ADD: for (int k = 0; k < n; k++) x[k] += y[k]; break;
+                        case OP_SUBTRACT: for (int k = 0; k < n; k++) x[k] -= y[k]; break;
+                        case OP_MULTIPLY: for (int k = 0; k < n; k++) x[k] *= y[k]; break;
+                        case OP_DIVIDE: for (int k = 0; k < n; k++) x[k] /= y[k]; break;
+                        default: for (int k = 0; k < n; k++) x[k] = Math.pow(x[k], y[k]); break;
+                    }
+                    continue;
+                }
+                double[] x = registers[sp - 1];
+                switch (op) {
+                    case OP_NEGATE: for (int k = 0; k < n; k++) x[k] = -x[k]; break;
+                    case OP_FACTORIAL: for (int k = 0; k < n; k++) x[k] = Factorials.factorial(x[k]); break;
+                    case OP_SQRT: for (int k = 0; k < n; k++) x[k] = Math.sqrt(x[k]); break;
+                    case OP_SIN: for (int k = 0; k < n; k++) x[k] = Math.sin(toAngle(x[k], isRadian)); break;
+                    case OP_COS: for (int k = 0; k < n; k++) x[k] = Math.cos(toAngle(x[k], isRadian)); break;
+                    case OP_TAN: for (int k = 0; k < n; k++) x[k] = Math.tan(toAngle(x[k], isRadian)); break;
+                    case OP_LOG: for (int k = 0; k < n; k++) x[k] = Math.log10(x[k]); break;
+                    case OP_LN: for (int k = 0; k < n; k++) x[k] = Math.log(x[k]); break;
+                    default: throw new IllegalStateException("Bad opcode " + op);
+                }
+            }
+            System.arraycopy(registers[0], 0, out, base, n);
+        }
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /** Operand stack plus temporaries, the number of registers evaluation needs. */
+    public int getRegisterCount() {
+        return maxStackDepth + temporaries;
+    }
+
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    private static double toAngle(double value, boolean isRadian) {
+        return isRadian ? value : Math.toRadians(value);
+    }
+
+    private static byte opcodeFor(Kind kind) {
+        switch (kind) {
+            case ADD: return OP_ADD;
+            case SUBTRACT: return OP_SUBTRACT;
+            case MULTIPLY: return OP_MULTIPLY;
+            case DIVIDE: return OP_DIVIDE;
+            case POWER: return OP_POWER;
+            case NEGATE: return OP_NEGATE;
+            case FACTORIAL: return OP_FACTORIAL;
+            case SQRT: return OP_SQRT;
+            case SIN: return OP_SIN;
+            case COS: return OP_COS;
+            case TAN: return OP_TAN;
+            case LOG: return OP_LOG;
+            case LN: return OP_LN;
+            default: return OP_PUSH;
+        }
+    }
+
+    private static class Emitter {
+        // Occurrences of each operator subtree, not counting those inside a repeated parent
+        final Map<ExpressionNode, Integer> uses = new HashMap<>();
+        final Map<ExpressionNode, Integer> temporarySlots = new HashMap<>();
+        final byte[] ops;
+        final double[] operands;
+        final int[] slots;
+        int count;
+        int depth;
+        int maxDepth;
+        int temporaries;
+
+        Emitter(ExpressionNode root) {
+            // Every node emits at most one instruction, plus one store per shared subtree
+            int size = 2 * countUses(root);
+            ops = new byte[size];
+            operands = new double[size];
+            slots = new int[size];
+        }
+
+        private int countUses(ExpressionNode node) {
+            if (node == null) return 0;
+            if (!node.getKind().isLeaf()) {
+                Integer seen = uses.get(node);
+                uses.put(node, seen == null ? 1 : seen + 1);
+                if (seen != null) return 1;
+            }
+            return 1 + countUses(node.getLeft()) + countUses(node.getRight());
+        }
+
+        void emit(ExpressionNode node) {
+            Kind kind = node.getKind();
+            Integer slot = temporarySlots.get(node);
+            if (slot != null) {
+                slots[count] = slot;
+                ops[count++] = OP_RECALL;
+                maxDepth = Math.max(maxDepth, ++depth);
+                return;
+            }
+            if (kind.isLeaf()) {
+                if (kind == Kind.VARIABLE) {
+                    slots[count] = node.getVariableIndex();
+                    ops[count++] = OP_LOAD;
+                } else {
+                    operands[count] = node.getValue();
+                    ops[count++] = OP_PUSH;
+                }
+                maxDepth = Math.max(maxDepth, ++depth);
+                return;
+            }
+            emit(node.getLeft());
+            if (kind.isBinary()) {
+                emit(node.getRight());
+                depth--;
+            }
+            ops[count++] = opcodeFor(kind);
+            if (uses.get(node) > 1) {
+                temporarySlots.put(node, temporaries);
+                slots[count] = temporaries++;
+                ops[count++] = OP_STORE;
+            }
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package com.example.calculator.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A lazily evaluated real number. Instead of holding digits, each value knows how to
+ * produce an approximation to any requested precision, asking its operands only for as
+ * much precision as it needs. Displaying n digits therefore only computes what those n
+ * digits depend on.
+ *
+ * {@code get(p)} returns an integer {@code a} with {@code |a * 2^p - value| < 2^p}.
+ * Every value caches its best approximation, and when more precision is requested it
+ * refines a little further than asked, so requesting one more digit at a time costs
+ * roughly the extra digits rather than a full recomputation per request.
+ *
+ * The algorithms follow Hans Boehm's constructive reals package.
+ */
+public abstract class ConstructiveReal {
+    /** Finest precision used when looking for a value's magnitude; smaller values count as zero. */
+    static final int MIN_MSD_PRECISION = -4000;
+
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    public static final ConstructiveReal ZERO = valueOf(0);
+    public static final ConstructiveReal ONE = valueOf(1);
+    public static final ConstructiveReal PI = valueOf(4).multiply(valueOf(4).multiply(new AtanReciprocal(5))
+            .subtract(new AtanReciprocal(239)));
+    public static final ConstructiveReal E = ONE.exp();
+    private static final ConstructiveReal LN2 = valueOf(7).multiply(lnNearOne(10, 9))
+            .subtract(valueOf(2).multiply(lnNearOne(25, 24)))
+            .add(valueOf(3).multiply(lnNearOne(81, 80)));
+    private static final ConstructiveReal LN10 = valueOf(10).ln();
+    private static final ConstructiveReal RADIANS_PER_DEGREE = PI.divide(valueOf(180));
+
+    private BigInteger cachedApproximation;
+    private int cachedPrecision;
+
+    protected abstract BigInteger approximate(int precision);
+
+    public final synchronized BigInteger get(int precision) {
+        if (cachedApproximation != null && precision >= cachedPrecision) {
+            return scale(cachedApproximation, cachedPrecision - precision);
+        }
+        int target = precision;
+        if (cachedApproximation != null && cachedPrecision < -32) {
+            // Already refined once: over-refine so the next few requests are cache hits
+            target = Math.min(precision, cachedPrecision + cachedPrecision / 4);
+        }
+        BigInteger result = approximate(target);
+        cachedApproximation = result;
+        cachedPrecision = target;
+        return scale(result, target - precision);
+    }
+
+    public static ConstructiveReal valueOf(long n) {
+        return new Rational(BigInteger.valueOf(n), BigInteger.ONE);
+    }
+
+    public static ConstructiveReal valueOf(BigInteger n) {
+        return new Rational(n, BigInteger.ONE);
+    }
+
+    /** Exact value of a decimal literal such as "0.1". */
+    public static ConstructiveReal valueOf(String decimal) {
+        return valueOf(new BigDecimal(decimal));
+    }
+
+    /** Exact binary value of a double. */
+    public static ConstructiveReal valueOf(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new ArithmeticException("Not a finite number: " + value);
+        }
+        return valueOf(new BigDecimal(value));
+    }
+
+    private static ConstructiveReal valueOf(BigDecimal value) {
+        if (value.scale() <= 0) return new Rational(value.toBigIntegerExact(), BigInteger.ONE);
+        return new Rational(value.unscaledValue(), BigInteger.TEN.pow(value.scale()));
+    }
+
+    public ConstructiveReal add(ConstructiveReal other) {
+        return new Add(this, other);
+    }
+
+    public ConstructiveReal subtract(ConstructiveReal other) {
+        return new Add(this, other.negate());
+    }
+
+    public ConstructiveReal multiply(ConstructiveReal other) {
+        return new Multiply(this, other);
+    }
+
+    public ConstructiveReal divide(ConstructiveReal other) {
+        return new Multiply(this, other.inverse());
+    }
+
+    public ConstructiveReal negate() {
+        return new Negate(this);
+    }
+
+    public ConstructiveReal inverse() {
+        return new Inverse(this);
+    }
+
+    public ConstructiveReal shiftLeft(int n) {
+        return new Shift(this, n);
+    }
+
+    public ConstructiveReal sqrt() {
+        return new Sqrt(this);
+    }
+
+    public ConstructiveReal pow(long exponent) {
+        if (exponent < 0) return pow(-exponent).inverse();
+        ConstructiveReal result = ONE;
+        ConstructiveReal base = this;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) result = result == ONE ? base : result.multiply(base);
+            exponent >>= 1;
+            if (exponent > 0) base = base.multiply(base);
+        }
+        return result;
+    }
+
+    /** this^exponent for a positive base, via exp(exponent * ln(this)). */
+    public ConstructiveReal pow(ConstructiveReal exponent) {
+        return exponent.multiply(ln()).exp();
+    }
+
+    public ConstructiveReal exp() {
+        BigInteger rough = get(-10);
+        if (rough.compareTo(TWO) > 0 || rough.compareTo(TWO.negate()) < 0) {
+            ConstructiveReal root = shiftLeft(-1).exp();
+            return root.multiply(root);
+        }
+        return new PrescaledExp(this);
+    }
+
+    public ConstructiveReal ln() {
+        BigInteger rough = get(-4); // in sixteenths
+        if (rough.signum() < 0) throw new ArithmeticException("Logarithm of negative number");
+        if (rough.compareTo(BigInteger.valueOf(8)) <= 0) return inverse().ln().negate();
+        if (rough.compareTo(BigInteger.valueOf(24)) >= 0) {
+            if (rough.compareTo(BigInteger.valueOf(64)) <= 0) {
+                return sqrt().sqrt().ln().shiftLeft(2);
+            }
+            int extraBits = rough.bitLength() - 3;
+            return shiftLeft(-extraBits).ln().add(valueOf(extraBits).multiply(LN2));
+        }
+        return new PrescaledLn(subtract(ONE));
+    }
+
+    public ConstructiveReal log10() {
+        return ln().divide(LN10);
+    }
+
+    public ConstructiveReal cos() {
+        BigInteger halfPiMultiples = divide(PI).get(-1);
+        if (halfPiMultiples.abs().compareTo(TWO) >= 0) {
+            BigInteger piMultiples = scale(halfPiMultiples, -1);
+            ConstructiveReal reduced = subtract(PI.multiply(valueOf(piMultiples))).cos();
+            return piMultiples.testBit(0) ? reduced.negate() : reduced;
+        }
+        if (get(-1).abs().compareTo(TWO) >= 0) {
+            ConstructiveReal half = shiftLeft(-1).cos();
+            return half.multiply(half).shiftLeft(1).subtract(ONE);
+        }
+        return new PrescaledCos(this);
+    }
+
+    public ConstructiveReal sin() {
+        return PI.shiftLeft(-1).subtract(this).cos();
+    }
+
+    public ConstructiveReal tan() {
+        return sin().divide(cos());
+    }
+
+    public ConstructiveReal toRadians() {
+        return multiply(RADIANS_PER_DEGREE);
+    }
+
+    /**
+     * Exact integer value, if this is within 2^-32 of one. Used where only integers make
+     * sense, such as factorial.
+     */
+    public BigInteger toIntegerExact() {
+        BigInteger scaled = get(-32);
+        BigInteger nearest = scale(scaled, -32);
+        if (scaled.subtract(nearest.shiftLeft(32)).abs().compareTo(TWO) > 0) {
+            throw new ArithmeticException("Not an integer");
+        }
+        return nearest;
+    }
+
+    /** Rough double value, good to about 50 bits. */
+    public double doubleValue() {
+        int msd = msd(-1100);
+        if (msd == Integer.MIN_VALUE) return 0;
+        int precision = msd - 60;
+        return get(precision).doubleValue() * Math.pow(2, precision);
+    }
+
+    /**
+     * Decimal representation with at most {@code digits} digits after the point and
+     * trailing zeros removed. The last digit may be off by one.
+     */
+    public String toString(int digits) {
+        int precision = -(int) Math.ceil(digits * 3.3219280948873626) - 4;
+        BigInteger scaled = scale(get(precision).multiply(BigInteger.TEN.pow(digits)), precision);
+        boolean negative = scaled.signum() < 0;
+        String magnitude = scaled.abs().toString();
+        if (magnitude.length() <= digits) {
+            StringBuilder padded = new StringBuilder();
+            for (int i = magnitude.length(); i <= digits; i++) padded.append('0');
+            magnitude = padded.append(magnitude).toString();
+        }
+        int point = magnitude.length() - digits;
+        String integerPart = magnitude.substring(0, point);
+        String fraction = magnitude.substring(point);
+        int end = fraction.length();
+        while (end > 0 && fraction.charAt(end - 1) == '0') end--;
+        fraction = fraction.substring(0, end);
+
+        String text = fraction.isEmpty() ? integerPart : integerPart + "." + fraction;
+        return negative && !text.equals("0") ? "-" + text : text;
+    }
+
+    @Override
+    public String toString() {
+        return toString(10);
+    }
+
+    /** Position of the most significant bit, if it is at or above {@code precision}. */
+    int msd(int precision) {
+        if (cachedApproximation == null || cachedApproximation.abs().compareTo(BigInteger.ONE) <= 0) {
+            get(precision - 1);
+            if (cachedApproximation.abs().compareTo(BigInteger.ONE) <= 0) return Integer.MIN_VALUE;
+        }
+        return knownMsd();
+    }
+
+    /** Most significant bit position according to the cached approximation alone. */
+    private int knownMsd() {
+        return cachedPrecision + cachedApproximation.abs().bitLength() - 1;
+    }
+
+    /** Position of the most significant bit, searching down to {@link #MIN_MSD_PRECISION}. */
+    int msd() {
+        for (int precision = 0; precision > MIN_MSD_PRECISION + 30; precision = (precision * 3) / 2 - 16) {
+            int msd = msd(precision);
+            if (msd != Integer.MIN_VALUE) return msd;
+        }
+        int msd = msd(MIN_MSD_PRECISION);
+        if (msd == Integer.MIN_VALUE) throw new ArithmeticException("Division by zero");
+        return msd;
+    }
+
+    /** k * 2^n, rounded to the nearest integer. */
+    static BigInteger scale(BigInteger k, int n) {
+        if (n >= 0) return k.shiftLeft(n);
+        return k.shiftRight(-n - 1).add(BigInteger.ONE).shiftRight(1);
+    }
+
+    /** Conservative bound on log2(|n|). */
+    private static int boundLog2(int n) {
+        return (int) Math.ceil(Math.log(Math.abs(n) + 1) / Math.log(2.0));
+    }
+
+    private static ConstructiveReal lnNearOne(long numerator, long denominator) {
+        return new PrescaledLn(new Rational(BigInteger.valueOf(numerator - denominator),
+                BigInteger.valueOf(denominator)));
+    }
+
+    private static BigInteger sqrtFloor(BigInteger n) {
+        if (n.signum() == 0) return n;
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+        while (true) {
+            BigInteger y = x.add(n.divide(x)).shiftRight(1);
+            if (y.compareTo(x) >= 0) return x;
+            x = y;
+        }
+    }
+
+    private static final class Rational extends ConstructiveReal {
+        private final BigInteger numerator;
+        private final BigInteger denominator;
+
+        Rational(BigInteger numerator, BigInteger denominator) {
+            this.numerator = numerator;
+            this.denominator = denominator;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            BigInteger n = precision <= 0 ? numerator.shiftLeft(-precision) : numerator;
+            BigInteger d = precision > 0 ? denominator.shiftLeft(precision) : denominator;
+            // round(n / d) with floor division so negative values round the same way
+            BigInteger[] qr = n.shiftLeft(1).add(d).divideAndRemainder(d.shiftLeft(1));
+            return qr[1].signum() < 0 ? qr[0].subtract(BigInteger.ONE) : qr[0];
+        }
+    }
+
+    private static final class Add extends ConstructiveReal {
+        private final ConstructiveReal left;
+        private final ConstructiveReal right;
+
+        Add(ConstructiveReal left, ConstructiveReal right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            return scale(left.get(precision - 2).add(right.get(precision - 2)), -2);
+        }
+    }
+
+    private static final class Negate extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        Negate(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            return operand.get(precision).negate();
+        }
+    }
+
+    private static final class Shift extends ConstructiveReal {
+        private final ConstructiveReal operand;
+        private final int count;
+
+        Shift(ConstructiveReal operand, int count) {
+            this.operand = operand;
+            this.count = count;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            return operand.get(precision - count);
+        }
+    }
+
+    private static final class Multiply extends ConstructiveReal {
+        private final ConstructiveReal left;
+        private final ConstructiveReal right;
+
+        Multiply(ConstructiveReal left, ConstructiveReal right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            int halfPrecision = (precision >> 1) - 1;
+            ConstructiveReal first = left;
+            ConstructiveReal second = right;
+            int firstMsd = first.msd(halfPrecision);
+            if (firstMsd == Integer.MIN_VALUE) {
+                first = right;
+                second = left;
+                firstMsd = first.msd(halfPrecision);
+                // Both factors are too small to affect the result at this precision
+                if (firstMsd == Integer.MIN_VALUE) return BigInteger.ZERO;
+            }
+            int secondPrecision = precision - firstMsd - 3;
+            BigInteger secondApproximation = second.get(secondPrecision);
+            if (secondApproximation.signum() == 0) return BigInteger.ZERO;
+            int secondMsd = second.knownMsd();
+            int firstPrecision = precision - secondMsd - 3;
+            BigInteger firstApproximation = first.get(firstPrecision);
+            return scale(firstApproximation.multiply(secondApproximation),
+                    firstPrecision + secondPrecision - precision);
+        }
+    }
+
+    private static final class Inverse extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        Inverse(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            int msd = operand.msd();
+            int inverseMsd = 1 - msd;
+            int digitsNeeded = inverseMsd - precision + 3;
+            int precisionNeeded = msd - digitsNeeded;
+            int logScaleFactor = -precision - precisionNeeded;
+            if (logScaleFactor < 0) return BigInteger.ZERO;
+            BigInteger dividend = BigInteger.ONE.shiftLeft(logScaleFactor);
+            BigInteger divisor = operand.get(precisionNeeded);
+            BigInteger absDivisor = divisor.abs();
+            BigInteger result = dividend.add(absDivisor.shiftRight(1)).divide(absDivisor);
+            return divisor.signum() < 0 ? result.negate() : result;
+        }
+    }
+
+    private static final class Sqrt extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        Sqrt(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            BigInteger squared = operand.get(2 * precision - 4);
+            if (squared.signum() < 0) {
+                if (squared.compareTo(BigInteger.ONE.negate()) < 0) {
+                    throw new ArithmeticException("Square root of negative number");
+                }
+                squared = BigInteger.ZERO;
+            }
+            return scale(sqrtFloor(squared), -2);
+        }
+    }
+
+    /** exp(x) for |x| below about 1/2, by Taylor series. */
+    private static final class PrescaledExp extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        PrescaledExp(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            if (precision >= 1) return BigInteger.ZERO;
+            int iterationsNeeded = -precision / 2 + 2;
+            int calcPrecision = precision - boundLog2(2 * iterationsNeeded) - 4;
+            int operandPrecision = precision - 3;
+            BigInteger x = operand.get(operandPrecision);
+            BigInteger term = BigInteger.ONE.shiftLeft(-calcPrecision);
+            BigInteger sum = term;
+            BigInteger maxTruncationError = BigInteger.ONE.shiftLeft(precision - 4 - calcPrecision);
+            int n = 0;
+            while (term.abs().compareTo(maxTruncationError) >= 0) {
+                n++;
+                term = scale(term.multiply(x), operandPrecision).divide(BigInteger.valueOf(n));
+                sum = sum.add(term);
+            }
+            return scale(sum, calcPrecision - precision);
+        }
+    }
+
+    /** cos(x) for |x| below 1, by Taylor series. */
+    private static final class PrescaledCos extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        PrescaledCos(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            if (precision >= 1) return BigInteger.ZERO;
+            int iterationsNeeded = -precision / 2 + 4;
+            int calcPrecision = precision - boundLog2(2 * iterationsNeeded) - 4;
+            int operandPrecision = precision - 2;
+            BigInteger x = operand.get(operandPrecision);
+            BigInteger maxTruncationError = BigInteger.ONE.shiftLeft(precision - 4 - calcPrecision);
+            BigInteger term = BigInteger.ONE.shiftLeft(-calcPrecision);
+            BigInteger sum = term;
+            int n = 0;
+            while (term.abs().compareTo(maxTruncationError) >= 0) {
+                n += 2;
+                term = scale(term.multiply(x), operandPrecision);
+                term = scale(term.multiply(x), operandPrecision);
+                term = term.divide(BigInteger.valueOf(-n).multiply(BigInteger.valueOf(n - 1)));
+                sum = sum.add(term);
+            }
+            return scale(sum, calcPrecision - precision);
+        }
+    }
+
+    /** ln(1 + x) for |x| below 1/2, by Taylor series. */
+    private static final class PrescaledLn extends ConstructiveReal {
+        private final ConstructiveReal operand;
+
+        PrescaledLn(ConstructiveReal operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            if (precision >= 0) return BigInteger.ZERO;
+            int iterationsNeeded = -precision;
+            int calcPrecision = precision - boundLog2(2 * iterationsNeeded) - 4;
+            int operandPrecision = precision - 3;
+            BigInteger x = operand.get(operandPrecision);
+            BigInteger power = scale(x, operandPrecision - calcPrecision);
+            BigInteger term = power;
+            BigInteger sum = term;
+            BigInteger maxTruncationError = BigInteger.ONE.shiftLeft(precision - 4 - calcPrecision);
+            int n = 1;
+            int sign = 1;
+            while (term.abs().compareTo(maxTruncationError) >= 0) {
+                n++;
+                sign = -sign;
+                power = scale(power.multiply(x), operandPrecision);
+                term = power.divide(BigInteger.valueOf((long) n * sign));
+                sum = sum.add(term);
+            }
+            return scale(sum, calcPrecision - precision);
+        }
+    }
+
+    /** atan(1/n) for an integer n > 1, used to compute π with Machin's formula. */
+    private static final class AtanReciprocal extends ConstructiveReal {
+        private final int n;
+
+        AtanReciprocal(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected BigInteger approximate(int precision) {
+            if (precision >= 1) return BigInteger.ZERO;
+            int iterationsNeeded = -precision / 2 + 2;
+            int calcPrecision = precision - boundLog2(2 * iterationsNeeded) - 2;
+            BigInteger nSquared = BigInteger.valueOf((long) n * n);
+            BigInteger power = BigInteger.ONE.shiftLeft(-calcPrecision).divide(BigInteger.valueOf(n));
+            BigInteger term = power;
+            BigInteger sum = power;
+            BigInteger maxTruncationError = BigInteger.ONE.shiftLeft(precision - 2 - calcPrecision);
+            int k = 1;
+            int sign = 1;
+            while (term.abs().compareTo(maxTruncationError) >= 0) {
+                k += 2;
+                sign = -sign;
+                power = power.divide(nSquared);
+                term = power.divide(BigInteger.valueOf((long) sign * k));
+                sum = sum.add(term);
+            }
+            return scale(sum, calcPrecision - precision);
+        }
+    }
+}
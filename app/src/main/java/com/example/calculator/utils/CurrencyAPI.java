@@ -2,83 +2,159 @@ package com.example.calculator.utils;
 
 import android.os.Handler;
 import android.os.Looper;
-import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CurrencyAPI {
     private static final String API_URL = "https://api.exchangerate-api.com/v4/latest/USD";
-    private static Map<String, Double> cachedRates = new HashMap<>();
-    private static long lastFetchTime = 0;
+    private static final String CACHE_FILE = "currency_rates";
     private static final long CACHE_DURATION = 3600000; // 1 hour
+    // Daily USD rates from one date to another, as {"rates":{"2026-09-17":{"EUR":0.92,...},...}}
+    private static final String HISTORY_URL = "https://api.frankfurter.app/%s..%s?base=USD";
+    private static final String HISTORY_FILE = "currency_rates.history";
+    private static final int BACKFILL_DAYS = 30;
+    // Rates are not published at weekends and on holidays; the last ones before stand in
+    private static final int MAX_DAYS_BACK = 4;
+    private static final long DAY_MILLIS = 86400000;
+    // One per process, shared by every screen that converts currencies
+    private static RateCache cache;
+    private static File historyFile;
+    // Opened on first use, on the executor
+    private static RateHistory history;
+    // Shared by every instance; refreshes are coalesced, so there is little to queue
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(16));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
 
+    /** Called on the main thread, possibly twice: with cached rates, then with fresher ones. */
     public interface CurrencyCallback {
-        void onSuccess(Map<String, Double> rates);
+        void onSuccess(CurrencyRates rates);
         void onError(String error);
     }
 
+    /** Rates are cached in {@code cacheDir}, usually {@code Context.getFilesDir()}. */
+    public CurrencyAPI(File cacheDir) {
+        synchronized (CurrencyAPI.class) {
+            if (cache == null) cache = new RateCache(new File(cacheDir, CACHE_FILE), API_URL, CACHE_DURATION);
+            if (historyFile == null) historyFile = new File(cacheDir, HISTORY_FILE);
+        }
+    }
+
+    /**
+     * Hands cached rates to {@code callback} straight away, however old, and revalidates
+     * them in the background when they are stale, handing them over again if they changed.
+     * Callers while a revalidation is in flight share it. Errors are only reported when
+     * there are no rates to show at all.
+     */
     public void fetchRates(CurrencyCallback callback) {
-        // Return cached rates if still valid
-        if (System.currentTimeMillis() - lastFetchTime < CACHE_DURATION && !cachedRates.isEmpty()) {
-            mainHandler.post(() -> callback.onSuccess(cachedRates));
+        RateCache rates = cache;
+        if (rates.isLoaded()) {
+            deliver(rates, callback);
             return;
         }
+        try {
+            // The first read of the cache file happens off the main thread
+            executor.execute(() -> {
+                rates.load();
+                deliver(rates, callback);
+            });
+        } catch (RuntimeException e) {
+            mainHandler.post(() -> callback.onError(e.getMessage()));
+        }
+    }
 
-        executor.execute(() -> {
-            try {
-                URL url = new URL(API_URL);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setConnectTimeout(10000);
-                conn.setReadTimeout(10000);
+    private static void deliver(RateCache rates, CurrencyCallback callback) {
+        RateCache.Snapshot current = rates.getSnapshot();
+        if (current.rates != null) {
+            mainHandler.post(() -> callback.onSuccess(current.rates));
+            if (!rates.isStale()) return;
+        }
+        rates.refresh(executor).whenComplete((fresh, error) -> {
+            if (error == null) {
+                if (fresh.rates != current.rates) mainHandler.post(() -> callback.onSuccess(fresh.rates));
+                record(fresh);
+            } else if (current.rates == null) {
+                // Stale rates are better than none
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                mainHandler.post(() -> callback.onError(cause.getMessage()));
+            }
+        });
+    }
 
-                BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+    /** Keeps the day's rates in the history, so the day can be converted at later. */
+    private static void record(RateCache.Snapshot snapshot) {
+        try {
+            executor.execute(() -> {
+                try {
+                    history().put(Math.floorDiv(snapshot.fetchedAt, DAY_MILLIS), snapshot.rates);
+                } catch (IOException e) {
+                    // Only that day is missed
                 }
-                reader.close();
-
-                JSONObject json = new JSONObject(response.toString());
-                JSONObject rates = json.getJSONObject("rates");
-
-                cachedRates.clear();
-                cachedRates.put("USD", 1.0);
+            });
+        } catch (RuntimeException e) {
+            // Queue full; the next refresh records the day
+        }
+    }
 
-                String[] currencies = {"EUR", "GBP", "JPY", "VND", "CNY", "KRW", "AUD"};
-                for (String currency : currencies) {
-                    if (rates.has(currency)) {
-                        cachedRates.put(currency, rates.getDouble(currency));
+    /**
+     * Hands {@code callback} the rates of {@code day}, days since 1970-01-01, or of the
+     * latest day a few before it when none were published that day. They come from the
+     * stored history, which works offline; a day not in it is backfilled with the month
+     * up to it in one request first.
+     */
+    public void fetchRatesAt(long day, CurrencyCallback callback) {
+        try {
+            executor.execute(() -> {
+                try {
+                    RateHistory stored = history();
+                    long found = stored.findOnOrBefore(day, MAX_DAYS_BACK);
+                    if (found == RateHistory.NO_DAY) {
+                        backfill(stored, day);
+                        found = stored.findOnOrBefore(day, MAX_DAYS_BACK);
+                    }
+                    if (found == RateHistory.NO_DAY) {
+                        throw new IOException("No rates for " + RateHistory.dateOf(day));
                     }
+                    CurrencyRates rates = stored.get(found);
+                    mainHandler.post(() -> callback.onSuccess(rates));
+                } catch (IOException | RuntimeException e) {
+                    mainHandler.post(() -> callback.onError(e.getMessage()));
                 }
-
-                lastFetchTime = System.currentTimeMillis();
-
-                mainHandler.post(() -> callback.onSuccess(cachedRates));
-
-            } catch (Exception e) {
-                mainHandler.post(() -> callback.onError(e.getMessage()));
-            }
-        });
+            });
+        } catch (RuntimeException e) {
+            mainHandler.post(() -> callback.onError(e.getMessage()));
+        }
     }
 
-    public double convert(double amount, String from, String to, Map<String, Double> rates) {
-        if (!rates.containsKey(from) || !rates.containsKey(to)) {
-            return 0;
+    private static void backfill(RateHistory stored, long day) throws IOException {
+        String url = String.format(HISTORY_URL, RateHistory.dateOf(day - BACKFILL_DAYS), RateHistory.dateOf(day));
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(10000);
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + code + " from " + url);
+            try (InputStream in = connection.getInputStream()) {
+                stored.ingest(in);
+            }
+        } finally {
+            connection.disconnect();
         }
+    }
 
-        // Convert to USD first, then to target currency
-        double inUSD = amount / rates.get(from);
-        return inUSD * rates.get(to);
+    private static synchronized RateHistory history() throws IOException {
+        if (history == null) history = RateHistory.open(historyFile);
+        return history;
     }
-}
\ No newline at end of file
+}
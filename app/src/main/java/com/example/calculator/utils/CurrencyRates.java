@@ -0,0 +1,125 @@
+package com.example.calculator.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable set of exchange rates against one base currency. Currencies have compact
+ * ids, 0 to {@link #size()} - 1 in order of their codes, and rates are kept in a
+ * primitive array by id. The rate from every currency to every other one is worked out
+ * the first time one is asked for, so a conversion is then one array access with
+ * nothing boxed.
+ *
+ * Ids belong to one set of rates; a newer set may number its currencies differently.
+ */
+public final class CurrencyRates {
+    private final String[] codes;
+    // Units of each currency per unit of the base currency
+    private final double[] rates;
+    // Entry from * size + to; built on first use, and rebuilding it in a race is harmless
+    private volatile double[] crossRates;
+
+    /** Rates for {@code codes}, in any order; both arrays are copied. */
+    public CurrencyRates(String[] codes, double[] rates) {
+        this(codes, rates, codes.length);
+    }
+
+    CurrencyRates(String[] codes, double[] rates, int count) {
+        if (rates.length < count || codes.length < count) {
+            throw new IllegalArgumentException("Fewer rates than currencies");
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> codes[a].compareTo(codes[b]));
+        this.codes = new String[count];
+        this.rates = new double[count];
+        for (int i = 0; i < count; i++) {
+            this.codes[i] = codes[order[i]];
+            this.rates[i] = rates[order[i]];
+            if (i > 0 && this.codes[i].equals(this.codes[i - 1])) {
+                throw new IllegalArgumentException("Duplicate currency " + this.codes[i]);
+            }
+        }
+    }
+
+    public static CurrencyRates of(Map<String, Double> rates) {
+        String[] codes = new String[rates.size()];
+        double[] values = new double[rates.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : rates.entrySet()) {
+            codes[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+        return new CurrencyRates(codes, values);
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public String getCode(int id) {
+        return codes[id];
+    }
+
+    /** Every currency code, in id order. */
+    public String[] getCodes() {
+        return codes.clone();
+    }
+
+    /** The id of the currency with {@code code}, or -1 if there is none. */
+    public int indexOf(String code) {
+        int id = Arrays.binarySearch(codes, code);
+        return id >= 0 ? id : -1;
+    }
+
+    /** Units of currency {@code id} per unit of the base currency. */
+    public double getRate(int id) {
+        return rates[id];
+    }
+
+    /** Units of the currency with {@code code} per unit of the base currency, or NaN if there is none. */
+    public double getRate(String code) {
+        int id = indexOf(code);
+        return id >= 0 ? rates[id] : Double.NaN;
+    }
+
+    /** {@code amount} of currency {@code from} in currency {@code to}. */
+    public double convert(double amount, int from, int to) {
+        int n = codes.length;
+        if (from < 0 || to < 0 || from >= n || to >= n) {
+            throw new IndexOutOfBoundsException("Currencies " + from + " and " + to + " of " + n);
+        }
+        return amount * crossRates()[from * n + to];
+    }
+
+    /**
+     * Converts {@code amount} of currency {@code from} into every currency at once, in one
+     * pass over its row of cross rates; {@code into[to]} gets the amount in currency {@code to}.
+     */
+    public void convertToAll(double amount, int from, double[] into) {
+        int n = codes.length;
+        if (from < 0 || from >= n || into.length < n) {
+            throw new IndexOutOfBoundsException("Currency " + from + " of " + n + " into " + into.length);
+        }
+        double[] cross = crossRates();
+        int row = from * n;
+        for (int to = 0; to < n; to++) {
+            into[to] = amount * cross[row + to];
+        }
+    }
+
+    private double[] crossRates() {
+        double[] cross = crossRates;
+        if (cross != null) return cross;
+        int n = codes.length;
+        cross = new double[n * n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                // Exactly the amount when the currency is the same
+                cross[from * n + to] = from == to ? 1 : rates[to] / rates[from];
+            }
+        }
+        crossRates = cross;
+        return cross;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.calculator.utils;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Works out the digits of the exact-mode display in the background, one request at a
+ * time. A new source drops whatever was asked for the old one, even a request that is
+ * already running, so an old result is never shown under a new expression.
+ *
+ * Everything but the evaluation runs on the thread behind the {@code main} executor.
+ */
+public class ExactDigits {
+    /** Works out {@code digits} decimal places of {@code source}, or "" if it has none. */
+    public interface Evaluator {
+        String evaluate(String source, boolean isRadian, int digits);
+    }
+
+    public interface Listener {
+        void onDigits(String text, int digits);
+    }
+
+    private final Executor background;
+    private final Executor main;
+    private final Evaluator evaluator;
+    private final Listener listener;
+    private final int maxDigits;
+
+    // What is shown or being worked out
+    private String source = "";
+    private boolean isRadian;
+    private int digits;
+    private boolean pending;
+    // Bumped by each request and each new source; a result for an older one is dropped
+    private volatile int generation;
+
+    public ExactDigits(Executor background, Executor main, Evaluator evaluator, Listener listener,
+                       int maxDigits) {
+        this.background = background;
+        this.main = main;
+        this.evaluator = evaluator;
+        this.listener = listener;
+        this.maxDigits = maxDigits;
+    }
+
+    /**
+     * Sets the expression to work out, "" for none, dropping any request for the one
+     * before. Returns false if it is the same as before, in which case nothing changes.
+     */
+    public boolean setSource(String source, boolean isRadian) {
+        if (source.equals(this.source) && isRadian == this.isRadian) return false;
+        this.source = source;
+        this.isRadian = isRadian;
+        digits = 0;
+        pending = false;
+        generation++;
+        return true;
+    }
+
+    /** Digits shown so far for the current source. */
+    public int getDigits() {
+        return digits;
+    }
+
+    /**
+     * Asks for {@code wanted} digits of the current source, unless that many are shown,
+     * more than the maximum, or another request for it is still running.
+     */
+    public void request(int wanted) {
+        if (source.isEmpty() || pending || wanted <= digits || wanted > maxDigits) return;
+        pending = true;
+        int requested = ++generation;
+        String requestedSource = source;
+        boolean requestedIsRadian = isRadian;
+        background.execute(() -> {
+            // A new source makes this request out of date before it starts
+            if (requested != generation) return;
+            String text = evaluator.evaluate(requestedSource, requestedIsRadian, wanted);
+            main.execute(() -> {
+                if (requested != generation) return;
+                pending = false;
+                digits = wanted;
+                listener.onDigits(text, wanted);
+            });
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+import java.math.BigInteger;
+
+/**
+ * Turns an {@link ExpressionNode} tree into a {@link ConstructiveReal}, so the result can
+ * be displayed to any number of digits. Decimal literals are taken from their source
+ * text and are exact; π and e are computed to whatever precision is requested.
+ */
+public final class ExactEvaluator {
+    /** Integer exponents up to this size are applied by repeated squaring. */
+    private static final long MAX_INTEGER_EXPONENT = 1L << 20;
+    /**
+     * Largest n for which n! is worked out. 100000! has 456574 digits; much beyond that
+     * the product alone can run the app out of memory.
+     */
+    static final int MAX_FACTORIAL = 100000;
+
+    private ExactEvaluator() {}
+
+    public static ConstructiveReal evaluate(String expression, boolean isRadian) {
+        return evaluate(ExpressionParser.parse(expression), isRadian);
+    }
+
+    public static ConstructiveReal evaluate(ExpressionNode node, boolean isRadian) {
+        switch (node.getKind()) {
+            case NUMBER:
+                return node.getLiteral() != null
+                        ? ConstructiveReal.valueOf(node.getLiteral())
+                        : ConstructiveReal.valueOf(node.getValue());
+            case PI: return ConstructiveReal.PI;
+            case E: return ConstructiveReal.E;
+            case VARIABLE: throw new IllegalArgumentException("Unbound variable " + node.getVariableName());
+            default: break;
+        }
+
+        ConstructiveReal x = evaluate(node.getLeft(), isRadian);
+        switch (node.getKind()) {
+            case ADD: return x.add(evaluate(node.getRight(), isRadian));
+            case SUBTRACT: return x.subtract(evaluate(node.getRight(), isRadian));
+            case MULTIPLY: return x.multiply(evaluate(node.getRight(), isRadian));
+            case DIVIDE: return x.divide(evaluate(node.getRight(), isRadian));
+            case POWER: return power(x, node.getRight(), isRadian);
+            case NEGATE: return x.negate();
+            case FACTORIAL: return factorial(x);
+            case SQRT: return x.sqrt();
+            case SIN: return (isRadian ? x : x.toRadians()).sin();
+            case COS: return (isRadian ? x : x.toRadians()).cos();
+            case TAN: return (isRadian ? x : x.toRadians()).tan();
+            case LOG: return x.log10();
+            case LN: return x.ln();
+            default: throw new IllegalStateException("Unknown node " + node.getKind());
+        }
+    }
+
+    private static ConstructiveReal power(ConstructiveReal base, ExpressionNode exponentNode, boolean isRadian) {
+        Long integer = integerLiteral(exponentNode);
+        if (integer != null && Math.abs(integer) <= MAX_INTEGER_EXPONENT) {
+            return base.pow(integer);
+        }
+        ConstructiveReal exponent = evaluate(exponentNode, isRadian);
+        if (integer == null) {
+            // (1+1) is as much an integer as 2, and exp(y·ln x) fails for x ≤ 0
+            Long value = integerValue(exponent);
+            if (value != null && Math.abs(value) <= MAX_INTEGER_EXPONENT) return base.pow(value);
+        }
+        return base.pow(exponent);
+    }
+
+    /** The value of {@code x} if it is an integer that fits a long, or null. */
+    private static Long integerValue(ConstructiveReal x) {
+        try {
+            BigInteger n = x.toIntegerExact();
+            return n.bitLength() < 63 ? n.longValue() : null;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /** The value of an integer literal, optionally negated, or null. */
+    private static Long integerLiteral(ExpressionNode node) {
+        boolean negative = false;
+        while (node.getKind() == Kind.NEGATE) {
+            negative = !negative;
+            node = node.getLeft();
+        }
+        if (node.getKind() != Kind.NUMBER) return null;
+        double value = node.getValue();
+        if (value != Math.rint(value) || Math.abs(value) > Long.MAX_VALUE / 2) return null;
+        return negative ? -(long) value : (long) value;
+    }
+
+    private static ConstructiveReal factorial(ConstructiveReal x) {
+        // Only integer factorials are exact; toIntegerExact rejects anything else
+        BigInteger n = x.toIntegerExact();
+        if (n.compareTo(BigInteger.valueOf(MAX_FACTORIAL)) > 0) throw new ArithmeticException("Factorial argument too large");
+        return ConstructiveReal.valueOf(Factorials.exactFactorial(n.intValue()));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.calculator.utils;
+
+/**
+ * Immutable syntax tree node produced by {@link ExpressionParser}.
+ */
+public final class ExpressionNode {
+
+    public enum Kind {
+        NUMBER, PI, E, VARIABLE,
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER,
+        NEGATE, FACTORIAL,
+        SQRT, SIN, COS, TAN, LOG, LN;
+
+        public boolean isBinary() {
+            return this == ADD || this == SUBTRACT || this == MULTIPLY
+                    || this == DIVIDE || this == POWER;
+        }
+
+        public boolean isLeaf() {
+            return this == NUMBER || this == PI || this == E || this == VARIABLE;
+        }
+    }
+
+    private final Kind kind;
+    private final double value;
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+    private final int variableIndex;
+    private final String text; // variable name, or the source literal of a NUMBER
+    private final int hash;
+
+    private ExpressionNode(Kind kind, double value, ExpressionNode left, ExpressionNode right) {
+        this(kind, value, left, right, -1, null);
+    }
+
+    private ExpressionNode(Kind kind, double value, ExpressionNode left, ExpressionNode right,
+                           int variableIndex, String text) {
+        this.kind = kind;
+        this.value = value;
+        this.left = left;
+        this.right = right;
+        this.variableIndex = variableIndex;
+        this.text = text;
+        this.hash = computeHash();
+    }
+
+    public static ExpressionNode number(double value) {
+        return new ExpressionNode(Kind.NUMBER, value, null, null);
+    }
+
+    /** A number that keeps its decimal source text, so exact evaluation can read it without rounding. */
+    public static ExpressionNode number(String literal) {
+        return new ExpressionNode(Kind.NUMBER, Double.parseDouble(literal), null, null, -1, literal);
+    }
+
+    public static ExpressionNode constant(Kind kind) {
+        if (kind != Kind.PI && kind != Kind.E) {
+            throw new IllegalArgumentException("Not a constant: " + kind);
+        }
+        return new ExpressionNode(kind, kind == Kind.PI ? Math.PI : Math.E, null, null);
+    }
+
+    public static ExpressionNode variable(int index, String name) {
+        return new ExpressionNode(Kind.VARIABLE, 0, null, null, index, name);
+    }
+
+    public static ExpressionNode unary(Kind kind, ExpressionNode operand) {
+        if (kind.isLeaf() || kind.isBinary()) {
+            throw new IllegalArgumentException("Not a unary operator: " + kind);
+        }
+        return new ExpressionNode(kind, 0, operand, null);
+    }
+
+    public static ExpressionNode binary(Kind kind, ExpressionNode left, ExpressionNode right) {
+        if (!kind.isBinary()) {
+            throw new IllegalArgumentException("Not a binary operator: " + kind);
+        }
+        return new ExpressionNode(kind, 0, left, right);
+    }
+
+    public Kind getKind() { return kind; }
+    public double getValue() { return value; }
+    public ExpressionNode getLeft() { return left; }
+    public ExpressionNode getRight() { return right; }
+    public int getVariableIndex() { return variableIndex; }
+    public String getVariableName() { return kind == Kind.VARIABLE ? text : null; }
+    public String getLiteral() { return kind == Kind.NUMBER ? text : null; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ExpressionNode)) return false;
+        ExpressionNode other = (ExpressionNode) o;
+        return hash == other.hash
+                && kind == other.kind
+                && Double.doubleToLongBits(value) == Double.doubleToLongBits(other.value)
+                && variableIndex == other.variableIndex
+                && (left == null ? other.left == null : left.equals(other.left))
+                && (right == null ? other.right == null : right.equals(other.right));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // Children are immutable and cache their own hash, so this is O(1) per node
+    private int computeHash() {
+        int h = kind.hashCode();
+        h = 31 * h + Double.hashCode(value);
+        h = 31 * h + variableIndex;
+        h = 31 * h + (left == null ? 0 : left.hashCode());
+        h = 31 * h + (right == null ? 0 : right.hashCode());
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case NUMBER: return Double.toString(value);
+            case PI: return "π";
+            case E: return "e";
+            case VARIABLE: return text;
+            case ADD: return "(" + left + "+" + right + ")";
+            case SUBTRACT: return "(" + left + "-" + right + ")";
+            case MULTIPLY: return "(" + left + "*" + right + ")";
+            case DIVIDE: return "(" + left + "/" + right + ")";
+            case POWER: return "(" + left + "^" + right + ")";
+            case NEGATE: return "-" + left;
+            case FACTORIAL: return left + "!";
+            case SQRT: return "√(" + left + ")";
+            default: return kind.name().toLowerCase() + "(" + left + ")";
+        }
+    }
+}
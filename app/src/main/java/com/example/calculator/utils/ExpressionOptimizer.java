@@ -0,0 +1,108 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+
+/**
+ * Rewrites a syntax tree into a cheaper equivalent before it is compiled: constant
+ * subtrees are folded and algebraic identities such as {@code x*1}, {@code x+0} and
+ * {@code x^2} are simplified. Common subexpressions are shared later, by
+ * {@link CompiledExpression}.
+ *
+ * Folding uses the same double arithmetic as evaluation, so folded values are
+ * identical to the ones the unoptimized tree would produce. Trigonometric functions are
+ * never folded because their result depends on the angle mode chosen at evaluation time.
+ * The identities can change the sign of a zero result ({@code x+0} no longer turns -0
+ * into +0), and {@code x^2} becomes the correctly rounded {@code x*x}.
+ */
+public final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() {}
+
+    public static ExpressionNode optimize(ExpressionNode node) {
+        Kind kind = node.getKind();
+        if (kind.isLeaf()) return node;
+
+        ExpressionNode left = optimize(node.getLeft());
+        if (!kind.isBinary()) {
+            return optimizeUnary(node, kind, left);
+        }
+        ExpressionNode right = optimize(node.getRight());
+        return optimizeBinary(node, kind, left, right);
+    }
+
+    private static ExpressionNode optimizeUnary(ExpressionNode node, Kind kind, ExpressionNode operand) {
+        if (isConstant(operand) && !isTrig(kind)) {
+            double x = operand.getValue();
+            switch (kind) {
+                case NEGATE: return ExpressionNode.number(-x);
+                case SQRT: return ExpressionNode.number(Math.sqrt(x));
+                case LOG: return ExpressionNode.number(Math.log10(x));
+                case LN: return ExpressionNode.number(Math.log(x));
+                case FACTORIAL:
+                    // A negative integer is left in place so the error is raised at evaluation
+                    if (x < 0 && x == Math.rint(x)) break;
+                    return ExpressionNode.number(Factorials.factorial(x));
+                default: break;
+            }
+        }
+        if (kind == Kind.NEGATE && operand.getKind() == Kind.NEGATE) {
+            return operand.getLeft();
+        }
+        return operand == node.getLeft() ? node : ExpressionNode.unary(kind, operand);
+    }
+
+    private static ExpressionNode optimizeBinary(ExpressionNode node, Kind kind,
+                                                 ExpressionNode left, ExpressionNode right) {
+        if (isConstant(left) && isConstant(right)) {
+            double x = left.getValue();
+            double y = right.getValue();
+            switch (kind) {
+                case ADD: return ExpressionNode.number(x + y);
+                case SUBTRACT: return ExpressionNode.number(x - y);
+                case MULTIPLY: return ExpressionNode.number(x * y);
+                case DIVIDE: return ExpressionNode.number(x / y);
+                default: return ExpressionNode.number(Math.pow(x, y));
+            }
+        }
+        switch (kind) {
+            case ADD:
+                if (isValue(right, 0)) return left;
+                if (isValue(left, 0)) return right;
+                break;
+            case SUBTRACT:
+                if (isValue(right, 0)) return left;
+                if (isValue(left, 0)) return ExpressionNode.unary(Kind.NEGATE, right);
+                break;
+            case MULTIPLY:
+                if (isValue(right, 1)) return left;
+                if (isValue(left, 1)) return right;
+                break;
+            case DIVIDE:
+                if (isValue(right, 1)) return left;
+                break;
+            case POWER:
+                // Math.pow(x, 0) is 1 even for NaN
+                if (isValue(right, 0)) return ExpressionNode.number(1);
+                if (isValue(right, 1)) return left;
+                if (isValue(right, 2)) return ExpressionNode.binary(Kind.MULTIPLY, left, left);
+                break;
+            default:
+                break;
+        }
+        if (left == node.getLeft() && right == node.getRight()) return node;
+        return ExpressionNode.binary(kind, left, right);
+    }
+
+    private static boolean isConstant(ExpressionNode node) {
+        Kind kind = node.getKind();
+        return kind == Kind.NUMBER || kind == Kind.PI || kind == Kind.E;
+    }
+
+    private static boolean isValue(ExpressionNode node, double value) {
+        return isConstant(node) && node.getValue() == value;
+    }
+
+    private static boolean isTrig(Kind kind) {
+        return kind == Kind.SIN || kind == Kind.COS || kind == Kind.TAN;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+
+/**
+ * Recursive-descent parser that turns calculator input into an {@link ExpressionNode} tree.
+ * Accepts the display symbols directly (×, ÷, π, e, √) so no string rewriting is needed.
+ */
+public class ExpressionParser {
+    private static final String[] RESERVED = {"sin", "cos", "tan", "log", "ln", "e"};
+
+    private final String expression;
+    private final String[] variables;
+    private int pos = -1;
+    private int ch;
+
+    private ExpressionParser(String expression, String[] variables) {
+        this.expression = expression;
+        this.variables = variables;
+    }
+
+    public static ExpressionNode parse(String expression) {
+        return parse(expression, new String[0]);
+    }
+
+    /**
+     * Parses an expression that may refer to the given variable names. Each variable
+     * becomes a {@link Kind#VARIABLE} node whose index is its position in {@code variables}.
+     */
+    public static ExpressionNode parse(String expression, String... variables) {
+        for (String name : variables) {
+            checkVariableName(name);
+        }
+        return new ExpressionParser(expression, variables).parse();
+    }
+
+    private static void checkVariableName(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("Empty variable name");
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isLetter(name.charAt(i)) || name.charAt(i) == 'π') {
+                throw new IllegalArgumentException("Invalid variable name: " + name);
+            }
+        }
+        for (String reserved : RESERVED) {
+            if (reserved.equals(name)) throw new IllegalArgumentException("Reserved name: " + name);
+        }
+    }
+
+    private ExpressionNode parse() {
+        nextChar();
+        ExpressionNode x = parseExpression();
+        if (pos < expression.length()) throw new IllegalArgumentException("Unexpected: " + (char) ch);
+        return x;
+    }
+
+    private void nextChar() {
+        ch = (++pos < expression.length()) ? expression.charAt(pos) : -1;
+    }
+
+    private boolean eat(int charToEat) {
+        while (ch == ' ') nextChar();
+        if (ch == charToEat) {
+            nextChar();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean eatWord(String word) {
+        while (ch == ' ') nextChar();
+        if (!expression.startsWith(word, pos)) return false;
+        pos += word.length() - 1;
+        nextChar();
+        return true;
+    }
+
+    private ExpressionNode parseExpression() {
+        ExpressionNode x = parseTerm();
+        for (;;) {
+            if (eat('+')) x = ExpressionNode.binary(Kind.ADD, x, parseTerm());
+            else if (eat('-')) x = ExpressionNode.binary(Kind.SUBTRACT, x, parseTerm());
+            else return x;
+        }
+    }
+
+    private ExpressionNode parseTerm() {
+        ExpressionNode x = parseFactor();
+        for (;;) {
+            if (eat('*') || eat('×')) x = ExpressionNode.binary(Kind.MULTIPLY, x, parseFactor());
+            else if (eat('/') || eat('÷')) x = ExpressionNode.binary(Kind.DIVIDE, x, parseFactor());
+            else return x;
+        }
+    }
+
+    private ExpressionNode parseFactor() {
+        if (eat('+')) return parseFactor();
+        if (eat('-')) return ExpressionNode.unary(Kind.NEGATE, parseFactor());
+
+        ExpressionNode x = parsePrimary();
+        while (eat('!')) x = ExpressionNode.unary(Kind.FACTORIAL, x);
+        if (eat('^')) x = ExpressionNode.binary(Kind.POWER, x, parseFactor());
+        return x;
+    }
+
+    private ExpressionNode parsePrimary() {
+        if (eat('(')) {
+            ExpressionNode x = parseExpression();
+            eat(')');
+            return x;
+        }
+        if ((ch >= '0' && ch <= '9') || ch == '.') {
+            int startPos = pos;
+            while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
+            return ExpressionNode.number(expression.substring(startPos, pos));
+        }
+        if (eat('π')) return ExpressionNode.constant(Kind.PI);
+        if (eat('√')) return ExpressionNode.unary(Kind.SQRT, parseArgument());
+        if (eatWord("sin")) return ExpressionNode.unary(Kind.SIN, parseArgument());
+        if (eatWord("cos")) return ExpressionNode.unary(Kind.COS, parseArgument());
+        if (eatWord("tan")) return ExpressionNode.unary(Kind.TAN, parseArgument());
+        if (eatWord("log")) return ExpressionNode.unary(Kind.LOG, parseArgument());
+        if (eatWord("ln")) return ExpressionNode.unary(Kind.LN, parseArgument());
+        ExpressionNode variable = parseVariable();
+        if (variable != null) return variable;
+        if (eat('e')) return ExpressionNode.constant(Kind.E);
+        throw new IllegalArgumentException("Unexpected: " + (ch == -1 ? "end of input" : String.valueOf((char) ch)));
+    }
+
+    private ExpressionNode parseVariable() {
+        int longest = -1;
+        for (int i = 0; i < variables.length; i++) {
+            if (expression.startsWith(variables[i], pos)
+                    && (longest < 0 || variables[i].length() > variables[longest].length())) {
+                longest = i;
+            }
+        }
+        if (longest < 0) return null;
+        eatWord(variables[longest]);
+        return ExpressionNode.variable(longest, variables[longest]);
+    }
+
+    private ExpressionNode parseArgument() {
+        if (!eat('(')) throw new IllegalArgumentException("Expected ( after function");
+        ExpressionNode x = parseExpression();
+        eat(')');
+        return x;
+    }
+}
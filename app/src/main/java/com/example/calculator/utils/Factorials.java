@@ -0,0 +1,143 @@
+package com.example.calculator.utils;
+
+import java.math.BigInteger;
+
+/**
+ * Factorial and gamma function. Integer factorials that fit in a double come from a
+ * precomputed table, other real arguments go through the Lanczos approximation of the
+ * gamma function, and exact factorials use Luschny's prime-swing algorithm.
+ */
+public final class Factorials {
+    /** Largest n whose factorial is finite as a double. */
+    public static final int MAX_DOUBLE_FACTORIAL = 170;
+    /** Largest x whose gamma function is finite as a double. */
+    private static final double MAX_GAMMA = 171.62437695630271;
+
+    private static final double[] TABLE = new double[MAX_DOUBLE_FACTORIAL + 1];
+
+    // Lanczos approximation with g = 7, n = 9
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+            771.32342877765313, -176.61502916214059, 12.507343278686905,
+            -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+    };
+    private static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+
+    /** Below this size a swing product is multiplied out with longs directly. */
+    private static final int SMALL_PRODUCT = 16;
+
+    static {
+        TABLE[0] = 1;
+        for (int i = 1; i <= MAX_DOUBLE_FACTORIAL; i++) {
+            TABLE[i] = TABLE[i - 1] * i;
+        }
+    }
+
+    private Factorials() {}
+
+    /**
+     * x! for any real x: a table lookup for non-negative integers and Γ(x + 1) otherwise.
+     *
+     * @throws ArithmeticException for negative integers, where the factorial has a pole
+     */
+    public static double factorial(double x) {
+        if (x == Math.rint(x)) {
+            if (x < 0) throw new ArithmeticException("Factorial of negative number");
+            return x <= MAX_DOUBLE_FACTORIAL ? TABLE[(int) x] : Double.POSITIVE_INFINITY;
+        }
+        return gamma(x + 1);
+    }
+
+    public static double gamma(double x) {
+        if (x < 0.5) {
+            // Reflection formula
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        // Beyond about 745 exp(-t) underflows to zero and the product below is NaN
+        if (x > MAX_GAMMA) return Double.POSITIVE_INFINITY;
+        x -= 1;
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x + i);
+        }
+        double t = x + LANCZOS_G + 0.5;
+        // t^(x + 0.5) is split in two so it does not overflow before exp(-t) brings it back
+        double halfPower = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * halfPower * (halfPower * Math.exp(-t)) * sum;
+    }
+
+    /** Exact n!, computed as odd part times a power of two. */
+    public static BigInteger exactFactorial(int n) {
+        if (n < 0) throw new ArithmeticException("Factorial of negative number");
+        if (n < 2) return BigInteger.ONE;
+        int[] primes = oddPrimes(n);
+        return oddFactorial(n, primes).shiftLeft(n - Integer.bitCount(n));
+    }
+
+    /** Odd part of n!, using n! = swing(n) * ((n/2)!)^2. */
+    private static BigInteger oddFactorial(int n, int[] primes) {
+        if (n < 2) return BigInteger.ONE;
+        BigInteger half = oddFactorial(n / 2, primes);
+        return half.multiply(half).multiply(oddSwing(n, primes));
+    }
+
+    /** Odd part of the swinging factorial n! / ((n/2)!)^2, from its prime factorization. */
+    private static BigInteger oddSwing(int n, int[] primes) {
+        long[] factors = new long[primes.length];
+        int count = 0;
+        int sqrtN = (int) Math.sqrt(n);
+        for (int p : primes) {
+            if (p > n) break;
+            if (p <= sqrtN) {
+                long power = 1;
+                int q = n;
+                while ((q /= p) > 0) {
+                    if ((q & 1) == 1) power *= p;
+                }
+                if (power > 1) factors[count++] = power;
+            } else if (p <= n / 3) {
+                if (((n / p) & 1) == 1) factors[count++] = p;
+            } else if (p > n / 2) {
+                factors[count++] = p;
+            }
+        }
+        return product(factors, 0, count);
+    }
+
+    /** Balanced product, so big multiplications happen between operands of similar size. */
+    private static BigInteger product(long[] factors, int from, int to) {
+        if (to - from <= SMALL_PRODUCT) {
+            BigInteger result = BigInteger.ONE;
+            long pending = 1;
+            for (int i = from; i < to; i++) {
+                if (pending > Long.MAX_VALUE / factors[i]) {
+                    result = result.multiply(BigInteger.valueOf(pending));
+                    pending = 1;
+                }
+                pending *= factors[i];
+            }
+            return result.multiply(BigInteger.valueOf(pending));
+        }
+        int mid = (from + to) >>> 1;
+        return product(factors, from, mid).multiply(product(factors, mid, to));
+    }
+
+    private static int[] oddPrimes(int n) {
+        boolean[] composite = new boolean[n + 1];
+        int count = 0;
+        for (int i = 3; i <= n; i += 2) {
+            if (composite[i]) continue;
+            count++;
+            for (long j = (long) i * i; j <= n; j += 2L * i) {
+                composite[(int) j] = true;
+            }
+        }
+        int[] primes = new int[count];
+        int k = 0;
+        for (int i = 3; i <= n; i += 2) {
+            if (!composite[i]) primes[k++] = i;
+        }
+        return primes;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.calculator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive sampler for plotting a function of one variable. The visible x range is cut
+ * on a power-of-two grid, and each grid interval is bisected while the curve deviates
+ * from a straight line by more than half a pixel, so flat stretches get few points and
+ * bends get many. A steep interval that does not flatten out under bisection is treated
+ * as a discontinuity and the line is broken there.
+ *
+ * Grid points and bisection midpoints are dyadic, so the same x comes up again after a
+ * pan or a power-of-two zoom. Every value and verdict from the previous viewport is
+ * looked up before the function is evaluated, which limits evaluation to the newly
+ * exposed intervals.
+ *
+ * The curve is exposed as screen-space line segments in a reusable float buffer, in the
+ * {@code x0, y0, x1, y1} layout of {@code Canvas.drawLines}. Not thread-safe.
+ */
+public class FunctionSampler {
+    private static final int BASE_INTERVALS = 128;
+    private static final int MAX_DEPTH = 6;
+    private static final double TOLERANCE_PX = 0.5;
+    private static final int JUMP_ITERATIONS = 24;
+    // Coordinates far outside the view are clamped so they still fit in a float
+    private static final double MAX_OFFSET_PX = 1e5;
+
+    private final CompiledExpression function;
+    private final boolean isRadian;
+    private final double[] argument = new double[1];
+
+    // Vertices of the curve; midpoints that were evaluated but not needed as vertices;
+    // and the midpoints of steep intervals found to be a break or to be continuous
+    private Samples points = new Samples();
+    private Samples probes = new Samples();
+    private Samples breaks = new Samples();
+    private Samples steep = new Samples();
+    // The same for the previous viewport, kept for lookups while the current one is built
+    private Samples oldPoints = new Samples();
+    private Samples oldProbes = new Samples();
+    private Samples oldBreaks = new Samples();
+    private Samples oldSteep = new Samples();
+
+    private float[] segments = new float[4096];
+    private int segmentFloats;
+
+    private double xMin = Double.NaN;
+    private double xMax;
+    private double yMin;
+    private double yMax;
+    private int width;
+    private int height;
+    private double xScale;
+    private double yScale;
+    private long evaluations;
+
+    public FunctionSampler(CompiledExpression function, boolean isRadian) {
+        if (function.getVariables().length != 1) {
+            throw new IllegalArgumentException("Expected a function of one variable");
+        }
+        this.function = function;
+        this.isRadian = isRadian;
+    }
+
+    /**
+     * Resamples for a new viewport of {@code width} by {@code height} pixels and rebuilds
+     * the segment buffer. Calling it again with an unchanged viewport does nothing.
+     */
+    public void setViewport(double xMin, double xMax, double yMin, double yMax, int width, int height) {
+        if (!(xMax > xMin) || !(yMax > yMin) || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty viewport");
+        }
+        if (xMin == this.xMin && xMax == this.xMax && yMin == this.yMin && yMax == this.yMax
+                && width == this.width && height == this.height) {
+            return;
+        }
+        this.xMin = xMin;
+        this.xMax = xMax;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        this.width = width;
+        this.height = height;
+        xScale = width / (xMax - xMin);
+        yScale = height / (yMax - yMin);
+
+        swapBuffers();
+        double step = Math.scalb(1.0, Math.getExponent((xMax - xMin) / BASE_INTERVALS));
+        long first = (long) Math.floor(xMin / step);
+        long last = (long) Math.ceil(xMax / step);
+        double a = first * step;
+        double fa = sample(a);
+        points.add(a, fa);
+        for (long i = first + 1; i <= last; i++) {
+            double b = i * step;
+            double fb = sample(b);
+            refine(a, fa, b, fb, 0);
+            points.add(b, fb);
+            a = b;
+            fa = fb;
+        }
+        buildSegments();
+    }
+
+    public int getPointCount() {
+        return points.count;
+    }
+
+    public double getX(int index) {
+        return points.xs[index];
+    }
+
+    public double getY(int index) {
+        return points.ys[index];
+    }
+
+    public int getBreakCount() {
+        return breaks.count;
+    }
+
+    public double getBreak(int index) {
+        return breaks.xs[index];
+    }
+
+    /** Segment buffer for {@code Canvas.drawLines}; only the first {@link #getSegmentFloats()} entries are valid. */
+    public float[] getSegments() {
+        return segments;
+    }
+
+    public int getSegmentFloats() {
+        return segmentFloats;
+    }
+
+    /** Total number of times the function has been evaluated. */
+    public long getEvaluationCount() {
+        return evaluations;
+    }
+
+    private void refine(double a, double fa, double b, double fb, int depth) {
+        double m = 0.5 * (a + b);
+        if (depth == MAX_DEPTH || m == a || m == b) {
+            checkJump(a, fa, b, fb);
+            return;
+        }
+        double fm = sample(m);
+        if (!needsSplit(fa, fm, fb)) {
+            probes.add(m, fm);
+            return;
+        }
+        refine(a, fa, m, fm, depth + 1);
+        points.add(m, fm);
+        refine(m, fm, b, fb, depth + 1);
+    }
+
+    private boolean needsSplit(double fa, double fm, double fb) {
+        boolean finiteA = isFinite(fa);
+        boolean finiteM = isFinite(fm);
+        boolean finiteB = isFinite(fb);
+        if (!finiteA || !finiteM || !finiteB) {
+            // Narrow down the edge of the domain, unless the whole interval is undefined
+            return finiteA || finiteM || finiteB;
+        }
+        double deviation = Math.abs(fm - 0.5 * (fa + fb)) * yScale;
+        return deviation > TOLERANCE_PX || Math.abs(fb - fa) * yScale > height;
+    }
+
+    /**
+     * Records whether a steep interval that cannot be split further hides a break. A
+     * continuous function flattens out when its steepest half is bisected repeatedly,
+     * while a pole or a jump keeps its height.
+     */
+    private void checkJump(double a, double fa, double b, double fb) {
+        if (!isFinite(fa) || !isFinite(fb) || Math.abs(fb - fa) * yScale <= height / 2.0) {
+            return;
+        }
+        double m = 0.5 * (a + b);
+        if (oldBreaks.find(m) >= 0) {
+            breaks.add(m, 0);
+            return;
+        }
+        if (oldSteep.find(m) >= 0) {
+            steep.add(m, 0);
+            return;
+        }
+        boolean jump = false;
+        for (int i = 0; i < JUMP_ITERATIONS && !jump; i++) {
+            double c = 0.5 * (a + b);
+            double fc = evaluate(c);
+            if (!isFinite(fc)) {
+                jump = true;
+            } else if (Math.abs(fc - fa) >= Math.abs(fb - fc)) {
+                b = c;
+                fb = fc;
+            } else {
+                a = c;
+                fa = fc;
+            }
+        }
+        if (jump || Math.abs(fb - fa) * yScale > TOLERANCE_PX) {
+            breaks.add(m, 0);
+        } else {
+            steep.add(m, 0);
+        }
+    }
+
+    private double sample(double x) {
+        int index = oldPoints.find(x);
+        if (index >= 0) return oldPoints.ys[index];
+        index = oldProbes.find(x);
+        if (index >= 0) return oldProbes.ys[index];
+        return evaluate(x);
+    }
+
+    private double evaluate(double x) {
+        evaluations++;
+        argument[0] = x;
+        try {
+            return function.evaluate(argument, isRadian);
+        } catch (ArithmeticException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void swapBuffers() {
+        Samples swap = oldPoints;
+        oldPoints = points;
+        points = swap.clear();
+        swap = oldProbes;
+        oldProbes = probes;
+        probes = swap.clear();
+        swap = oldBreaks;
+        oldBreaks = breaks;
+        breaks = swap.clear();
+        swap = oldSteep;
+        oldSteep = steep;
+        steep = swap.clear();
+    }
+
+    private void buildSegments() {
+        segmentFloats = 0;
+        double[] xs = points.xs;
+        double[] ys = points.ys;
+        int nextBreak = 0;
+        for (int i = 0; i + 1 < points.count; i++) {
+            double x0 = xs[i];
+            double x1 = xs[i + 1];
+            while (nextBreak < breaks.count && breaks.xs[nextBreak] < x0) nextBreak++;
+            if (nextBreak < breaks.count && breaks.xs[nextBreak] < x1) continue;
+
+            double y0 = ys[i];
+            double y1 = ys[i + 1];
+            if (!isFinite(y0) || !isFinite(y1)) continue;
+            if ((y0 > yMax && y1 > yMax) || (y0 < yMin && y1 < yMin)) continue;
+
+            if (segmentFloats + 4 > segments.length) {
+                segments = Arrays.copyOf(segments, segments.length * 2);
+            }
+            segments[segmentFloats++] = (float) ((x0 - xMin) * xScale);
+            segments[segmentFloats++] = toScreenY(y0);
+            segments[segmentFloats++] = (float) ((x1 - xMin) * xScale);
+            segments[segmentFloats++] = toScreenY(y1);
+        }
+    }
+
+    private float toScreenY(double y) {
+        double py = (yMax - y) * yScale;
+        return (float) Math.max(-MAX_OFFSET_PX, Math.min(height + MAX_OFFSET_PX, py));
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+
+    /** Samples appended in increasing x, searchable by exact x. */
+    private static final class Samples {
+        double[] xs = new double[256];
+        double[] ys = new double[256];
+        int count;
+        // Where the last lookup landed; queries arrive in nearly increasing x
+        int finger;
+
+        void add(double x, double y) {
+            if (count == xs.length) {
+                xs = Arrays.copyOf(xs, count * 2);
+                ys = Arrays.copyOf(ys, count * 2);
+            }
+            xs[count] = x;
+            ys[count++] = y;
+        }
+
+        Samples clear() {
+            count = 0;
+            finger = 0;
+            return this;
+        }
+
+        /**
+         * Index of {@code x}, or a negative value if absent. Gallops out from the previous
+         * hit before the binary search, so a query close to the last one is O(log distance).
+         */
+        int find(double x) {
+            if (count == 0) return -1;
+            int start = Math.min(finger, count - 1);
+            int low;
+            int high;
+            if (xs[start] < x) {
+                low = start + 1;
+                int step = 1;
+                while (start + step < count && xs[start + step] < x) {
+                    low = start + step + 1;
+                    step <<= 1;
+                }
+                high = Math.min(start + step + 1, count);
+            } else {
+                high = start + 1;
+                int step = 1;
+                while (start - step >= 0 && xs[start - step] >= x) {
+                    high = start - step + 1;
+                    step <<= 1;
+                }
+                low = Math.max(start - step + 1, 0);
+            }
+            int index = Arrays.binarySearch(xs, low, high, x);
+            finger = index >= 0 ? index : Math.min(-index - 1, count - 1);
+            return index;
+        }
+    }
+}
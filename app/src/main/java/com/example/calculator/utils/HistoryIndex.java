@@ -0,0 +1,842 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Search index over the calculations in a {@link HistoryStore}, kept up to date as they are
+ * appended. Expressions are indexed by their trigrams and results and timestamps by
+ * value, so a query touches the posting lists and sorted ranges it needs and decodes at
+ * most the calculations it returns, plus any expression that has every trigram of a
+ * longer search text without containing it.
+ *
+ * The index can always be rebuilt from the store, so its file is only a cache: a file
+ * that is missing, damaged or out of step with the store is replaced by a rebuild.
+ *
+ * An index can be kept to the newest calculations only (see {@link #build(HistoryStore, int)}
+ * and {@link #retainFrom}), since everything it holds is in memory, about 100 bytes a
+ * calculation; older ones are then left to a scan of the store.
+ */
+public class HistoryIndex {
+    static final int MAGIC = 0x43484958; // "CHIX"
+    static final int VERSION = 2;
+    private static final int REBUILD_BATCH = 1024;
+    // Dead entries below this are not worth the copy to drop
+    private static final int MIN_PRUNE = 1024;
+
+    // Entry i is the calculation with id baseId + i; entries below minIndex were
+    // cleared out of the store
+    private long baseId;
+    private int minIndex;
+    private int size;
+    private long[] timestamps = new long[64];
+    private double[] results = new double[64];
+    // Expression trigram -> ascending entries containing it. Two padding characters are
+    // prepended, so every occurrence of a one or two character text ends some trigram.
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+    private final SortedColumn byTime = new SortedColumn();
+    private final SortedColumn byResult = new SortedColumn();
+
+    /** An empty index whose first entry will be the calculation with id {@code firstId}. */
+    public HistoryIndex(long firstId) {
+        this.baseId = firstId;
+    }
+
+    /** Indexes every calculation in {@code store}. */
+    public static HistoryIndex build(HistoryStore store) throws IOException {
+        return build(store, Integer.MAX_VALUE);
+    }
+
+    /** Indexes the newest {@code maxEntries} calculations in {@code store}. */
+    public static HistoryIndex build(HistoryStore store, int maxEntries) throws IOException {
+        HistoryIndex index = new HistoryIndex(store.getFirstId());
+        index.syncWith(store, maxEntries);
+        return index;
+    }
+
+    /**
+     * Adds the calculation with {@code id}, which must be the id after the last one
+     * added. A null calculation, one lost from the store, takes up the id but is never
+     * found.
+     */
+    public synchronized void add(long id, Calculation calculation) {
+        if (id != baseId + size) {
+            throw new IllegalArgumentException("Expected id " + (baseId + size) + ", got " + id);
+        }
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            results = Arrays.copyOf(results, size * 2);
+        }
+        int entry = size++;
+        if (calculation == null) {
+            results[entry] = Double.NaN;
+            return;
+        }
+        timestamps[entry] = calculation.getTimestamp();
+        results[entry] = parseResult(calculation.getResult());
+        byTime.add(timestamps[entry], entry);
+        if (!Double.isNaN(results[entry])) {
+            byResult.add(sortableBits(results[entry]), entry);
+        }
+
+        String expression = calculation.getExpression();
+        if (expression == null) return;
+        long previousKey = -1;
+        for (int i = 0; i < expression.length(); i++) {
+            long key = trigram(expression, i);
+            // A run like "000" repeats its trigram; entries only need listing once
+            if (key == previousKey) continue;
+            IntList postings = trigrams.get(key);
+            if (postings == null) {
+                postings = new IntList();
+                trigrams.put(key, postings);
+            }
+            postings.addIfLast(entry);
+            previousKey = key;
+        }
+    }
+
+    /** Drops every calculation with an id below {@code firstId}. */
+    public synchronized void retainFrom(long firstId) {
+        if (firstId > baseId + size) {
+            reset(firstId);
+            return;
+        }
+        int newMin = (int) (firstId - baseId);
+        if (newMin <= minIndex) return;
+        minIndex = newMin;
+        if (minIndex >= MIN_PRUNE && minIndex >= size - minIndex) prune();
+    }
+
+    /**
+     * Brings the index up to date with {@code store}, indexing what was appended since it
+     * was last in step. Returns false if the index holds calculations the store does not,
+     * in which case it has to be rebuilt.
+     */
+    public synchronized boolean syncWith(HistoryStore store) throws IOException {
+        return syncWith(store, Integer.MAX_VALUE);
+    }
+
+    /** Like {@link #syncWith(HistoryStore)}, keeping only the newest {@code maxEntries}. */
+    public synchronized boolean syncWith(HistoryStore store, int maxEntries) throws IOException {
+        long storeEnd = store.getEndId();
+        long first = Math.max(store.getFirstId(), storeEnd - maxEntries);
+        long end = baseId + size;
+        if (end > storeEnd) return false;
+        // Nothing indexed would be kept, so start where the kept calculations do
+        if (end < first) reset(first);
+
+        for (long id = baseId + size; id < storeEnd; id += REBUILD_BATCH) {
+            Calculation[] batch = store.getRange(id, (int) Math.min(REBUILD_BATCH, storeEnd - id));
+            for (int i = 0; i < batch.length; i++) {
+                add(id + i, batch[i]);
+            }
+        }
+        retainFrom(first);
+        return true;
+    }
+
+    /** Id of the oldest calculation that can be found. */
+    public synchronized long getFirstId() {
+        return baseId + minIndex;
+    }
+
+    /** One past the id of the last calculation added. */
+    public synchronized long getEndId() {
+        return baseId + size;
+    }
+
+    /** Number of calculations that can be found. */
+    public synchronized int size() {
+        return size - minIndex;
+    }
+
+    /**
+     * Ids of up to {@code limit} calculations matching {@code query}, newest first.
+     * {@code expressions} looks up an expression by id, to confirm matches for texts of
+     * more than three characters.
+     */
+    public synchronized long[] search(Query query, int limit, LongFunction<String> expressions) {
+        String text = query.text == null || query.text.isEmpty() ? null : query.text;
+        boolean byTrigrams = text != null && text.length() >= 3;
+        IntList[] lists = null;
+        if (text != null) {
+            lists = byTrigrams ? trigramLists(text) : suffixLists(text);
+            if (lists == null) return new long[0];
+        }
+
+        // Walk whichever filter leaves the fewest entries and check the others per entry
+        long minBits = sortableBits(query.minResult);
+        long maxBits = sortableBits(query.maxResult);
+        long textEstimate = text == null ? Long.MAX_VALUE : estimate(lists, byTrigrams);
+        long timeEstimate = byTime.count(query.fromTime, query.toTime);
+        long resultEstimate = query.hasResultRange ? byResult.count(minBits, maxBits) : Long.MAX_VALUE;
+
+        Matches matches = new Matches(limit);
+        if (text != null && textEstimate <= timeEstimate && textEstimate <= resultEstimate) {
+            EntryCursor cursor = byTrigrams ? new Intersection(lists) : new Union(lists);
+            for (int entry = cursor.next(); entry >= minIndex && !matches.isFull(); entry = cursor.next()) {
+                if (!matchesRanges(entry, query)) continue;
+                // Trigrams found in the wrong order or apart only look like a match
+                if (text.length() > 3 && !containsText(entry, text, expressions)) continue;
+                matches.add(baseId + entry);
+            }
+        } else {
+            EntryCursor cursor = resultEstimate < timeEstimate
+                    ? byResult.newestFirst(minBits, maxBits)
+                    : byTime.newestFirst(query.fromTime, query.toTime);
+            for (int entry = cursor.next(); entry >= minIndex && !matches.isFull(); entry = cursor.next()) {
+                if (!matchesRanges(entry, query)) continue;
+                if (text != null && !mayContain(entry, lists, byTrigrams)) continue;
+                if (text != null && !containsText(entry, text, expressions)) continue;
+                matches.add(baseId + entry);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Writes the index to {@code file}, through a temporary file so that a crash leaves
+     * either the old index or the new one.
+     */
+    public synchronized void save(File file) throws IOException {
+        if (minIndex > 0) prune();
+        File temporary = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(stream, 64 * 1024);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(baseId);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) out.writeLong(timestamps[i]);
+            for (int i = 0; i < size; i++) out.writeDouble(results[i]);
+            byTime.write(out);
+            byResult.write(out);
+            out.writeInt(trigrams.size());
+            for (Map.Entry<Long, IntList> entry : trigrams.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+            // The checksum covers everything before it
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /** Reads an index written by {@link #save}, or returns null if it is missing or damaged. */
+    public static HistoryIndex load(File file) {
+        if (!file.exists()) return null;
+        CRC32 crc = new CRC32();
+        try (FileInputStream stream = new FileInputStream(file)) {
+            BufferedInputStream buffered = new BufferedInputStream(stream, 64 * 1024);
+            DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            HistoryIndex index = new HistoryIndex(in.readLong());
+            int size = in.readInt();
+            if (size < 0) return null;
+            index.size = size;
+            index.timestamps = new long[Math.max(size, 64)];
+            index.results = new double[Math.max(size, 64)];
+            for (int i = 0; i < size; i++) index.timestamps[i] = in.readLong();
+            for (int i = 0; i < size; i++) index.results[i] = in.readDouble();
+            index.byTime.read(in);
+            index.byResult.read(in);
+            int keys = in.readInt();
+            for (int i = 0; i < keys; i++) {
+                long key = in.readLong();
+                index.trigrams.put(key, IntList.read(in));
+            }
+            long expected = crc.getValue();
+            DataInputStream trailer = new DataInputStream(buffered);
+            if (trailer.readLong() != expected || trailer.read() != -1) return null;
+            return index;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private boolean matchesRanges(int entry, Query query) {
+        long timestamp = timestamps[entry];
+        if (timestamp < query.fromTime || timestamp > query.toTime) return false;
+        if (!query.hasResultRange) return true;
+        double result = results[entry];
+        return result >= query.minResult && result <= query.maxResult;
+    }
+
+    private boolean containsText(int entry, String text, LongFunction<String> expressions) {
+        String expression = expressions.apply(baseId + entry);
+        return expression != null && expression.contains(text);
+    }
+
+    /** Whether every trigram of the text occurs in the entry; a quick test before decoding. */
+    private static boolean mayContain(int entry, IntList[] lists, boolean byTrigrams) {
+        if (!byTrigrams) return true;
+        for (IntList list : lists) {
+            if (!list.contains(entry)) return false;
+        }
+        return true;
+    }
+
+    private static long estimate(IntList[] lists, boolean byTrigrams) {
+        long estimate = byTrigrams ? Long.MAX_VALUE : 0;
+        for (IntList list : lists) {
+            estimate = byTrigrams ? Math.min(estimate, list.size) : estimate + list.size;
+        }
+        return estimate;
+    }
+
+    /** The posting lists of every trigram in {@code text}, or null if one has none. */
+    private IntList[] trigramLists(String text) {
+        IntList[] lists = new IntList[text.length() - 2];
+        for (int i = 2; i < text.length(); i++) {
+            IntList list = trigrams.get(trigram(text, i));
+            if (list == null) return null;
+            lists[i - 2] = list;
+        }
+        return lists;
+    }
+
+    /** The posting lists of every trigram ending in a one or two character {@code text}. */
+    private IntList[] suffixLists(String text) {
+        long suffix = text.length() == 1 ? text.charAt(0) : (long) text.charAt(0) << 16 | text.charAt(1);
+        long mask = text.length() == 1 ? 0xFFFFL : 0xFFFFFFFFL;
+        List<IntList> lists = new ArrayList<>();
+        for (Map.Entry<Long, IntList> entry : trigrams.entrySet()) {
+            if ((entry.getKey() & mask) == suffix) lists.add(entry.getValue());
+        }
+        return lists.isEmpty() ? null : lists.toArray(new IntList[0]);
+    }
+
+    /** The three characters of {@code s} ending at {@code i}, padded with zeros before it. */
+    private static long trigram(String s, int i) {
+        long a = i >= 2 ? s.charAt(i - 2) : 0;
+        long b = i >= 1 ? s.charAt(i - 1) : 0;
+        return a << 32 | b << 16 | s.charAt(i);
+    }
+
+    /** Results are formatted with the default locale's decimal separator. */
+    static double parseResult(String result) {
+        if (result == null || result.isEmpty()) return Double.NaN;
+        try {
+            return Double.parseDouble(result.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /** A long that orders like {@code value} when compared as signed longs. */
+    private static long sortableBits(double value) {
+        if (value == 0) value = 0; // -0.0 and 0.0 are equal results
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private void reset(long firstId) {
+        baseId = firstId;
+        minIndex = 0;
+        size = 0;
+        trigrams.clear();
+        byTime.clear();
+        byResult.clear();
+    }
+
+    /** Drops the entries below minIndex and renumbers the rest from zero. */
+    private void prune() {
+        int shift = minIndex;
+        int live = size - shift;
+        System.arraycopy(timestamps, shift, timestamps, 0, live);
+        System.arraycopy(results, shift, results, 0, live);
+        byTime.dropBelow(shift);
+        byResult.dropBelow(shift);
+        trigrams.values().removeIf(list -> {
+            list.dropBelow(shift);
+            return list.size == 0;
+        });
+        baseId += shift;
+        size = live;
+        minIndex = 0;
+    }
+
+    /** Search criteria; anything not set matches every calculation. */
+    public static class Query {
+        String text;
+        boolean hasResultRange;
+        double minResult;
+        double maxResult;
+        long fromTime = Long.MIN_VALUE;
+        long toTime = Long.MAX_VALUE;
+
+        /** Expressions containing {@code text}. */
+        public Query expressionContains(String text) {
+            this.text = text;
+            return this;
+        }
+
+        /** Numeric results from {@code min} to {@code max}, inclusive. */
+        public Query resultBetween(double min, double max) {
+            this.hasResultRange = true;
+            this.minResult = min;
+            this.maxResult = max;
+            return this;
+        }
+
+        /** Calculations made from {@code from} to {@code to} milliseconds, inclusive. */
+        public Query timeBetween(long from, long to) {
+            this.fromTime = from;
+            this.toTime = to;
+            return this;
+        }
+
+        /** Tests a calculation directly, for ones not in the index. */
+        boolean matches(Calculation calculation) {
+            if (text != null && !text.isEmpty()) {
+                String expression = calculation.getExpression();
+                if (expression == null || !expression.contains(text)) return false;
+            }
+            long timestamp = calculation.getTimestamp();
+            if (timestamp < fromTime || timestamp > toTime) return false;
+            if (!hasResultRange) return true;
+            double result = parseResult(calculation.getResult());
+            return result >= minResult && result <= maxResult;
+        }
+    }
+
+    private static class Matches {
+        final long[] ids;
+        int count;
+
+        Matches(int limit) {
+            ids = new long[Math.max(limit, 0)];
+        }
+
+        boolean isFull() {
+            return count == ids.length;
+        }
+
+        void add(long id) {
+            ids[count++] = id;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, count);
+        }
+    }
+
+    /** Growable ascending list of entries. */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        /** Position of the largest value at most {@code value} before {@code end}, or -1. */
+        int floor(int value, int end) {
+            int position = Arrays.binarySearch(values, 0, end, value);
+            return position >= 0 ? position : -position - 2;
+        }
+
+        void dropBelow(int shift) {
+            int from = floor(shift - 1, size) + 1;
+            for (int i = from; i < size; i++) values[i - from] = values[i] - shift;
+            size -= from;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) out.writeInt(values[i]);
+        }
+
+        static IntList read(DataInputStream in) throws IOException {
+            IntList list = new IntList();
+            int size = in.readInt();
+            if (size < 0) throw new IOException("Bad posting list");
+            list.values = new int[Math.max(size, 4)];
+            for (int i = 0; i < size; i++) list.values[i] = in.readInt();
+            list.size = size;
+            return list;
+        }
+    }
+
+    /** Entries in descending order, then -1. */
+    private interface EntryCursor {
+        int next();
+    }
+
+    /** Entries in every list, found by leapfrogging down from the newest. */
+    private static class Intersection implements EntryCursor {
+        final IntList[] lists;
+        final int[] ends;
+
+        Intersection(IntList[] lists) {
+            this.lists = lists;
+            this.ends = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) ends[i] = lists[i].size;
+        }
+
+        @Override
+        public int next() {
+            if (ends[0] == 0) return -1;
+            int candidate = lists[0].values[ends[0] - 1];
+            int agreed = 1;
+            int i = 1 % lists.length;
+            while (agreed < lists.length) {
+                int position = lists[i].floor(candidate, ends[i]);
+                if (position < 0) return -1;
+                ends[i] = position + 1;
+                int value = lists[i].values[position];
+                if (value == candidate) {
+                    agreed++;
+                } else {
+                    candidate = value;
+                    agreed = 1;
+                }
+                i = (i + 1) % lists.length;
+            }
+            for (int j = 0; j < lists.length; j++) ends[j]--;
+            return candidate;
+        }
+    }
+
+    /** Entries in any list, merged down from the newest without repeats. */
+    private static class Union implements EntryCursor {
+        final IntList[] lists;
+        final int[] ends;
+        int last = Integer.MAX_VALUE;
+
+        Union(IntList[] lists) {
+            this.lists = lists;
+            this.ends = new int[lists.length];
+            for (int i = 0; i < lists.length; i++) ends[i] = lists[i].size;
+        }
+
+        @Override
+        public int next() {
+            int best = -1;
+            for (int i = 0; i < lists.length; i++) {
+                // Skip what was already returned through another list
+                while (ends[i] > 0 && lists[i].values[ends[i] - 1] >= last) ends[i]--;
+                if (ends[i] > 0) best = Math.max(best, lists[i].values[ends[i] - 1]);
+            }
+            if (best >= 0) last = best;
+            return best;
+        }
+    }
+
+    /**
+     * Entries ordered by a long key, walked a key range at a time newest first. Entries
+     * arriving in key order (timestamps usually do) are appended to the sorted column;
+     * the others wait in a side buffer in arrival order, which is merged in once it holds
+     * a sixteenth as many entries as the column, or by a query once it is more than a few
+     * to scan. A max tree over the column's entries
+     * gives any range of it newest first without sorting it, and the side buffer is
+     * walked backwards alongside.
+     */
+    private static class SortedColumn {
+        private static final int MIN_SIDE = 1024;
+
+        long[] keys = new long[64];
+        int[] entries = new int[64];
+        int size;
+        long[] sideKeys = new long[16];
+        int[] sideEntries = new int[16];
+        int sideSize;
+        // Node n holds the newest entry under it: leaves from tree.length / 2 on, one per
+        // position of the column, and -1 past its end
+        int[] tree = new int[0];
+
+        SortedColumn() {
+            rebuildTree();
+        }
+
+        void add(long key, int entry) {
+            if (size == 0 || keys[size - 1] <= key) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    entries = Arrays.copyOf(entries, size * 2);
+                    rebuildTree();
+                }
+                keys[size] = key;
+                entries[size] = entry;
+                // Entries only grow, so every node above the new leaf takes it
+                for (int node = tree.length / 2 + size; node > 0; node >>>= 1) tree[node] = entry;
+                size++;
+                return;
+            }
+            if (sideSize == sideKeys.length) {
+                sideKeys = Arrays.copyOf(sideKeys, sideSize * 2);
+                sideEntries = Arrays.copyOf(sideEntries, sideSize * 2);
+            }
+            sideKeys[sideSize] = key;
+            sideEntries[sideSize] = entry;
+            sideSize++;
+            if (sideSize >= Math.max(MIN_SIDE, size / 16)) merge();
+        }
+
+        /** Number of entries with keys from {@code fromKey} to {@code toKey}, inclusive. */
+        long count(long fromKey, long toKey) {
+            if (sideSize > MIN_SIDE) merge();
+            long count = upperBound(toKey) - lowerBound(fromKey);
+            for (int i = 0; i < sideSize; i++) {
+                if (sideKeys[i] >= fromKey && sideKeys[i] <= toKey) count++;
+            }
+            return count;
+        }
+
+        /** The entries with keys from {@code fromKey} to {@code toKey}, newest first. */
+        EntryCursor newestFirst(long fromKey, long toKey) {
+            if (sideSize > MIN_SIDE) merge();
+            EntryCursor column = new TreeCursor(lowerBound(fromKey), upperBound(toKey));
+            if (sideSize == 0) return column;
+            // Both walks come newest first, so taking the newer head merges them
+            return new EntryCursor() {
+                int side = sideSize;
+                int columnHead = column.next();
+                int sideHead = nextSide();
+
+                @Override
+                public int next() {
+                    int entry;
+                    if (columnHead > sideHead) {
+                        entry = columnHead;
+                        columnHead = column.next();
+                    } else {
+                        entry = sideHead;
+                        if (entry >= 0) sideHead = nextSide();
+                    }
+                    return entry;
+                }
+
+                private int nextSide() {
+                    while (side > 0) {
+                        side--;
+                        if (sideKeys[side] >= fromKey && sideKeys[side] <= toKey) return sideEntries[side];
+                    }
+                    return -1;
+                }
+            };
+        }
+
+        /** First position with a key of at least {@code key}. */
+        private int lowerBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /** First position with a key above {@code key}. */
+        private int upperBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= key) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /** Moves the side buffer into the sorted column. */
+        void merge() {
+            if (sideSize == 0) return;
+            int tail = sideSize;
+            sortByKey(sideKeys, sideEntries, 0, tail, new long[tail], new int[tail]);
+            if (size + tail > keys.length) {
+                int capacity = Math.max(keys.length * 2, size + tail);
+                keys = Arrays.copyOf(keys, capacity);
+                entries = Arrays.copyOf(entries, capacity);
+            }
+
+            // Merge from the back so the sorted part can be merged in place
+            int i = size - 1;
+            int j = tail - 1;
+            for (int k = size + tail - 1; j >= 0; k--) {
+                if (i >= 0 && keys[i] > sideKeys[j]) {
+                    keys[k] = keys[i];
+                    entries[k] = entries[i--];
+                } else {
+                    keys[k] = sideKeys[j];
+                    entries[k] = sideEntries[j--];
+                }
+            }
+            size += tail;
+            sideSize = 0;
+            rebuildTree();
+        }
+
+        void dropBelow(int shift) {
+            merge();
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (entries[i] < shift) continue;
+                keys[kept] = keys[i];
+                entries[kept] = entries[i] - shift;
+                kept++;
+            }
+            size = kept;
+            rebuildTree();
+        }
+
+        void clear() {
+            size = 0;
+            sideSize = 0;
+            rebuildTree();
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            merge();
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(entries[i]);
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            if (count < 0) throw new IOException("Bad column");
+            keys = new long[Math.max(count, 64)];
+            entries = new int[Math.max(count, 64)];
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.readLong();
+                entries[i] = in.readInt();
+                if (i > 0 && keys[i] < keys[i - 1]) throw new IOException("Column out of order");
+            }
+            size = count;
+            sideSize = 0;
+            rebuildTree();
+        }
+
+        private void rebuildTree() {
+            int leaves = Integer.highestOneBit(Math.max(keys.length - 1, 1)) << 1;
+            if (tree.length != 2 * leaves) tree = new int[2 * leaves];
+            Arrays.fill(tree, leaves + size, tree.length, -1);
+            System.arraycopy(entries, 0, tree, leaves, size);
+            for (int node = leaves - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        /**
+         * The entries at positions {@code [from, to)} of the column, newest first: the
+         * range splits into whole subtrees, and the subtree with the newest entry is
+         * descended each time, leaving its other branches for later.
+         */
+        private class TreeCursor implements EntryCursor {
+            // Max-heap of subtrees by the newest entry under them
+            int[] heap = new int[64];
+            int heapSize;
+
+            TreeCursor(int from, int to) {
+                int leaves = tree.length / 2;
+                for (int low = from + leaves, high = to + leaves; low < high; low >>>= 1, high >>>= 1) {
+                    if ((low & 1) == 1) push(low++);
+                    if ((high & 1) == 1) push(--high);
+                }
+            }
+
+            @Override
+            public int next() {
+                if (heapSize == 0) return -1;
+                int node = heap[0];
+                heap[0] = heap[--heapSize];
+                siftDown();
+                int leaves = tree.length / 2;
+                while (node < leaves) {
+                    int left = 2 * node;
+                    if (tree[left] >= tree[left + 1]) {
+                        push(left + 1);
+                        node = left;
+                    } else {
+                        push(left);
+                        node = left + 1;
+                    }
+                }
+                return tree[node];
+            }
+
+            private void push(int node) {
+                if (tree[node] < 0) return;
+                if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+                int i = heapSize++;
+                while (i > 0 && tree[heap[(i - 1) / 2]] < tree[node]) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = node;
+            }
+
+            private void siftDown() {
+                if (heapSize == 0) return;
+                int node = heap[0];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= heapSize) break;
+                    if (child + 1 < heapSize && tree[heap[child + 1]] > tree[heap[child]]) child++;
+                    if (tree[heap[child]] <= tree[node]) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = node;
+            }
+        }
+
+        /** Stable merge sort of {@code keys[from, to)}, moving entries with their keys. */
+        private static void sortByKey(long[] keys, int[] entries, int from, int to,
+                                      long[] keyBuffer, int[] entryBuffer) {
+            if (to - from < 2) return;
+            int mid = (from + to) >>> 1;
+            sortByKey(keys, entries, from, mid, keyBuffer, entryBuffer);
+            sortByKey(keys, entries, mid, to, keyBuffer, entryBuffer);
+            if (keys[mid - 1] <= keys[mid]) return;
+            System.arraycopy(keys, from, keyBuffer, from, to - from);
+            System.arraycopy(entries, from, entryBuffer, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && keyBuffer[i] <= keyBuffer[j])) {
+                    keys[k] = keyBuffer[i];
+                    entries[k] = entryBuffer[i++];
+                } else {
+                    keys[k] = keyBuffer[j];
+                    entries[k] = entryBuffer[j++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped log of calculations. Appending writes one record at the
+ * end of the mapping, so it costs the same however long the history is.
+ *
+ * Records are identified by their position in the sequence of everything ever appended,
+ * so an id keeps referring to the same calculation across compactions and clears.
+ *
+ * Layout: a 16-byte header (magic, format version, id of the first record) followed by
+ * records of {@code [payload length][CRC32 of payload][payload]}, the payload being a
+ * calculation as {@link CalculationCodec} encodes it.
+ * The length is written last, so a record interrupted by a crash either reads as zero or
+ * fails its checksum; opening the log stops at that record and discards it.
+ *
+ * Once the log holds twice {@code retain} records it is compacted: the newest
+ * {@code retain} are copied to a new file, which then replaces the log.
+ */
+public class HistoryLog implements Closeable {
+    static final int MAGIC = 0x43484C47; // "CHLG"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final File file;
+    private final int retain;
+    private final CRC32 crc = new CRC32();
+    private final CalculationCodec codec = new CalculationCodec();
+    private byte[] scratch = new byte[256];
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int end;
+    private long firstId;
+    // Start of every record, oldest first
+    private int[] offsets = new int[64];
+    private int count;
+
+    private HistoryLog(File file, int retain) {
+        this.file = file;
+        this.retain = retain;
+    }
+
+    /**
+     * Opens or creates the log at {@code file}, recovering from a torn final record.
+     *
+     * @throws IOException if the file is not a history log or has a newer format version
+     */
+    public static HistoryLog open(File file, int retain) throws IOException {
+        if (retain <= 0) throw new IllegalArgumentException("retain must be positive");
+        return openLog(file, retain);
+    }
+
+    /**
+     * Opens a log that is never compacted on its own; its owner drops old records with
+     * {@link #discardBefore}.
+     */
+    public static HistoryLog open(File file) throws IOException {
+        return openLog(file, 0);
+    }
+
+    private static HistoryLog openLog(File file, int retain) throws IOException {
+        HistoryLog log = new HistoryLog(file, retain);
+        // A compaction that did not finish leaves the original log intact
+        File pending = log.compactionFile();
+        if (pending.exists() && !pending.delete()) {
+            throw new IOException("Cannot delete " + pending);
+        }
+        log.load();
+        return log;
+    }
+
+    /** Appends {@code calculation} and returns its id. */
+    public synchronized long append(Calculation calculation) throws IOException {
+        int length = codec.encode(calculation);
+        byte[] payload = codec.buffer();
+        int recordSize = RECORD_HEADER_SIZE + length;
+        ensureCapacity(end + recordSize);
+
+        crc.reset();
+        crc.update(payload, 0, length);
+        buffer.position(end + RECORD_HEADER_SIZE);
+        buffer.put(payload, 0, length);
+        buffer.putInt(end + 4, (int) crc.getValue());
+        buffer.putInt(end, length);
+
+        addOffset(end);
+        end += recordSize;
+        long id = firstId + count - 1;
+        if (retain > 0 && count >= 2 * retain) {
+            compact(retain);
+        }
+        return id;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** The calculation at {@code index}, where 0 is the oldest. */
+    public synchronized Calculation get(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index);
+        return decode(offsets[index]);
+    }
+
+    /** Up to {@code limit} calculations, newest first. */
+    public synchronized List<Calculation> getNewest(int limit) {
+        int n = Math.min(limit, count);
+        List<Calculation> newest = new ArrayList<>(n);
+        for (int i = count - 1; i >= count - n; i--) {
+            newest.add(decode(offsets[i]));
+        }
+        return newest;
+    }
+
+    /** Id of the oldest calculation still in the log. */
+    public synchronized long getFirstId() {
+        return firstId;
+    }
+
+    /** One past the id of the newest calculation; the id the next append will get. */
+    public synchronized long getEndId() {
+        return firstId + count;
+    }
+
+    /**
+     * The calculations with ids {@code fromId} to {@code fromId + length - 1}, in id
+     * order. Entries are null for ids that have been compacted away or not yet appended.
+     */
+    public synchronized Calculation[] getRange(long fromId, int length) {
+        Calculation[] range = new Calculation[length];
+        long from = Math.max(fromId, firstId);
+        long to = Math.min(fromId + length, firstId + count);
+        for (long id = from; id < to; id++) {
+            range[(int) (id - fromId)] = decode(offsets[(int) (id - firstId)]);
+        }
+        return range;
+    }
+
+    public synchronized void clear() throws IOException {
+        compact(0);
+    }
+
+    /** Drops the calculations with ids below {@code id}, keeping the ids of the rest. */
+    public synchronized void discardBefore(long id) throws IOException {
+        if (id <= firstId) return;
+        compact((int) Math.max(0, firstId + count - id));
+    }
+
+    /** Starts the ids of an empty log at {@code id}, to carry on after older history. */
+    synchronized void skipTo(long id) {
+        if (count > 0 || id <= firstId) return;
+        firstId = id;
+        buffer.putLong(8, firstId);
+    }
+
+    /** Forces appended records to the storage device. */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    private void load() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        long size = raf.length();
+        if (size > Integer.MAX_VALUE) throw new IOException("History log too large");
+        buffer = map(Math.max((int) size, INITIAL_CAPACITY));
+        count = 0;
+        if (size < HEADER_SIZE) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, firstId);
+            end = HEADER_SIZE;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            raf.close();
+            throw new IOException(file + " is not a history log");
+        }
+        int version = buffer.getInt(4);
+        if (version > VERSION) {
+            raf.close();
+            throw new IOException("Unsupported history log version " + version);
+        }
+        firstId = buffer.getLong(8);
+        end = scan();
+        discardTail();
+    }
+
+    /** Walks the records from the start and returns the end of the last intact one. */
+    private int scan() {
+        int capacity = buffer.capacity();
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) break;
+            readPayload(position, length);
+            crc.reset();
+            crc.update(scratch, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) break;
+            addOffset(position);
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /** Zeroes anything a torn record left behind, so later appends are not misread. */
+    private void discardTail() {
+        int capacity = buffer.capacity();
+        for (int i = end; i < capacity; i++) {
+            if (buffer.get(i) != 0) {
+                for (int j = i; j < capacity; j++) buffer.put(j, (byte) 0);
+                return;
+            }
+        }
+    }
+
+    /** Rewrites the log with only its newest {@code keep} records. */
+    private void compact(int keep) throws IOException {
+        int first = Math.max(0, count - keep);
+        int start = first < count ? offsets[first] : end;
+        File target = compactionFile();
+        try (RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(firstId + first).rewind();
+            channel.write(header);
+            ByteBuffer records = buffer.duplicate();
+            records.limit(end).position(start);
+            channel.write(records);
+            channel.force(true);
+        }
+        raf.close();
+        if (!target.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        load();
+    }
+
+    private File compactionFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    private MappedByteBuffer map(int capacity) throws IOException {
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= buffer.capacity()) return;
+        long capacity = Math.max(required, 2L * buffer.capacity());
+        if (capacity > Integer.MAX_VALUE) throw new IOException("History log too large");
+        buffer = map((int) capacity);
+    }
+
+    private void addOffset(int offset) {
+        if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count++] = offset;
+    }
+
+    private Calculation decode(int offset) {
+        readPayload(offset, buffer.getInt(offset));
+        return codec.decode(scratch, 0);
+    }
+
+    private void readPayload(int offset, int length) {
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_SIZE);
+        payload.get(scratch, 0, length);
+    }
+}
@@ -5,6 +5,11 @@ import android.content.SharedPreferences;
 import com.example.calculator.models.Calculation;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,39 +17,166 @@ import java.util.List;
 public class HistoryManager {
     private static final String PREFS_NAME = "calculator_prefs";
     private static final String HISTORY_KEY = "history";
-    private static final int MAX_HISTORY = 100;
+    private static final String LOG_FILE = "history.log";
+    private static final String SEGMENT_DIR = "history";
+    private static final String INDEX_FILE = "history.idx";
+    private static final String STATS_FILE = "history.stats";
+    // Calculations kept decoded in memory; older ones are read back from storage
+    private static final int HOT_HISTORY = 1024;
+    private static final int RECENT_HISTORY = 100;
 
-    private SharedPreferences prefs;
-    private Gson gson;
+    // One history per process, shared by every activity's HistoryManager. Everything
+    // goes through the writer, which stores additions in the background.
+    private static HistoryWriter writer;
 
     public HistoryManager(Context context) {
-        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        openLog(context.getApplicationContext());
     }
 
+    /** Queues a calculation; it is visible at once and stored shortly after. */
     public void addToHistory(String previous, String expression, String result) {
-        List<Calculation> history = getHistory();
-        history.add(0, new Calculation(previous, expression, result));
+        writer.add(new Calculation(previous, expression, result));
+    }
 
-        if (history.size() > MAX_HISTORY) {
-            history = history.subList(0, MAX_HISTORY);
+    /** The most recent calculations, newest first. */
+    public List<Calculation> getHistory() {
+        long endId = getEndId();
+        long fromId = Math.max(getFirstId(), endId - RECENT_HISTORY);
+        Calculation[] range = getHistoryRange(fromId, (int) (endId - fromId));
+        List<Calculation> newest = new ArrayList<>(range.length);
+        for (int i = range.length - 1; i >= 0; i--) {
+            if (range[i] != null) newest.add(range[i]);
         }
+        return newest;
+    }
 
-        saveHistory(history);
+    /** Id of the oldest stored calculation; see {@link HistoryLog} for how ids work. */
+    public long getFirstId() {
+        return writer.getFirstId();
     }
 
-    public List<Calculation> getHistory() {
-        String json = prefs.getString(HISTORY_KEY, "[]");
-        Type type = new TypeToken<ArrayList<Calculation>>(){}.getType();
-        return gson.fromJson(json, type);
+    /** One past the id of the newest stored calculation. */
+    public long getEndId() {
+        return writer.getEndId();
+    }
+
+    /** Calculations by id, null where an id is no longer (or not yet) stored. */
+    public Calculation[] getHistoryRange(long fromId, int length) {
+        try {
+            return writer.getRange(fromId, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Ids of up to {@code limit} calculations matching {@code query}, newest first, or
+     * null while the search index is still being built; see {@link #whenReady}.
+     */
+    public long[] search(HistoryIndex.Query query, int limit) {
+        return writer.search(query, limit);
+    }
+
+    /** Runs {@code action}, on a background thread, once search and statistics can answer. */
+    public void whenReady(Runnable action) {
+        writer.whenReady(action);
+    }
+
+    /** The calculations with the given ids, null for any no longer stored. */
+    public Calculation[] getHistoryByIds(long[] ids) {
+        Calculation[] calculations = new Calculation[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            calculations[i] = getHistoryRange(ids[i], 1)[0];
+        }
+        return calculations;
     }
 
     public void clearHistory() {
-        prefs.edit().remove(HISTORY_KEY).apply();
+        writer.clear();
+    }
+
+    /**
+     * Stores everything queued and waits until it is on the storage device. Activities
+     * call this when they pause, so nothing is lost if the process is then killed.
+     */
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void saveHistory(List<Calculation> history) {
-        String json = gson.toJson(history);
-        prefs.edit().putString(HISTORY_KEY, json).apply();
+    /**
+     * Statistics over every numeric result, kept up to date as calculations are stored,
+     * or null while they are still being built; see {@link #whenReady}.
+     */
+    public HistoryStats.Summary getStatsTotal() {
+        HistoryStats stats = writer.getStats();
+        return stats == null ? null : stats.getTotal();
+    }
+
+    /** Statistics over the numeric results of today and the {@code days} - 1 days before, or null. */
+    public HistoryStats.Summary getStatsForLastDays(int days) {
+        HistoryStats stats = writer.getStats();
+        long today = HistoryStats.dayOf(System.currentTimeMillis());
+        return stats == null ? null : stats.getSince(today - days + 1);
+    }
+
+    /** Statistics for each of the latest {@code limit} days with numeric results, newest first, or null. */
+    public List<HistoryStats.Summary> getDailyStats(int limit) {
+        HistoryStats stats = writer.getStats();
+        return stats == null ? null : stats.getDays(limit);
+    }
+
+    /** Writes the whole history to {@code out}; see {@link HistoryTransfer}. */
+    public long exportHistory(OutputStream out, HistoryTransfer.Format format,
+                              HistoryTransfer.ProgressListener listener) throws IOException {
+        return HistoryTransfer.export(writer, out, format, listener);
+    }
+
+    /** Adds the calculations in a CSV or JSON file to the history; see {@link HistoryTransfer}. */
+    public long importHistory(InputStream in, long totalBytes,
+                              HistoryTransfer.ProgressListener listener) throws IOException {
+        return HistoryTransfer.importFrom(writer, in, totalBytes, listener);
+    }
+
+    /** Queue depth and write latency of the background writer. */
+    public HistoryWriter.Metrics getWriterMetrics() {
+        return writer.getMetrics();
+    }
+
+    private static synchronized void openLog(Context context) {
+        if (writer != null) return;
+        try {
+            File filesDir = context.getFilesDir();
+            HistoryStore store = HistoryStore.open(new File(filesDir, LOG_FILE),
+                    new File(filesDir, SEGMENT_DIR), HOT_HISTORY);
+            importPreferences(context, store);
+            // Reading or rebuilding the index and statistics can take a while, so the writer does it
+            writer = new HistoryWriter(store, new File(filesDir, INDEX_FILE),
+                    new File(filesDir, STATS_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Moves history saved by older versions, a JSON list in SharedPreferences, into the store. */
+    private static void importPreferences(Context context, HistoryStore store) throws IOException {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String json = prefs.getString(HISTORY_KEY, null);
+        if (json == null) return;
+
+        Type type = new TypeToken<ArrayList<Calculation>>(){}.getType();
+        List<Calculation> history = new Gson().fromJson(json, type);
+        // A store that already has entries means an earlier import got this far
+        if (store.size() == 0) {
+            // The list is newest first and the store is oldest first
+            for (int i = history.size() - 1; i >= 0; i--) {
+                store.append(history.get(i));
+            }
+            store.flush();
+        }
+        prefs.edit().remove(HISTORY_KEY).apply();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,326 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable file of consecutive calculations, written once when they leave the history
+ * log. Calculations are stored in deflated blocks of {@link #BLOCK_RECORDS}, and a sparse
+ * index of block positions at the end of the file lets a lookup inflate only the block it
+ * needs. Merging segments copies their blocks without inflating them.
+ *
+ * Layout: a 20-byte header (magic, format version, first id, record count), the blocks,
+ * the index of {@code [first id][offset][length][CRC32]} per block, and a 16-byte trailer
+ * holding the index offset, the block count and a CRC32 of header and index.
+ */
+final class HistorySegment implements Closeable {
+    static final int MAGIC = 0x43485347; // "CHSG"
+    static final int VERSION = 1;
+    static final int BLOCK_RECORDS = 128;
+    private static final int HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int TRAILER_SIZE = 16;
+    private static final String SUFFIX = ".seg";
+
+    final File file;
+    final long firstId;
+    final int count;
+    // The sparse index, one entry per block
+    private final long[] blockFirstIds;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockChecksums;
+    private final FileChannel channel;
+
+    private HistorySegment(File file, long firstId, int count, long[] blockFirstIds,
+                           long[] blockOffsets, int[] blockLengths, int[] blockChecksums,
+                           FileChannel channel) {
+        this.file = file;
+        this.firstId = firstId;
+        this.count = count;
+        this.blockFirstIds = blockFirstIds;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.blockChecksums = blockChecksums;
+        this.channel = channel;
+    }
+
+    long endId() {
+        return firstId + count;
+    }
+
+    int blockCount() {
+        return blockFirstIds.length;
+    }
+
+    /** The block holding {@code id}, which must be in this segment. */
+    int blockOf(long id) {
+        int position = Arrays.binarySearch(blockFirstIds, id);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    long blockFirstId(int block) {
+        return blockFirstIds[block];
+    }
+
+    /** Reads and inflates a block into its calculations, in id order. */
+    Calculation[] readBlock(int block, CalculationCodec codec) throws IOException {
+        byte[] compressed = readRawBlock(block);
+        long end = block + 1 < blockFirstIds.length ? blockFirstIds[block + 1] : endId();
+        Calculation[] calculations = new Calculation[(int) (end - blockFirstIds[block])];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[Math.max(compressed.length * 4, 1024)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                int n = inflater.inflate(bytes, length, bytes.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated block in " + file);
+                }
+                length += n;
+            }
+            int p = 0;
+            for (int i = 0; i < calculations.length; i++) {
+                int recordLength = CalculationCodec.getVarint(bytes, p);
+                p += CalculationCodec.varintLength(recordLength);
+                calculations[i] = codec.decode(bytes, p);
+                p += recordLength;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Damaged block in " + file, e);
+        } finally {
+            inflater.end();
+        }
+        return calculations;
+    }
+
+    private byte[] readRawBlock(int block) throws IOException {
+        byte[] compressed = new byte[blockLengths[block]];
+        ByteBuffer target = ByteBuffer.wrap(compressed);
+        long position = blockOffsets[block];
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Truncated " + file);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(compressed, 0, compressed.length);
+        if ((int) crc.getValue() != blockChecksums[block]) {
+            throw new IOException("Damaged block in " + file);
+        }
+        return compressed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /** Name of the segment holding ids {@code [firstId, endId)}, which sorts by first id. */
+    static String fileName(long firstId, long endId) {
+        return String.format(Locale.ROOT, "%019d-%019d%s", firstId, endId, SUFFIX);
+    }
+
+    static boolean isSegmentFile(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    /** Writes {@code calculations}, which have consecutive ids from {@code firstId}. */
+    static HistorySegment write(File directory, long firstId, Calculation[] calculations)
+            throws IOException {
+        Writer writer = new Writer(directory, firstId, firstId + calculations.length);
+        try {
+            CalculationCodec codec = new CalculationCodec();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            byte[] lengthBytes = new byte[5];
+            byte[] output = new byte[8192];
+            try {
+                for (int start = 0; start < calculations.length; start += BLOCK_RECORDS) {
+                    raw.reset();
+                    int end = Math.min(start + BLOCK_RECORDS, calculations.length);
+                    for (int i = start; i < end; i++) {
+                        int length = codec.encode(calculations[i]);
+                        raw.write(lengthBytes, 0, CalculationCodec.putVarint(lengthBytes, 0, length));
+                        raw.write(codec.buffer(), 0, length);
+                    }
+                    deflater.reset();
+                    deflater.setInput(raw.toByteArray());
+                    deflater.finish();
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    while (!deflater.finished()) {
+                        compressed.write(output, 0, deflater.deflate(output));
+                    }
+                    writer.addBlock(firstId + start, compressed.toByteArray());
+                }
+            } finally {
+                deflater.end();
+            }
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes one segment holding the calculations of {@code segments}, which must be
+     * consecutive. Blocks are copied as they are.
+     */
+    static HistorySegment merge(File directory, List<HistorySegment> segments) throws IOException {
+        HistorySegment first = segments.get(0);
+        HistorySegment last = segments.get(segments.size() - 1);
+        Writer writer = new Writer(directory, first.firstId, last.endId());
+        try {
+            for (HistorySegment segment : segments) {
+                for (int block = 0; block < segment.blockCount(); block++) {
+                    writer.addBlock(segment.blockFirstIds[block], segment.readRawBlock(block));
+                }
+            }
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.abandon();
+            throw e;
+        }
+    }
+
+    /** Opens the segment in {@code file}, or throws if it is damaged or not a segment. */
+    static HistorySegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) throw new IOException("Truncated " + file);
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a history segment");
+            int version = header.getInt(4);
+            if (version > VERSION) throw new IOException("Unsupported history segment version " + version);
+            long firstId = header.getLong(8);
+            int count = header.getInt(16);
+
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long indexOffset = trailer.getLong(0);
+            int blocks = trailer.getInt(8);
+            if (blocks < 0 || indexOffset < HEADER_SIZE
+                    || indexOffset + (long) blocks * INDEX_ENTRY_SIZE != size - TRAILER_SIZE) {
+                throw new IOException("Damaged index in " + file);
+            }
+            ByteBuffer index = read(channel, indexOffset, blocks * INDEX_ENTRY_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, HEADER_SIZE);
+            crc.update(index.array(), 0, index.capacity());
+            if ((int) crc.getValue() != trailer.getInt(12)) throw new IOException("Damaged index in " + file);
+
+            long[] blockFirstIds = new long[blocks];
+            long[] blockOffsets = new long[blocks];
+            int[] blockLengths = new int[blocks];
+            int[] blockChecksums = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockFirstIds[i] = index.getLong();
+                blockOffsets[i] = index.getLong();
+                blockLengths[i] = index.getInt();
+                blockChecksums[i] = index.getInt();
+            }
+            return new HistorySegment(file, firstId, count, blockFirstIds, blockOffsets,
+                    blockLengths, blockChecksums, channel);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Damaged " + file, e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Truncated segment");
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Streams blocks into a temporary file and, once the index is written, renames it to
+     * its final name, so a segment file is either complete or absent.
+     */
+    private static class Writer {
+        final File directory;
+        final File temporary;
+        final File target;
+        final long firstId;
+        final long endId;
+        final RandomAccessFile out;
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        final CRC32 crc = new CRC32();
+        int blocks;
+
+        Writer(File directory, long firstId, long endId) throws IOException {
+            this.directory = directory;
+            this.firstId = firstId;
+            this.endId = endId;
+            this.target = new File(directory, fileName(firstId, endId));
+            this.temporary = new File(directory, target.getName() + ".tmp");
+            this.out = new RandomAccessFile(temporary, "rw");
+            out.setLength(0);
+            out.write(header().array());
+        }
+
+        ByteBuffer header() {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(firstId).putInt((int) (endId - firstId));
+            return header;
+        }
+
+        void addBlock(long blockFirstId, byte[] compressed) throws IOException {
+            crc.reset();
+            crc.update(compressed, 0, compressed.length);
+            entry.clear();
+            entry.putLong(blockFirstId).putLong(out.getFilePointer())
+                    .putInt(compressed.length).putInt((int) crc.getValue());
+            index.write(entry.array(), 0, INDEX_ENTRY_SIZE);
+            out.write(compressed);
+            blocks++;
+        }
+
+        HistorySegment finish() throws IOException {
+            long indexOffset = out.getFilePointer();
+            byte[] indexBytes = index.toByteArray();
+            out.write(indexBytes);
+            crc.reset();
+            crc.update(header().array(), 0, HEADER_SIZE);
+            crc.update(indexBytes, 0, indexBytes.length);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            trailer.putLong(indexOffset).putInt(blocks).putInt((int) crc.getValue());
+            out.write(trailer.array());
+            out.getFD().sync();
+            out.close();
+            if (!temporary.renameTo(target)) throw new IOException("Cannot create " + target);
+            return open(target);
+        }
+
+        void abandon() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The write already failed; the temporary file is deleted either way
+            }
+            temporary.delete();
+        }
+    }
+}
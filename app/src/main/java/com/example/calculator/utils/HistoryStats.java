@@ -0,0 +1,426 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Statistics over the numeric results in a {@link HistoryStore}, overall and per day,
+ * kept up to date as calculations are added. Each result is parsed once, when it is
+ * added, into running totals: count, sum, mean and variance (Welford's method), min,
+ * max and a {@link QuantileSketch} for percentiles. Reading them never goes back to the
+ * history.
+ *
+ * Days are in the time zone the device was in when the calculation was added. Like
+ * {@link HistoryIndex}, the file is only a cache and is rebuilt from the store when it
+ * is missing, damaged or out of step.
+ *
+ * The file is a snapshot followed by update records, each holding the total and the
+ * days changed since the previous save, so a save costs what changed rather than the
+ * whole history of days. It is rewritten as a new snapshot once the records outgrow it.
+ */
+public class HistoryStats {
+    static final int MAGIC = 0x43485354; // "CHST"
+    static final int VERSION = 2;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int REBUILD_BATCH = 1024;
+
+    // Covers the calculations with ids firstId to endId - 1
+    private long firstId;
+    private long endId;
+    private Accumulator total = new Accumulator();
+    private final TreeMap<Long, Accumulator> days = new TreeMap<>();
+
+    // What was last saved: the file, its valid length and where its update records start.
+    // A reset, or a save to another file, starts again with a snapshot.
+    private File savedFile;
+    private long savedLength;
+    private long snapshotLength;
+    private long savedEndId;
+    private final Set<Long> changedDays = new HashSet<>();
+
+    /** Empty statistics whose first calculation will have id {@code firstId}. */
+    public HistoryStats(long firstId) {
+        this.firstId = firstId;
+        this.endId = firstId;
+    }
+
+    /** Statistics over every calculation in {@code store}. */
+    public static HistoryStats build(HistoryStore store) throws IOException {
+        HistoryStats stats = new HistoryStats(store.getFirstId());
+        stats.syncWith(store);
+        return stats;
+    }
+
+    /**
+     * Adds the calculation with {@code id}, which must be the id after the last one
+     * added. Ids below the first, cleared since they were queued, are ignored; so are
+     * null calculations and results that are not finite numbers, apart from their id.
+     */
+    public synchronized void add(long id, Calculation calculation) {
+        if (id < firstId) return;
+        if (id != endId) {
+            throw new IllegalArgumentException("Expected id " + endId + ", got " + id);
+        }
+        endId++;
+        if (calculation == null) return;
+        double result = HistoryIndex.parseResult(calculation.getResult());
+        if (Double.isNaN(result) || Double.isInfinite(result)) return;
+
+        total.add(result);
+        long day = dayOf(calculation.getTimestamp());
+        Accumulator accumulator = days.get(day);
+        if (accumulator == null) {
+            accumulator = new Accumulator();
+            days.put(day, accumulator);
+        }
+        accumulator.add(result);
+        changedDays.add(day);
+    }
+
+    /** Forgets everything; the next calculation added will have id {@code firstId}. */
+    public synchronized void reset(long firstId) {
+        this.firstId = firstId;
+        this.endId = firstId;
+        total = new Accumulator();
+        days.clear();
+        savedFile = null;
+    }
+
+    /**
+     * Brings the statistics up to date with {@code store}, adding what was appended
+     * since they were last in step. Returns false if they cover calculations the store
+     * does not, in which case they have to be rebuilt.
+     */
+    public synchronized boolean syncWith(HistoryStore store) throws IOException {
+        long storeFirst = store.getFirstId();
+        long storeEnd = store.getEndId();
+        if (endId > storeEnd || firstId > storeFirst) return false;
+        // The store only drops calculations by clearing, so older ones are all gone
+        if (firstId < storeFirst) reset(storeFirst);
+
+        for (long id = endId; id < storeEnd; id += REBUILD_BATCH) {
+            Calculation[] batch = store.getRange(id, (int) Math.min(REBUILD_BATCH, storeEnd - id));
+            for (int i = 0; i < batch.length; i++) {
+                add(id + i, batch[i]);
+            }
+        }
+        return true;
+    }
+
+    /** One past the id of the last calculation added. */
+    public synchronized long getEndId() {
+        return endId;
+    }
+
+    /** Statistics over every numeric result. */
+    public synchronized Summary getTotal() {
+        return total.summarize(Long.MIN_VALUE);
+    }
+
+    /** Statistics over the results of day {@code fromDay} (see {@link #dayOf}) and later. */
+    public synchronized Summary getSince(long fromDay) {
+        Accumulator merged = new Accumulator();
+        for (Accumulator accumulator : days.tailMap(fromDay, true).values()) {
+            merged.merge(accumulator);
+        }
+        return merged.summarize(fromDay);
+    }
+
+    /** Statistics for each of the latest {@code limit} days with numeric results, newest first. */
+    public synchronized List<Summary> getDays(int limit) {
+        List<Summary> summaries = new ArrayList<>(Math.min(limit, days.size()));
+        for (Map.Entry<Long, Accumulator> entry : days.descendingMap().entrySet()) {
+            if (summaries.size() == limit) break;
+            summaries.add(entry.getValue().summarize(entry.getKey()));
+        }
+        return summaries;
+    }
+
+    /**
+     * Writes the statistics to {@code file}: what changed since the last save to it is
+     * appended, or a whole new snapshot is written through a temporary file.
+     */
+    public synchronized void save(File file) throws IOException {
+        if (!file.equals(savedFile) || savedLength - snapshotLength > snapshotLength) {
+            saveSnapshot(file);
+        } else if (endId != savedEndId || !changedDays.isEmpty()) {
+            saveUpdate(file);
+        }
+    }
+
+    private void saveSnapshot(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        long length;
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(stream, 64 * 1024);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(firstId);
+            out.writeLong(endId);
+            total.write(out);
+            out.writeInt(days.size());
+            for (Map.Entry<Long, Accumulator> entry : days.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+            // The checksum covers everything before it
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            stream.getFD().sync();
+            length = stream.getChannel().position();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        savedFile = file;
+        savedLength = length;
+        snapshotLength = length;
+        savedEndId = endId;
+        changedDays.clear();
+    }
+
+    /** Appends a record of the total and the changed days; see {@link #readUpdate}. */
+    private void saveUpdate(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(firstId);
+        out.writeLong(endId);
+        total.write(out);
+        out.writeInt(changedDays.size());
+        for (long day : changedDays) {
+            out.writeLong(day);
+            days.get(day).write(out);
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Drops whatever a save cut short left after the last whole record
+            raf.setLength(savedLength);
+            raf.seek(savedLength);
+            raf.writeInt(record.length);
+            raf.write(record);
+            raf.writeLong(crc.getValue());
+            raf.getFD().sync();
+            savedLength = raf.getFilePointer();
+        }
+        savedEndId = endId;
+        changedDays.clear();
+    }
+
+    /**
+     * Reads statistics written by {@link #save}, or returns null if they are missing or
+     * damaged. Update records after a damaged or cut-short one are ignored.
+     */
+    public static HistoryStats load(File file) {
+        if (!file.exists()) return null;
+        byte[] data;
+        try (FileInputStream stream = new FileInputStream(file)) {
+            data = new byte[(int) stream.getChannel().size()];
+            new DataInputStream(stream).readFully(data);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+            DataInputStream in = new DataInputStream(bytes);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            HistoryStats stats = new HistoryStats(in.readLong());
+            stats.endId = in.readLong();
+            if (stats.endId < stats.firstId) return null;
+            stats.total = Accumulator.read(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long day = in.readLong();
+                stats.days.put(day, Accumulator.read(in));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - bytes.available());
+            if (in.readLong() != crc.getValue()) return null;
+
+            stats.snapshotLength = data.length - bytes.available();
+            stats.savedLength = stats.snapshotLength;
+            while (stats.readUpdate(in)) {
+                stats.savedLength = data.length - bytes.available();
+            }
+            stats.savedFile = file;
+            stats.savedEndId = stats.endId;
+            return stats;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Applies the next update record, returning false at the end or at a damaged one. */
+    private boolean readUpdate(DataInputStream in) {
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) return false;
+            byte[] record = new byte[length];
+            in.readFully(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if (in.readLong() != crc.getValue()) return false;
+
+            DataInputStream update = new DataInputStream(new ByteArrayInputStream(record));
+            long recordFirstId = update.readLong();
+            long recordEndId = update.readLong();
+            if (recordFirstId != firstId || recordEndId < endId) return false;
+            Accumulator recordTotal = Accumulator.read(update);
+            int count = update.readInt();
+            TreeMap<Long, Accumulator> changed = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                long day = update.readLong();
+                changed.put(day, Accumulator.read(update));
+            }
+            endId = recordEndId;
+            total = recordTotal;
+            days.putAll(changed);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Days since 1970-01-01 in the device's time zone at {@code timestamp}. */
+    public static long dayOf(long timestamp) {
+        long local = timestamp + TimeZone.getDefault().getOffset(timestamp);
+        return Math.floorDiv(local, DAY_MILLIS);
+    }
+
+    /** Statistics over a set of results, as of when they were taken. */
+    public static class Summary {
+        /** Days since 1970-01-01 for a day's statistics, {@code Long.MIN_VALUE} for the total. */
+        public final long day;
+        public final long count;
+        public final double sum;
+        /** NaN when there are no results, as are the rest. */
+        public final double mean;
+        /** Population variance. */
+        public final double variance;
+        public final double min;
+        public final double max;
+        /** Percentiles, within {@link QuantileSketch#RELATIVE_ACCURACY} of a result. */
+        public final double p50;
+        public final double p90;
+        public final double p99;
+
+        Summary(long day, long count, double sum, double mean, double variance, double min,
+                double max, double p50, double p90, double p99) {
+            this.day = day;
+            this.count = count;
+            this.sum = sum;
+            this.mean = mean;
+            this.variance = variance;
+            this.min = min;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        public double standardDeviation() {
+            return Math.sqrt(variance);
+        }
+
+        /** Start of the day in UTC, for formatting with a UTC calendar. */
+        public long dayStartMillis() {
+            return day * DAY_MILLIS;
+        }
+    }
+
+    /** Running statistics, updated in constant time per result and mergeable. */
+    static final class Accumulator {
+        long count;
+        double sum;
+        double mean;
+        // Sum of squared differences from the mean
+        double m2;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        QuantileSketch sketch = new QuantileSketch();
+
+        void add(double value) {
+            count++;
+            sum += value;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sketch.add(value);
+        }
+
+        /** Adds everything {@code other} has seen, as if its values had been added here. */
+        void merge(Accumulator other) {
+            if (other.count == 0) return;
+            long combined = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / combined;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / combined);
+            count = combined;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sketch.merge(other.sketch);
+        }
+
+        Summary summarize(long day) {
+            if (count == 0) {
+                return new Summary(day, 0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                        Double.NaN, Double.NaN, Double.NaN);
+            }
+            return new Summary(day, count, sum, mean, m2 / count, min, max,
+                    percentile(0.5), percentile(0.9), percentile(0.99));
+        }
+
+        /** The sketch's estimate, which can stray just past the exact min and max. */
+        private double percentile(double q) {
+            return Math.max(min, Math.min(max, sketch.quantile(q)));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(count);
+            out.writeDouble(sum);
+            out.writeDouble(mean);
+            out.writeDouble(m2);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            sketch.write(out);
+        }
+
+        static Accumulator read(DataInputStream in) throws IOException {
+            Accumulator accumulator = new Accumulator();
+            accumulator.count = in.readLong();
+            accumulator.sum = in.readDouble();
+            accumulator.mean = in.readDouble();
+            accumulator.m2 = in.readDouble();
+            accumulator.min = in.readDouble();
+            accumulator.max = in.readDouble();
+            accumulator.sketch = QuantileSketch.read(in);
+            return accumulator;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unbounded calculation history kept in tiers, so that memory use does not grow with it:
+ * <ul>
+ * <li>the newest {@code hotCapacity} calculations in a {@link CalculationTable};</li>
+ * <li>the last one to two times {@code hotCapacity} in the {@link HistoryLog}, which
+ * every append goes to;</li>
+ * <li>everything older in immutable {@link HistorySegment} files.</li>
+ * </ul>
+ * Once the log holds twice {@code hotCapacity} calculations, its oldest half is sealed
+ * into a new segment and dropped from the log. A background thread does the sealing and
+ * merges the newest segments whenever the older is no more than twice the size of the
+ * newer, which keeps the number of segments logarithmic in the size of the history.
+ *
+ * Ids are those of the log. A calculation is read from the table, the log or its
+ * segment, whichever holds it; since all three agree, a crash between writing a segment
+ * and dropping its calculations from the log loses nothing. A clear is recorded in a
+ * marker file before anything is deleted, so one cut short by a crash is finished when
+ * the store is next opened rather than leaving cleared calculations behind.
+ */
+public class HistoryStore implements Closeable {
+    // Blocks kept decoded for reading older history, e.g. while scrolling through it
+    private static final int CACHED_BLOCKS = 8;
+    // Holds the end id of a clear that has not finished
+    static final String CLEAR_MARKER = "cleared";
+
+    private final File directory;
+    private final int hotCapacity;
+    private final HistoryLog log;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor();
+    private final CalculationCodec codec = new CalculationCodec();
+
+    // The newest calculations, the one with id i at index i - ringFirstId
+    private final CalculationTable ring;
+    private long ringFirstId;
+
+    // Oldest first, consecutive and not overlapping
+    private List<HistorySegment> segments = new ArrayList<>();
+    private final Map<Long, CalculationTable> blocks =
+            new LinkedHashMap<Long, CalculationTable>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CalculationTable> eldest) {
+                    return size() > CACHED_BLOCKS;
+                }
+            };
+    private boolean sealing;
+    // Bumped by clear, so that background work started before it is thrown away
+    private int epoch;
+
+    private HistoryStore(File logFile, File directory, int hotCapacity) throws IOException {
+        this.directory = directory;
+        this.hotCapacity = hotCapacity;
+        this.ring = new CalculationTable(hotCapacity);
+        this.log = HistoryLog.open(logFile);
+    }
+
+    /**
+     * Opens the history whose log is {@code logFile} and whose segments are in
+     * {@code directory}, creating them if needed. Damaged segment files are skipped.
+     */
+    public static HistoryStore open(File logFile, File directory, int hotCapacity) throws IOException {
+        if (hotCapacity <= 0) throw new IllegalArgumentException("hotCapacity must be positive");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        HistoryStore store = new HistoryStore(logFile, directory, hotCapacity);
+        store.loadSegments();
+        long clearedEnd = readClearMarker(directory);
+        if (clearedEnd >= 0) store.finishClear(clearedEnd);
+        if (!store.segments.isEmpty()) {
+            // Finish a seal interrupted before its calculations left the log
+            long sealedEnd = store.segments.get(store.segments.size() - 1).endId();
+            store.log.discardBefore(sealedEnd);
+            store.log.skipTo(sealedEnd);
+        }
+        store.fillRing();
+        store.scheduleSeal();
+        return store;
+    }
+
+    /** Appends {@code calculation} and returns its id. */
+    public synchronized long append(Calculation calculation) throws IOException {
+        long id = log.append(calculation);
+        ring.add(calculation);
+        ringFirstId = id + 1 - ring.size();
+        scheduleSeal();
+        return id;
+    }
+
+    /** Id of the oldest stored calculation. */
+    public synchronized long getFirstId() {
+        return segments.isEmpty() ? log.getFirstId() : Math.min(segments.get(0).firstId, log.getFirstId());
+    }
+
+    /** One past the id of the newest calculation; the id the next append will get. */
+    public synchronized long getEndId() {
+        return log.getEndId();
+    }
+
+    public synchronized long size() {
+        return getEndId() - getFirstId();
+    }
+
+    /**
+     * The calculations with ids {@code fromId} to {@code fromId + length - 1}, in id
+     * order. Entries are null for ids not stored.
+     */
+    public synchronized Calculation[] getRange(long fromId, int length) throws IOException {
+        Calculation[] range = new Calculation[length];
+        long logFirstId = log.getFirstId();
+        long endId = log.getEndId();
+        long id = Math.max(fromId, getFirstId());
+        long to = Math.min(fromId + length, endId);
+        while (id < to) {
+            if (id >= ringFirstId) {
+                range[(int) (id - fromId)] = ring.get((int) (id - ringFirstId));
+                id++;
+            } else if (id >= logFirstId) {
+                long end = Math.min(to, ringFirstId);
+                Calculation[] fromLog = log.getRange(id, (int) (end - id));
+                System.arraycopy(fromLog, 0, range, (int) (id - fromId), fromLog.length);
+                id = end;
+            } else {
+                id = copyFromSegment(id, Math.min(to, logFirstId), fromId, range);
+            }
+        }
+        return range;
+    }
+
+    /** Up to {@code limit} calculations, newest first. */
+    public List<Calculation> getNewest(int limit) throws IOException {
+        long endId;
+        long fromId;
+        synchronized (this) {
+            endId = getEndId();
+            fromId = Math.max(getFirstId(), endId - limit);
+        }
+        Calculation[] range = getRange(fromId, (int) (endId - fromId));
+        List<Calculation> newest = new ArrayList<>(range.length);
+        for (int i = range.length - 1; i >= 0; i--) {
+            if (range[i] != null) newest.add(range[i]);
+        }
+        return newest;
+    }
+
+    /** Deletes every calculation. Ids carry on from where they were. */
+    public synchronized void clear() throws IOException {
+        writeClearMarker(directory, log.getEndId());
+        epoch++;
+        finishClear(log.getEndId());
+    }
+
+    /** Drops everything below {@code endId}, then the marker saying a clear was under way. */
+    private void finishClear(long endId) throws IOException {
+        log.discardBefore(endId);
+        log.skipTo(endId);
+        ring.clear();
+        ringFirstId = log.getEndId();
+        for (HistorySegment segment : segments) delete(segment);
+        segments = new ArrayList<>();
+        blocks.clear();
+        File marker = new File(directory, CLEAR_MARKER);
+        if (marker.exists() && !marker.delete()) throw new IOException("Cannot delete " + marker);
+    }
+
+    static void writeClearMarker(File directory, long endId) throws IOException {
+        File temporary = new File(directory, CLEAR_MARKER + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            new DataOutputStream(stream).writeLong(endId);
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, CLEAR_MARKER))) {
+            throw new IOException("Cannot write the clear marker in " + directory);
+        }
+    }
+
+    /** The end id of an unfinished clear, or -1 if there is none. */
+    private static long readClearMarker(File directory) throws IOException {
+        File marker = new File(directory, CLEAR_MARKER);
+        if (!marker.exists()) return -1;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(marker))) {
+            return in.readLong();
+        }
+    }
+
+    /** Forces appended calculations to the storage device. */
+    public synchronized void flush() {
+        log.flush();
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Waits for background sealing and merging to finish, then closes the files. */
+    @Override
+    public void close() throws IOException {
+        // Under the lock, so a seal that is finishing cannot schedule another past it
+        synchronized (this) {
+            compactor.shutdown();
+        }
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            log.close();
+            for (HistorySegment segment : segments) segment.close();
+        }
+    }
+
+    private long copyFromSegment(long id, long to, long fromId, Calculation[] range) throws IOException {
+        HistorySegment segment = segmentOf(id);
+        if (segment == null) {
+            // A gap left by a clear: nothing is stored until the next segment or the log
+            long next = to;
+            for (HistorySegment s : segments) {
+                if (s.firstId > id) {
+                    next = Math.min(next, s.firstId);
+                    break;
+                }
+            }
+            return next;
+        }
+        int block = segment.blockOf(id);
+        long blockFirstId = segment.blockFirstId(block);
+        CalculationTable calculations = blocks.get(blockFirstId);
+        if (calculations == null) {
+            calculations = CalculationTable.of(segment.readBlock(block, codec));
+            blocks.put(blockFirstId, calculations);
+        }
+        long end = Math.min(to, blockFirstId + calculations.size());
+        for (; id < end; id++) {
+            range[(int) (id - fromId)] = calculations.get((int) (id - blockFirstId));
+        }
+        return end;
+    }
+
+    private HistorySegment segmentOf(long id) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            HistorySegment segment = segments.get(mid);
+            if (id < segment.firstId) high = mid - 1;
+            else if (id >= segment.endId()) low = mid + 1;
+            else return segment;
+        }
+        return null;
+    }
+
+    private void fillRing() {
+        long endId = log.getEndId();
+        ringFirstId = Math.max(log.getFirstId(), endId - hotCapacity);
+        Calculation[] newest = log.getRange(ringFirstId, (int) (endId - ringFirstId));
+        ring.clear();
+        for (Calculation calculation : newest) ring.add(calculation);
+    }
+
+    /**
+     * Reads the segment files, keeping for each id range the widest segment: a crash
+     * during a merge can leave the merged segment next to the ones it replaces.
+     */
+    private void loadSegments() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) throw new IOException("Cannot list " + directory);
+        List<HistorySegment> found = new ArrayList<>();
+        for (File file : files) {
+            if (!HistorySegment.isSegmentFile(file)) {
+                // Left by a write that did not finish
+                if (file.getName().endsWith(".tmp")) file.delete();
+                continue;
+            }
+            try {
+                found.add(HistorySegment.open(file));
+            } catch (IOException e) {
+                // Its calculations are lost either way; the rest of the history is not
+            }
+        }
+        found.sort(Comparator.<HistorySegment>comparingLong(s -> s.firstId)
+                .thenComparing(Comparator.comparingLong(HistorySegment::endId).reversed()));
+        long covered = Long.MIN_VALUE;
+        for (HistorySegment segment : found) {
+            if (segment.endId() <= covered) {
+                delete(segment);
+            } else if (segment.firstId < covered) {
+                // Overlaps without being covered; should not happen, so keep the older
+                delete(segment);
+            } else {
+                segments.add(segment);
+                covered = segment.endId();
+            }
+        }
+    }
+
+    /** Seals the log's oldest calculations into a segment once it holds enough of them. */
+    private void scheduleSeal() {
+        if (sealing || log.size() < 2 * hotCapacity || compactor.isShutdown()) return;
+        sealing = true;
+        int sealEpoch = epoch;
+        long fromId = log.getFirstId();
+        Calculation[] sealed = log.getRange(fromId, log.size() - hotCapacity);
+        compactor.execute(() -> seal(fromId, sealed, sealEpoch));
+    }
+
+    private void seal(long fromId, Calculation[] sealed, int sealEpoch) {
+        try {
+            HistorySegment segment = HistorySegment.write(directory, fromId, sealed);
+            synchronized (this) {
+                sealing = false;
+                if (sealEpoch != epoch) {
+                    delete(segment);
+                    return;
+                }
+                List<HistorySegment> updated = new ArrayList<>(segments);
+                updated.add(segment);
+                segments = updated;
+                log.discardBefore(segment.endId());
+            }
+            mergeNewest();
+            synchronized (this) {
+                scheduleSeal();
+            }
+        } catch (IOException e) {
+            // The calculations are still in the log; the next append tries again
+            synchronized (this) {
+                sealing = false;
+            }
+        }
+    }
+
+    /** Merges the two newest segments while the older is at most twice the newer. */
+    private void mergeNewest() throws IOException {
+        while (true) {
+            List<HistorySegment> pair;
+            int mergeEpoch;
+            synchronized (this) {
+                int n = segments.size();
+                if (n < 2) return;
+                HistorySegment older = segments.get(n - 2);
+                HistorySegment newer = segments.get(n - 1);
+                if (older.count > 2L * newer.count || older.endId() != newer.firstId) return;
+                pair = Arrays.asList(older, newer);
+                mergeEpoch = epoch;
+            }
+            HistorySegment merged = HistorySegment.merge(directory, pair);
+            synchronized (this) {
+                if (mergeEpoch != epoch) {
+                    delete(merged);
+                    return;
+                }
+                List<HistorySegment> updated = new ArrayList<>(segments);
+                updated.removeAll(pair);
+                updated.add(merged);
+                segments = updated;
+                // Cached blocks are keyed by first id, which merging does not change
+                for (HistorySegment segment : pair) delete(segment);
+            }
+        }
+    }
+
+    private static void delete(HistorySegment segment) {
+        try {
+            segment.close();
+        } catch (IOException ignored) {
+            // Deleting it is all that is left to do
+        }
+        segment.file.delete();
+    }
+}
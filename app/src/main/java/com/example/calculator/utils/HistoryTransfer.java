@@ -0,0 +1,404 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports history to CSV or JSON files and imports it back, streaming both ways so that
+ * memory use does not depend on the size of the file or the history.
+ *
+ * CSV has a header row and the columns previous, expression, result and timestamp in
+ * epoch milliseconds, quoted where needed. An empty unquoted field is null and a quoted
+ * one is an empty string. JSON is an array of objects with the same names, which is
+ * also the form older versions kept history in.
+ *
+ * Imports go to the history in batches of {@link #BATCH_SIZE}, each queued once the one
+ * before has been written, and the index and statistics files are saved once at the end
+ * rather than as the import goes. With the history's index kept to a window of recent
+ * calculations (see {@link HistoryWriter}), an import of any size runs in constant
+ * memory. A file that fails to parse partway leaves what came before the error imported.
+ */
+public final class HistoryTransfer {
+    static final int BATCH_SIZE = 1000;
+    private static final String[] COLUMNS = {"previous", "expression", "result", "timestamp"};
+
+    public enum Format { CSV, JSON }
+
+    /** Told how far a transfer has got; {@code total} is -1 when not known. */
+    public interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    private HistoryTransfer() {}
+
+    /**
+     * Writes the whole history to {@code out}, oldest first, and returns the number of
+     * calculations written. Progress is counted in calculations.
+     */
+    public static long export(HistoryWriter history, OutputStream out, Format format,
+                              ProgressListener listener) throws IOException {
+        long firstId = history.getFirstId();
+        long endId = history.getEndId();
+        long total = endId - firstId;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonWriter json = null;
+        if (format == Format.JSON) {
+            json = new JsonWriter(writer);
+            json.setSerializeNulls(false);
+            json.beginArray();
+        } else {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        long written = 0;
+        for (long id = firstId; id < endId; id += BATCH_SIZE) {
+            Calculation[] batch = history.getRange(id, (int) Math.min(BATCH_SIZE, endId - id));
+            for (Calculation calculation : batch) {
+                if (calculation == null) continue;
+                if (json != null) writeJson(json, calculation);
+                else writeCsv(writer, calculation);
+                written++;
+            }
+            if (listener != null) listener.onProgress(id + batch.length - firstId, total);
+        }
+
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        } else {
+            writer.flush();
+        }
+        return written;
+    }
+
+    /**
+     * Reads calculations from {@code in}, in either format, and adds them to the history.
+     * Returns the number imported. Progress is counted in bytes of {@code totalBytes},
+     * which may be -1 when the length is not known.
+     */
+    public static long importFrom(HistoryWriter history, InputStream in, long totalBytes,
+                                  ProgressListener listener) throws IOException {
+        CountingInputStream counted = new CountingInputStream(in);
+        Reader reader = new InputStreamReader(counted, StandardCharsets.UTF_8);
+        Source source = detect(reader);
+
+        List<Calculation> batch = new ArrayList<>(BATCH_SIZE);
+        long imported = 0;
+        Calculation calculation;
+        history.beginImport();
+        try {
+            try {
+                while ((calculation = source.next()) != null) {
+                    batch.add(calculation);
+                    if (batch.size() == BATCH_SIZE) {
+                        imported += store(history, batch);
+                        if (listener != null) listener.onProgress(counted.count, totalBytes);
+                    }
+                }
+            } catch (IOException e) {
+                store(history, batch);
+                throw e;
+            }
+            imported += store(history, batch);
+        } finally {
+            history.endImport();
+        }
+        if (listener != null) listener.onProgress(counted.count, totalBytes);
+        return imported;
+    }
+
+    /** Queues a batch once the ones before are written, so batches never pile up in memory. */
+    private static int store(HistoryWriter history, List<Calculation> batch) throws IOException {
+        int size = batch.size();
+        if (size == 0) return 0;
+        history.awaitQueueBelow(BATCH_SIZE);
+        history.addAll(batch);
+        batch.clear();
+        return size;
+    }
+
+    /** Picks the format from the first character that is not a space or byte order mark. */
+    private static Source detect(Reader reader) throws IOException {
+        PeekingReader peeking = new PeekingReader(reader);
+        int c;
+        while ((c = peeking.peek()) == '\uFEFF' || (c >= 0 && Character.isWhitespace(c))) {
+            peeking.read();
+        }
+        return c == '[' ? new JsonSource(peeking) : new CsvSource(peeking);
+    }
+
+    private static void writeJson(JsonWriter json, Calculation calculation) throws IOException {
+        json.beginObject();
+        json.name(COLUMNS[0]).value(calculation.getPrevious());
+        json.name(COLUMNS[1]).value(calculation.getExpression());
+        json.name(COLUMNS[2]).value(calculation.getResult());
+        json.name(COLUMNS[3]).value(calculation.getTimestamp());
+        json.endObject();
+    }
+
+    private static void writeCsv(Writer writer, Calculation calculation) throws IOException {
+        writeCsvField(writer, calculation.getPrevious());
+        writer.write(',');
+        writeCsvField(writer, calculation.getExpression());
+        writer.write(',');
+        writeCsvField(writer, calculation.getResult());
+        writer.write(',');
+        writer.write(Long.toString(calculation.getTimestamp()));
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) return;
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private interface Source {
+        /** The next calculation, or null at the end of the file. */
+        Calculation next() throws IOException;
+    }
+
+    private static class JsonSource implements Source {
+        final JsonReader json;
+        boolean started;
+
+        JsonSource(Reader reader) {
+            json = new JsonReader(reader);
+            json.setLenient(false);
+        }
+
+        @Override
+        public Calculation next() throws IOException {
+            try {
+                return read();
+            } catch (IllegalStateException | NumberFormatException e) {
+                // Well-formed JSON that is not a list of calculations
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        private Calculation read() throws IOException {
+            if (!started) {
+                json.beginArray();
+                started = true;
+            }
+            if (!json.hasNext()) {
+                json.endArray();
+                return null;
+            }
+            String previous = null;
+            String expression = null;
+            String result = null;
+            long timestamp = 0;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "previous":
+                        previous = json.nextString();
+                        break;
+                    case "expression":
+                        expression = json.nextString();
+                        break;
+                    case "result":
+                        result = json.nextString();
+                        break;
+                    case "timestamp":
+                        timestamp = json.nextLong();
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+            return new Calculation(previous, expression, result, timestamp);
+        }
+    }
+
+    private static class CsvSource implements Source {
+        final PeekingReader reader;
+        final StringBuilder field = new StringBuilder();
+        final String[] fields = new String[COLUMNS.length];
+        long line = 1;
+        boolean checkedHeader;
+
+        CsvSource(PeekingReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Calculation next() throws IOException {
+            while (true) {
+                long recordLine = line;
+                int count = readRecord();
+                if (count < 0) return null;
+                // Blank lines carry nothing
+                if (count == 1 && fields[0] == null) continue;
+                if (!checkedHeader) {
+                    checkedHeader = true;
+                    if (COLUMNS[0].equals(fields[0]) && COLUMNS[1].equals(fields[1])) continue;
+                }
+                if (count < COLUMNS.length) {
+                    throw new IOException("Line " + recordLine + ": expected " + COLUMNS.length
+                            + " fields, found " + count);
+                }
+                long timestamp;
+                try {
+                    timestamp = fields[3] == null ? 0 : Long.parseLong(fields[3].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + recordLine + ": bad timestamp " + fields[3]);
+                }
+                return new Calculation(fields[0], fields[1], fields[2], timestamp);
+            }
+        }
+
+        /** Reads one record into fields and returns its field count, or -1 at the end. */
+        private int readRecord() throws IOException {
+            if (reader.peek() < 0) return -1;
+            int count = 0;
+            while (true) {
+                String value = readField();
+                if (count < fields.length) fields[count] = value;
+                count++;
+                int c = reader.read();
+                if (c == ',') continue;
+                if (c == '\r' && reader.peek() == '\n') reader.read();
+                if (c == '\r' || c == '\n') line++;
+                for (int i = count; i < fields.length; i++) fields[i] = null;
+                return count;
+            }
+        }
+
+        /** Reads a field up to, not including, the comma or line break that ends it. */
+        private String readField() throws IOException {
+            field.setLength(0);
+            if (reader.peek() != '"') {
+                int c;
+                while ((c = reader.peek()) >= 0 && c != ',' && c != '\r' && c != '\n') {
+                    field.append((char) reader.read());
+                }
+                return field.length() == 0 ? null : field.toString();
+            }
+            reader.read();
+            while (true) {
+                int c = reader.read();
+                if (c < 0) throw new IOException("Line " + line + ": unterminated quote");
+                if (c == '"') {
+                    if (reader.peek() != '"') break;
+                    reader.read();
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            }
+            return field.toString();
+        }
+    }
+
+    /** Buffered reader with one character of lookahead. */
+    private static class PeekingReader extends Reader {
+        final Reader in;
+        final char[] buffer = new char[64 * 1024];
+        int position;
+        int limit;
+
+        PeekingReader(Reader in) {
+            this.in = in;
+        }
+
+        int peek() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            if (position == limit && !fill()) return -1;
+            int n = Math.min(length, limit - position);
+            System.arraycopy(buffer, position, target, offset, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n <= 0) return false;
+            position = 0;
+            limit = n;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind front for a {@link HistoryStore}, its {@link HistoryIndex} and its
+ * {@link HistoryStats}. Additions are queued in memory and given their ids straight away;
+ * a background thread writes whatever has queued up as one batch and forces it to
+ * storage once, and a second one then indexes it and adds it to the statistics.
+ * Reads see queued calculations as if they were already stored.
+ *
+ * The first addition after a write waits {@link #LINGER_MILLIS} before being written,
+ * so that a burst of additions goes out together. {@link #flush()} writes the queue
+ * immediately and waits for it.
+ *
+ * The index and statistics can be loaded, or rebuilt, on the indexing thread before
+ * anything else runs there, so neither opening a long history nor writing to it waits
+ * for them; until they are ready {@link #search} and {@link #getStats} return null.
+ *
+ * Only the newest {@link #MAX_INDEXED} calculations are indexed, so memory stays the same
+ * however long the history grows; searches that find too few among them go on to scan
+ * the older ones in the store.
+ */
+public class HistoryWriter {
+    static final long LINGER_MILLIS = 100;
+    // Calculations indexed since the last save are re-indexed from the store on startup,
+    // so the index and statistics files only need writing now and then
+    private static final int INDEX_SAVE_INTERVAL = 256;
+    // At about 100 bytes each, the index stays within 10 to 20 MB
+    static final int MAX_INDEXED = 100_000;
+    private static final int SCAN_BATCH = 1024;
+
+    private final HistoryStore store;
+    // Null until loaded or rebuilt, or if that failed with openError
+    private volatile HistoryIndex index;
+    private volatile HistoryStats stats;
+    private volatile IOException openError;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final File indexFile;
+    private final File statsFile;
+    private final int maxIndexed;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    // Index and statistics updates, in the order the calculations were stored
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor();
+
+    // Queued calculations, with ids from pendingFirstId. They stay queued until stored,
+    // so that reads find them in one place or the other.
+    private final List<Calculation> pending = new ArrayList<>();
+    private long pendingFirstId;
+    // Stored calculations not yet indexed, with ids from unindexedFirstId up to
+    // pendingFirstId, so that searches can scan them instead
+    private final List<Calculation> unindexed = new ArrayList<>();
+    private long unindexedFirstId;
+    // Set by a clear before the statistics were open, which then still count what it cleared
+    private long statsClearedEnd = -1;
+    // Ids below this were cleared, even if the clear has not reached the store yet
+    private long clearedBefore;
+    private boolean writeScheduled;
+    private int unsavedIndexEntries;
+    // Imports in progress, during which the index and statistics are only saved at the end
+    private int importing;
+    private IOException lastError;
+
+    private int maxQueueDepth;
+    private long batches;
+    private long written;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+    private long indexSaves;
+
+    public HistoryWriter(HistoryStore store, HistoryIndex index, File indexFile,
+                         HistoryStats stats, File statsFile) {
+        this.store = store;
+        this.index = index;
+        this.indexFile = indexFile;
+        this.stats = stats;
+        this.statsFile = statsFile;
+        this.maxIndexed = MAX_INDEXED;
+        this.pendingFirstId = store.getEndId();
+        this.unindexedFirstId = pendingFirstId;
+        this.clearedBefore = store.getFirstId();
+        ready.complete(null);
+    }
+
+    /**
+     * A writer whose index and statistics are read from their files in the background,
+     * and rebuilt from the store there if a file is missing, damaged or ahead of the store.
+     */
+    public HistoryWriter(HistoryStore store, File indexFile, File statsFile) {
+        this(store, indexFile, statsFile, MAX_INDEXED);
+    }
+
+    HistoryWriter(HistoryStore store, File indexFile, File statsFile, int maxIndexed) {
+        this.store = store;
+        this.indexFile = indexFile;
+        this.statsFile = statsFile;
+        this.maxIndexed = maxIndexed;
+        this.pendingFirstId = store.getEndId();
+        this.unindexedFirstId = pendingFirstId;
+        this.clearedBefore = store.getFirstId();
+        indexer.execute(this::open);
+    }
+
+    /** Queues {@code calculation} for writing and returns the id it will be stored under. */
+    public synchronized long add(Calculation calculation) {
+        long id = pendingFirstId + pending.size();
+        pending.add(calculation);
+        maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writer.schedule(this::writeAllPending, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return id;
+    }
+
+    /** Queues several calculations at once; see {@link #add}. Returns the id of the first. */
+    public synchronized long addAll(List<Calculation> calculations) {
+        long id = pendingFirstId + pending.size();
+        if (calculations.isEmpty()) return id;
+        pending.addAll(calculations);
+        maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writer.schedule(this::writeAllPending, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return id;
+    }
+
+    public synchronized long getFirstId() {
+        return Math.max(store.getFirstId(), clearedBefore);
+    }
+
+    public synchronized long getEndId() {
+        return pendingFirstId + pending.size();
+    }
+
+    /** Calculations by id, null where an id is not stored or queued. */
+    public Calculation[] getRange(long fromId, int length) throws IOException {
+        Calculation[] range = new Calculation[length];
+        long end = fromId + length;
+        long from;
+        long storedEnd;
+        synchronized (this) {
+            from = Math.max(fromId, clearedBefore);
+            storedEnd = Math.min(end, pendingFirstId);
+            long queuedEnd = Math.min(end, pendingFirstId + pending.size());
+            for (long id = Math.max(from, pendingFirstId); id < queuedEnd; id++) {
+                range[(int) (id - fromId)] = pending.get((int) (id - pendingFirstId));
+            }
+        }
+        // Stored calculations never change, so they are read without holding up additions
+        if (from < storedEnd) {
+            Calculation[] stored = store.getRange(from, (int) (storedEnd - from));
+            System.arraycopy(stored, 0, range, (int) (from - fromId), stored.length);
+        }
+        return range;
+    }
+
+    /**
+     * Ids of up to {@code limit} calculations matching {@code query}, newest first;
+     * queued and unindexed ones come from a scan, then the index, then a scan of what is
+     * too old to be indexed. Returns null while the index is still being loaded or rebuilt.
+     *
+     * @throws UncheckedIOException if the index could not be rebuilt
+     */
+    public long[] search(HistoryIndex.Query query, int limit) {
+        HistoryIndex index = this.index;
+        if (index == null) {
+            if (openError != null) throw new UncheckedIOException(openError);
+            return null;
+        }
+        long[] queued;
+        int count = 0;
+        long floor;
+        long queuedFrom;
+        synchronized (this) {
+            floor = clearedBefore;
+            queuedFrom = unindexedFirstId;
+            queued = new long[Math.min(limit, pending.size() + unindexed.size())];
+            for (int i = pending.size() - 1; i >= 0 && count < queued.length; i--) {
+                long id = pendingFirstId + i;
+                if (id >= floor && query.matches(pending.get(i))) queued[count++] = id;
+            }
+            for (int i = unindexed.size() - 1; i >= 0 && count < queued.length; i--) {
+                long id = unindexedFirstId + i;
+                if (id >= floor && query.matches(unindexed.get(i))) queued[count++] = id;
+            }
+        }
+        long[] stored = index.search(query, limit - count, id -> {
+            try {
+                Calculation calculation = store.getRange(id, 1)[0];
+                return calculation == null ? null : calculation.getExpression();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long[] ids = new long[limit];
+        System.arraycopy(queued, 0, ids, 0, count);
+        for (long id : stored) {
+            // The index can already hold scanned ids, or still hold cleared ones
+            if (id < floor || id >= queuedFrom) continue;
+            if (count < limit) ids[count++] = id;
+        }
+        // Newest first, the rest come after whatever the index holds
+        long end = Math.min(index.getFirstId(), queuedFrom);
+        try {
+            while (count < limit && end > floor) {
+                long from = Math.max(floor, end - SCAN_BATCH);
+                Calculation[] batch = store.getRange(from, (int) (end - from));
+                for (int i = batch.length - 1; i >= 0 && count < limit; i--) {
+                    if (batch[i] != null && query.matches(batch[i])) ids[count++] = from + i;
+                }
+                end = from;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Runs {@code action} once the index and statistics are loaded or rebuilt, or failed
+     * to be, on the indexing thread or at once.
+     */
+    public void whenReady(Runnable action) {
+        ready.thenRun(action);
+    }
+
+    /**
+     * Statistics over the stored calculations, or null while they are still being loaded
+     * or rebuilt; queued ones join them when written, and reading them costs the same
+     * however long the history is.
+     *
+     * @throws UncheckedIOException if the statistics could not be rebuilt
+     */
+    public HistoryStats getStats() {
+        HistoryStats stats = this.stats;
+        if (stats == null && openError != null) throw new UncheckedIOException(openError);
+        return stats;
+    }
+
+    /** Clears the history. Reads stop seeing it at once; the store is cleared behind. */
+    public synchronized void clear() {
+        long clearedEnd = getEndId();
+        clearedBefore = clearedEnd;
+        // Calculations queued before the clear are ignored by the statistics when written
+        if (stats != null) {
+            stats.reset(clearedEnd);
+        } else {
+            statsClearedEnd = clearedEnd;
+        }
+        writer.execute(() -> {
+            // Written only for their ids; anything queued after the clear must survive it
+            writePending(clearedEnd);
+            try {
+                store.clear();
+            } catch (IOException e) {
+                recordError(e);
+                return;
+            }
+            long firstId = store.getFirstId();
+            indexer.execute(() -> {
+                try {
+                    if (index != null) index.retainFrom(firstId);
+                    saveIndex();
+                } catch (IOException e) {
+                    recordError(e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stops writes saving the index and statistics files until {@link #endImport}, so that
+     * an import saves them once instead of every {@link #INDEX_SAVE_INTERVAL} calculations.
+     */
+    public synchronized void beginImport() {
+        importing++;
+    }
+
+    /**
+     * Ends {@link #beginImport}: writes everything queued, saves the index and statistics
+     * and waits until they are on storage.
+     */
+    public void endImport() throws IOException {
+        synchronized (this) {
+            importing--;
+        }
+        flush();
+        await(indexer.submit(() -> {
+            indexWritten();
+            try {
+                if (unsavedIndexEntries > 0) saveIndex();
+            } catch (IOException e) {
+                recordError(e);
+            }
+        }));
+    }
+
+    /**
+     * Waits until fewer than {@code limit} calculations are queued or unindexed, writing
+     * them straight away, so that a caller adding faster than they are written and
+     * indexed does not pile them up.
+     *
+     * @throws IOException if a write failed, which would otherwise leave them queued
+     */
+    public synchronized void awaitQueueBelow(int limit) throws IOException {
+        if (pending.size() + unindexed.size() < limit) return;
+        writer.execute(this::writeAllPending);
+        while (pending.size() + unindexed.size() >= limit) {
+            if (lastError != null) {
+                IOException error = lastError;
+                lastError = null;
+                throw error;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for history writes", e);
+            }
+        }
+    }
+
+    /**
+     * Writes everything queued and forces it to storage, waiting until it has, and until
+     * it is indexed once the index is open. It never waits for the index and statistics
+     * to be loaded or rebuilt, so it stays quick enough to call when an activity pauses.
+     *
+     * @throws IOException if the queue could not be written; it stays queued
+     */
+    public void flush() throws IOException {
+        await(writer.submit(this::writeAllPending));
+        if (ready.isDone()) await(indexer.submit(() -> { }));
+    }
+
+    /** Waits for {@code done}, then throws the last write error, if any. */
+    private void await(Future<?> done) throws IOException {
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing history", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        synchronized (this) {
+            if (lastError != null) {
+                IOException error = lastError;
+                lastError = null;
+                throw error;
+            }
+        }
+    }
+
+    /** Writes what is queued, then waits for background work and closes the store. */
+    public void close() throws IOException {
+        flush();
+        // The writer hands work to the indexer, so it goes first
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+            indexer.shutdown();
+            indexer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        store.close();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(pending.size(), maxQueueDepth, batches, written,
+                lastFlushNanos, maxFlushNanos, totalFlushNanos, indexSaves);
+    }
+
+    private void writeAllPending() {
+        synchronized (this) {
+            writeScheduled = false;
+        }
+        writePending(Long.MAX_VALUE);
+    }
+
+    /** Writes the queued calculations with ids below {@code endId}; runs on the writer thread. */
+    private void writePending(long endId) {
+        List<Calculation> batch;
+        long firstId;
+        synchronized (this) {
+            int count = (int) Math.min(pending.size(), Math.max(0, endId - pendingFirstId));
+            if (count == 0) return;
+            batch = new ArrayList<>(pending.subList(0, count));
+            firstId = pendingFirstId;
+        }
+
+        long start = System.nanoTime();
+        int stored = 0;
+        try {
+            for (Calculation calculation : batch) {
+                long id = store.append(calculation);
+                if (id != firstId + stored) {
+                    throw new IOException("History store gave id " + id + ", expected " + (firstId + stored));
+                }
+                stored++;
+            }
+            store.flush();
+        } catch (IOException e) {
+            recordError(e);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            unindexed.addAll(pending.subList(0, stored));
+            pending.subList(0, stored).clear();
+            pendingFirstId += stored;
+            notifyAll();
+            if (stored == 0) return;
+            indexer.execute(this::indexWritten);
+            batches++;
+            written += stored;
+            lastFlushNanos = elapsed;
+            maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+            totalFlushNanos += elapsed;
+        }
+    }
+
+    /** Indexes what has been stored since; runs on the indexing thread. */
+    private void indexWritten() {
+        List<Calculation> batch;
+        long firstId;
+        boolean saveAllowed;
+        synchronized (this) {
+            if (unindexed.isEmpty()) return;
+            batch = new ArrayList<>(unindexed);
+            firstId = unindexedFirstId;
+            saveAllowed = importing == 0;
+        }
+        // Whatever was stored before the index or statistics were loaded is in them already
+        HistoryIndex index = this.index;
+        if (index != null) {
+            for (long id = Math.max(firstId, index.getEndId()); id < firstId + batch.size(); id++) {
+                index.add(id, batch.get((int) (id - firstId)));
+            }
+            if (index.size() > maxIndexed) index.retainFrom(index.getEndId() - maxIndexed);
+        }
+        HistoryStats stats = this.stats;
+        if (stats != null) {
+            for (long id = Math.max(firstId, stats.getEndId()); id < firstId + batch.size(); id++) {
+                stats.add(id, batch.get((int) (id - firstId)));
+            }
+        }
+        synchronized (this) {
+            unindexed.subList(0, batch.size()).clear();
+            unindexedFirstId += batch.size();
+            notifyAll();
+        }
+        unsavedIndexEntries += batch.size();
+        try {
+            if (saveAllowed && unsavedIndexEntries >= INDEX_SAVE_INTERVAL) saveIndex();
+        } catch (IOException e) {
+            recordError(e);
+        }
+    }
+
+    /**
+     * Runs first on the indexing thread. Everything stored since the writer was created
+     * is still unindexed, so it is indexed after, whether or not the store had it yet.
+     */
+    private void open() {
+        try {
+            // A missing or damaged file, or one ahead of the store, is rebuilt
+            HistoryStats loadedStats = HistoryStats.load(statsFile);
+            if (loadedStats == null || !loadedStats.syncWith(store)) {
+                loadedStats = HistoryStats.build(store);
+                loadedStats.save(statsFile);
+            }
+            HistoryIndex loadedIndex = HistoryIndex.load(indexFile);
+            if (loadedIndex == null || !loadedIndex.syncWith(store, maxIndexed)) {
+                loadedIndex = HistoryIndex.build(store, maxIndexed);
+                loadedIndex.save(indexFile);
+            }
+            synchronized (this) {
+                // Loaded from before a clear made since
+                if (statsClearedEnd >= 0) loadedStats.reset(statsClearedEnd);
+                stats = loadedStats;
+                index = loadedIndex;
+            }
+        } catch (IOException e) {
+            openError = e;
+            recordError(e);
+        }
+        ready.complete(null);
+    }
+
+    private void saveIndex() throws IOException {
+        if (index != null) index.save(indexFile);
+        if (stats != null) stats.save(statsFile);
+        unsavedIndexEntries = 0;
+        synchronized (this) {
+            indexSaves++;
+        }
+    }
+
+    private synchronized void recordError(IOException e) {
+        lastError = e;
+        notifyAll();
+    }
+
+    /** Queue and write statistics, as of when they were taken. */
+    public static class Metrics {
+        /** Calculations queued and not yet stored. */
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        /** Batches written, each forced to storage once. */
+        public final long batches;
+        /** Calculations written. */
+        public final long written;
+        /** Time the last batch took to write and force, in nanoseconds. */
+        public final long lastFlushNanos;
+        public final long maxFlushNanos;
+        private final long totalFlushNanos;
+        /** Times the index and statistics files were saved. */
+        public final long indexSaves;
+
+        Metrics(int queueDepth, int maxQueueDepth, long batches, long written,
+                long lastFlushNanos, long maxFlushNanos, long totalFlushNanos, long indexSaves) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.batches = batches;
+            this.written = written;
+            this.lastFlushNanos = lastFlushNanos;
+            this.maxFlushNanos = maxFlushNanos;
+            this.totalFlushNanos = totalFlushNanos;
+            this.indexSaves = indexSaves;
+        }
+
+        public long averageFlushNanos() {
+            return batches == 0 ? 0 : totalFlushNanos / batches;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+
+/**
+ * Keystroke-driven evaluator used for the live preview. Parser state (operand and
+ * operator stacks) is kept as a chain of immutable snapshots, one per input character,
+ * so appending a character only processes that character and deleting one just steps
+ * back to the previous snapshot. Evaluating only has to reduce the operators that are
+ * still pending, which is independent of how long the expression already is.
+ *
+ * Accepts exactly the same language as {@link ExpressionParser} and produces the same
+ * values as {@link CompiledExpression}.
+ */
+public class IncrementalEvaluator {
+    private static final int RADIAN_ERROR = 1;
+    private static final int DEGREE_ERROR = 2;
+    private static final String[] FUNCTIONS = {"sin", "cos", "tan", "log", "ln", "√"};
+
+    private final StringBuilder text = new StringBuilder();
+    private State state = State.INITIAL;
+
+    // Working copy of the current snapshot while a character is being processed
+    private Operand operands;
+    private Operator operators;
+    private int numberStart;
+    private String word;
+    private boolean expectOperand;
+
+    public void append(CharSequence input) {
+        for (int i = 0; i < input.length(); i++) {
+            append(input.charAt(i));
+        }
+    }
+
+    public void append(char c) {
+        text.append(c);
+        if (state.error) {
+            state = new State(state, null, null, -1, null, true, true);
+            return;
+        }
+        load(state);
+        boolean ok;
+        try {
+            ok = feed(c);
+        } catch (NumberFormatException e) {
+            ok = false;
+        }
+        state = new State(state, operands, operators, numberStart, word, expectOperand, !ok);
+    }
+
+    public void deleteLast() {
+        if (state.previous == null) return;
+        text.setLength(text.length() - 1);
+        state = state.previous;
+    }
+
+    public void reset() {
+        text.setLength(0);
+        state = State.INITIAL;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Evaluates the input seen so far, closing any parentheses that are still open.
+     *
+     * @throws IllegalArgumentException if the input is not a complete expression
+     */
+    public double evaluate(boolean isRadian) {
+        if (state.error) throw new IllegalArgumentException("Invalid expression");
+        load(state);
+        flushNumber(text.length());
+        if (word != null || expectOperand) {
+            throw new IllegalArgumentException("Incomplete expression");
+        }
+        while (operators != null) {
+            if (operators.paren) closeParen();
+            else reduce();
+        }
+        if (operands.next != null) throw new IllegalArgumentException("Invalid expression");
+        if ((operands.errors & (isRadian ? RADIAN_ERROR : DEGREE_ERROR)) != 0) {
+            throw new ArithmeticException("Invalid operation");
+        }
+        return isRadian ? operands.radian : operands.degree;
+    }
+
+    private void load(State s) {
+        operands = s.operands;
+        operators = s.operators;
+        numberStart = s.numberStart;
+        word = s.word;
+        expectOperand = s.expectOperand;
+    }
+
+    private boolean feed(char c) {
+        if (numberStart >= 0) {
+            if ((c >= '0' && c <= '9') || c == '.') return true;
+            flushNumber(text.length() - 1);
+        }
+
+        if (word != null) {
+            if (c == '(' && isFunction(word)) {
+                operators = new Operator(functionKind(word), true, operators);
+                word = null;
+                return true;
+            }
+            if (c == ' ' && isFunction(word)) return true;
+            word = word + c;
+            return isFunctionPrefix(word);
+        }
+
+        if (c == ' ') return true;
+
+        if (expectOperand) {
+            if ((c >= '0' && c <= '9') || c == '.') {
+                numberStart = text.length() - 1;
+                expectOperand = false;
+                return true;
+            }
+            switch (c) {
+                case 'π': pushOperand(Math.PI, Math.PI, 0); expectOperand = false; return true;
+                case 'e': pushOperand(Math.E, Math.E, 0); expectOperand = false; return true;
+                case '(': operators = new Operator(null, true, operators); return true;
+                case '+': return true;
+                case '-': operators = new Operator(Kind.NEGATE, false, operators); return true;
+                default:
+                    word = String.valueOf(c);
+                    return isFunctionPrefix(word);
+            }
+        }
+
+        switch (c) {
+            case '+': return pushBinary(Kind.ADD);
+            case '-': return pushBinary(Kind.SUBTRACT);
+            case '*': case '×': return pushBinary(Kind.MULTIPLY);
+            case '/': case '÷': return pushBinary(Kind.DIVIDE);
+            case '^': return pushBinary(Kind.POWER);
+            case '!':
+                applyUnary(Kind.FACTORIAL);
+                return true;
+            case ')':
+                while (operators != null && !operators.paren) reduce();
+                if (operators == null) return false;
+                closeParen();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void flushNumber(int end) {
+        if (numberStart < 0) return;
+        double value = Double.parseDouble(text.substring(numberStart, end));
+        numberStart = -1;
+        pushOperand(value, value, 0);
+    }
+
+    private boolean pushBinary(Kind kind) {
+        int precedence = precedence(kind);
+        // ^ is right-associative, everything else reduces operators of equal precedence
+        while (operators != null && !operators.paren
+                && (kind == Kind.POWER ? precedence(operators.kind) > precedence
+                        : precedence(operators.kind) >= precedence)) {
+            reduce();
+        }
+        operators = new Operator(kind, false, operators);
+        expectOperand = true;
+        return true;
+    }
+
+    private void closeParen() {
+        Kind function = operators.kind;
+        operators = operators.next;
+        if (function != null) applyUnary(function);
+    }
+
+    private void reduce() {
+        Kind kind = operators.kind;
+        operators = operators.next;
+        if (kind.isBinary()) {
+            Operand right = operands;
+            Operand left = right.next;
+            operands = left.next;
+            pushOperand(applyBinary(kind, left.radian, right.radian),
+                    applyBinary(kind, left.degree, right.degree),
+                    left.errors | right.errors);
+        } else {
+            applyUnary(kind);
+        }
+    }
+
+    private void applyUnary(Kind kind) {
+        Operand x = operands;
+        operands = x.next;
+        int errors = x.errors;
+        double radian;
+        double degree;
+        try {
+            radian = applyUnary(kind, x.radian, true);
+        } catch (ArithmeticException e) {
+            radian = Double.NaN;
+            errors |= RADIAN_ERROR;
+        }
+        try {
+            degree = applyUnary(kind, x.degree, false);
+        } catch (ArithmeticException e) {
+            degree = Double.NaN;
+            errors |= DEGREE_ERROR;
+        }
+        pushOperand(radian, degree, errors);
+    }
+
+    private void pushOperand(double radian, double degree, int errors) {
+        operands = new Operand(radian, degree, errors, operands);
+    }
+
+    private static double applyBinary(Kind kind, double a, double b) {
+        switch (kind) {
+            case ADD: return a + b;
+            case SUBTRACT: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return a / b;
+            case POWER: return Math.pow(a, b);
+            default: throw new IllegalStateException("Not a binary operator: " + kind);
+        }
+    }
+
+    private static double applyUnary(Kind kind, double x, boolean isRadian) {
+        switch (kind) {
+            case NEGATE: return -x;
+            case FACTORIAL: return Factorials.factorial(x);
+            case SQRT: return Math.sqrt(x);
+            case SIN: return Math.sin(isRadian ? x : Math.toRadians(x));
+            case COS: return Math.cos(isRadian ? x : Math.toRadians(x));
+            case TAN: return Math.tan(isRadian ? x : Math.toRadians(x));
+            case LOG: return Math.log10(x);
+            case LN: return Math.log(x);
+            default: throw new IllegalStateException("Not a unary operator: " + kind);
+        }
+    }
+
+    private static int precedence(Kind kind) {
+        switch (kind) {
+            case ADD: case SUBTRACT: return 1;
+            case MULTIPLY: case DIVIDE: return 2;
+            case NEGATE: return 3;
+            default: return 4;
+        }
+    }
+
+    private static boolean isFunction(String name) {
+        for (String f : FUNCTIONS) {
+            if (f.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isFunctionPrefix(String prefix) {
+        for (String f : FUNCTIONS) {
+            if (f.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static Kind functionKind(String name) {
+        switch (name) {
+            case "sin": return Kind.SIN;
+            case "cos": return Kind.COS;
+            case "tan": return Kind.TAN;
+            case "log": return Kind.LOG;
+            case "ln": return Kind.LN;
+            default: return Kind.SQRT;
+        }
+    }
+
+    private static final class State {
+        static final State INITIAL = new State(null, null, null, -1, null, true, false);
+
+        final State previous;
+        final Operand operands;
+        final Operator operators;
+        final int numberStart;
+        final String word;
+        final boolean expectOperand;
+        final boolean error;
+
+        State(State previous, Operand operands, Operator operators, int numberStart,
+              String word, boolean expectOperand, boolean error) {
+            this.previous = previous;
+            this.operands = operands;
+            this.operators = operators;
+            this.numberStart = numberStart;
+            this.word = word;
+            this.expectOperand = expectOperand;
+            this.error = error;
+        }
+    }
+
+    private static final class Operand {
+        final double radian;
+        final double degree;
+        final int errors;
+        final Operand next;
+
+        Operand(double radian, double degree, int errors, Operand next) {
+            this.radian = radian;
+            this.degree = degree;
+            this.errors = errors;
+            this.next = next;
+        }
+    }
+
+    private static final class Operator {
+        final Kind kind; // function applied when a paren closes, null for a plain paren
+        final boolean paren;
+        final Operator next;
+
+        Operator(Kind kind, boolean paren, Operator next) {
+            this.kind = kind;
+            this.paren = paren;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.calculator.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Approximate quantiles of a stream of doubles, in constant memory and mergeable. Values
+ * are counted in buckets whose bounds grow geometrically, so any quantile comes back
+ * within {@link #RELATIVE_ACCURACY} of a value that was added. Two sketches merge by
+ * adding bucket counts, which loses nothing.
+ *
+ * Past {@link #MAX_BUCKETS} buckets of one sign, the values nearest zero share a bucket
+ * and lose their accuracy; that takes values spread over about 17 orders of magnitude.
+ */
+final class QuantileSketch {
+    static final double RELATIVE_ACCURACY = 0.01;
+    static final int MAX_BUCKETS = 2048;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // Bucket i counts magnitudes in (GAMMA^(i-1), GAMMA^i]
+    private final Buckets positive = new Buckets();
+    private final Buckets negative = new Buckets();
+    private long zeros;
+
+    void add(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return;
+        if (Math.abs(value) < Double.MIN_NORMAL) {
+            zeros++;
+        } else if (value > 0) {
+            positive.add(index(value), 1);
+        } else {
+            negative.add(index(-value), 1);
+        }
+    }
+
+    void merge(QuantileSketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeros += other.zeros;
+    }
+
+    long count() {
+        return positive.total + negative.total + zeros;
+    }
+
+    /** The value at quantile {@code q}, 0 to 1, or NaN if nothing was added. */
+    double quantile(double q) {
+        long count = count();
+        if (count == 0) return Double.NaN;
+        long rank = (long) (Math.max(0, Math.min(1, q)) * (count - 1));
+        // Negative values from the largest magnitude down, then zeros, then positives up
+        if (rank < negative.total) {
+            return -negative.valueAtRank(negative.total - 1 - rank);
+        }
+        rank -= negative.total;
+        if (rank < zeros) return 0;
+        return positive.valueAtRank(rank - zeros);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(zeros);
+        positive.write(out);
+        negative.write(out);
+    }
+
+    static QuantileSketch read(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.zeros = in.readLong();
+        sketch.positive.read(in);
+        sketch.negative.read(in);
+        return sketch;
+    }
+
+    private static int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    /** A value that is within the relative accuracy of every magnitude in bucket {@code index}. */
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /** Counts per bucket index over a contiguous window of indexes. */
+    private static final class Buckets {
+        long[] counts = new long[0];
+        // Bucket index of counts[0]
+        int offset;
+        long total;
+
+        void add(int index, long n) {
+            if (counts.length == 0) {
+                counts = new long[32];
+                offset = index - 16;
+            } else if (index >= offset + counts.length
+                    || (index < offset && counts.length < MAX_BUCKETS)) {
+                grow(index);
+            }
+            // Below the window once it is full: shares the lowest bucket
+            counts[Math.max(index, offset) - offset] += n;
+            total += n;
+        }
+
+        void merge(Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) add(other.offset + i, other.counts[i]);
+            }
+        }
+
+        double valueAtRank(long rank) {
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen > rank) return value(offset + i);
+            }
+            return value(offset + counts.length - 1);
+        }
+
+        /** Widens the window to take in {@code index}, folding the lowest buckets if it would get too wide. */
+        private void grow(int index) {
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length - 1, index);
+            int length = Math.min(Math.max(counts.length * 2, high - low + 1), MAX_BUCKETS);
+            int newOffset = index < offset ? high - length + 1 : Math.max(offset, high - length + 1);
+            long[] grown = new long[length];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) grown[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+            }
+            counts = grown;
+            offset = newOffset;
+        }
+
+        void write(DataOutput out) throws IOException {
+            int first = 0;
+            int end = counts.length;
+            while (first < end && counts[first] == 0) first++;
+            while (end > first && counts[end - 1] == 0) end--;
+            out.writeInt(offset + first);
+            out.writeInt(end - first);
+            for (int i = first; i < end; i++) out.writeLong(counts[i]);
+        }
+
+        void read(DataInput in) throws IOException {
+            int first = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_BUCKETS) throw new IOException("Bad sketch length " + length);
+            offset = first;
+            counts = new long[length];
+            total = 0;
+            for (int i = 0; i < length; i++) {
+                counts[i] = in.readLong();
+                total += counts[i];
+            }
+        }
+    }
+}
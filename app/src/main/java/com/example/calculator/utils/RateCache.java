@@ -0,0 +1,330 @@
+package com.example.calculator.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Exchange rates from a rates URL, kept in a file so they outlive the process. Rates
+ * are served from the cache however old they are; once they are older than the maximum
+ * age, {@link #revalidate} asks the server whether they changed, sending back the
+ * ETag and Last-Modified it gave last time. A 304 answer only bumps the fetch time and
+ * the response body is never read.
+ *
+ * The rates are published as an immutable {@link Snapshot} swapped in whole, so readers
+ * on any thread never lock and never see a half-updated set. {@link #refresh} runs at
+ * most one request at a time and hands it to everyone who asks while it is in flight.
+ *
+ * The response is read as a stream for its "rates" object, e.g.
+ * {@code {"base":"USD","rates":{"EUR":0.92,...}}}, straight into {@link CurrencyRates}
+ * arrays, keeping every currency in it. The base currency gets a rate of 1 if the
+ * server leaves it out.
+ */
+public class RateCache {
+    static final int MAGIC = 0x43525445; // "CRTE"
+    static final int VERSION = 1;
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final File file;
+    private final String url;
+    private final long maxAgeMillis;
+
+    private volatile boolean loaded;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    // The refresh every caller shares until it completes, or null
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+
+    public RateCache(File file, String url, long maxAgeMillis) {
+        this.file = file;
+        this.url = url;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /** Rates as they were fetched at one time, with what is needed to ask whether they changed. */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null, 0, null, null);
+
+        /** Null if there are no rates yet. */
+        public final CurrencyRates rates;
+        /** When the rates were last fetched or confirmed by the server. */
+        public final long fetchedAt;
+        final String etag;
+        final String lastModified;
+
+        Snapshot(CurrencyRates rates, long fetchedAt, String etag, String lastModified) {
+            this.rates = rates;
+            this.fetchedAt = fetchedAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** Reads the cache file the first time it is called, leaving the cache empty if it is missing or damaged. */
+    public synchronized void load() {
+        if (loaded) return;
+        Snapshot read = read();
+        // A refresh that finished first has newer rates
+        if (read != null) snapshot.compareAndSet(Snapshot.EMPTY, read);
+        loaded = true;
+    }
+
+    /** Whether {@link #load} has been called, so nothing else touches the disk. */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** The current rates, without loading the file; empty until it is loaded. */
+    public Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /** The cached rates, however old, or null if there are none. */
+    public CurrencyRates getRates() {
+        load();
+        return snapshot.get().rates;
+    }
+
+    /** When the cached rates were last fetched or confirmed by the server. */
+    public long getFetchedAt() {
+        load();
+        return snapshot.get().fetchedAt;
+    }
+
+    /** Whether there are no rates or they are past the maximum age and should be revalidated. */
+    public boolean isStale() {
+        load();
+        return isStale(snapshot.get());
+    }
+
+    private boolean isStale(Snapshot current) {
+        return current.rates == null || System.currentTimeMillis() - current.fetchedAt >= maxAgeMillis;
+    }
+
+    /**
+     * Revalidates the rates on {@code executor} if they are stale, joining the refresh
+     * already in flight if there is one. The future completes with the rates afterwards,
+     * or with the IOException that stopped them being fetched, when the cached ones stay.
+     */
+    public CompletableFuture<Snapshot> refresh(Executor executor) {
+        while (true) {
+            CompletableFuture<Snapshot> running = inFlight.get();
+            if (running != null) return running;
+            CompletableFuture<Snapshot> future = new CompletableFuture<>();
+            if (!inFlight.compareAndSet(null, future)) continue;
+            try {
+                executor.execute(() -> {
+                    try {
+                        // A refresh that finished just before this one was asked for will do
+                        if (isStale()) revalidate();
+                        finish(future, snapshot.get(), null);
+                    } catch (IOException | RuntimeException e) {
+                        finish(future, null, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                finish(future, null, e);
+            }
+            return future;
+        }
+    }
+
+    private void finish(CompletableFuture<Snapshot> future, Snapshot result, Throwable error) {
+        // Callers from here on start a refresh of their own if the rates are still stale
+        inFlight.set(null);
+        if (error == null) future.complete(result);
+        else future.completeExceptionally(error);
+    }
+
+    /**
+     * Fetches the rates, conditionally when there are cached ones, and saves them. Returns
+     * true if the rates changed and false if the server said they had not. Nothing is
+     * locked while the request is in flight. Callers that might overlap should go through
+     * {@link #refresh} instead.
+     *
+     * @throws IOException if the server cannot be reached or the response cannot be read;
+     *                     the cached rates are kept
+     */
+    public boolean revalidate() throws IOException {
+        load();
+        Snapshot current = snapshot.get();
+        boolean cached = current.rates != null;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setUseCaches(false);
+            if (cached) {
+                if (current.etag != null) connection.setRequestProperty("If-None-Match", current.etag);
+                if (current.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", current.lastModified);
+                }
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+                String etag = connection.getHeaderField("ETag");
+                publish(new Snapshot(current.rates, System.currentTimeMillis(),
+                        etag != null ? etag : current.etag, current.lastModified));
+                return false;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + " from " + url);
+            }
+            CurrencyRates fetched;
+            try (InputStream in = connection.getInputStream()) {
+                fetched = parse(in);
+            }
+            publish(new Snapshot(fetched, System.currentTimeMillis(),
+                    connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified")));
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /** Swaps {@code next} in and writes it to the cache file, through a temporary file. */
+    private void publish(Snapshot next) throws IOException {
+        // Files are written in the order snapshots are published
+        synchronized (file) {
+            snapshot.set(next);
+            write(next);
+        }
+    }
+
+    /** The rates in a response body; the body is read up to the end of its "rates" object. */
+    static CurrencyRates parse(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String[] codes = null;
+        double[] rates = null;
+        int count = 0;
+        String base = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext() && codes == null) {
+                String name = reader.nextName();
+                if (name.equals("rates")) {
+                    codes = new String[256];
+                    rates = new double[256];
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String currency = reader.nextName();
+                        if (reader.peek() != JsonToken.NUMBER) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        if (count == codes.length) {
+                            codes = Arrays.copyOf(codes, count * 2);
+                            rates = Arrays.copyOf(rates, count * 2);
+                        }
+                        codes[count] = currency;
+                        rates[count++] = reader.nextDouble();
+                    }
+                    reader.endObject();
+                } else if (name.equals("base") && reader.peek() == JsonToken.STRING) {
+                    base = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed rates: " + e.getMessage(), e);
+        }
+        if (codes == null) throw new IOException("No rates in response");
+        if (base != null && !Arrays.asList(codes).subList(0, count).contains(base)) {
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, count + 1);
+                rates = Arrays.copyOf(rates, count + 1);
+            }
+            codes[count] = base;
+            rates[count++] = 1;
+        }
+        try {
+            return new CurrencyRates(codes, rates, count);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed rates: " + e.getMessage(), e);
+        }
+    }
+
+    private Snapshot read() {
+        if (!file.exists()) return null;
+        CRC32 crc = new CRC32();
+        try (FileInputStream stream = new FileInputStream(file)) {
+            BufferedInputStream buffered = new BufferedInputStream(stream);
+            DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            long fetchedAt = in.readLong();
+            String etag = readNullable(in);
+            String lastModified = readNullable(in);
+            int count = in.readInt();
+            if (count < 0) return null;
+            String[] codes = new String[count];
+            double[] rates = new double[count];
+            for (int i = 0; i < count; i++) {
+                codes[i] = in.readUTF();
+                rates[i] = in.readDouble();
+            }
+            long expected = crc.getValue();
+            DataInputStream trailer = new DataInputStream(buffered);
+            if (trailer.readLong() != expected || trailer.read() != -1) return null;
+            return new Snapshot(new CurrencyRates(codes, rates), fetchedAt, etag, lastModified);
+        } catch (IOException | RuntimeException e) {
+            // Fetched again as if there had been no file
+            return null;
+        }
+    }
+
+    private void write(Snapshot snapshot) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(stream);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.fetchedAt);
+            writeNullable(out, snapshot.etag);
+            writeNullable(out, snapshot.lastModified);
+            CurrencyRates rates = snapshot.rates;
+            out.writeInt(rates.size());
+            for (int id = 0; id < rates.size(); id++) {
+                out.writeUTF(rates.getCode(id));
+                out.writeDouble(rates.getRate(id));
+            }
+            // The checksum covers everything before it
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
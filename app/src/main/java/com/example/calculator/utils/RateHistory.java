@@ -0,0 +1,401 @@
+package com.example.calculator.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Daily exchange rates kept in a memory-mapped file, so conversions at past dates work
+ * offline. The file is a table with one fixed-width row per day, from the first day
+ * stored to the last, and one column per currency, so the rates for a day are found by
+ * its offset from the first day.
+ *
+ * Layout: a header (magic, format version, first day, number of days, number of
+ * currencies, then every currency code as {@value #CODE_SIZE} ASCII bytes) followed by
+ * rows of {@value #MAX_CURRENCIES} doubles, each a currency's rate against the base or 0
+ * where there is none. Days are counted from 1970-01-01 and have rows even when they
+ * have no rates, which read as all zeros. The number of days is written after the rows,
+ * so a write cut short leaves the days before it as they were.
+ *
+ * Storing days before the first one rewrites the file with every row shifted along, so
+ * backfill goes through {@link #putAll}, which makes room for the whole batch at once.
+ */
+public class RateHistory implements Closeable {
+    static final int MAGIC = 0x43524853; // "CRHS"
+    static final int VERSION = 1;
+    static final int MAX_CURRENCIES = 256;
+    static final int CODE_SIZE = 8;
+    static final int HEADER_SIZE = 24 + MAX_CURRENCIES * CODE_SIZE;
+    private static final int ROW_SIZE = MAX_CURRENCIES * 8;
+    /** Returned by {@link #findOnOrBefore} when there are no rates that early. */
+    public static final long NO_DAY = Long.MIN_VALUE;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private long firstDay;
+    private int dayCount;
+    private final List<String> codes = new ArrayList<>();
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    private RateHistory(File file) {
+        this.file = file;
+    }
+
+    /** Rates for one day; see {@link #dayOf(String)}. */
+    public static final class Day {
+        public final long day;
+        public final CurrencyRates rates;
+
+        public Day(long day, CurrencyRates rates) {
+            this.day = day;
+            this.rates = rates;
+        }
+    }
+
+    /**
+     * Opens or creates the history at {@code file}.
+     *
+     * @throws IOException if the file is not a rate history or has a newer format version
+     */
+    public static RateHistory open(File file) throws IOException {
+        RateHistory history = new RateHistory(file);
+        // A shift that did not finish leaves the original table intact
+        File pending = history.shiftFile();
+        if (pending.exists() && !pending.delete()) {
+            throw new IOException("Cannot delete " + pending);
+        }
+        history.load();
+        return history;
+    }
+
+    /** The first day with a row, or {@link #NO_DAY} if nothing is stored. */
+    public synchronized long getFirstDay() {
+        return dayCount == 0 ? NO_DAY : firstDay;
+    }
+
+    /** The last day with a row, or {@link #NO_DAY} if nothing is stored. */
+    public synchronized long getLastDay() {
+        return dayCount == 0 ? NO_DAY : firstDay + dayCount - 1;
+    }
+
+    /** The rates stored for {@code day}, or null if there are none. */
+    public synchronized CurrencyRates get(long day) {
+        if (day < firstDay || day >= firstDay + dayCount) return null;
+        int row = rowOffset(day);
+        String[] dayCodes = new String[codes.size()];
+        double[] rates = new double[codes.size()];
+        int count = 0;
+        for (int column = 0; column < codes.size(); column++) {
+            double rate = buffer.getDouble(row + column * 8);
+            if (rate == 0) continue;
+            dayCodes[count] = codes.get(column);
+            rates[count++] = rate;
+        }
+        return count == 0 ? null : new CurrencyRates(dayCodes, rates, count);
+    }
+
+    /** The rate of the currency with {@code code} on {@code day}, or NaN if there is none. */
+    public synchronized double getRate(long day, String code) {
+        Integer column = columns.get(code);
+        if (column == null || day < firstDay || day >= firstDay + dayCount) return Double.NaN;
+        double rate = buffer.getDouble(rowOffset(day) + column * 8);
+        return rate == 0 ? Double.NaN : rate;
+    }
+
+    /**
+     * The latest day on or before {@code day} with rates, looking back at most
+     * {@code maxDaysBack} days, or {@link #NO_DAY} if there is none.
+     */
+    public synchronized long findOnOrBefore(long day, int maxDaysBack) {
+        long last = Math.min(day, firstDay + dayCount - 1);
+        long first = Math.max(firstDay, day - maxDaysBack);
+        for (long d = last; d >= first; d--) {
+            int row = rowOffset(d);
+            for (int column = 0; column < codes.size(); column++) {
+                if (buffer.getDouble(row + column * 8) != 0) return d;
+            }
+        }
+        return NO_DAY;
+    }
+
+    /** Stores the rates for one day, replacing any stored for it. */
+    public void put(long day, CurrencyRates rates) throws IOException {
+        putAll(new Day[] {new Day(day, rates)});
+    }
+
+    /**
+     * Stores the rates for every day in {@code days}, replacing any stored for them, in
+     * one pass: the table is grown or shifted once for the whole batch and forced to
+     * storage at the end. Currencies past {@link #MAX_CURRENCIES} are not stored.
+     */
+    public synchronized void putAll(Day[] days) throws IOException {
+        if (days.length == 0) return;
+        long low = days[0].day;
+        long high = days[0].day;
+        for (Day day : days) {
+            low = Math.min(low, day.day);
+            high = Math.max(high, day.day);
+        }
+        if (dayCount == 0) {
+            firstDay = low;
+        } else if (low < firstDay) {
+            shiftTo(low);
+        }
+        long newCount = Math.max(dayCount, high - firstDay + 1);
+        if (HEADER_SIZE + newCount * ROW_SIZE > Integer.MAX_VALUE) throw new IOException("Rate history too large");
+        ensureCapacity(HEADER_SIZE + (int) newCount * ROW_SIZE);
+
+        for (Day day : days) {
+            int row = rowOffset(day.day);
+            for (int i = 0; i < ROW_SIZE; i += 8) buffer.putDouble(row + i, 0);
+            CurrencyRates rates = day.rates;
+            for (int id = 0; id < rates.size(); id++) {
+                int column = column(rates.getCode(id));
+                if (column >= 0) buffer.putDouble(row + column * 8, rates.getRate(id));
+            }
+        }
+        buffer.putLong(8, firstDay);
+        buffer.putInt(20, codes.size());
+        // Last, so the new rows only count once they are all there
+        dayCount = (int) newCount;
+        buffer.putInt(16, dayCount);
+        buffer.force();
+    }
+
+    /**
+     * Reads a time series of daily rates, e.g.
+     * {@code {"base":"USD","rates":{"2026-09-17":{"EUR":0.92,...},...}}}, and stores
+     * it with {@link #putAll} in one batch. Returns the number of days read.
+     */
+    public int ingest(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Day> days = new ArrayList<>();
+        String base = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("base") && reader.peek() == JsonToken.STRING) {
+                    base = reader.nextString();
+                } else if (name.equals("rates")) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        long day = dayOf(reader.nextName());
+                        days.add(new Day(day, readDay(reader)));
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Malformed rate history: " + e.getMessage(), e);
+        }
+        if (base != null) {
+            // The base only appears as the unit of the other rates
+            for (int i = 0; i < days.size(); i++) days.set(i, withBase(days.get(i), base));
+        }
+        putAll(days.toArray(new Day[0]));
+        return days.size();
+    }
+
+    private static CurrencyRates readDay(JsonReader reader) throws IOException {
+        String[] codes = new String[64];
+        double[] rates = new double[64];
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String code = reader.nextName();
+            if (reader.peek() != JsonToken.NUMBER) {
+                reader.skipValue();
+                continue;
+            }
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, count * 2);
+                rates = Arrays.copyOf(rates, count * 2);
+            }
+            codes[count] = code;
+            rates[count++] = reader.nextDouble();
+        }
+        reader.endObject();
+        return new CurrencyRates(codes, rates, count);
+    }
+
+    private static Day withBase(Day day, String base) {
+        if (day.rates.indexOf(base) >= 0) return day;
+        String[] codes = Arrays.copyOf(day.rates.getCodes(), day.rates.size() + 1);
+        double[] rates = new double[codes.length];
+        for (int id = 0; id < day.rates.size(); id++) rates[id] = day.rates.getRate(id);
+        codes[codes.length - 1] = base;
+        rates[codes.length - 1] = 1;
+        return new Day(day.day, new CurrencyRates(codes, rates));
+    }
+
+    /** Days since 1970-01-01 of a {@code yyyy-MM-dd} date. */
+    public static long dayOf(String date) {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            throw new IllegalArgumentException("Not a date: " + date);
+        }
+        return dayOf(Integer.parseInt(date.substring(0, 4)), Integer.parseInt(date.substring(5, 7)),
+                Integer.parseInt(date.substring(8, 10)));
+    }
+
+    /** Days since 1970-01-01 of a date in the proleptic Gregorian calendar, {@code month} 1 to 12. */
+    public static long dayOf(int year, int month, int dayOfMonth) {
+        if (month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > 31) {
+            throw new IllegalArgumentException("Not a date: " + year + "-" + month + "-" + dayOfMonth);
+        }
+        // Counted in eras of 400 years from March, so leap days fall at the end of a year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /** The {@code yyyy-MM-dd} date {@code day} days after 1970-01-01; the inverse of {@link #dayOf(String)}. */
+    public static String dateOf(long day) {
+        long shifted = day + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long dayOfMonth = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", year, month, dayOfMonth);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+
+    private void load() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        long size = raf.length();
+        if (size > Integer.MAX_VALUE) throw new IOException("Rate history too large");
+        buffer = map(Math.max((int) size, HEADER_SIZE + 32 * ROW_SIZE));
+        codes.clear();
+        columns.clear();
+        if (size < HEADER_SIZE) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            firstDay = 0;
+            dayCount = 0;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            raf.close();
+            throw new IOException(file + " is not a rate history");
+        }
+        int version = buffer.getInt(4);
+        if (version > VERSION) {
+            raf.close();
+            throw new IOException("Unsupported rate history version " + version);
+        }
+        firstDay = buffer.getLong(8);
+        dayCount = buffer.getInt(16);
+        int currencies = buffer.getInt(20);
+        if (dayCount < 0 || currencies < 0 || currencies > MAX_CURRENCIES
+                || HEADER_SIZE + (long) dayCount * ROW_SIZE > size) {
+            raf.close();
+            throw new IOException(file + " is damaged");
+        }
+        byte[] code = new byte[CODE_SIZE];
+        for (int column = 0; column < currencies; column++) {
+            for (int i = 0; i < CODE_SIZE; i++) code[i] = buffer.get(24 + column * CODE_SIZE + i);
+            int length = 0;
+            while (length < CODE_SIZE && code[length] != 0) length++;
+            addCode(new String(code, 0, length, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** The column of {@code code}, given one if it is new, or -1 if it cannot be stored. */
+    private int column(String code) {
+        Integer column = columns.get(code);
+        if (column != null) return column;
+        byte[] bytes = code.getBytes(StandardCharsets.US_ASCII);
+        if (codes.size() == MAX_CURRENCIES || bytes.length == 0 || bytes.length > CODE_SIZE) return -1;
+        int offset = 24 + codes.size() * CODE_SIZE;
+        for (int i = 0; i < CODE_SIZE; i++) buffer.put(offset + i, i < bytes.length ? bytes[i] : 0);
+        return addCode(code);
+    }
+
+    private int addCode(String code) {
+        columns.put(code, codes.size());
+        codes.add(code);
+        return codes.size() - 1;
+    }
+
+    /**
+     * Rewrites the table to start at {@code day}, which is before the first, into a new
+     * file that then replaces this one, so a crash leaves one or the other.
+     */
+    private void shiftTo(long day) throws IOException {
+        long shift = firstDay - day;
+        if (HEADER_SIZE + (dayCount + shift) * ROW_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("Rate history too large");
+        }
+        File target = shiftFile();
+        try (RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = buffer.duplicate();
+            header.limit(HEADER_SIZE).position(0);
+            channel.write(header);
+            ByteBuffer fields = ByteBuffer.allocate(12);
+            fields.putLong(day).putInt(dayCount + (int) shift).flip();
+            channel.write(fields, 8);
+            // The new days at the start are left as a hole, which reads as zeros
+            ByteBuffer rows = buffer.duplicate();
+            rows.limit(HEADER_SIZE + dayCount * ROW_SIZE).position(HEADER_SIZE);
+            channel.write(rows, HEADER_SIZE + shift * ROW_SIZE);
+            channel.force(true);
+        }
+        raf.close();
+        if (!target.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        load();
+    }
+
+    private File shiftFile() {
+        return new File(file.getPath() + ".shift");
+    }
+
+    private int rowOffset(long day) {
+        return HEADER_SIZE + (int) (day - firstDay) * ROW_SIZE;
+    }
+
+    private MappedByteBuffer map(int capacity) throws IOException {
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= buffer.capacity()) return;
+        long capacity = Math.max(required, 2L * buffer.capacity());
+        if (capacity > Integer.MAX_VALUE) throw new IOException("Rate history too large");
+        buffer = map((int) capacity);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.calculator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass evaluator that reads the expression straight from a char buffer and
+ * reduces it on preallocated primitive stacks. Numeric literals are converted in place,
+ * so once the stacks have grown to fit the expression an evaluation does not allocate.
+ *
+ * Accepts the same language as {@link ExpressionParser}. Instances are not thread-safe.
+ */
+public class ScanningEvaluator {
+    private static final byte OP_PAREN = -1;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private char[] chars = new char[64];
+    private double[] values = new double[16];
+    private byte[] operators = new byte[16];
+    private int valueTop;
+    private int operatorTop;
+
+    public double evaluate(String expression, boolean isRadian) {
+        int length = expression.length();
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+        expression.getChars(0, length, chars, 0);
+        return evaluate(chars, 0, length, isRadian);
+    }
+
+    public double evaluate(char[] buffer, int offset, int length, boolean isRadian) {
+        valueTop = 0;
+        operatorTop = 0;
+        int end = offset + length;
+        int i = offset;
+        boolean expectOperand = true;
+
+        while (i < end) {
+            char c = buffer[i];
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (expectOperand) {
+                if ((c >= '0' && c <= '9') || c == '.') {
+                    i = parseNumber(buffer, i, end);
+                    expectOperand = false;
+                    continue;
+                }
+                switch (c) {
+                    case 'π': pushValue(Math.PI); expectOperand = false; i++; continue;
+                    case 'e': pushValue(Math.E); expectOperand = false; i++; continue;
+                    case '(': pushOperator(OP_PAREN); i++; continue;
+                    case '+': i++; continue;
+                    case '-': pushOperator(CompiledExpression.OP_NEGATE); i++; continue;
+                    default:
+                        i = parseFunction(buffer, i, end);
+                        continue;
+                }
+            }
+            switch (c) {
+                case '+': pushBinary(CompiledExpression.OP_ADD, isRadian); break;
+                case '-': pushBinary(CompiledExpression.OP_SUBTRACT, isRadian); break;
+                case '*': case '×': pushBinary(CompiledExpression.OP_MULTIPLY, isRadian); break;
+                case '/': case '÷': pushBinary(CompiledExpression.OP_DIVIDE, isRadian); break;
+                case '^': pushBinary(CompiledExpression.OP_POWER, isRadian); break;
+                case '!':
+                    values[valueTop - 1] = Factorials.factorial(values[valueTop - 1]);
+                    break;
+                case ')':
+                    while (operatorTop > 0 && !isParen(operators[operatorTop - 1])) reduce(isRadian);
+                    if (operatorTop == 0) throw new IllegalArgumentException("Unexpected: )");
+                    closeParen(isRadian);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected: " + c);
+            }
+            expectOperand = c != '!' && c != ')';
+            i++;
+        }
+
+        if (expectOperand) throw new IllegalArgumentException("Incomplete expression");
+        while (operatorTop > 0) {
+            if (isParen(operators[operatorTop - 1])) closeParen(isRadian);
+            else reduce(isRadian);
+        }
+        return values[0];
+    }
+
+    private int parseFunction(char[] buffer, int i, int end) {
+        byte op;
+        int length;
+        if (buffer[i] == '√') { op = CompiledExpression.OP_SQRT; length = 1; }
+        else if (matches(buffer, i, end, "sin")) { op = CompiledExpression.OP_SIN; length = 3; }
+        else if (matches(buffer, i, end, "cos")) { op = CompiledExpression.OP_COS; length = 3; }
+        else if (matches(buffer, i, end, "tan")) { op = CompiledExpression.OP_TAN; length = 3; }
+        else if (matches(buffer, i, end, "log")) { op = CompiledExpression.OP_LOG; length = 3; }
+        else if (matches(buffer, i, end, "ln")) { op = CompiledExpression.OP_LN; length = 2; }
+        else throw new IllegalArgumentException("Unexpected: " + buffer[i]);
+
+        i += length;
+        while (i < end && buffer[i] == ' ') i++;
+        if (i == end || buffer[i] != '(') throw new IllegalArgumentException("Expected ( after function");
+        pushOperator(op);
+        return i + 1;
+    }
+
+    private static boolean matches(char[] buffer, int i, int end, String word) {
+        if (end - i < word.length()) return false;
+        for (int k = 0; k < word.length(); k++) {
+            if (buffer[i + k] != word.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private int parseNumber(char[] buffer, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        int i = start;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c == '.') {
+                if (seenDot) throw new NumberFormatException("multiple points");
+                seenDot = true;
+            } else if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits > 0 || c != '0') {
+                    if (digits < MAX_EXACT_DIGITS) mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                }
+                if (seenDot) exponent--;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) throw new NumberFormatException("no digits");
+
+        if (digits <= MAX_EXACT_DIGITS && exponent >= -22) {
+            // Both operands are exact, so one IEEE division gives the correctly rounded value
+            pushValue(exponent == 0 ? mantissa : mantissa / POWERS_OF_TEN[-exponent]);
+        } else {
+            pushValue(Double.parseDouble(new String(buffer, start, i - start)));
+        }
+        return i;
+    }
+
+    private void pushBinary(byte op, boolean isRadian) {
+        int precedence = precedence(op);
+        // ^ is right-associative, everything else reduces operators of equal precedence
+        while (operatorTop > 0) {
+            byte top = operators[operatorTop - 1];
+            if (isParen(top)) break;
+            if (op == CompiledExpression.OP_POWER ? precedence(top) <= precedence : precedence(top) < precedence) break;
+            reduce(isRadian);
+        }
+        pushOperator(op);
+    }
+
+    private void reduce(boolean isRadian) {
+        byte op = operators[--operatorTop];
+        if (op == CompiledExpression.OP_NEGATE) {
+            values[valueTop - 1] = -values[valueTop - 1];
+            return;
+        }
+        double right = values[--valueTop];
+        double left = values[valueTop - 1];
+        double result;
+        switch (op) {
+            case CompiledExpression.OP_ADD: result = left + right; break;
+            case CompiledExpression.OP_SUBTRACT: result = left - right; break;
+            case CompiledExpression.OP_MULTIPLY: result = left * right; break;
+            case CompiledExpression.OP_DIVIDE: result = left / right; break;
+            default: result = Math.pow(left, right); break;
+        }
+        values[valueTop - 1] = result;
+    }
+
+    private void closeParen(boolean isRadian) {
+        byte op = operators[--operatorTop];
+        double x = values[valueTop - 1];
+        switch (op) {
+            case CompiledExpression.OP_SQRT: x = Math.sqrt(x); break;
+            case CompiledExpression.OP_SIN: x = Math.sin(isRadian ? x : Math.toRadians(x)); break;
+            case CompiledExpression.OP_COS: x = Math.cos(isRadian ? x : Math.toRadians(x)); break;
+            case CompiledExpression.OP_TAN: x = Math.tan(isRadian ? x : Math.toRadians(x)); break;
+            case CompiledExpression.OP_LOG: x = Math.log10(x); break;
+            case CompiledExpression.OP_LN: x = Math.log(x); break;
+            default: break;
+        }
+        values[valueTop - 1] = x;
+    }
+
+    private void pushValue(double value) {
+        if (valueTop == values.length) values = Arrays.copyOf(values, valueTop * 2);
+        values[valueTop++] = value;
+    }
+
+    private void pushOperator(byte op) {
+        if (operatorTop == operators.length) operators = Arrays.copyOf(operators, operatorTop * 2);
+        operators[operatorTop++] = op;
+    }
+
+    private static boolean isParen(byte op) {
+        return op == OP_PAREN || op >= CompiledExpression.OP_SQRT && op <= CompiledExpression.OP_LN;
+    }
+
+    private static int precedence(byte op) {
+        switch (op) {
+            case CompiledExpression.OP_ADD: case CompiledExpression.OP_SUBTRACT: return 1;
+            case CompiledExpression.OP_MULTIPLY: case CompiledExpression.OP_DIVIDE: return 2;
+            case CompiledExpression.OP_NEGATE: return 3;
+            default: return 4;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.ConversionType;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Converts values between the units of a {@link ConversionType} with fixed scales. Units
+ * are referred to by their index in {@link ConversionType#getUnits()}, and every pair of
+ * units has its factor and offset worked out up front, so a conversion is one table
+ * lookup and a multiply-add.
+ *
+ * Whole arrays convert in one loop per call, split across cores when they are long, and
+ * text converts as a stream with every number in it replaced.
+ */
+public final class UnitConverter {
+    // Below this many values, handing out work to other threads costs more than it saves
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+    private static final int PARALLEL_CHUNK = 1 << 15;
+    private static final Map<ConversionType, UnitConverter> converters = new EnumMap<>(ConversionType.class);
+
+    private final String[] units;
+    // Entry from * units + to takes a value in unit from to unit to
+    private final double[] factors;
+    private final double[] offsets;
+
+    private UnitConverter(ConversionType type) {
+        this.units = type.getUnits();
+        int n = units.length;
+        factors = new double[n * n];
+        offsets = new double[n * n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                int i = from * n + to;
+                if (from == to) {
+                    // Exactly the value, without rounding through the base unit
+                    factors[i] = 1;
+                    continue;
+                }
+                // value * scale(from) + offset(from) is in the base unit; undo to's on that
+                factors[i] = type.getScale(from) / type.getScale(to);
+                offsets[i] = (type.getOffset(from) - type.getOffset(to)) / type.getScale(to);
+            }
+        }
+    }
+
+    /**
+     * The converter for {@code type}, built on first use.
+     *
+     * @throws IllegalArgumentException if {@code type} has no fixed scales
+     */
+    public static synchronized UnitConverter forType(ConversionType type) {
+        if (!type.hasFixedScales()) {
+            throw new IllegalArgumentException(type.getName() + " has no fixed conversion factors");
+        }
+        UnitConverter converter = converters.get(type);
+        if (converter == null) {
+            converter = new UnitConverter(type);
+            converters.put(type, converter);
+        }
+        return converter;
+    }
+
+    public int getUnitCount() {
+        return units.length;
+    }
+
+    /** The index of the unit called {@code name}, or -1 if there is none. */
+    public int indexOf(String name) {
+        for (int i = 0; i < units.length; i++) {
+            if (units[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** {@code value} in unit {@code from} converted to unit {@code to}. */
+    public double convert(double value, int from, int to) {
+        int i = pair(from, to);
+        return value * factors[i] + offsets[i];
+    }
+
+    /**
+     * Converts {@code value} from unit {@code from} into every unit at once, in one pass
+     * over that unit's row of the table; {@code into[to]} gets the value in unit {@code to}.
+     */
+    public void convertToAll(double value, int from, double[] into) {
+        int n = units.length;
+        if (from < 0 || from >= n || into.length < n) {
+            throw new IndexOutOfBoundsException("Unit " + from + " of " + n + " into " + into.length);
+        }
+        int row = from * n;
+        for (int to = 0; to < n; to++) {
+            into[to] = value * factors[row + to] + offsets[row + to];
+        }
+    }
+
+    /** Converts every value in {@code values}, in place, from unit {@code from} to {@code to}. */
+    public void convert(double[] values, int from, int to) {
+        convert(values, 0, values, 0, values.length, from, to);
+    }
+
+    /**
+     * Converts {@code length} values from {@code source} into {@code target}, which may be
+     * the same array at the same offset but must not otherwise overlap it. Runs on several
+     * threads from {@link #PARALLEL_THRESHOLD} values up.
+     */
+    public void convert(double[] source, int sourceOffset, double[] target, int targetOffset,
+                        int length, int from, int to) {
+        if (length < 0 || sourceOffset < 0 || targetOffset < 0
+                || sourceOffset > source.length - length || targetOffset > target.length - length) {
+            throw new IndexOutOfBoundsException("Cannot convert " + length + " values from "
+                    + sourceOffset + " of " + source.length + " to " + targetOffset + " of " + target.length);
+        }
+        int i = pair(from, to);
+        double factor = factors[i];
+        double offset = offsets[i];
+        if (length < PARALLEL_THRESHOLD) {
+            scale(source, sourceOffset, target, targetOffset, length, factor, offset);
+            return;
+        }
+        int chunks = (length + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int start = chunk * PARALLEL_CHUNK;
+            scale(source, sourceOffset + start, target, targetOffset + start,
+                    Math.min(PARALLEL_CHUNK, length - start), factor, offset);
+        });
+    }
+
+    /**
+     * Copies text from {@code in} to {@code out} with every number in it converted from
+     * unit {@code from} to {@code to}, and returns how many there were. Numbers are
+     * decimals with an optional sign and exponent, not part of a word; everything else,
+     * separators and line breaks included, is copied as it is. Converted values are
+     * written with up to ten decimal places and a point, whatever the locale.
+     */
+    public long convert(Reader in, Writer out, int from, int to) throws IOException {
+        int i = pair(from, to);
+        return new TextConversion(in, out, factors[i], offsets[i]).run();
+    }
+
+    private int pair(int from, int to) {
+        if (from < 0 || to < 0 || from >= units.length || to >= units.length) {
+            throw new IndexOutOfBoundsException("Units " + from + " and " + to + " of " + units.length);
+        }
+        return from * units.length + to;
+    }
+
+    private static void scale(double[] source, int sourceOffset, double[] target, int targetOffset,
+                              int length, double factor, double offset) {
+        for (int k = 0; k < length; k++) {
+            target[targetOffset + k] = source[sourceOffset + k] * factor + offset;
+        }
+    }
+
+    /** What a value in {@code from} is multiplied by on the way to {@code to}. */
+    public double getFactor(int from, int to) {
+        return factors[from * units.length + to];
+    }
+
+    /** What is added after multiplying by {@link #getFactor}. */
+    public double getOffset(int from, int to) {
+        return offsets[from * units.length + to];
+    }
+
+    /** One pass over a text, reading through a buffer that keeps a few characters of lookahead. */
+    private static final class TextConversion {
+        // Longer runs of digits are copied as text, and scanning stops there so that
+        // lookahead never outgrows the buffer
+        private static final int MAX_NUMBER = 64;
+
+        private final Reader in;
+        private final Writer out;
+        private final double factor;
+        private final double offset;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private boolean eof;
+        private int previous = -1;
+        private final StringBuilder number = new StringBuilder(MAX_NUMBER);
+        private final StringBuffer formatted = new StringBuffer(32);
+        private final DecimalFormat format =
+                new DecimalFormat("#.##########", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        private final FieldPosition field = new FieldPosition(0);
+
+        TextConversion(Reader in, Writer out, double factor, double offset) {
+            this.in = in;
+            this.out = out;
+            this.factor = factor;
+            this.offset = offset;
+        }
+
+        long run() throws IOException {
+            long count = 0;
+            int c;
+            while ((c = peek(0)) >= 0) {
+                int length = isWordChar(previous) || previous == '.' ? 0 : numberLength();
+                if (length == 0) {
+                    out.write(c);
+                    previous = c;
+                    position++;
+                    continue;
+                }
+                number.setLength(0);
+                number.append(buffer, position, length);
+                position += length;
+                previous = number.charAt(length - 1);
+                double value = Double.parseDouble(number.toString());
+                formatted.setLength(0);
+                format.format(value * factor + offset, formatted, field);
+                out.append(formatted);
+                count++;
+            }
+            out.flush();
+            return count;
+        }
+
+        /** Length of the number starting at the current position, or 0 if none does. */
+        private int numberLength() throws IOException {
+            int i = 0;
+            if (peek(i) == '-' || peek(i) == '+') i++;
+            int digits = 0;
+            while (i <= MAX_NUMBER && isDigit(peek(i))) {
+                i++;
+                digits++;
+            }
+            if (peek(i) == '.') {
+                int j = i + 1;
+                while (j <= MAX_NUMBER && isDigit(peek(j))) {
+                    j++;
+                    digits++;
+                }
+                // "5." ending a sentence keeps its full stop
+                if (digits > 0 && j > i + 1) i = j;
+            }
+            if (digits == 0 || i > MAX_NUMBER) return 0;
+            if (peek(i) == 'e' || peek(i) == 'E') {
+                int j = i + 1;
+                if (peek(j) == '-' || peek(j) == '+') j++;
+                if (isDigit(peek(j))) {
+                    while (isDigit(peek(j)) && j < MAX_NUMBER) j++;
+                    i = j;
+                }
+            }
+            // "2nd" or "x2y" are words, not numbers
+            return isWordChar(peek(i)) ? 0 : i;
+        }
+
+        /** The character {@code ahead} places past the current one, or -1 past the end. */
+        private int peek(int ahead) throws IOException {
+            while (position + ahead >= limit && !eof) {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                int n = in.read(buffer, limit, buffer.length - limit);
+                if (n < 0) eof = true;
+                else limit += n;
+            }
+            return position + ahead < limit ? buffer[position + ahead] : -1;
+        }
+
+        private static boolean isDigit(int c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isWordChar(int c) {
+            return c >= 0 && (Character.isLetterOrDigit(c) || c == '_');
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.calculator.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+import com.example.calculator.R;
+import com.example.calculator.utils.CompiledExpression;
+import com.example.calculator.utils.FunctionSampler;
+
+/**
+ * Plots a function of x. Drag to pan and pinch to zoom; each frame only samples the
+ * parts of the curve that were not visible in the previous one.
+ */
+public class GraphView extends View {
+    private static final double DEFAULT_UNITS_PER_PIXEL = 0.02;
+
+    private final Paint curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint();
+    private final GestureDetector gestureDetector;
+    private final ScaleGestureDetector scaleDetector;
+
+    private FunctionSampler sampler;
+    private double centerX;
+    private double centerY;
+    private double unitsPerPixel = DEFAULT_UNITS_PER_PIXEL;
+
+    public GraphView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        curvePaint.setColor(ContextCompat.getColor(context, R.color.orange));
+        curvePaint.setStrokeWidth(3 * getResources().getDisplayMetrics().density);
+        curvePaint.setStrokeCap(Paint.Cap.ROUND);
+        axisPaint.setColor(ContextCompat.getColor(context, R.color.medium_gray));
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                centerX += distanceX * unitsPerPixel;
+                centerY -= distanceY * unitsPerPixel;
+                invalidate();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                centerX = 0;
+                centerY = 0;
+                unitsPerPixel = DEFAULT_UNITS_PER_PIXEL;
+                invalidate();
+                return true;
+            }
+        });
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                unitsPerPixel /= detector.getScaleFactor();
+                invalidate();
+                return true;
+            }
+        });
+    }
+
+    /** Shows {@code function}, or clears the plot if it is null. */
+    public void setFunction(CompiledExpression function, boolean isRadian) {
+        sampler = function == null ? null : new FunctionSampler(function, isRadian);
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || height == 0) return;
+
+        double xMin = centerX - width / 2.0 * unitsPerPixel;
+        double xMax = centerX + width / 2.0 * unitsPerPixel;
+        double yMin = centerY - height / 2.0 * unitsPerPixel;
+        double yMax = centerY + height / 2.0 * unitsPerPixel;
+
+        float axisX = (float) (-xMin / unitsPerPixel);
+        float axisY = (float) (yMax / unitsPerPixel);
+        canvas.drawLine(0, axisY, width, axisY, axisPaint);
+        canvas.drawLine(axisX, 0, axisX, height, axisPaint);
+
+        if (sampler == null) return;
+        sampler.setViewport(xMin, xMax, yMin, yMax, width, height);
+        canvas.drawLines(sampler.getSegments(), 0, sampler.getSegmentFloats(), curvePaint);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress()) {
+            gestureDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+}
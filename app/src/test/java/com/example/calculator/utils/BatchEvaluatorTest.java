@@ -0,0 +1,54 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchEvaluatorTest {
+
+    @Test
+    public void variables_areBoundByPosition() {
+        CompiledExpression program = CompiledExpression.compile("x^2×sin(y)+rate", "x", "y", "rate");
+        assertEquals(9 * Math.sin(0.5) + 1, program.evaluate(new double[]{3, 0.5, 1}, true), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reservedNames_areRejected() {
+        CompiledExpression.compile("e+1", "e");
+    }
+
+    @Test
+    public void batch_matchesRowByRowEvaluation() {
+        CompiledExpression program = CompiledExpression.compile("x^2×sin(y)-√(x)÷(y+1)", "x", "y");
+        int rows = 3 * BatchEvaluator.CHUNK_SIZE + 17;
+        Random random = new Random(1);
+        double[] x = new double[rows];
+        double[] y = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 10 - 5;
+        }
+
+        double[] out = new double[rows];
+        BatchEvaluator.evaluate(program, new double[][]{x, y}, out, false);
+
+        double[] row = new double[2];
+        for (int i = 0; i < rows; i++) {
+            row[0] = x[i];
+            row[1] = y[i];
+            assertEquals(Double.doubleToLongBits(program.evaluate(row, false)),
+                    Double.doubleToLongBits(out[i]));
+        }
+    }
+
+    @Test
+    public void constantExpression_fillsOutput() {
+        double[] out = new double[1000];
+        BatchEvaluator.evaluate(CompiledExpression.compile("2×π"), new double[0][], out, true);
+        for (double value : out) {
+            assertEquals(2 * Math.PI, value, 0);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CalculationTableTest {
+
+    private static void assertSame(Calculation expected, Calculation actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.getPrevious(), actual.getPrevious());
+        assertEquals(expected.getExpression(), actual.getExpression());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    /** What MainActivity stores: the evaluated expression as previous, and the result twice. */
+    private static Calculation evaluated(String expression, String result, long timestamp) {
+        return new Calculation(expression, result, result, timestamp);
+    }
+
+    @Test
+    public void everyKindOfField_comesBackUnchanged() {
+        Calculation[] calculations = {
+                evaluated("12×34", "408", 1),
+                evaluated("1÷3", "0.3333333333", 2),
+                evaluated("1÷3", "0,3333333333", 3),
+                evaluated("√(-1)", "Error", 4),
+                evaluated("2^2000", "Infinity", 5),
+                evaluated("-0", "-0", 6),
+                evaluated("0.10", "0.10", 7),
+                new Calculation(null, null, null, 8),
+                new Calculation("", "", "", 9),
+                null,
+                new Calculation("408", "408+1", "409", 10),
+                new Calculation("409", "409", "x", 11),
+                new Calculation("409", "409", "x", 12),
+                new Calculation("π", "e", "2.718281828", -1),
+        };
+        CalculationTable table = CalculationTable.of(calculations);
+        assertEquals(calculations.length, table.size());
+        for (int i = 0; i < calculations.length; i++) assertSame(calculations[i], table.get(i));
+    }
+
+    @Test
+    public void fullTable_dropsTheOldestAndReusesItsText() {
+        CalculationTable table = new CalculationTable(100);
+        List<Calculation> added = new ArrayList<>();
+        Random random = new Random(5);
+        String last = "0";
+        for (int i = 0; i < 10000; i++) {
+            // Chains like "408" then "408+1", and now and then a long expression to force growth
+            String expression = random.nextInt(50) == 0
+                    ? new String(new char[random.nextInt(2000)]).replace('\0', '7')
+                    : random.nextBoolean() ? last : last + "+" + i;
+            Calculation calculation = random.nextInt(100) == 0 ? null
+                    : new Calculation(expression, last, Integer.toString(i), i);
+            if (calculation != null) last = calculation.getExpression();
+            table.add(calculation);
+            added.add(calculation);
+            if (i % 97 == 0) {
+                for (int j = 0; j < table.size(); j++) {
+                    assertSame(added.get(added.size() - table.size() + j), table.get(j));
+                }
+            }
+        }
+        assertEquals(100, table.size());
+        // Text from dropped calculations is reused rather than piling up
+        assertTrue("" + table.estimateBytes(), table.estimateBytes() < 100 * 2000 * 4);
+
+        table.clear();
+        assertEquals(0, table.size());
+        table.add(evaluated("1+1", "2", 1));
+        assertSame(evaluated("1+1", "2", 1), table.get(0));
+    }
+
+    /**
+     * Heap a Calculation takes on a 64-bit JVM with compressed references and compact
+     * strings, objects aligned to 8 bytes: the object, its slot in an array, and each of
+     * its strings as read back from storage, so none are shared.
+     */
+    private static long objectBytes(Calculation calculation) {
+        long bytes = align(12 + 3 * 4 + 8) + 4;
+        for (String s : new String[]{calculation.getPrevious(), calculation.getExpression(), calculation.getResult()}) {
+            if (s != null) bytes += align(12 + 4 + 4 + 1 + 1) + align(16 + s.length());
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    @Test
+    public void typicalHistory_takesAThirdOfTheHeapOfObjects() {
+        // As in HistoryMemoryBenchmark, which measures the heap rather than estimating it
+        String[] operators = {"+", "-", "×", "÷"};
+        DecimalFormat format = new DecimalFormat("#.##########");
+        Random random = new Random(13);
+        CalculationTable table = new CalculationTable(10000);
+        long objects = 0;
+        for (int i = 0; i < 10000; i++) {
+            int a = random.nextInt(10000);
+            int b = 1 + random.nextInt(1000);
+            String operator = operators[random.nextInt(operators.length)];
+            double value = operator.equals("+") ? a + b : operator.equals("-") ? a - b
+                    : operator.equals("×") ? (double) a * b : (double) a / b;
+            String result = format.format(value);
+            Calculation calculation = evaluated(a + operator + b, result, 1_700_000_000_000L + 60_000L * i);
+            table.add(calculation);
+            objects += objectBytes(calculation);
+        }
+        assertTrue(table.estimateBytes() + " vs " + objects, 3 * table.estimateBytes() <= objects);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_beyondSize_throws() {
+        new CalculationTable(4).get(0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CalculatorEngineTest {
+
+    private static String calculate(String expression, boolean isRadian) {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput(expression);
+        return engine.calculate(isRadian);
+    }
+
+    @Test
+    public void basicArithmetic_respectsPrecedence() {
+        assertEquals("14", calculate("2+3×4", true));
+        assertEquals("20", calculate("(2+3)×4", true));
+        assertEquals("2.5", calculate("5÷2", true));
+        assertEquals("-4", calculate("-2^2", true));
+        assertEquals("512", calculate("2^3^2", true));
+    }
+
+    @Test
+    public void functions_areEvaluatedAsNodes() {
+        assertEquals("0.5", calculate("sin(30)", false));
+        assertEquals("1", calculate("cos(0)", true));
+        assertEquals("3", calculate("√(9)", true));
+        assertEquals("2", calculate("log(100)", true));
+        assertEquals("1", calculate("ln(e)", true));
+        assertEquals("120", calculate("5!", true));
+        assertEquals("5", calculate("√(9+16)", true));
+        assertEquals("1", calculate("sin(π÷2)", true));
+    }
+
+    @Test
+    public void invalidInput_returnsNull() {
+        assertNull(calculate("2+", true));
+        assertNull(calculate("5%", true));
+    }
+
+    @Test
+    public void compiledExpression_canBeReevaluatedInBothAngleModes() {
+        CompiledExpression program = CalculatorEngine.compile("sin(90)+1");
+        assertEquals(2.0, program.evaluate(false), 1e-12);
+        assertEquals(Math.sin(90) + 1, program.evaluate(true), 1e-12);
+        assertEquals(2.0, program.evaluate(false), 1e-12);
+    }
+
+    @Test
+    public void preview_isEmptyForIncompleteExpression() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput("2×");
+        assertEquals("", engine.getPreview(true));
+        engine.addInput("3");
+        assertEquals("6", engine.getPreview(true));
+    }
+
+    @Test
+    public void calculateAfterPreview_givesWhatThePreviewShowed() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput("sin(30)");
+        assertEquals("0.5", engine.getPreview(false));
+        assertEquals("-0.9880316241", engine.getPreview(true));
+        assertEquals("0.5", engine.getPreview(false));
+        assertEquals("0.5", engine.calculate(false));
+
+        // A preview in the other angle mode is not reused
+        engine.clear();
+        engine.addInput("sin(30)");
+        assertEquals("0.5", engine.getPreview(false));
+        assertEquals("-0.9880316241", engine.calculate(true));
+    }
+}
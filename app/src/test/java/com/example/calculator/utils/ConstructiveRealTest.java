@@ -0,0 +1,101 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConstructiveRealTest {
+
+    private static final String PI_50 = "3.14159265358979323846264338327950288419716939937511";
+
+    @Test
+    public void decimalLiterals_areExact() {
+        assertEquals("0.3", ExactEvaluator.evaluate("0.1+0.2", true).toString(40));
+        assertEquals("0.3333333333", ExactEvaluator.evaluate("1÷3", true).toString(10));
+        assertEquals("-2.5", ExactEvaluator.evaluate("-5÷2", true).toString(20));
+    }
+
+    @Test
+    public void constants_refineToRequestedDigits() {
+        assertEquals(PI_50, ConstructiveReal.PI.toString(50));
+        assertEquals("2.71828182845904523536028747135266249775724709369996",
+                ConstructiveReal.E.toString(50));
+    }
+
+    @Test
+    public void functions_matchDoublesWhereDoublesAreExactEnough() {
+        String[] expressions = {"sin(1)", "cos(2.5)", "tan(0.3)", "ln(10)", "log(2)", "√(2)",
+                "2^0.5", "e^3", "sin(100)", "cos(-7)", "ln(0.01)", "3^-2"};
+        for (String expression : expressions) {
+            double expected = CompiledExpression.compile(expression).evaluate(true);
+            double actual = ExactEvaluator.evaluate(expression, true).doubleValue();
+            assertEquals(expression, expected, actual, Math.abs(expected) * 1e-14);
+        }
+    }
+
+    @Test
+    public void degreeMode_isExactAtSpecialAngles() {
+        assertEquals("0.5", ExactEvaluator.evaluate("sin(30)", false).toString(30));
+        assertEquals("0", ExactEvaluator.evaluate("cos(90)", false).toString(30));
+    }
+
+    @Test
+    public void factorial_isExactInteger() {
+        assertEquals("2432902008176640000", ExactEvaluator.evaluate("20!", true).toString(5));
+        assertEquals("51090942171709440000", ExactEvaluator.evaluate("21!", true).toString(5));
+    }
+
+    @Test
+    public void factorial_aboveTheLimitFailsWithoutWorkingItOut() {
+        try {
+            ExactEvaluator.evaluate((ExactEvaluator.MAX_FACTORIAL + 1) + "!", true);
+            fail();
+        } catch (ArithmeticException e) {
+            assertEquals("Factorial argument too large", e.getMessage());
+        }
+    }
+
+    @Test
+    public void computedIntegerExponents_workForAnyBase() {
+        assertEquals("4", ExactEvaluator.evaluate("(-2)^(1+1)", true).toString(20));
+        assertEquals("-8", ExactEvaluator.evaluate("(-2)^(6÷2)", true).toString(20));
+        assertEquals("0", ExactEvaluator.evaluate("0^(1+1)", true).toString(20));
+        assertEquals("0.25", ExactEvaluator.evaluate("2^(1-3)", true).toString(20));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZero_fails() {
+        ExactEvaluator.evaluate("1÷(2-2)", true).toString(10);
+    }
+
+    @Test
+    public void moreDigits_extendFewerDigits() {
+        ConstructiveReal value = ExactEvaluator.evaluate("√(2)×π", true);
+        String shorter = value.toString(100);
+        String longer = value.toString(110);
+        assertEquals(shorter.substring(0, shorter.length() - 1), longer.substring(0, shorter.length() - 1));
+    }
+
+    @Test
+    public void engine_exposesExactResultOfLastCalculation() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput("1÷7");
+        assertEquals("0.142857142857142857142857142857", engine.getExactResult(true, 30));
+        engine.calculate(true);
+        assertEquals("0.142857142857142857142857142857", engine.getExactResult(true, 30));
+        assertEquals("", new CalculatorEngine().getExactResult(true, 10));
+    }
+
+    @Test
+    public void engine_givesExactDigitsWhereDoublesOverflow() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput("10000!");
+        engine.calculate(true);
+        // The double result overflows, but the expression behind it is still exact
+        String source = engine.getExactSource();
+        assertEquals("10000!", source);
+        String digits = engine.getExactResult(source, true, 20);
+        assertEquals(35660, digits.length());
+        assertTrue(digits.startsWith("28462596809170545189"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CurrencyRatesTest {
+
+    @Test
+    public void currencies_getIdsInCodeOrderAndConvertThroughTheBase() {
+        CurrencyRates rates = new CurrencyRates(new String[] {"USD", "JPY", "EUR"}, new double[] {1, 150, 0.8});
+        assertArrayEquals(new String[] {"EUR", "JPY", "USD"}, rates.getCodes());
+        int eur = rates.indexOf("EUR");
+        int jpy = rates.indexOf("JPY");
+        int usd = rates.indexOf("USD");
+        assertEquals(-1, rates.indexOf("XYZ"));
+        assertEquals(150, rates.getRate(jpy), 0);
+        assertTrue(Double.isNaN(rates.getRate("XYZ")));
+
+        assertEquals(187.5, rates.convert(1, eur, jpy), 1e-12);
+        assertEquals(1.25, rates.convert(1, eur, usd), 1e-12);
+        assertEquals(0.1, rates.convert(0.1, jpy, jpy), 0);
+        double[] all = new double[rates.size()];
+        rates.convertToAll(2, eur, all);
+        for (int to = 0; to < all.length; to++) assertEquals(rates.convert(2, eur, to), all[to], 0);
+        try {
+            rates.convert(1, eur, rates.size());
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // Would read the next row of the matrix
+        }
+    }
+
+    @Test
+    public void feed_isReadWhole() throws IOException {
+        StringBuilder json = new StringBuilder("{\"result\":\"success\",\"base\":\"USD\",\"rates\":{");
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) json.append(',');
+            json.append("\"C").append(i).append("\":").append(i + 1);
+        }
+        json.append(",\"note\":\"x\"},\"date\":\"2026-10-17\"}");
+        CurrencyRates rates = RateCache.parse(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+
+        // 300 currencies and the base, which the feed left out
+        assertEquals(301, rates.size());
+        assertEquals(1, rates.getRate("USD"), 0);
+        assertEquals(300, rates.getRate("C299"), 0);
+        assertEquals(150, rates.convert(1, rates.indexOf("C1"), rates.indexOf("C299")), 1e-12);
+    }
+
+    @Test(expected = IOException.class)
+    public void duplicateCurrencies_areRejected() throws IOException {
+        String json = "{\"rates\":{\"EUR\":0.9,\"EUR\":0.8}}";
+        RateCache.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
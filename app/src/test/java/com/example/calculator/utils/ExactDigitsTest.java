@@ -0,0 +1,72 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExactDigitsTest {
+
+    // Both threads are queues run by hand, so a request can be stopped at any point
+    private final ArrayDeque<Runnable> background = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> main = new ArrayDeque<>();
+    private final List<String> shown = new ArrayList<>();
+    private final ExactDigits exact = new ExactDigits(background::add, main::add,
+            (source, isRadian, digits) -> source + "@" + digits,
+            (text, digits) -> shown.add(text), 100);
+
+    private void runAll() {
+        while (!background.isEmpty() || !main.isEmpty()) {
+            while (!background.isEmpty()) background.poll().run();
+            while (!main.isEmpty()) main.poll().run();
+        }
+    }
+
+    @Test
+    public void requests_showTheirDigitsOnce() {
+        assertTrue(exact.setSource("1÷3", true));
+        exact.request(20);
+        exact.request(40);
+        runAll();
+        assertEquals(1, shown.size());
+        assertEquals("1÷3@20", shown.get(0));
+        assertEquals(20, exact.getDigits());
+
+        exact.request(40);
+        exact.request(200);
+        runAll();
+        assertEquals("1÷3@40", shown.get(1));
+        assertFalse(exact.setSource("1÷3", true));
+    }
+
+    @Test
+    public void newSource_dropsARequestAlreadyRunning() {
+        exact.setSource("1÷3", true);
+        exact.request(20);
+        // Worked out, not yet shown
+        background.poll().run();
+        assertEquals(1, main.size());
+
+        assertTrue(exact.setSource("2÷3", true));
+        exact.request(20);
+        runAll();
+        assertEquals(1, shown.size());
+        assertEquals("2÷3@20", shown.get(0));
+        assertEquals(20, exact.getDigits());
+    }
+
+    @Test
+    public void newSource_dropsAQueuedRequest() {
+        exact.setSource("1÷3", true);
+        exact.request(20);
+        exact.setSource("1÷3", false);
+        exact.request(20);
+        exact.setSource("", false);
+        runAll();
+        assertTrue(shown.isEmpty());
+        assertEquals(0, exact.getDigits());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.utils.ExpressionNode.Kind;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ExpressionOptimizerTest {
+
+    private static ExpressionNode optimize(String expression) {
+        return ExpressionOptimizer.optimize(ExpressionParser.parse(expression, "x"));
+    }
+
+    @Test
+    public void constantSubtrees_areFolded() {
+        assertEquals(ExpressionNode.number(1024), optimize("2^10"));
+        assertEquals(ExpressionNode.binary(Kind.MULTIPLY, ExpressionNode.variable(0, "x"),
+                ExpressionNode.number(Math.PI / 180)), optimize("x×(π÷180)"));
+        assertEquals(ExpressionNode.number(120), optimize("5!"));
+    }
+
+    @Test
+    public void trigonometry_isNotFolded() {
+        ExpressionNode node = optimize("sin(30)");
+        assertEquals(Kind.SIN, node.getKind());
+        CompiledExpression program = CompiledExpression.compile(node);
+        assertEquals(0.5, program.evaluate(false), 1e-12);
+        assertEquals(Math.sin(30), program.evaluate(true), 0);
+    }
+
+    @Test
+    public void identities_areSimplified() {
+        ExpressionNode x = ExpressionNode.variable(0, "x");
+        assertEquals(x, optimize("x×1"));
+        assertEquals(x, optimize("0+x"));
+        assertEquals(x, optimize("x÷1"));
+        assertEquals(x, optimize("--x"));
+        assertEquals(ExpressionNode.binary(Kind.MULTIPLY, x, x), optimize("x^2"));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void invalidFactorial_stillFailsAtEvaluation() {
+        CompiledExpression.compileOptimized("(-3)!").evaluate(true);
+    }
+
+    @Test
+    public void repeatedSubtrees_areComputedOnce() {
+        CompiledExpression shared = CompiledExpression.compile("sin(x)×sin(x)", "x");
+        // x, sin, store, recall, multiply
+        assertEquals(5, shared.size());
+        assertEquals(Math.sin(0.3) * Math.sin(0.3), shared.evaluate(new double[]{0.3}, true), 0);
+
+        CompiledExpression square = CompiledExpression.compileOptimized("(x+1)^2", "x");
+        assertEquals(16, square.evaluate(new double[]{3}, true), 0);
+
+        double[] x = new double[2000];
+        for (int i = 0; i < x.length; i++) x[i] = i * 0.01;
+        double[] out = new double[x.length];
+        BatchEvaluator.evaluate(shared, new double[][]{x}, out, true);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(Math.sin(x[i]) * Math.sin(x[i]), out[i], 0);
+        }
+    }
+
+    @Test
+    public void randomExpressions_matchUnoptimized() {
+        Random random = new Random(7);
+        double[] values = new double[1];
+        for (int i = 0; i < 5000; i++) {
+            String expression = randomExpression(random, 4);
+            ExpressionNode tree = ExpressionParser.parse(expression, "x");
+            CompiledExpression plain = CompiledExpression.compile(tree, "x");
+            CompiledExpression optimized = CompiledExpression.compile(ExpressionOptimizer.optimize(tree), "x");
+            values[0] = random.nextDouble() * 10 - 5;
+            for (boolean isRadian : new boolean[]{true, false}) {
+                double expected = evaluateOrNaN(plain, values, isRadian);
+                double actual = evaluateOrNaN(optimized, values, isRadian);
+                // Signed zeros and the last bit of x^2 are allowed to differ
+                assertEquals(expression, expected, actual, Math.abs(expected) * 1e-15);
+            }
+        }
+    }
+
+    private static double evaluateOrNaN(CompiledExpression program, double[] values, boolean isRadian) {
+        try {
+            return program.evaluate(values, isRadian);
+        } catch (ArithmeticException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String randomExpression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            String[] leaves = {"x", "0", "1", "2", "3", "0.5", "π", "e"};
+            return leaves[random.nextInt(leaves.length)];
+        }
+        String[] functions = {"sin(", "cos(", "√(", "ln(", "-("};
+        String[] operators = {"+", "-", "×", "÷", "^"};
+        if (random.nextInt(3) == 0) {
+            return functions[random.nextInt(functions.length)] + randomExpression(random, depth - 1) + ")";
+        }
+        return "(" + randomExpression(random, depth - 1) + operators[random.nextInt(operators.length)]
+                + randomExpression(random, depth - 1) + ")";
+    }
+}
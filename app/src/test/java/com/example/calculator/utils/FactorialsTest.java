@@ -0,0 +1,72 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class FactorialsTest {
+
+    @Test
+    public void table_matchesIterativeProduct() {
+        double expected = 1;
+        for (int n = 0; n <= Factorials.MAX_DOUBLE_FACTORIAL; n++) {
+            if (n > 0) expected *= n;
+            assertEquals(expected, Factorials.factorial(n), 0);
+        }
+        assertEquals(Double.POSITIVE_INFINITY, Factorials.factorial(171), 0);
+    }
+
+    @Test
+    public void nonIntegers_useGamma() {
+        assertEquals(Math.sqrt(Math.PI) / 2, Factorials.factorial(0.5), 1e-14);
+        assertEquals(Math.sqrt(Math.PI), Factorials.factorial(-0.5), 1e-14);
+        assertEquals(11.631728396567448, Factorials.gamma(4.5), 1e-12);
+        assertEquals(52.34277778455352, Factorials.factorial(4.5), 1e-12);
+        assertEquals(120, Factorials.gamma(6), 1e-10);
+        assertEquals(1.0, Factorials.factorial(170.5) / (Factorials.factorial(170) * Math.sqrt(170.75)), 1e-3);
+    }
+
+    @Test
+    public void largeNonIntegers_overflowToInfinity() {
+        assertTrue(Double.isFinite(Factorials.gamma(171.6)));
+        assertEquals(Double.POSITIVE_INFINITY, Factorials.gamma(171.7), 0);
+        assertEquals(Double.POSITIVE_INFINITY, Factorials.gamma(1000.5), 0);
+        assertEquals(Double.POSITIVE_INFINITY, Factorials.factorial(800.5), 0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void negativeIntegers_fail() {
+        Factorials.factorial(-3);
+    }
+
+    @Test
+    public void primeSwing_matchesNaiveProduct() {
+        BigInteger expected = BigInteger.ONE;
+        for (int n = 0; n <= 400; n++) {
+            if (n > 0) expected = expected.multiply(BigInteger.valueOf(n));
+            assertEquals("n=" + n, expected, Factorials.exactFactorial(n));
+        }
+    }
+
+    @Test
+    public void largeExactFactorial_hasKnownDigits() {
+        // Timed in FactorialBenchmark.exactFactorial10000
+        String digits = Factorials.exactFactorial(10000).toString();
+        assertEquals(35660, digits.length());
+        assertTrue(digits.startsWith("28462596809170545189"));
+        // One trailing zero per factor of 5 in 1..10000: 2000 + 400 + 80 + 16 + 3
+        int zeros = digits.length() - 1;
+        while (digits.charAt(zeros) == '0') zeros--;
+        assertEquals(2499, digits.length() - 1 - zeros);
+        assertTrue(digits.substring(0, zeros + 1).endsWith("8001579008"));
+    }
+
+    @Test
+    public void engine_showsGammaForNonIntegers() {
+        CalculatorEngine engine = new CalculatorEngine();
+        engine.addInput("0.5!");
+        assertEquals("0.8862269255", engine.calculate(true));
+    }
+}
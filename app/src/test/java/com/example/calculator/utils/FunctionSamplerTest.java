@@ -0,0 +1,87 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionSamplerTest {
+
+    private static FunctionSampler sampler(String expression) {
+        return new FunctionSampler(CalculatorEngine.compileFunction(expression), true);
+    }
+
+    @Test
+    public void samples_lieOnTheCurve() {
+        FunctionSampler sampler = sampler("x^3-2×x");
+        sampler.setViewport(-3, 3, -10, 10, 1000, 800);
+        for (int i = 0; i < sampler.getPointCount(); i++) {
+            double x = sampler.getX(i);
+            assertEquals(x * x * x - 2 * x, sampler.getY(i), 1e-9);
+            if (i > 0) assertTrue(sampler.getX(i - 1) < x);
+        }
+    }
+
+    @Test
+    public void curvedRegions_getMorePoints() {
+        FunctionSampler line = sampler("x÷2+1");
+        line.setViewport(-10, 10, -10, 10, 1000, 1000);
+        FunctionSampler wave = sampler("sin(x)");
+        wave.setViewport(-10, 10, -1.5, 1.5, 1000, 1000);
+
+        assertTrue(line.getPointCount() < 200);
+        assertTrue(wave.getPointCount() > line.getPointCount());
+        assertEquals(line.getPointCount() - 1, line.getSegmentFloats() / 4);
+    }
+
+    @Test
+    public void tangentAsymptotes_breakTheLine() {
+        FunctionSampler sampler = sampler("tan(x)");
+        sampler.setViewport(-4, 4, -5, 5, 1000, 1000);
+
+        assertEquals(2, sampler.getBreakCount());
+        assertEquals(-Math.PI / 2, sampler.getBreak(0), 1e-3);
+        assertEquals(Math.PI / 2, sampler.getBreak(1), 1e-3);
+        assertNoSegmentCrosses(sampler, -Math.PI / 2, -4, 4, 1000);
+        assertNoSegmentCrosses(sampler, Math.PI / 2, -4, 4, 1000);
+    }
+
+    @Test
+    public void steepContinuousCurves_stayConnected() {
+        FunctionSampler sampler = sampler("x^9");
+        sampler.setViewport(-2, 2, -1, 1, 1000, 1000);
+        assertEquals(0, sampler.getBreakCount());
+    }
+
+    @Test
+    public void panning_onlyEvaluatesNewIntervals() {
+        FunctionSampler sampler = sampler("sin(x)×x");
+        sampler.setViewport(0, 64, -64, 64, 1000, 1000);
+        long initial = sampler.getEvaluationCount();
+
+        sampler.setViewport(0, 64, -64, 64, 1000, 1000);
+        assertEquals(initial, sampler.getEvaluationCount());
+
+        sampler.setViewport(4, 68, -64, 64, 1000, 1000);
+        long panned = sampler.getEvaluationCount() - initial;
+        assertTrue("evaluated " + panned + " of " + initial, panned < initial / 8);
+    }
+
+    @Test
+    public void zoomingIn_reusesSamples() {
+        FunctionSampler sampler = sampler("sin(x)");
+        sampler.setViewport(-8, 8, -2, 2, 1000, 1000);
+        long initial = sampler.getEvaluationCount();
+        sampler.setViewport(-4, 4, -2, 2, 1000, 1000);
+        long zoomed = sampler.getEvaluationCount() - initial;
+        assertTrue(zoomed < sampler.getPointCount());
+    }
+
+    private static void assertNoSegmentCrosses(FunctionSampler sampler, double x,
+                                               double xMin, double xMax, int width) {
+        float px = (float) ((x - xMin) * width / (xMax - xMin));
+        float[] segments = sampler.getSegments();
+        for (int i = 0; i < sampler.getSegmentFloats(); i += 4) {
+            assertFalse(segments[i] < px && segments[i + 2] > px);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.*;
+
+public class HistoryIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Calculation> added = new ArrayList<>();
+    private final LongFunction<String> expressions = id -> added.get((int) id).getExpression();
+
+    private HistoryIndex index(String... expressions) {
+        HistoryIndex index = new HistoryIndex(0);
+        for (String expression : expressions) {
+            add(index, expression, "1", 1000L + added.size());
+        }
+        return index;
+    }
+
+    private void add(HistoryIndex index, String expression, String result, long timestamp) {
+        Calculation calculation = new Calculation("", expression, result, timestamp);
+        index.add(added.size(), calculation);
+        added.add(calculation);
+    }
+
+    private long[] search(HistoryIndex index, HistoryIndex.Query query) {
+        return index.search(query, 100, expressions);
+    }
+
+    private long[] searchText(HistoryIndex index, String text) {
+        return search(index, new HistoryIndex.Query().expressionContains(text));
+    }
+
+    @Test
+    public void text_matchesSubstringsNewestFirst() {
+        HistoryIndex index = index("sin(30)", "2+2", "sin(45)+1", "cos(0)", "22+3");
+
+        assertArrayEquals(new long[]{2, 0}, searchText(index, "sin("));
+        assertArrayEquals(new long[]{4, 1}, searchText(index, "2+"));
+        assertArrayEquals(new long[]{4, 1}, searchText(index, "2"));
+        assertArrayEquals(new long[]{3, 2, 0}, searchText(index, "("));
+        assertArrayEquals(new long[0], searchText(index, "tan"));
+    }
+
+    @Test
+    public void text_rejectsExpressionsWithTheTrigramsApart() {
+        // "+1+1" has both trigrams of "1+1+" without containing it
+        HistoryIndex index = index("+1+1", "1+1+2");
+        assertArrayEquals(new long[]{1}, searchText(index, "1+1+"));
+    }
+
+    @Test
+    public void ranges_filterByResultAndTime() {
+        HistoryIndex index = new HistoryIndex(0);
+        add(index, "1+1", "2", 5000);
+        add(index, "3×4", "12", 1000);
+        add(index, "1÷0", "Error", 3000);
+        add(index, "5-3", "2", 2000);
+        add(index, "0,5+1", "1,5", 4000);
+
+        assertArrayEquals(new long[]{3, 0},
+                search(index, new HistoryIndex.Query().resultBetween(2, 2)));
+        assertArrayEquals(new long[]{4, 3, 0},
+                search(index, new HistoryIndex.Query().resultBetween(1, 3)));
+        assertArrayEquals(new long[]{3, 2, 1},
+                search(index, new HistoryIndex.Query().timeBetween(1000, 3000)));
+        assertArrayEquals(new long[]{3},
+                search(index, new HistoryIndex.Query().expressionContains("-")
+                        .resultBetween(2, 2).timeBetween(0, 2500)));
+    }
+
+    @Test
+    public void outOfOrderTimes_areFoundNewestFirst() {
+        HistoryIndex index = new HistoryIndex(0);
+        Random random = new Random(3);
+        // Recent history, an import of older history, a clock set back, then shuffled times
+        for (int i = 0; i < 3000; i++) add(index, "1+" + i, "1", 100_000 + i);
+        for (int i = 0; i < 5000; i++) add(index, "2+" + i, "2", 10_000 + i);
+        for (int i = 0; i < 100; i++) add(index, "3+" + i, "3", 200_000 - 50 + i);
+        for (int i = 0; i < 2000; i++) add(index, "4+" + i, "4", random.nextInt(300_000));
+
+        for (int round = 0; round < 50; round++) {
+            long from = random.nextInt(300_000);
+            long to = from + random.nextInt(round < 25 ? 1000 : 200_000);
+            long[] expected = new long[100];
+            int count = 0;
+            for (int id = added.size() - 1; id >= 0 && count < expected.length; id--) {
+                long time = added.get(id).getTimestamp();
+                if (time >= from && time <= to) expected[count++] = id;
+            }
+            assertArrayEquals(Arrays.copyOf(expected, count),
+                    search(index, new HistoryIndex.Query().timeBetween(from, to)));
+        }
+    }
+
+    @Test
+    public void limit_keepsTheNewest() {
+        HistoryIndex index = new HistoryIndex(0);
+        for (int i = 0; i < 50; i++) add(index, i + "+1", Integer.toString(i + 1), i);
+        assertArrayEquals(new long[]{49, 48, 47},
+                index.search(new HistoryIndex.Query(), 3, expressions));
+    }
+
+    @Test
+    public void retainFrom_hidesCompactedCalculations() {
+        HistoryIndex index = new HistoryIndex(0);
+        for (int i = 0; i < 3000; i++) add(index, "7×" + i, Integer.toString(7 * i), i);
+
+        index.retainFrom(2000);
+        assertEquals(1000, index.size());
+        assertArrayEquals(new long[]{2000}, search(index, new HistoryIndex.Query()
+                .expressionContains("7×").resultBetween(0, 14000)));
+        assertArrayEquals(new long[]{2000},
+                search(index, new HistoryIndex.Query().timeBetween(0, 2000)));
+        assertArrayEquals(new long[0], searchText(index, "7×1999"));
+        assertArrayEquals(new long[]{2999}, searchText(index, "7×2999"));
+    }
+
+    @Test
+    public void saveAndLoad_roundTrip() throws IOException {
+        HistoryIndex index = index("sin(30)", "2+2", "sin(45)+1");
+        File file = folder.newFile("history.idx");
+        index.save(file);
+
+        HistoryIndex loaded = HistoryIndex.load(file);
+        assertNotNull(loaded);
+        assertEquals(3, loaded.getEndId());
+        assertArrayEquals(new long[]{2, 0}, loaded.search(
+                new HistoryIndex.Query().expressionContains("sin("), 10, expressions));
+    }
+
+    @Test
+    public void load_rejectsADamagedFile() throws IOException {
+        File file = folder.newFile("history.idx");
+        index("sin(30)", "2+2").save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(20);
+            raf.write(raf.read() ^ 1);
+        }
+        assertNull(HistoryIndex.load(file));
+    }
+
+    @Test
+    public void syncWith_catchesUpAndRebuilds() throws IOException {
+        HistoryStore store = HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                folder.newFolder("segments"), 4);
+        for (int i = 0; i < 5; i++) store.append(new Calculation("", i + "+1", "0", i));
+        HistoryIndex index = HistoryIndex.build(store);
+        for (int i = 5; i < 25; i++) store.append(new Calculation("", i + "+1", "0", i));
+
+        assertTrue(index.syncWith(store));
+        assertEquals(store.getEndId(), index.getEndId());
+        assertEquals(store.size(), index.size());
+        LongFunction<String> fromStore = id -> {
+            try {
+                return store.getRange(id, 1)[0].getExpression();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        };
+        assertArrayEquals(new long[]{24}, index.search(
+                new HistoryIndex.Query().expressionContains("24+"), 10, fromStore));
+        assertArrayEquals(new long[]{23, 13, 3}, index.search(
+                new HistoryIndex.Query().expressionContains("3+"), 10, fromStore));
+
+        // An index ahead of its store cannot be trusted
+        HistoryIndex ahead = new HistoryIndex(store.getEndId() - 1);
+        ahead.add(store.getEndId() - 1, new Calculation("", "1", "1", 0));
+        ahead.add(store.getEndId(), new Calculation("", "1", "1", 0));
+        assertFalse(ahead.syncWith(store));
+        store.close();
+    }
+}
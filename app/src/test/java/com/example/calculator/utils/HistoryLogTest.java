@@ -0,0 +1,132 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Calculation calculation(int i) {
+        return new Calculation("", i + "+1", Integer.toString(i + 1), 1000L + i);
+    }
+
+    @Test
+    public void records_surviveReopening() throws IOException {
+        File file = folder.newFile("history.log");
+        HistoryLog log = HistoryLog.open(file, 100);
+        log.append(new Calculation(null, "√(2)×π", "4.4428829382", 42));
+        log.append(calculation(1));
+        log.close();
+
+        log = HistoryLog.open(file, 100);
+        assertEquals(2, log.size());
+        Calculation first = log.get(0);
+        assertNull(first.getPrevious());
+        assertEquals("√(2)×π", first.getExpression());
+        assertEquals("4.4428829382", first.getResult());
+        assertEquals(42, first.getTimestamp());
+
+        List<Calculation> newest = log.getNewest(10);
+        assertEquals("1+1", newest.get(0).getExpression());
+        assertEquals("√(2)×π", newest.get(1).getExpression());
+        log.close();
+    }
+
+    @Test
+    public void tornFinalRecord_isDiscarded() throws IOException {
+        File file = folder.newFile("history.log");
+        HistoryLog log = HistoryLog.open(file, 100);
+        for (int i = 0; i < 3; i++) log.append(calculation(i));
+        log.close();
+
+        // Corrupt the middle of the last record's payload, as if the write was cut short
+        long lastRecordEnd = HistoryLog.HEADER_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (int i = 0; i < 3; i++) {
+                raf.seek(lastRecordEnd);
+                int length = raf.readInt();
+                if (i == 2) {
+                    raf.seek(lastRecordEnd + 8 + length / 2);
+                    raf.write(0x55);
+                }
+                lastRecordEnd += 8 + length;
+            }
+        }
+
+        log = HistoryLog.open(file, 100);
+        assertEquals(2, log.size());
+        log.append(calculation(7));
+        log.close();
+
+        log = HistoryLog.open(file, 100);
+        assertEquals(3, log.size());
+        assertEquals("7+1", log.get(2).getExpression());
+        log.close();
+    }
+
+    @Test
+    public void compaction_keepsTheNewestRecords() throws IOException {
+        File file = folder.newFile("history.log");
+        HistoryLog log = HistoryLog.open(file, 10);
+        for (int i = 0; i < 25; i++) log.append(calculation(i));
+        assertTrue(log.size() < 20);
+        assertEquals("24+1", log.getNewest(1).get(0).getExpression());
+        log.close();
+
+        log = HistoryLog.open(file, 10);
+        assertEquals(15, log.size());
+        assertEquals("10+1", log.get(0).getExpression());
+        log.clear();
+        assertEquals(0, log.size());
+        log.append(calculation(3));
+        assertEquals(1, log.getNewest(10).size());
+        log.close();
+    }
+
+    @Test
+    public void ids_stayStableAcrossCompactionAndClear() throws IOException {
+        File file = folder.newFile("history.log");
+        HistoryLog log = HistoryLog.open(file, 10);
+        for (int i = 0; i < 25; i++) log.append(calculation(i));
+        assertEquals(10, log.getFirstId());
+        assertEquals(25, log.getEndId());
+
+        Calculation[] range = log.getRange(8, 4);
+        assertNull(range[0]);
+        assertNull(range[1]);
+        assertEquals("10+1", range[2].getExpression());
+        assertEquals("11+1", range[3].getExpression());
+        assertNull(log.getRange(24, 2)[1]);
+
+        log.clear();
+        log.close();
+        log = HistoryLog.open(file, 10);
+        assertEquals(25, log.getFirstId());
+        assertEquals(25, log.getEndId());
+        log.append(calculation(99));
+        assertEquals("99+1", log.getRange(25, 1)[0].getExpression());
+        log.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void newerVersion_isRejected() throws IOException {
+        File file = folder.newFile("history.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(HistoryLog.MAGIC);
+            raf.writeInt(HistoryLog.VERSION + 1);
+            raf.write(new byte[8]);
+        }
+        HistoryLog.open(file, 10);
+    }
+}
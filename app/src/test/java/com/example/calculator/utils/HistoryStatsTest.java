@@ -0,0 +1,186 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HistoryStatsTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // Noon UTC, which is the same calendar day in every time zone within 12 hours of it
+    private static final long NOON = 20000 * DAY + DAY / 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Calculation calculation(String result, long timestamp) {
+        return new Calculation("", "x", result, timestamp);
+    }
+
+    @Test
+    public void summary_matchesExactStatistics() {
+        HistoryStats stats = new HistoryStats(0);
+        Random random = new Random(3);
+        double[] values = new double[10000];
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            // Spread over several orders of magnitude, with a large offset for variance
+            values[i] = 1e6 + Math.exp(random.nextGaussian() * 3);
+            sum += values[i];
+            stats.add(i, calculation(Double.toString(values[i]), NOON));
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (double value : values) squares += (value - mean) * (value - mean);
+        Arrays.sort(values);
+
+        HistoryStats.Summary total = stats.getTotal();
+        assertEquals(values.length, total.count);
+        assertEquals(sum, total.sum, 1e-6 * sum);
+        assertEquals(mean, total.mean, 1e-9 * mean);
+        assertEquals(squares / values.length, total.variance, 1e-6 * total.variance);
+        assertEquals(values[0], total.min, 0);
+        assertEquals(values[values.length - 1], total.max, 0);
+        double accuracy = QuantileSketch.RELATIVE_ACCURACY;
+        assertEquals(values[(int) (0.5 * (values.length - 1))], total.p50, accuracy * total.p50);
+        assertEquals(values[(int) (0.9 * (values.length - 1))], total.p90, accuracy * total.p90);
+        assertEquals(values[(int) (0.99 * (values.length - 1))], total.p99, accuracy * total.p99);
+    }
+
+    @Test
+    public void sketch_handlesSignsZerosAndMerging() {
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        for (int i = -500; i < 500; i++) (i % 2 == 0 ? left : right).add(i);
+        left.merge(right);
+
+        assertEquals(1000, left.count());
+        assertEquals(-500, left.quantile(0), 5);
+        assertEquals(-1, left.quantile(0.5), 0.01);
+        assertEquals(0, left.quantile(0.5006), 0);
+        assertEquals(499, left.quantile(1), 5);
+        assertEquals(-250, left.quantile(0.25), 2.5);
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+
+    @Test
+    public void merging_equalsAddingEverything() {
+        HistoryStats.Accumulator left = new HistoryStats.Accumulator();
+        HistoryStats.Accumulator right = new HistoryStats.Accumulator();
+        HistoryStats.Accumulator all = new HistoryStats.Accumulator();
+        for (int i = 0; i < 1000; i++) {
+            double value = i * i % 97 - 40.5;
+            (i < 300 ? left : right).add(value);
+            all.add(value);
+        }
+        left.merge(right);
+
+        HistoryStats.Summary merged = left.summarize(0);
+        HistoryStats.Summary expected = all.summarize(0);
+        assertEquals(expected.count, merged.count);
+        assertEquals(expected.mean, merged.mean, 1e-9);
+        assertEquals(expected.variance, merged.variance, 1e-9);
+        assertEquals(expected.min, merged.min, 0);
+        assertEquals(expected.p90, merged.p90, 0);
+    }
+
+    @Test
+    public void results_areGroupedByDayAndNonNumbersSkipped() {
+        HistoryStats stats = new HistoryStats(0);
+        stats.add(0, calculation("1", NOON));
+        stats.add(1, calculation("3", NOON + 60_000));
+        stats.add(2, calculation("Error", NOON));
+        stats.add(3, null);
+        stats.add(4, calculation("2,5", NOON + DAY));
+        assertEquals(5, stats.getEndId());
+
+        List<HistoryStats.Summary> days = stats.getDays(10);
+        assertEquals(2, days.size());
+        assertEquals(HistoryStats.dayOf(NOON + DAY), days.get(0).day);
+        assertEquals(2.5, days.get(0).mean, 0);
+        assertEquals(2, days.get(1).count);
+        assertEquals(2, days.get(1).mean, 0);
+        assertEquals(1, days.get(1).variance, 1e-12);
+        assertEquals(1, stats.getDays(1).size());
+        assertEquals(3, stats.getTotal().count);
+        assertEquals(1, stats.getSince(HistoryStats.dayOf(NOON + DAY)).count);
+    }
+
+    @Test
+    public void savedStats_loadAndCatchUpWithTheStore() throws IOException {
+        HistoryStore store = HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                new File(folder.getRoot(), "segments"), 64);
+        for (int i = 0; i < 500; i++) store.append(calculation(Integer.toString(i), NOON));
+        HistoryStats stats = HistoryStats.build(store);
+        File file = new File(folder.getRoot(), "history.stats");
+        stats.save(file);
+        for (int i = 500; i < 600; i++) store.append(calculation(Integer.toString(i), NOON));
+
+        HistoryStats loaded = HistoryStats.load(file);
+        assertNotNull(loaded);
+        assertEquals(500, loaded.getTotal().count);
+        assertEquals(stats.getTotal().p90, loaded.getTotal().p90, 0);
+        assertTrue(loaded.syncWith(store));
+        assertEquals(600, loaded.getTotal().count);
+        assertEquals(299.5, loaded.getTotal().mean, 1e-9);
+
+        // Clearing the store drops everything it had
+        store.clear();
+        assertTrue(loaded.syncWith(store));
+        assertEquals(0, loaded.getTotal().count);
+        assertTrue(Double.isNaN(loaded.getTotal().mean));
+        store.close();
+    }
+
+    @Test
+    public void save_appendsOnlyWhatChanged() throws IOException {
+        HistoryStats stats = new HistoryStats(0);
+        long id = 0;
+        for (int day = 0; day < 300; day++) stats.add(id++, calculation(Integer.toString(day), NOON + day * DAY));
+        File file = new File(folder.getRoot(), "history.stats");
+        stats.save(file);
+        long snapshot = file.length();
+
+        stats.add(id++, calculation("7", NOON + 300 * DAY));
+        stats.save(file);
+        assertTrue(file.length() - snapshot < snapshot / 10);
+        HistoryStats loaded = HistoryStats.load(file);
+        assertNotNull(loaded);
+        assertEquals(id, loaded.getEndId());
+        assertEquals(301, loaded.getTotal().count);
+        assertEquals(301, loaded.getDays(1000).size());
+        assertEquals(7, loaded.getDays(1).get(0).sum, 0);
+
+        // A save cut short leaves part of a record, which loading skips and saving replaces
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[]{0, 0, 1, 0, 42, 42, 42});
+        }
+        loaded = HistoryStats.load(file);
+        assertNotNull(loaded);
+        assertEquals(301, loaded.getTotal().count);
+        loaded.add(id++, calculation("8", NOON + 300 * DAY));
+        loaded.save(file);
+        assertEquals(302, HistoryStats.load(file).getTotal().count);
+        assertEquals(15, HistoryStats.load(file).getDays(1).get(0).sum, 0);
+
+        // Records that outgrow the snapshot are folded into a new one
+        for (int i = 0; i < 1000; i++) {
+            loaded.add(id++, calculation("1", NOON + 300 * DAY));
+            loaded.save(file);
+        }
+        assertTrue(file.length() < 3 * snapshot);
+        assertEquals(1302, HistoryStats.load(file).getTotal().count);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Calculation calculation(long i) {
+        return new Calculation(i % 2 == 0 ? "" : null, i + "×2", Long.toString(2 * i), 1000L + i);
+    }
+
+    private HistoryStore open() throws IOException {
+        return HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                new File(folder.getRoot(), "segments"), 64);
+    }
+
+    private static void assertRange(HistoryStore store, long fromId, int length) throws IOException {
+        Calculation[] range = store.getRange(fromId, length);
+        for (int i = 0; i < length; i++) {
+            Calculation expected = calculation(fromId + i);
+            assertNotNull("id " + (fromId + i), range[i]);
+            assertEquals(expected.getPrevious(), range[i].getPrevious());
+            assertEquals(expected.getExpression(), range[i].getExpression());
+            assertEquals(expected.getResult(), range[i].getResult());
+            assertEquals(expected.getTimestamp(), range[i].getTimestamp());
+        }
+    }
+
+    @Test
+    public void everyTier_servesItsCalculations() throws IOException {
+        HistoryStore store = open();
+        for (int i = 0; i < 5000; i++) assertEquals(i, store.append(calculation(i)));
+        store.close();
+
+        store = open();
+        assertEquals(0, store.getFirstId());
+        assertEquals(5000, store.getEndId());
+        assertTrue(store.getSegmentCount() > 0);
+        // Spans segments, the log and the ring buffer
+        assertRange(store, 0, 5000);
+        assertRange(store, 3000, 7);
+
+        List<Calculation> newest = store.getNewest(3);
+        assertEquals("4999×2", newest.get(0).getExpression());
+        assertEquals("4997×2", newest.get(2).getExpression());
+        store.close();
+    }
+
+    @Test
+    public void merging_keepsTheSegmentCountLogarithmic() throws IOException {
+        HistoryStore store = open();
+        for (int i = 0; i < 20000; i++) store.append(calculation(i));
+        store.close();
+
+        store = open();
+        // 20000 / 64 seals; merging leaves a handful of segments
+        assertTrue("segments: " + store.getSegmentCount(), store.getSegmentCount() <= 10);
+        assertRange(store, 0, 20000);
+        store.close();
+    }
+
+    @Test
+    public void clear_deletesEveryTierAndKeepsIds() throws IOException {
+        HistoryStore store = open();
+        for (int i = 0; i < 1000; i++) store.append(calculation(i));
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(1000, store.append(calculation(1000)));
+        store.close();
+
+        store = open();
+        assertEquals(1000, store.getFirstId());
+        assertEquals(0, store.getSegmentCount());
+        assertRange(store, 1000, 1);
+        assertNull(store.getRange(999, 1)[0]);
+        store.close();
+    }
+
+    @Test
+    public void clearCutShortByACrash_isFinishedOnOpen() throws IOException {
+        HistoryStore store = open();
+        for (int i = 0; i < 1000; i++) store.append(calculation(i));
+        store.close();
+        // As if the process died just after clear recorded itself
+        File segments = new File(folder.getRoot(), "segments");
+        HistoryStore.writeClearMarker(segments, 1000);
+
+        store = open();
+        assertEquals(0, store.size());
+        assertEquals(1000, store.getFirstId());
+        assertEquals(0, store.getSegmentCount());
+        assertFalse(new File(segments, HistoryStore.CLEAR_MARKER).exists());
+        assertEquals(1000, store.append(calculation(1000)));
+        store.close();
+
+        store = open();
+        assertEquals(1, store.size());
+        assertRange(store, 1000, 1);
+        store.close();
+    }
+
+    @Test
+    public void damagedSegment_isSkipped() throws IOException {
+        HistoryStore store = open();
+        for (int i = 0; i < 1000; i++) store.append(calculation(i));
+        store.close();
+
+        File[] segments = new File(folder.getRoot(), "segments").listFiles();
+        assertNotNull(segments);
+        assertEquals(1, segments.length);
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(raf.read() ^ 1);
+        }
+
+        store = open();
+        assertEquals(0, store.getSegmentCount());
+        assertEquals(1000, store.getEndId());
+        assertRange(store, store.getFirstId(), (int) store.size());
+        store.close();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<HistoryWriter> writers = new ArrayList<>();
+
+    private HistoryWriter open(String name) throws IOException {
+        File dir = folder.newFolder(name);
+        HistoryStore store = HistoryStore.open(new File(dir, "history.log"), new File(dir, "segments"), 64);
+        HistoryWriter writer = new HistoryWriter(store, HistoryIndex.build(store), new File(dir, "history.idx"),
+                HistoryStats.build(store), new File(dir, "history.stats"));
+        writers.add(writer);
+        return writer;
+    }
+
+    private static Calculation calculation(int i) {
+        return new Calculation(i % 3 == 0 ? null : "", i + "+1", Integer.toString(i + 1), 1000L + i);
+    }
+
+    private static void assertSame(Calculation expected, Calculation actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getPrevious(), actual.getPrevious());
+        assertEquals(expected.getExpression(), actual.getExpression());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    }
+
+    private static InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Before
+    public void setUp() {
+        writers.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (HistoryWriter writer : writers) writer.close();
+    }
+
+    private void assertRoundTrip(HistoryTransfer.Format format) throws IOException {
+        HistoryWriter source = open("source");
+        for (int i = 0; i < 2500; i++) source.add(calculation(i));
+        source.add(new Calculation("a,b", "say \"hi\"\r\nnow", "", 7));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> exported = new ArrayList<>();
+        assertEquals(2501, HistoryTransfer.export(source, out, format, (done, total) -> {
+            assertEquals(2501, total);
+            exported.add(done);
+        }));
+        assertEquals(Long.valueOf(2501), exported.get(exported.size() - 1));
+
+        HistoryWriter target = open("target");
+        byte[] file = out.toByteArray();
+        List<Long> imported = new ArrayList<>();
+        assertEquals(2501, HistoryTransfer.importFrom(target, new ByteArrayInputStream(file), file.length,
+                (done, total) -> imported.add(done)));
+        // One report per stored batch of 1000 and one at the end
+        assertEquals(3, imported.size());
+        assertEquals(Long.valueOf(file.length), imported.get(2));
+
+        Calculation[] range = target.getRange(0, 2501);
+        for (int i = 0; i < 2500; i++) assertSame(calculation(i), range[i]);
+        assertSame(new Calculation("a,b", "say \"hi\"\r\nnow", "", 7), range[2500]);
+        assertEquals(0, target.getMetrics().queueDepth);
+    }
+
+    @Test
+    public void csv_roundTripsEveryField() throws IOException {
+        assertRoundTrip(HistoryTransfer.Format.CSV);
+    }
+
+    @Test
+    public void json_roundTripsEveryField() throws IOException {
+        assertRoundTrip(HistoryTransfer.Format.JSON);
+    }
+
+    @Test
+    public void import_savesTheIndexOnceHoweverLong() throws IOException {
+        // Each save rewrites the index whole, so saving as the import went made it quadratic
+        for (int rows : new int[]{2_000, 20_000}) {
+            StringBuilder csv = new StringBuilder("previous,expression,result,timestamp\n");
+            for (int i = 0; i < rows; i++) csv.append(",").append(i).append("+1,").append(i + 1).append(",").append(i).append('\n');
+            HistoryWriter writer = open("history" + rows);
+            assertEquals(rows, HistoryTransfer.importFrom(writer, input(csv.toString()), -1, null));
+
+            HistoryWriter.Metrics metrics = writer.getMetrics();
+            assertEquals(rows, metrics.written);
+            assertEquals(1, metrics.indexSaves);
+            assertTrue(metrics.maxQueueDepth <= 2 * HistoryTransfer.BATCH_SIZE);
+            HistoryIndex saved = HistoryIndex.load(new File(folder.getRoot(), "history" + rows + "/history.idx"));
+            assertNotNull(saved);
+            assertEquals(rows, saved.getEndId());
+        }
+    }
+
+    @Test
+    public void import_keepsTheIndexToItsWindow() throws Exception {
+        File dir = folder.newFolder("windowed");
+        HistoryStore store = HistoryStore.open(new File(dir, "history.log"), new File(dir, "segments"), 64);
+        File indexFile = new File(dir, "history.idx");
+        HistoryWriter writer = new HistoryWriter(store, indexFile, new File(dir, "history.stats"), 2_000);
+        writers.add(writer);
+        StringBuilder csv = new StringBuilder("previous,expression,result,timestamp\n");
+        for (int i = 0; i < 30_000; i++) csv.append(",").append(i).append("×3,").append(3 * i).append(",").append(i).append('\n');
+        assertEquals(30_000, HistoryTransfer.importFrom(writer, input(csv.toString()), -1, null));
+
+        HistoryIndex saved = HistoryIndex.load(indexFile);
+        assertNotNull(saved);
+        assertEquals(30_000, saved.getEndId());
+        assertTrue(saved.size() <= 2_000);
+        assertEquals(30_000, writer.getStats().getTotal().count);
+        // Too old to be indexed, so found by scanning the store
+        assertArrayEquals(new long[]{12}, writer.search(new HistoryIndex.Query().resultBetween(36, 36), 10));
+        assertArrayEquals(new long[]{29_999}, writer.search(new HistoryIndex.Query().resultBetween(89_997, 89_997), 10));
+    }
+
+    @Test
+    public void csvImport_acceptsHandWrittenFiles() throws IOException {
+        HistoryWriter writer = open("history");
+        String csv = "\uFEFFprevious,expression,result,timestamp\n"
+                + ",2+2,4,100\n"
+                + "\n"
+                + "\"\",\"1,5×2\",3, 200 \r\n"
+                + "x,y,z,300,extra";
+        assertEquals(3, HistoryTransfer.importFrom(writer, input(csv), -1, null));
+
+        Calculation[] range = writer.getRange(0, 3);
+        assertSame(new Calculation(null, "2+2", "4", 100), range[0]);
+        assertSame(new Calculation("", "1,5×2", "3", 200), range[1]);
+        assertSame(new Calculation("x", "y", "z", 300), range[2]);
+    }
+
+    @Test
+    public void jsonImport_readsTheOldPreferencesFormat() throws IOException {
+        HistoryWriter writer = open("history");
+        String json = "[{\"previous\":\"\",\"expression\":\"6÷2\",\"result\":\"3\",\"timestamp\":5,\"id\":1},"
+                + "{\"expression\":\"1+1\",\"result\":null,\"timestamp\":6}]";
+        assertEquals(2, HistoryTransfer.importFrom(writer, input(json), -1, null));
+
+        Calculation[] range = writer.getRange(0, 2);
+        assertSame(new Calculation("", "6÷2", "3", 5), range[0]);
+        assertSame(new Calculation(null, "1+1", null, 6), range[1]);
+    }
+
+    @Test
+    public void malformedFiles_failWithTheLine() throws IOException {
+        HistoryWriter writer = open("history");
+        try {
+            HistoryTransfer.importFrom(writer, input("a,b,c,1\nd,e,f,soon\n"), -1, null);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2"));
+        }
+        // Everything before the error is kept
+        assertEquals(1, writer.getEndId());
+
+        try {
+            HistoryTransfer.importFrom(writer, input("[{\"timestamp\":\"soon\"}]"), -1, null);
+            fail();
+        } catch (IOException expected) {
+            // Not a number
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.Calculation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HistoryWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HistoryWriter writer;
+
+    private HistoryWriter open() throws IOException {
+        HistoryStore store = HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                new File(folder.getRoot(), "segments"), 64);
+        HistoryIndex index = HistoryIndex.build(store);
+        HistoryStats stats = HistoryStats.build(store);
+        return new HistoryWriter(store, index, new File(folder.getRoot(), "history.idx"),
+                stats, new File(folder.getRoot(), "history.stats"));
+    }
+
+    private static Calculation calculation(int i) {
+        return new Calculation("", i + "+1", Integer.toString(i + 1), 1000L + i);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        writer = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Test
+    public void queuedCalculations_areReadableBeforeTheyAreStored() throws IOException {
+        for (int i = 0; i < 10; i++) assertEquals(i, writer.add(calculation(i)));
+
+        assertEquals(10, writer.getEndId());
+        assertEquals("9+1", writer.getRange(9, 1)[0].getExpression());
+        assertArrayEquals(new long[]{7}, writer.search(
+                new HistoryIndex.Query().expressionContains("7+"), 10));
+    }
+
+    @Test
+    public void indexAndStatsBuiltInTheBackground_answerOnceReady() throws Exception {
+        for (int i = 0; i < 300; i++) writer.add(calculation(i));
+        writer.close();
+        File indexFile = new File(folder.getRoot(), "history.idx");
+        File statsFile = new File(folder.getRoot(), "history.stats");
+        assertTrue(indexFile.delete());
+        assertTrue(statsFile.delete());
+
+        HistoryStore store = HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                new File(folder.getRoot(), "segments"), 64);
+        writer = new HistoryWriter(store, indexFile, statsFile);
+        CountDownLatch ready = new CountDownLatch(1);
+        writer.whenReady(ready::countDown);
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+
+        assertArrayEquals(new long[]{229, 129, 29}, writer.search(
+                new HistoryIndex.Query().expressionContains("29+1"), 10));
+        assertEquals(300, writer.getStats().getTotal().count);
+        assertTrue(indexFile.exists());
+        assertTrue(statsFile.exists());
+    }
+
+    @Test
+    public void searches_reachPastTheIndexedWindow() throws Exception {
+        writer.close();
+        HistoryStore store = HistoryStore.open(new File(folder.getRoot(), "history.log"),
+                new File(folder.getRoot(), "segments"), 64);
+        File indexFile = new File(folder.getRoot(), "history.idx");
+        writer = new HistoryWriter(store, indexFile, new File(folder.getRoot(), "history.stats"), 100);
+        CountDownLatch ready = new CountDownLatch(1);
+        writer.whenReady(ready::countDown);
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) writer.add(calculation(i));
+        writer.flush();
+
+        assertArrayEquals(new long[]{997, 897, 797, 697, 597, 497, 397, 297, 197, 97},
+                writer.search(new HistoryIndex.Query().expressionContains("97+1"), 20));
+        assertArrayEquals(new long[]{999, 998}, writer.search(new HistoryIndex.Query(), 2));
+        assertArrayEquals(new long[]{5}, writer.search(new HistoryIndex.Query().resultBetween(6, 6), 20));
+        assertEquals(1000, writer.getStats().getTotal().count);
+
+        writer.close();
+        HistoryIndex saved = HistoryIndex.load(indexFile);
+        assertNotNull(saved);
+        // Saved once more than INDEX_SAVE_INTERVAL were indexed, and trimmed to the window
+        assertTrue(saved.getEndId() >= 256);
+        assertTrue(saved.size() <= 100);
+        writer = open();
+    }
+
+    @Test
+    public void flush_writesABurstAsOneBatch() throws IOException {
+        for (int i = 0; i < 50; i++) writer.add(calculation(i));
+        writer.flush();
+
+        HistoryWriter.Metrics metrics = writer.getMetrics();
+        assertEquals(0, metrics.queueDepth);
+        assertEquals(50, metrics.maxQueueDepth);
+        assertEquals(1, metrics.batches);
+        assertEquals(50, metrics.written);
+        assertTrue(metrics.lastFlushNanos > 0);
+        assertEquals(metrics.lastFlushNanos, metrics.averageFlushNanos());
+        assertEquals(50, writer.getStats().getTotal().count);
+
+        // Now found through the index rather than the queue
+        assertArrayEquals(new long[]{49, 48}, writer.search(
+                new HistoryIndex.Query().resultBetween(49, 50), 10));
+    }
+
+    @Test
+    public void flushedCalculations_surviveReopening() throws IOException {
+        for (int i = 0; i < 200; i++) writer.add(calculation(i));
+        writer.close();
+
+        writer = open();
+        assertEquals(200, writer.getEndId());
+        assertEquals("0+1", writer.getRange(0, 1)[0].getExpression());
+        assertEquals("199+1", writer.getRange(199, 1)[0].getExpression());
+    }
+
+    @Test
+    public void clear_hidesQueuedAndStoredCalculationsAtOnce() throws IOException {
+        for (int i = 0; i < 5; i++) writer.add(calculation(i));
+        writer.flush();
+        for (int i = 5; i < 10; i++) writer.add(calculation(i));
+
+        writer.clear();
+        assertEquals(10, writer.getFirstId());
+        assertNull(writer.getRange(2, 1)[0]);
+        assertNull(writer.getRange(7, 1)[0]);
+        assertEquals(0, writer.search(new HistoryIndex.Query(), 10).length);
+
+        assertEquals(10, writer.add(calculation(10)));
+        writer.flush();
+        assertEquals(10, writer.getFirstId());
+        assertEquals("10+1", writer.getRange(10, 1)[0].getExpression());
+        assertEquals(1, writer.getStats().getTotal().count);
+        assertEquals(11, writer.getStats().getTotal().sum, 0);
+    }
+}
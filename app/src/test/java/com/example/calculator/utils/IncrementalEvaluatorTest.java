@@ -0,0 +1,93 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IncrementalEvaluatorTest {
+
+    private static final String[] TOKENS = {
+            "1", "2", "7", "0", ".", "5", "+", "-", "×", "÷", "^", "!", "(", ")",
+            "π", "e", "sin(", "cos(", "tan(", "log(", "ln(", "√(", "%"
+    };
+
+    @Test
+    public void appendAndDelete_matchFullParse() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        evaluator.append("2+3×4");
+        assertEquals(14.0, evaluator.evaluate(true), 0);
+        evaluator.deleteLast();
+        evaluator.deleteLast();
+        assertEquals("2+3", evaluator.getText());
+        assertEquals(5.0, evaluator.evaluate(true), 0);
+        evaluator.append("!");
+        assertEquals(8.0, evaluator.evaluate(true), 0);
+    }
+
+    @Test
+    public void unclosedParentheses_areClosedImplicitly() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        evaluator.append("sin(30");
+        assertEquals(0.5, evaluator.evaluate(false), 1e-12);
+        evaluator.append("+60");
+        assertEquals(Math.sin(Math.toRadians(90)), evaluator.evaluate(false), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trailingOperator_isIncomplete() {
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        evaluator.append("2×");
+        evaluator.evaluate(true);
+    }
+
+    @Test
+    public void randomInput_agreesWithCompiledExpression() {
+        Random random = new Random(42);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator();
+        StringBuilder expression = new StringBuilder();
+        for (int step = 0; step < 20000; step++) {
+            if (expression.length() > 0 && random.nextInt(4) == 0) {
+                expression.setLength(expression.length() - 1);
+                evaluator.deleteLast();
+            } else {
+                String token = TOKENS[random.nextInt(TOKENS.length)];
+                expression.append(token);
+                evaluator.append(token);
+            }
+            if (expression.length() > 40) {
+                expression.setLength(0);
+                evaluator.reset();
+            }
+            for (boolean isRadian : new boolean[]{true, false}) {
+                assertSame(expression.toString(), evaluate(expression.toString(), isRadian),
+                        evaluateIncrementally(evaluator, isRadian));
+            }
+        }
+    }
+
+    private static void assertSame(String expression, Double expected, Double actual) {
+        if (expected == null || actual == null) {
+            assertEquals(expression, expected, actual);
+        } else {
+            assertEquals(expression, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+        }
+    }
+
+    private static Double evaluate(String expression, boolean isRadian) {
+        try {
+            return CompiledExpression.compile(expression).evaluate(isRadian);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Double evaluateIncrementally(IncrementalEvaluator evaluator, boolean isRadian) {
+        try {
+            return evaluator.evaluate(isRadian);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
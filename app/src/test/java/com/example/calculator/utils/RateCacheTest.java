@@ -0,0 +1,215 @@
+package com.example.calculator.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RateCacheTest {
+
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 00:00:00 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    // What the stand-in server answers with and what it was asked
+    private volatile String body = "{\"base\":\"USD\",\"date\":\"2026-10-17\",\"rates\":{\"EUR\":0.9,\"JPY\":150}}";
+    private volatile String etag = "\"v1\"";
+    private volatile int status = 200;
+    private final List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+    // When set, requests wait for it before being answered
+    private volatile CountDownLatch gate;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/latest", exchange -> {
+            CountDownLatch waitFor = gate;
+            if (waitFor != null) {
+                try {
+                    waitFor.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            conditions.add(exchange.getRequestHeaders().getFirst("If-None-Match") + " "
+                    + exchange.getRequestHeaders().getFirst("If-Modified-Since"));
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            String tag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (status == 200 && etag.equals(tag)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/latest";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void rates_areFetchedSavedAndRevalidatedConditionally() throws IOException {
+        File file = new File(folder.getRoot(), "rates");
+        RateCache cache = new RateCache(file, url, 3600000);
+        assertNull(cache.getRates());
+        assertTrue(cache.isStale());
+
+        assertTrue(cache.revalidate());
+        CurrencyRates rates = cache.getRates();
+        assertEquals(0.9, rates.getRate("EUR"), 0);
+        assertEquals(1, rates.getRate("USD"), 0);
+        assertFalse(cache.isStale());
+        assertEquals("null null", conditions.get(0));
+
+        // A new process reads them back and only asks whether they changed
+        RateCache reloaded = new RateCache(file, url, 3600000);
+        assertArrayEquals(rates.getCodes(), reloaded.getRates().getCodes());
+        assertEquals(150, reloaded.getRates().getRate("JPY"), 0);
+        CurrencyRates loaded = reloaded.getRates();
+        long fetchedAt = reloaded.getFetchedAt();
+        body = "not even JSON";
+        assertFalse(reloaded.revalidate());
+        assertEquals("\"v1\" " + LAST_MODIFIED, conditions.get(1));
+        assertSame(loaded, reloaded.getRates());
+        assertTrue(reloaded.getFetchedAt() >= fetchedAt);
+
+        body = "{\"rates\":{\"USD\":1,\"EUR\":0.95}}";
+        etag = "\"v2\"";
+        assertTrue(reloaded.revalidate());
+        assertEquals(0.95, reloaded.getRates().getRate("EUR"), 0);
+        assertEquals(-1, reloaded.getRates().indexOf("JPY"));
+        assertEquals(0.95, new RateCache(file, url, 3600000).getRates().getRate("EUR"), 0);
+    }
+
+    @Test
+    public void staleRates_areServedAndKeptWhenTheServerFails() throws IOException {
+        File file = new File(folder.getRoot(), "rates");
+        RateCache cache = new RateCache(file, url, 0);
+        cache.revalidate();
+        assertTrue(cache.isStale());
+        assertEquals(150, cache.getRates().getRate("JPY"), 0);
+
+        status = 503;
+        try {
+            cache.revalidate();
+            fail();
+        } catch (IOException expected) {
+            // Reported, but the old rates stay
+        }
+        assertEquals(150, cache.getRates().getRate("JPY"), 0);
+
+        status = 200;
+        etag = "\"v3\"";
+        body = "{\"base\":\"USD\",\"rates\":{\"EUR\":\"soon\"";
+        try {
+            cache.revalidate();
+            fail();
+        } catch (IOException expected) {
+            // Truncated
+        }
+        assertEquals(150, new RateCache(file, url, 0).getRates().getRate("JPY"), 0);
+    }
+
+    @Test
+    public void damagedFile_isIgnored() throws IOException {
+        File file = new File(folder.getRoot(), "rates");
+        new RateCache(file, url, 3600000).revalidate();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 12);
+            raf.write(0x55);
+        }
+        RateCache cache = new RateCache(file, url, 3600000);
+        assertNull(cache.getRates());
+        assertTrue(cache.isStale());
+        assertTrue(cache.revalidate());
+        assertEquals("null null", conditions.get(1));
+    }
+
+    @Test
+    public void concurrentRefreshes_shareOneFetch() throws Exception {
+        // Always stale, so only coalescing keeps each round to one request
+        RateCache cache = new RateCache(new File(folder.getRoot(), "rates"), url, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        AtomicBoolean torn = new AtomicBoolean();
+        AtomicBoolean reading = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (reading.get()) {
+                CurrencyRates rates = cache.getSnapshot().rates;
+                // Every version has JPY at 100 times EUR
+                if (rates != null && rates.getRate("JPY") != rates.getRate("EUR") * 100) torn.set(true);
+            }
+        });
+        reader.start();
+
+        for (int round = 1; round <= 5; round++) {
+            body = "{\"rates\":{\"USD\":1,\"EUR\":" + round + ",\"JPY\":" + round * 100 + "}}";
+            etag = "\"v" + round + "\"";
+            gate = new CountDownLatch(1);
+            CountDownLatch start = new CountDownLatch(1);
+            List<CompletableFuture<CompletableFuture<RateCache.Snapshot>>> asked = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                asked.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return cache.refresh(executor);
+                }, callers));
+            }
+            start.countDown();
+            List<CompletableFuture<RateCache.Snapshot>> refreshes = new ArrayList<>();
+            for (CompletableFuture<CompletableFuture<RateCache.Snapshot>> future : asked) {
+                refreshes.add(future.get(10, TimeUnit.SECONDS));
+            }
+            gate.countDown();
+
+            RateCache.Snapshot first = refreshes.get(0).get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<RateCache.Snapshot> refresh : refreshes) {
+                assertSame(first, refresh.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(round, first.rates.getRate("EUR"), 0);
+            assertEquals(round, conditions.size());
+        }
+        reading.set(false);
+        reader.join();
+        executor.shutdown();
+        callers.shutdown();
+        assertFalse(torn.get());
+    }
+}
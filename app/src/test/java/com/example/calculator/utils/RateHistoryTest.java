@@ -0,0 +1,158 @@
+package com.example.calculator.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class RateHistoryTest {
+
+    private static final long OCTOBER_1 = RateHistory.dayOf("2026-10-01");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CurrencyRates rates(double eur, double jpy) {
+        return new CurrencyRates(new String[] {"USD", "EUR", "JPY"}, new double[] {1, eur, jpy});
+    }
+
+    /** A month of daily rates up to {@code last}, without weekends, in the feed's format. */
+    private static String month(LocalDate last) {
+        StringBuilder json = new StringBuilder("{\"amount\":1.0,\"base\":\"USD\",\"rates\":{");
+        LocalDate date = last.minusDays(30);
+        boolean first = true;
+        for (; !date.isAfter(last); date = date.plusDays(1)) {
+            if (date.getDayOfWeek().getValue() >= 6) continue;
+            if (!first) json.append(',');
+            first = false;
+            json.append('"').append(date).append("\":{\"EUR\":0.").append(date.getDayOfMonth() + 10)
+                    .append(",\"GBP\":0.75}");
+        }
+        return json.append("}}").toString();
+    }
+
+    @Test
+    public void dates_countDaysFromTheEpoch() {
+        assertEquals(0, RateHistory.dayOf("1970-01-01"));
+        for (String date : new String[] {"1969-12-31", "2000-02-29", "2000-03-01", "2024-12-31", "2026-10-18"}) {
+            assertEquals(date, LocalDate.parse(date).toEpochDay(), RateHistory.dayOf(date));
+            assertEquals(date, RateHistory.dateOf(RateHistory.dayOf(date)));
+        }
+        try {
+            RateHistory.dayOf("2026/10/18");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Only yyyy-MM-dd
+        }
+    }
+
+    @Test
+    public void days_areStoredByOffsetAndSurviveReopening() throws IOException {
+        File file = new File(folder.getRoot(), "rates.history");
+        RateHistory history = RateHistory.open(file);
+        assertEquals(RateHistory.NO_DAY, history.getFirstDay());
+        assertNull(history.get(OCTOBER_1));
+
+        history.put(OCTOBER_1, rates(0.9, 150));
+        history.put(OCTOBER_1 + 3, rates(0.8, 140));
+        history.put(OCTOBER_1, rates(0.91, 151));
+        assertEquals(OCTOBER_1, history.getFirstDay());
+        assertEquals(OCTOBER_1 + 3, history.getLastDay());
+        assertEquals(0.91, history.getRate(OCTOBER_1, "EUR"), 0);
+        assertTrue(Double.isNaN(history.getRate(OCTOBER_1 + 1, "EUR")));
+        assertTrue(Double.isNaN(history.getRate(OCTOBER_1, "GBP")));
+        assertNull(history.get(OCTOBER_1 + 2));
+        history.close();
+
+        history = RateHistory.open(file);
+        CurrencyRates rates = history.get(OCTOBER_1 + 3);
+        assertEquals(3, rates.size());
+        assertEquals(175, rates.convert(1, rates.indexOf("EUR"), rates.indexOf("JPY")), 1e-9);
+        assertEquals(OCTOBER_1 + 3, history.findOnOrBefore(OCTOBER_1 + 10, 7));
+        assertEquals(OCTOBER_1, history.findOnOrBefore(OCTOBER_1 + 2, 7));
+        assertEquals(RateHistory.NO_DAY, history.findOnOrBefore(OCTOBER_1 + 20, 7));
+        assertEquals(RateHistory.NO_DAY, history.findOnOrBefore(OCTOBER_1 - 1, 7));
+        history.close();
+    }
+
+    @Test
+    public void backfill_isIngestedInOneBatchBeforeExistingDays() throws IOException {
+        File file = new File(folder.getRoot(), "rates.history");
+        RateHistory history = RateHistory.open(file);
+        long today = RateHistory.dayOf("2026-10-18");
+        history.put(today, rates(0.95, 155));
+
+        File backfill = new File(folder.getRoot(), "month.json");
+        try (OutputStream out = new FileOutputStream(backfill)) {
+            out.write(month(LocalDate.of(2026, 10, 16)).getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = new FileInputStream(backfill)) {
+            // 31 days back from Friday the 16th, less 8 weekend days
+            assertEquals(23, history.ingest(in));
+        }
+        assertEquals(RateHistory.dayOf("2026-09-16"), history.getFirstDay());
+        assertEquals(today, history.getLastDay());
+        assertEquals(0.95, history.getRate(today, "EUR"), 0);
+        assertEquals(155, history.getRate(today, "JPY"), 0);
+        assertEquals(0.26, history.getRate(RateHistory.dayOf("2026-10-16"), "EUR"), 0);
+        assertEquals(1, history.getRate(RateHistory.dayOf("2026-10-16"), "USD"), 0);
+        // Saturday has no rates; the conversion falls back to Friday's
+        assertNull(history.get(RateHistory.dayOf("2026-10-17")));
+        assertEquals(RateHistory.dayOf("2026-10-16"), history.findOnOrBefore(RateHistory.dayOf("2026-10-17"), 4));
+        history.close();
+
+        history = RateHistory.open(file);
+        assertEquals(0.25, history.getRate(RateHistory.dayOf("2026-10-15"), "EUR"), 0);
+        assertEquals(3, history.get(RateHistory.dayOf("2026-09-16")).size());
+        history.close();
+    }
+
+    @Test
+    public void backfill_streamsFromAServer() throws IOException {
+        byte[] body = month(LocalDate.of(2026, 9, 30)).getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/2026-08-31..2026-09-30", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try (RateHistory history = RateHistory.open(new File(folder.getRoot(), "rates.history"));
+             InputStream in = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                     + "/2026-08-31..2026-09-30").openStream()) {
+            assertEquals(23, history.ingest(in));
+            assertEquals(0.4, history.getRate(RateHistory.dayOf("2026-09-30"), "EUR"), 0);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void otherFiles_areRejected() throws IOException {
+        File file = folder.newFile("not-rates");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[RateHistory.HEADER_SIZE + 16]);
+        }
+        try {
+            RateHistory.open(file);
+            fail();
+        } catch (IOException expected) {
+            // Wrong magic
+        }
+    }
+}
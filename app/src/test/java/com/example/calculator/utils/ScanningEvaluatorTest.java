@@ -0,0 +1,80 @@
+package com.example.calculator.utils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScanningEvaluatorTest {
+
+    private static final String[] TOKENS = {
+            "1", "2", "7", "0", ".", "5", "+", "-", "×", "÷", "^", "!", "(", ")", " ",
+            "π", "e", "sin(", "cos(", "tan(", "log(", "ln(", "√(", "%", "123456789.0123456789"
+    };
+
+    @Test
+    public void numericLiterals_matchDoubleParsing() {
+        ScanningEvaluator evaluator = new ScanningEvaluator();
+        String[] literals = {"0", "0.1", "1.", ".5", "007", "3.14159", "0.000123",
+                "123456789012345", "1234567890123456789", "0.1000000000000000055511151231257827"};
+        for (String literal : literals) {
+            assertEquals(literal, Double.parseDouble(literal), evaluator.evaluate(literal, true), 0);
+        }
+    }
+
+    @Test
+    public void randomInput_agreesWithCompiledExpression() {
+        Random random = new Random(7);
+        ScanningEvaluator evaluator = new ScanningEvaluator();
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder expression = new StringBuilder();
+            int tokens = 1 + random.nextInt(12);
+            for (int t = 0; t < tokens; t++) {
+                expression.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            for (boolean isRadian : new boolean[]{true, false}) {
+                Double expected = evaluate(expression.toString(), isRadian);
+                Double actual;
+                try {
+                    actual = evaluator.evaluate(expression.toString(), isRadian);
+                } catch (RuntimeException e) {
+                    actual = null;
+                }
+                if (expected == null || actual == null) {
+                    assertEquals(expression.toString(), expected, actual);
+                } else {
+                    assertEquals(expression.toString(),
+                            Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void warmedUpEvaluation_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        ScanningEvaluator evaluator = new ScanningEvaluator();
+        String expression = "((12.5+3)×sin(30)-√(16)÷2)^2+log(1000)-ln(e)+4!-π";
+        double sum = 0;
+        for (int i = 0; i < 20000; i++) sum += evaluator.evaluate(expression, false);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) sum += evaluator.evaluate(expression, false);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static Double evaluate(String expression, boolean isRadian) {
+        try {
+            return CompiledExpression.compile(expression).evaluate(isRadian);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
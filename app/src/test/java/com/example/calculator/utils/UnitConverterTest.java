@@ -0,0 +1,164 @@
+package com.example.calculator.utils;
+
+import com.example.calculator.models.ConversionType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UnitConverterTest {
+
+    private static double convert(ConversionType type, double value, String from, String to) {
+        UnitConverter converter = UnitConverter.forType(type);
+        return converter.convert(value, converter.indexOf(from), converter.indexOf(to));
+    }
+
+    @Test
+    public void scaledUnits_convertThroughTheBaseUnit() {
+        assertEquals(1.60934, convert(ConversionType.LENGTH, 1, "Mile", "Kilometer"), 1e-12);
+        assertEquals(12, convert(ConversionType.LENGTH, 1, "Foot", "Inch"), 1e-12);
+        assertEquals(2.20462, convert(ConversionType.WEIGHT, 1, "Kilogram", "Pound"), 1e-5);
+        assertEquals(16, convert(ConversionType.WEIGHT, 1, "Pound", "Ounce"), 1e-3);
+        assertEquals(10000, convert(ConversionType.AREA, 1, "Hectare", "Square Meter"), 1e-9);
+        assertEquals(258.998811, convert(ConversionType.AREA, 1, "Square Mile", "Hectare"), 1e-9);
+    }
+
+    @Test
+    public void temperature_appliesOffsets() {
+        assertEquals(212, convert(ConversionType.TEMPERATURE, 100, "Celsius", "Fahrenheit"), 1e-12);
+        assertEquals(-40, convert(ConversionType.TEMPERATURE, -40, "Fahrenheit", "Celsius"), 1e-12);
+        assertEquals(273.15, convert(ConversionType.TEMPERATURE, 32, "Fahrenheit", "Kelvin"), 1e-12);
+        assertEquals(-459.67, convert(ConversionType.TEMPERATURE, 0, "Kelvin", "Fahrenheit"), 1e-9);
+    }
+
+    @Test
+    public void everyPair_roundTripsAndSameUnitIsExact() {
+        for (ConversionType type : ConversionType.values()) {
+            if (!type.hasFixedScales()) continue;
+            UnitConverter converter = UnitConverter.forType(type);
+            assertSame(converter, UnitConverter.forType(type));
+            int n = converter.getUnitCount();
+            assertEquals(type.getUnits().length, n);
+            for (int from = 0; from < n; from++) {
+                assertEquals(0.1, converter.convert(0.1, from, from), 0);
+                for (int to = 0; to < n; to++) {
+                    double there = converter.convert(123.456, from, to);
+                    assertEquals(123.456, converter.convert(there, to, from), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void allUnits_matchConvertingOneByOne() {
+        UnitConverter converter = UnitConverter.forType(ConversionType.TEMPERATURE);
+        double[] all = new double[converter.getUnitCount()];
+        for (int from = 0; from < all.length; from++) {
+            converter.convertToAll(37.5, from, all);
+            for (int to = 0; to < all.length; to++) {
+                assertEquals(converter.convert(37.5, from, to), all[to], 0);
+            }
+        }
+        try {
+            converter.convertToAll(1, 0, new double[all.length - 1]);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // Too short for every unit
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void currency_hasNoFixedConverter() {
+        UnitConverter.forType(ConversionType.CURRENCY);
+    }
+
+    @Test
+    public void unknownUnits_areRejected() {
+        UnitConverter converter = UnitConverter.forType(ConversionType.LENGTH);
+        assertEquals(-1, converter.indexOf("Parsec"));
+        try {
+            converter.convert(1, 0, converter.getUnitCount());
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // Would otherwise read the next row of the table
+        }
+    }
+
+    @Test
+    public void arrays_convertInPlaceAndIntoAnotherArray() {
+        UnitConverter converter = UnitConverter.forType(ConversionType.TEMPERATURE);
+        double[] values = {0, 100, -40};
+        converter.convert(values, 0, 1);
+        assertArrayEquals(new double[] {32, 212, -40}, values, 1e-12);
+
+        double[] target = new double[5];
+        converter.convert(values, 1, target, 2, 2, 1, 2);
+        assertArrayEquals(new double[] {0, 0, 373.15, 233.15, 0}, target, 1e-9);
+        try {
+            converter.convert(values, 2, target, 0, 2, 0, 1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // Would run past the end of values
+        }
+    }
+
+    @Test
+    public void largeArrays_convertInParallelToTheSameValues() {
+        UnitConverter converter = UnitConverter.forType(ConversionType.LENGTH);
+        int mile = converter.indexOf("Mile");
+        int foot = converter.indexOf("Foot");
+        Random random = new Random(7);
+        double[] values = new double[UnitConverter.PARALLEL_THRESHOLD * 2 + 12345];
+        for (int i = 0; i < values.length; i++) values[i] = random.nextDouble() * 1000;
+
+        double[] parallel = new double[values.length + 1];
+        converter.convert(values, 0, parallel, 1, values.length, mile, foot);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(converter.convert(values[i], mile, foot), parallel[i + 1], 0);
+        }
+        assertEquals(0, parallel[0], 0);
+    }
+
+    @Test
+    public void text_hasEveryNumberConvertedAndTheRestKept() throws IOException {
+        UnitConverter converter = UnitConverter.forType(ConversionType.LENGTH);
+        String text = "id,length\r\nA1,1.5\r\nB2,-2\r\n\"3rd\",1e3\t.25\nn/a;+4.;x\n"
+                + "Height is 5. Width 3.\n";
+        StringWriter out = new StringWriter();
+        long count = converter.convert(new StringReader(text), out,
+                converter.indexOf("Kilometer"), converter.indexOf("Meter"));
+
+        assertEquals(7, count);
+        assertEquals("id,length\r\nA1,1500\r\nB2,-2000\r\n\"3rd\",1000000\t250\nn/a;4000.;x\n"
+                + "Height is 5000. Width 3000.\n", out.toString());
+
+        // Numbers that straddle the reader's buffer
+        StringBuilder column = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            column.append(i).append("e-3").append('\n');
+            expected.append(i).append('\n');
+        }
+        out = new StringWriter();
+        assertEquals(5000, converter.convert(new StringReader(column.toString()), out,
+                converter.indexOf("Kilometer"), converter.indexOf("Meter")));
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void text_copiesDigitRunsLongerThanTheBuffer() throws IOException {
+        UnitConverter converter = UnitConverter.forType(ConversionType.LENGTH);
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < 9000; i++) run.append('1');
+        StringWriter out = new StringWriter();
+        long count = converter.convert(new StringReader("7 " + run + " 8 " + run + ".5"), out,
+                converter.indexOf("Kilometer"), converter.indexOf("Meter"));
+
+        assertEquals(2, count);
+        assertEquals("7000 " + run + " 8000 " + run + ".5", out.toString());
+    }
+}
@@ -0,0 +1,40 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Compile the Android-free parts of the app straight from its source tree so the
+// benchmarks run on a plain JVM. Anything that touches android.* stays excluded.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/example/calculator/models/**")
+            include("com/example/calculator/utils/**")
+            exclude("com/example/calculator/utils/HistoryManager.java")
+            exclude("com/example/calculator/utils/CurrencyAPI.java")
+        }
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    implementation(libs.gson)
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+}
@@ -0,0 +1,72 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.ConversionType;
+import com.example.calculator.utils.UnitConverter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A column of lengths converted one call per value, as performConversion would, against
+ * one bulk call, which goes parallel for the largest sizes, and against the same column
+ * as pasted text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BulkConversionBenchmark {
+    @Param({"1000", "100000", "4000000"})
+    public int size;
+
+    private UnitConverter converter;
+    private int from;
+    private int to;
+    private double[] values;
+    private double[] target;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        converter = UnitConverter.forType(ConversionType.LENGTH);
+        from = converter.indexOf("Mile");
+        to = converter.indexOf("Kilometer");
+        Random random = new Random(1);
+        values = new double[size];
+        target = new double[size];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(1_000_000) / 100.0;
+            if (i < 100_000) builder.append(values[i]).append('\n');
+        }
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public double[] perValue() {
+        for (int i = 0; i < values.length; i++) target[i] = converter.convert(values[i], from, to);
+        return target;
+    }
+
+    @Benchmark
+    public double[] bulk() {
+        converter.convert(values, 0, target, 0, values.length, from, to);
+        return target;
+    }
+
+    /** At most 100,000 lines of text, whatever the size. */
+    @Benchmark
+    public long text() throws IOException {
+        StringWriter out = new StringWriter(text.length() * 2);
+        return converter.convert(new StringReader(text), out, from, to);
+    }
+}
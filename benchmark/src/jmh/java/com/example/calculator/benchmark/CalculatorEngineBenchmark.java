@@ -0,0 +1,81 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.utils.CalculatorEngine;
+import com.example.calculator.utils.CompiledExpression;
+import com.example.calculator.utils.ScanningEvaluator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CalculatorEngineBenchmark {
+
+    /** Number of terms in the expression. */
+    @Param({"4", "64", "1024"})
+    int size;
+
+    /** How deeply each term is wrapped in parentheses and functions. */
+    @Param({"0", "4", "16"})
+    int depth;
+
+    private String expression;
+    private CalculatorEngine previewEngine;
+    private CalculatorEngine calculateEngine;
+    private CompiledExpression compiled;
+    private ScanningEvaluator scanner;
+
+    @Setup
+    public void setUp() {
+        expression = Expressions.generate(size, depth);
+        previewEngine = new CalculatorEngine();
+        previewEngine.addInput(expression);
+        calculateEngine = new CalculatorEngine();
+        compiled = CalculatorEngine.compile(expression);
+        scanner = new ScanningEvaluator();
+    }
+
+    /** Full equals-press: input is replayed since calculate replaces the expression. */
+    @Benchmark
+    public String calculate() {
+        calculateEngine.clear();
+        calculateEngine.addInput(expression);
+        return calculateEngine.calculate(true);
+    }
+
+    @Benchmark
+    public String getPreview() {
+        return previewEngine.getPreview(true);
+    }
+
+    /** One keystroke appended and removed again, with a preview after each. */
+    @Benchmark
+    public String keystrokePreview() {
+        previewEngine.addInput("7");
+        String preview = previewEngine.getPreview(true);
+        previewEngine.deleteLastChar();
+        return preview + previewEngine.getPreview(true);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return CalculatorEngine.compile(expression);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() {
+        return compiled.evaluate(true);
+    }
+
+    @Benchmark
+    public double evaluateScanning() {
+        return scanner.evaluate(expression, true);
+    }
+}
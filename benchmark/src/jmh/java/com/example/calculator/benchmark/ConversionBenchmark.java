@@ -0,0 +1,85 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.ConversionType;
+import com.example.calculator.utils.UnitConverter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A length conversion through UnitConverter's table against the two string switches
+ * ConversionActivity used to go through, cycling over every pair of units; and a value
+ * converted into every unit in one pass over a row of the table, against one call per unit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionBenchmark {
+    private String[] units;
+    private UnitConverter converter;
+    private int pair;
+    private double value = 12.5;
+    private double[] all;
+
+    @Setup
+    public void setUp() {
+        units = ConversionType.LENGTH.getUnits();
+        converter = UnitConverter.forType(ConversionType.LENGTH);
+        all = new double[units.length];
+    }
+
+    @Benchmark
+    public double[] allUnits() {
+        pair = (pair + 1) % units.length;
+        converter.convertToAll(value, pair, all);
+        return all;
+    }
+
+    @Benchmark
+    public double[] allUnitsOneByOne() {
+        pair = (pair + 1) % units.length;
+        for (int to = 0; to < units.length; to++) all[to] = converter.convert(value, pair, to);
+        return all;
+    }
+
+    @Benchmark
+    public double table() {
+        int n = units.length;
+        pair = (pair + 1) % (n * n);
+        return converter.convert(value, pair / n, pair % n);
+    }
+
+    @Benchmark
+    public double stringSwitches() {
+        int n = units.length;
+        pair = (pair + 1) % (n * n);
+        return convertLength(value, units[pair / n], units[pair % n]);
+    }
+
+    /** ConversionActivity.convertLength as it was. */
+    private static double convertLength(double value, String from, String to) {
+        double meters = 0;
+        switch (from) {
+            case "Meter": meters = value; break;
+            case "Kilometer": meters = value * 1000; break;
+            case "Mile": meters = value * 1609.34; break;
+            case "Foot": meters = value * 0.3048; break;
+            case "Inch": meters = value * 0.0254; break;
+            case "Centimeter": meters = value * 0.01; break;
+        }
+        switch (to) {
+            case "Meter": return meters;
+            case "Kilometer": return meters / 1000;
+            case "Mile": return meters / 1609.34;
+            case "Foot": return meters / 0.3048;
+            case "Inch": return meters / 0.0254;
+            case "Centimeter": return meters / 0.01;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.utils.CurrencyRates;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Any-to-any conversion over 170 currencies through the cross-rate matrix, against the
+ * two boxed map lookups CurrencyAPI.convert used to do, cycling over pairs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CurrencyBenchmark {
+    private static final int CURRENCIES = 170;
+
+    private final Map<String, Double> map = new HashMap<>();
+    private String[] codes;
+    private CurrencyRates rates;
+    private int pair;
+    private double amount = 12.5;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        codes = new String[CURRENCIES];
+        double[] values = new double[CURRENCIES];
+        for (int i = 0; i < CURRENCIES; i++) {
+            codes[i] = "" + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26) + 'X';
+            values[i] = Math.exp(random.nextGaussian() * 3);
+            map.put(codes[i], values[i]);
+        }
+        rates = new CurrencyRates(codes, values);
+        codes = rates.getCodes();
+    }
+
+    @Benchmark
+    public double matrix() {
+        pair = (pair + 1) % (CURRENCIES * CURRENCIES);
+        return rates.convert(amount, pair / CURRENCIES, pair % CURRENCIES);
+    }
+
+    @Benchmark
+    public double mapLookups() {
+        pair = (pair + 1) % (CURRENCIES * CURRENCIES);
+        String from = codes[pair / CURRENCIES];
+        String to = codes[pair % CURRENCIES];
+        if (!map.containsKey(from) || !map.containsKey(to)) return 0;
+        return amount / map.get(from) * map.get(to);
+    }
+}
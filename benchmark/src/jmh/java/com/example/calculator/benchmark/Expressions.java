@@ -0,0 +1,23 @@
+package com.example.calculator.benchmark;
+
+import java.util.Random;
+
+/** Deterministic expression generator shared by the benchmarks. */
+final class Expressions {
+    private static final String[] FUNCTIONS = {"sin(", "cos(", "√(", "ln(", "("};
+    private static final String[] OPERATORS = {"+", "-", "×", "÷"};
+
+    private Expressions() {}
+
+    static String generate(int terms, int depth) {
+        Random random = new Random(terms * 31L + depth);
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < terms; t++) {
+            if (t > 0) sb.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+            for (int d = 0; d < depth; d++) sb.append(FUNCTIONS[random.nextInt(FUNCTIONS.length)]);
+            sb.append(1 + random.nextInt(99)).append('.').append(random.nextInt(10));
+            for (int d = 0; d < depth; d++) sb.append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.utils.CompiledExpression;
+import com.example.calculator.utils.Factorials;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FactorialBenchmark {
+
+    /** Integer arguments hit the lookup table, 4.5 goes through gamma. */
+    @Param({"5", "20", "170", "4.5"})
+    double n;
+
+    private CompiledExpression factorial;
+    private double[] values;
+
+    @Setup
+    public void setUp() {
+        factorial = CompiledExpression.compile("n!", "n");
+        values = new double[]{n};
+    }
+
+    @Benchmark
+    public double factorial() {
+        return factorial.evaluate(values, true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BigInteger exactFactorial10000() {
+        return Factorials.exactFactorial(10000);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.utils.CalculatorEngine;
+import com.example.calculator.utils.FunctionSampler;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** One frame of a 1080x1920 plot, either sampled from scratch or panned by a few pixels. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GraphBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final double UNITS_PER_PIXEL = 0.02;
+
+    @Param({"sin(x)×x", "tan(x)", "√(x)×ln(x)"})
+    String function;
+
+    private FunctionSampler sampler;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        sampler = new FunctionSampler(CalculatorEngine.compileFunction(function), true);
+    }
+
+    @Benchmark
+    public int pan() {
+        // Sweep back and forth across one screen width, 3 pixels per frame
+        int step = frame++ % 720;
+        int pixels = 3 * (step < 360 ? step : 720 - step);
+        return frame(sampler, pixels * UNITS_PER_PIXEL);
+    }
+
+    @Benchmark
+    public int fullResample() {
+        return frame(new FunctionSampler(CalculatorEngine.compileFunction(function), true), 0);
+    }
+
+    private static int frame(FunctionSampler sampler, double centerX) {
+        double halfWidth = WIDTH / 2.0 * UNITS_PER_PIXEL;
+        double halfHeight = HEIGHT / 2.0 * UNITS_PER_PIXEL;
+        sampler.setViewport(centerX - halfWidth, centerX + halfWidth, -halfHeight, halfHeight, WIDTH, HEIGHT);
+        return sampler.getSegmentFloats();
+    }
+}
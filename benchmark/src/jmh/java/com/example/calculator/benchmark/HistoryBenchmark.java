@@ -0,0 +1,128 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.Calculation;
+import com.example.calculator.utils.HistoryLog;
+import com.example.calculator.utils.HistoryStore;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The JSON work HistoryManager used to do against SharedPreferences, without the Android
+ * storage itself: getHistory() decoded the whole list and addToHistory() decoded,
+ * prepended and re-encoded it. The log benchmarks measure the HistoryLog that replaced it,
+ * and the store benchmarks the tiered HistoryStore built on it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int entries;
+
+    private final Gson gson = new Gson();
+    private final Type type = new TypeToken<ArrayList<Calculation>>(){}.getType();
+    private List<Calculation> history;
+    private String json;
+    private File logFile;
+    private HistoryLog log;
+    private File storeDirectory;
+    private HistoryStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        history = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            String expression = Expressions.generate(3, i % 3);
+            history.add(new Calculation("", expression, Integer.toString(i)));
+        }
+        json = gson.toJson(history);
+
+        logFile = File.createTempFile("history", ".log");
+        logFile.delete();
+        log = HistoryLog.open(logFile, entries);
+        for (Calculation calculation : history) {
+            log.append(calculation);
+        }
+
+        storeDirectory = Files.createTempDirectory("history").toFile();
+        store = HistoryStore.open(new File(storeDirectory, "history.log"),
+                new File(storeDirectory, "segments"), 1024);
+        for (Calculation calculation : history) {
+            store.append(calculation);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        logFile.delete();
+        store.close();
+        deleteRecursively(storeDirectory);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public String encode() {
+        return gson.toJson(history);
+    }
+
+    @Benchmark
+    public List<Calculation> decode() {
+        return gson.fromJson(json, type);
+    }
+
+    @Benchmark
+    public String addToHistory() {
+        List<Calculation> decoded = gson.fromJson(json, type);
+        decoded.add(0, new Calculation("1+1", "2", "2"));
+        return gson.toJson(decoded);
+    }
+
+    /** Includes the amortized cost of compacting once the log doubles. */
+    @Benchmark
+    public int appendLog() throws IOException {
+        log.append(new Calculation("1+1", "2", "2"));
+        return log.size();
+    }
+
+    @Benchmark
+    public List<Calculation> readNewest100() {
+        return log.getNewest(100);
+    }
+
+    /** Includes the amortized cost of queuing a seal every 1024 appends. */
+    @Benchmark
+    public long appendStore() throws IOException {
+        return store.append(new Calculation("1+1", "2", "2"));
+    }
+
+    /** The oldest page, which comes from a segment once there are enough entries. */
+    @Benchmark
+    public Calculation[] readOldest50() throws IOException {
+        return store.getRange(store.getFirstId(), 50);
+    }
+}
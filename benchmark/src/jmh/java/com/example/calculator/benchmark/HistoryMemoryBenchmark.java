@@ -0,0 +1,123 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.Calculation;
+import com.example.calculator.utils.CalculationTable;
+import java.lang.ref.Reference;
+import java.text.DecimalFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * In-memory history as Calculation objects against a CalculationTable. Setup measures
+ * the heap each takes per calculation as the growth of used heap after collecting
+ * garbage, which heapPerCalculation reports as counters next to its (meaningless) time;
+ * the other benchmarks time reading a calculation back from each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryMemoryBenchmark {
+    private static final String[] OPERATORS = {"+", "-", "×", "÷"};
+
+    @Param({"100000"})
+    int entries;
+
+    private Calculation[] objects;
+    private CalculationTable table;
+    private int next;
+    private long objectBytes;
+    private long tableBytes;
+
+    /** Heap per calculation in bytes, and how many times smaller the table is. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        public double objectBytes;
+        public double tableBytes;
+        public double timesSmaller;
+        // JMH sums event counters over the measurement iterations, so each reports its share
+        private int iterations;
+
+        @Setup
+        public void setUp(BenchmarkParams params) {
+            iterations = params.getMeasurement().getCount();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        long before = usedHeap();
+        objects = history(entries);
+        objectBytes = usedHeap() - before;
+
+        Calculation[] source = history(entries);
+        before = usedHeap();
+        table = new CalculationTable(entries);
+        for (Calculation calculation : source) table.add(calculation);
+        // The source is live before and after, so only the table counts
+        tableBytes = usedHeap() - before;
+        Reference.reachabilityFence(source);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void heapPerCalculation(Heap heap) {
+        // JMH zeroes the counters as each iteration starts, so they are set here
+        heap.objectBytes = (double) objectBytes / entries / heap.iterations;
+        heap.tableBytes = (double) tableBytes / entries / heap.iterations;
+        heap.timesSmaller = (double) objectBytes / tableBytes / heap.iterations;
+    }
+
+    @Benchmark
+    public Calculation getObject() {
+        next = (next + 1) % entries;
+        return objects[next];
+    }
+
+    @Benchmark
+    public Calculation getFromTable() {
+        next = (next + 1) % entries;
+        return table.get(next);
+    }
+
+    /** Calculations as MainActivity adds them, with strings as fresh as decoding makes them. */
+    private static Calculation[] history(int entries) {
+        Random random = new Random(13);
+        DecimalFormat format = new DecimalFormat("#.##########");
+        Calculation[] history = new Calculation[entries];
+        for (int i = 0; i < entries; i++) {
+            int a = random.nextInt(10000);
+            int b = 1 + random.nextInt(1000);
+            String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+            double value = operator.equals("+") ? a + b : operator.equals("-") ? a - b
+                    : operator.equals("×") ? (double) a * b : (double) a / b;
+            String result = format.format(value);
+            history[i] = new Calculation(a + operator + b, new String(result), result,
+                    1_700_000_000_000L + 60_000L * i);
+        }
+        return history;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
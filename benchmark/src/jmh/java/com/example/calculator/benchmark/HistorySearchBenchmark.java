@@ -0,0 +1,111 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.Calculation;
+import com.example.calculator.utils.HistoryIndex;
+import com.example.calculator.utils.HistoryLog;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * History search through HistoryIndex against decoding and filtering the whole log,
+ * which is what a search without an index has to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistorySearchBenchmark {
+    private static final int LIMIT = 100;
+    private static final String[] FUNCTIONS = {"sin(", "cos(", "tan(", "√(", "ln(", "log("};
+    private static final String[] OPERATORS = {"+", "-", "×", "÷"};
+
+    @Param({"10000", "1000000"})
+    int entries;
+
+    private File logFile;
+    private HistoryLog log;
+    private HistoryIndex index;
+    // The same history with its older half imported after the newer one
+    private HistoryIndex importedIndex;
+    private LongFunction<String> expressions;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("history", ".log");
+        logFile.delete();
+        log = HistoryLog.open(logFile, entries);
+        index = new HistoryIndex(log.getFirstId());
+        importedIndex = new HistoryIndex(log.getFirstId());
+        Random random = new Random(7);
+        for (int i = 0; i < entries; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(FUNCTIONS[random.nextInt(FUNCTIONS.length)]).append(random.nextInt(1000)).append(')');
+            sb.append(OPERATORS[random.nextInt(OPERATORS.length)]).append(random.nextInt(1000));
+            Calculation calculation = new Calculation("", sb.toString(),
+                    Integer.toString(random.nextInt(100000)), 1_000_000L * i);
+            long id = log.append(calculation);
+            index.add(id, calculation);
+            long importedTime = i < entries / 2 ? calculation.getTimestamp() + 1_000_000L * (entries / 2)
+                    : calculation.getTimestamp() - 1_000_000L * (entries / 2);
+            importedIndex.add(id, new Calculation("", calculation.getExpression(),
+                    calculation.getResult(), importedTime));
+        }
+        expressions = id -> log.getRange(id, 1)[0].getExpression();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        logFile.delete();
+    }
+
+    /** A text that only some hundreds of expressions contain. */
+    @Benchmark
+    public long[] indexedText() {
+        return index.search(new HistoryIndex.Query().expressionContains("tan(42"), LIMIT, expressions);
+    }
+
+    @Benchmark
+    public long[] indexedResult() {
+        return index.search(new HistoryIndex.Query().resultBetween(4200, 4299), LIMIT, expressions);
+    }
+
+    @Benchmark
+    public long[] indexedTimeAndText() {
+        long middle = 1_000_000L * (entries / 2);
+        return index.search(new HistoryIndex.Query().expressionContains("×7")
+                .timeBetween(middle - 1_000_000_000L, middle), LIMIT, expressions);
+    }
+
+    /** A time range over both halves, after older history was imported. */
+    @Benchmark
+    public long[] indexedTimeAfterImport() {
+        long middle = 1_000_000L * (entries / 2);
+        return importedIndex.search(new HistoryIndex.Query()
+                .timeBetween(middle - 1_000_000L * (entries / 4), middle + 1_000_000L * (entries / 4)),
+                LIMIT, expressions);
+    }
+
+    @Benchmark
+    public List<Calculation> scanText() {
+        List<Calculation> matches = new ArrayList<>();
+        for (long id = log.getEndId() - 1; id >= log.getFirstId() && matches.size() < LIMIT; id--) {
+            Calculation calculation = log.getRange(id, 1)[0];
+            if (calculation.getExpression().contains("tan(42")) matches.add(calculation);
+        }
+        return matches;
+    }
+}
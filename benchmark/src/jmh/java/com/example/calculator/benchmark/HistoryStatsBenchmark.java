@@ -0,0 +1,86 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.models.Calculation;
+import com.example.calculator.utils.HistoryLog;
+import com.example.calculator.utils.HistoryStats;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Opening the statistics panel from HistoryStats' running totals against computing the
+ * same count, mean and variance by reading and parsing every stored result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryStatsBenchmark {
+    private static final int BATCH = 1024;
+
+    @Param({"10000", "1000000"})
+    int entries;
+
+    private File logFile;
+    private HistoryLog log;
+    private HistoryStats stats;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("history", ".log");
+        logFile.delete();
+        log = HistoryLog.open(logFile);
+        stats = new HistoryStats(log.getFirstId());
+        Random random = new Random(11);
+        long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(365);
+        for (int i = 0; i < entries; i++) {
+            Calculation calculation = new Calculation("", "x",
+                    Double.toString(random.nextGaussian() * 1000),
+                    start + TimeUnit.DAYS.toMillis(365) * i / entries);
+            stats.add(log.append(calculation), calculation);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        logFile.delete();
+    }
+
+    /** What the panel reads: the total, the last week and the latest fortnight of days. */
+    @Benchmark
+    public Object openPanel() {
+        HistoryStats.Summary total = stats.getTotal();
+        HistoryStats.Summary week = stats.getSince(HistoryStats.dayOf(System.currentTimeMillis()) - 6);
+        List<HistoryStats.Summary> days = stats.getDays(14);
+        return new Object[]{total, week, days};
+    }
+
+    @Benchmark
+    public double scanAndParse() {
+        long count = 0;
+        double mean = 0;
+        double m2 = 0;
+        long end = log.getEndId();
+        for (long id = log.getFirstId(); id < end; id += BATCH) {
+            for (Calculation calculation : log.getRange(id, (int) Math.min(BATCH, end - id))) {
+                double value = Double.parseDouble(calculation.getResult());
+                count++;
+                double delta = value - mean;
+                mean += delta / count;
+                m2 += delta * (value - mean);
+            }
+        }
+        return m2 / count;
+    }
+}